@@ -0,0 +1,60 @@
+package chat.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Punto di ingresso di <code>benchmarks.jar</code>.
+ * <p>
+ * Accetta le stesse opzioni di <code>org.openjdk.jmh.Main</code> (ad esempio <code>-l</code> per l'elenco dei benchmark o un'espressione regolare per selezionarli),
+ * ma se non è indicato un formato con <code>-rf</code> salva i risultati in formato <code>JSON</code>, nel file {@link #RISULTATI} o in quello indicato con <code>-rff</code>,
+ * così che le esecuzioni su versioni diverse del programma possano essere confrontate.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public class Avvio {
+
+    /**
+     * Il file predefinito dei risultati
+     */
+    public static final String RISULTATI = "risultati-benchmark.json";
+
+    private Avvio() {}
+
+    /**
+     * Esegue i benchmark selezionati dagli argomenti
+     * @param args le opzioni di <code>JMH</code>
+     * @throws RunnerException se l'esecuzione dei benchmark non riesce
+     * @throws CommandLineOptionException se le opzioni non sono valide
+     * @throws IOException se non è possibile stampare l'aiuto
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions riga = new CommandLineOptions(args);
+        if(riga.shouldHelp()) {
+            riga.showHelp();
+            return;
+        }
+
+        ChainedOptionsBuilder opzioni = new OptionsBuilder().parent(riga);
+        if(!riga.getResultFormat().hasValue()) {
+            opzioni.resultFormat(ResultFormatType.JSON);
+            if(!riga.getResult().hasValue()) opzioni.result(RISULTATI);
+        }
+        Runner runner = new Runner(opzioni.build());
+
+        if(riga.shouldList()) {
+            runner.list();
+            return;
+        }
+        runner.run();
+    }
+}
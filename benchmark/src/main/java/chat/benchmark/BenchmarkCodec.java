@@ -0,0 +1,148 @@
+package chat.benchmark;
+
+import chat.comunicazione.CodecBinario;
+import chat.comunicazione.CodecSerializzazione;
+import chat.comunicazione.Messaggio;
+import chat.eccezioni.MsgException;
+import chat.eccezioni.ProtocolException;
+import chat.utenze.Utente;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark della codifica e della decodifica di un {@link Messaggio} attraverso {@link Messaggio#configMsg(Messaggio)} e {@link Messaggio#configMsg(ByteBuffer)}.
+ * <p>
+ * Ciascuna combinazione di {@link CodecBinario} o {@link CodecSerializzazione} e tipologia di messaggio ne misura il throughput;
+ * i contatori {@link Dimensioni} riportano inoltre i byte prodotti e il numero di messaggi codificati, il cui rapporto è la dimensione in byte di ciascun messaggio.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkCodec {
+
+    /**
+     * Tipologia del messaggio misurato
+     */
+    public enum Tipo {
+
+        /**
+         * Testo di 32 caratteri
+         */
+        TESTO_BREVE,
+
+        /**
+         * Testo di 256 caratteri
+         */
+        TESTO,
+
+        /**
+         * Testo di 1024 caratteri
+         */
+        TESTO_LUNGO,
+
+        /**
+         * <code>ACK</code> singolo
+         */
+        ACK,
+
+        /**
+         * <code>ACK</code> cumulativo di 64 messaggi
+         */
+        ACK_CUMULATIVO
+    }
+
+    /**
+     * I byte e i messaggi codificati, riportati da <code>JMH</code> come metriche secondarie della codifica
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Dimensioni {
+
+        /**
+         * I byte prodotti dalla codifica
+         */
+        public long byteCodificati;
+
+        /**
+         * I messaggi codificati
+         */
+        public long messaggi;
+
+        @Setup(Level.Iteration)
+        public void azzera() {
+            byteCodificati = 0;
+            messaggi = 0;
+        }
+    }
+
+    /**
+     * Il codec utilizzato in output
+     */
+    @Param({"binario", "serializzazione"})
+    public String codec;
+
+    /**
+     * La tipologia del messaggio
+     */
+    @Param({"TESTO_BREVE", "TESTO", "TESTO_LUNGO", "ACK", "ACK_CUMULATIVO"})
+    public Tipo tipo;
+
+    /**
+     * Il messaggio da codificare
+     */
+    private Messaggio messaggio;
+
+    /**
+     * Il messaggio codificato, da decodificare
+     */
+    private byte[] codificato;
+
+    @Setup
+    public void prepara() throws MsgException, ProtocolException {
+        Messaggio.setCodec(codec.equals("binario") ? new CodecBinario() : new CodecSerializzazione());
+        Utente mittente = Dati.utente(1, new SplittableRandom(21));
+        messaggio = switch (tipo) {
+            case TESTO_BREVE -> Dati.testo(1_000, mittente, Dati.testo(32), 0);
+            case TESTO -> Dati.testo(1_000, mittente, Dati.testo(256), 0);
+            case TESTO_LUNGO -> Dati.testo(1_000, mittente, Dati.testo(1024), 0);
+            case ACK -> Dati.ack(1_000, mittente, 999);
+            case ACK_CUMULATIVO -> Dati.ackCumulativo(1_000, mittente, 900, 64);
+        };
+        codificato = Messaggio.configMsg(messaggio);
+    }
+
+    @Benchmark
+    public byte[] codifica(Dimensioni dimensioni) throws MsgException {
+        byte[] risultato = Messaggio.configMsg(messaggio);
+        dimensioni.byteCodificati += risultato.length;
+        dimensioni.messaggi++;
+        return risultato;
+    }
+
+    @Benchmark
+    public Messaggio decodifica() throws MsgException {
+        return Messaggio.configMsg(ByteBuffer.wrap(codificato));
+    }
+}
@@ -0,0 +1,128 @@
+package chat.benchmark;
+
+import chat.comunicazione.Cronologia;
+import chat.comunicazione.Messaggio;
+import chat.comunicazione.PoliticaEspulsione;
+import chat.eccezioni.MsgException;
+import chat.eccezioni.ProtocolException;
+import chat.utenze.Utente;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark dell'associazione degli <code>ACK</code> ricevuti ai messaggi inviati con {@link Cronologia#confermaDiLettura(Messaggio, int)}, al variare della lunghezza della cronologia.
+ * <p>
+ * La cronologia contiene i messaggi inviati, ciascuno atteso da 8 destinatari, senza alcun limite di memoria. Vengono misurati un <code>ACK</code> singolo per uno dei messaggi più recenti,
+ * un <code>ACK</code> cumulativo di 64 messaggi e un <code>ACK</code> per uno dei messaggi già usciti dall'indice degli <code>ACK</code>: per questo la cronologia deve contenere
+ * più di {@link Cronologia#DIMENSIONE_INDICE_ACK} messaggi. Gli <code>ACK</code> provengono a rotazione
+ * dagli 8 destinatari: superata la prima conferma di ciascuno, viene misurato il riconoscimento delle conferme duplicate, come per gli <code>ACK</code> ritrasmessi.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkCronologia {
+
+    /**
+     * Il numero di <code>ACK</code> precalcolati, potenza di 2
+     */
+    private static final int CONFERME = 1024;
+
+    /**
+     * Il numero di destinatari di ciascun messaggio, potenza di 2
+     */
+    private static final int DESTINATARI = 8;
+
+    /**
+     * Il numero di messaggi inviati nella cronologia, maggiore di {@link Cronologia#DIMENSIONE_INDICE_ACK}
+     */
+    @Param({"5000", "100000"})
+    public int messaggi;
+
+    /**
+     * La cronologia
+     */
+    private Cronologia cronologia;
+
+    /**
+     * <code>ACK</code> singoli per i messaggi più recenti
+     */
+    private Messaggio[] singoli;
+
+    /**
+     * <code>ACK</code> cumulativi per i messaggi più recenti
+     */
+    private Messaggio[] cumulativi;
+
+    /**
+     * <code>ACK</code> per messaggi usciti dall'indice
+     */
+    private Messaggio[] scaduti;
+
+    /**
+     * La posizione corrente negli <code>ACK</code> precalcolati
+     */
+    private int cursore;
+
+    @Setup
+    public void prepara() throws IOException, MsgException, ProtocolException {
+        if(messaggi <= Cronologia.DIMENSIONE_INDICE_ACK) throw new IllegalArgumentException("La cronologia deve contenere più di " + Cronologia.DIMENSIONE_INDICE_ACK + " messaggi: " + messaggi);
+        SplittableRandom casuale = new SplittableRandom(21);
+        Utente locale = Dati.utente(0, casuale);
+        Utente remoto = Dati.utente(1, casuale);
+        cronologia = new Cronologia(locale);
+        cronologia.setLimite(messaggi, 0, PoliticaEspulsione.SCARTA, null);
+        String testo = Dati.testo(64);
+        for(int i = 0; i < messaggi; i++) {
+            cronologia.storicizzaMessaggio(Dati.testo(cronologia.getNewID(), locale, testo, i + 1));
+        }
+
+        int usciti = messaggi - Cronologia.DIMENSIONE_INDICE_ACK;
+        singoli = new Messaggio[CONFERME];
+        cumulativi = new Messaggio[CONFERME];
+        scaduti = new Messaggio[CONFERME];
+        for(int i = 0; i < CONFERME; i++) {
+            int ID = messaggi - casuale.nextInt(Cronologia.DIMENSIONE_INDICE_ACK);
+            singoli[i] = Dati.ack(i + 1, remoto, ID);
+            cumulativi[i] = Dati.ackCumulativo(i + 1, remoto, Math.max(1, ID - 63), 64);
+            scaduti[i] = Dati.ack(i + 1, remoto, 1 + casuale.nextInt(usciti));
+        }
+    }
+
+    @Benchmark
+    public void confermaSingola() {
+        int i = cursore++;
+        cronologia.confermaDiLettura(singoli[i & (CONFERME - 1)], i & (DESTINATARI - 1));
+    }
+
+    @Benchmark
+    public void confermaCumulativa() {
+        int i = cursore++;
+        cronologia.confermaDiLettura(cumulativi[i & (CONFERME - 1)], i & (DESTINATARI - 1));
+    }
+
+    @Benchmark
+    public void confermaScaduta() {
+        int i = cursore++;
+        cronologia.confermaDiLettura(scaduti[i & (CONFERME - 1)], i & (DESTINATARI - 1));
+    }
+}
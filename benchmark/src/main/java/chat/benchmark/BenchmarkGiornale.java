@@ -0,0 +1,159 @@
+package chat.benchmark;
+
+import chat.comunicazione.Cronologia;
+import chat.comunicazione.Giornale;
+import chat.comunicazione.Messaggio;
+import chat.eccezioni.MsgException;
+import chat.eccezioni.ProtocolException;
+import chat.utenze.Utente;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark del {@link Giornale} persistente dei messaggi: registrazione in coda, riproduzione completa e ripristino degli ultimi messaggi nella {@link Cronologia}.
+ * <p>
+ * I messaggi registrati sono testi di circa 100 caratteri. La registrazione scrive in un giornale nuovo ad ogni iterazione, eliminato al termine;
+ * la riproduzione legge un giornale di {@link GiornalePieno#MESSAGGI} messaggi, preparato una sola volta, e ne riporta il tempo per messaggio.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkGiornale {
+
+    /**
+     * Il giornale già popolato da cui vengono riprodotti i messaggi
+     */
+    @State(Scope.Benchmark)
+    public static class GiornalePieno {
+
+        /**
+         * Il numero di messaggi registrati
+         */
+        public static final int MESSAGGI = 100_000;
+
+        /**
+         * Il numero di messaggi ripristinati nella {@link Cronologia}
+         */
+        public static final int ULTIMI = 10_000;
+
+        /**
+         * Il giornale
+         */
+        private Giornale giornale;
+
+        @Setup
+        public void prepara() throws IOException, MsgException, ProtocolException {
+            giornale = apri();
+            Messaggio messaggio = messaggio();
+            for(int i = 0; i < MESSAGGI; i++) giornale.registra(messaggio, i % 2 == 0);
+            giornale.sincronizza();
+        }
+
+        @TearDown
+        public void chiudi() throws IOException {
+            BenchmarkGiornale.chiudi(giornale);
+        }
+    }
+
+    /**
+     * Il messaggio registrato
+     */
+    private Messaggio messaggio;
+
+    /**
+     * Il giornale in cui vengono registrati i messaggi nell'iterazione corrente
+     */
+    private Giornale giornale;
+
+    @Setup(Level.Iteration)
+    public void apriGiornale() throws IOException, ProtocolException {
+        messaggio = messaggio();
+        giornale = apri();
+    }
+
+    @TearDown(Level.Iteration)
+    public void chiudiGiornale() throws IOException {
+        chiudi(giornale);
+    }
+
+    @Benchmark
+    public void registra() throws IOException, MsgException {
+        giornale.registra(messaggio, true);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(GiornalePieno.MESSAGGI)
+    public long riproduci(GiornalePieno pieno, Blackhole blackhole) throws IOException {
+        return pieno.giornale.riproduci(0, (inviato, messaggio) -> blackhole.consume(messaggio));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(GiornalePieno.ULTIMI)
+    public Cronologia ripristinaUltimi(GiornalePieno pieno) throws IOException {
+        Cronologia cronologia = new Cronologia(Dati.utente(0, new SplittableRandom(21)));
+        pieno.giornale.riproduciUltimi(GiornalePieno.ULTIMI, cronologia::ripristina);
+        return cronologia;
+    }
+
+    /**
+     * Crea il messaggio registrato nel giornale
+     * @return un messaggio di testo di 100 caratteri
+     * @throws ProtocolException mai, il protocollo è valido
+     */
+    private static Messaggio messaggio() throws ProtocolException {
+        Utente mittente = Dati.utente(1, new SplittableRandom(21));
+        return Dati.testo(1, mittente, Dati.testo(100), 0);
+    }
+
+    /**
+     * Apre un giornale vuoto in una directory temporanea
+     * @return il giornale
+     * @throws IOException se non è possibile creare la directory
+     */
+    private static Giornale apri() throws IOException {
+        return new Giornale(Files.createTempDirectory("giornale-benchmark"));
+    }
+
+    /**
+     * Chiude un giornale ed elimina la sua directory
+     * @param giornale il giornale da eliminare
+     * @throws IOException se non è possibile eliminare i segmenti
+     */
+    private static void chiudi(Giornale giornale) throws IOException {
+        giornale.chiudi();
+        try (Stream<Path> file = Files.walk(giornale.getDirectory())) {
+            for(Path percorso : file.sorted(Comparator.reverseOrder()).toList()) Files.delete(percorso);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package chat.benchmark;
+
+import chat.eccezioni.NoSuchUserException;
+import chat.utenze.IndiceRubrica;
+import chat.utenze.Rubrica;
+import chat.utenze.Utente;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark delle ricerche nella {@link Rubrica} al variare del numero di partecipanti del gruppo.
+ * <p>
+ * Le ricerche per <code>UUID</code>, alias e slot e il riconoscimento di un utente già presente, eseguiti per ciascun datagramma ricevuto, non acquisiscono alcun lock;
+ * anche l'inserimento e la rimozione di un partecipante costano un tempo costante, perché l'istantanea della rubrica viene costruita solo dalle operazioni che scorrono tutti gli utenti.
+ * Gli utenti cercati sono scelti in ordine casuale, per non favorire la cache del processore.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.2
+ * @project MulticastUDPSocketChat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkRubrica {
+
+    /**
+     * Il numero di ricerche precalcolate, potenza di 2
+     */
+    private static final int RICERCHE = 4096;
+
+    /**
+     * Il numero di partecipanti in rubrica
+     */
+    @Param({"10", "1000", "100000"})
+    public int partecipanti;
+
+    /**
+     * La rubrica
+     */
+    private Rubrica rubrica;
+
+    /**
+     * L'indirizzo dei partecipanti
+     */
+    private InetAddress indirizzo;
+
+    /**
+     * Gli utenti in rubrica
+     */
+    private Utente[] utenti;
+
+    /**
+     * Gli alias assegnati agli utenti
+     */
+    private String[] alias;
+
+    /**
+     * Gli indici degli utenti cercati, in ordine casuale
+     */
+    private int[] ricerche;
+
+    /**
+     * La posizione corrente in {@link #ricerche}
+     */
+    private int cursore;
+
+    /**
+     * Un utente non ancora in rubrica, inserito e rimosso da {@link #aggiungiERimuovi()}
+     */
+    private Utente nuovo;
+
+    @Setup
+    public void prepara() throws NoSuchUserException, UnknownHostException {
+        SplittableRandom casuale = new SplittableRandom(21);
+        indirizzo = InetAddress.getByName("192.168.1.10");
+        rubrica = new Rubrica(Dati.utente(0, casuale));
+        utenti = new Utente[partecipanti];
+        alias = new String[partecipanti];
+        for(int i = 0; i < partecipanti; i++) {
+            utenti[i] = Dati.utente(i + 1, casuale);
+            rubrica.aggiungiUtente(utenti[i], indirizzo, Dati.PORTA + i % 1000);
+            alias[i] = rubrica.ottieniAliasDaUUID(utenti[i].getIDutente());
+        }
+        ricerche = new int[RICERCHE];
+        for(int i = 0; i < RICERCHE; i++) ricerche[i] = casuale.nextInt(partecipanti);
+        nuovo = Dati.utente(partecipanti + 1, casuale);
+    }
+
+    /**
+     * Restituisce l'indice del prossimo utente da cercare
+     * @return l'indice dell'utente
+     */
+    private int prossimo() {
+        return ricerche[cursore++ & (RICERCHE - 1)];
+    }
+
+    @Benchmark
+    public String ottieniAliasDaUUID() {
+        return rubrica.ottieniAliasDaUUID(utenti[prossimo()].getIDutente());
+    }
+
+    @Benchmark
+    public IndiceRubrica ottieniInfoUtente() throws NoSuchUserException {
+        return rubrica.ottieniInfoUtente(alias[prossimo()]);
+    }
+
+    @Benchmark
+    public int ottieniSlot() {
+        return rubrica.ottieniSlot(utenti[prossimo()].getIDutente());
+    }
+
+    @Benchmark
+    public void aggiungiUtenteNoto() throws NoSuchUserException {
+        rubrica.aggiungiUtente(utenti[prossimo()], indirizzo, Dati.PORTA);
+    }
+
+    @Benchmark
+    public String aggiungiERimuovi() throws NoSuchUserException {
+        rubrica.aggiungiUtente(nuovo, indirizzo, Dati.PORTA);
+        IndiceRubrica rimosso = rubrica.rimuoviIndice(nuovo.getIDutente());
+        rubrica.liberaSlot(rimosso.slot());
+        return rimosso.alias();
+    }
+}
@@ -0,0 +1,102 @@
+package chat.benchmark;
+
+import chat.comunicazione.InsiemeID;
+import chat.comunicazione.Messaggio;
+import chat.comunicazione.Protocollo;
+import chat.eccezioni.MsgException;
+import chat.eccezioni.ProtocolException;
+import chat.utenze.Utente;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Dati di prova condivisi dai benchmark: utenti, testi e messaggi con dimensioni e contenuti simili a quelli scambiati in una chat reale.
+ * <p>
+ * I dati sono generati a partire da un seme fisso, così che esecuzioni diverse misurino gli stessi messaggi. La classe è pubblica per i benchmark che risiedono nel package della classe misurata,
+ * come {@link chat.host.BenchmarkRicezione}.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+public final class Dati {
+
+    /**
+     * La porta unicast fittizia dei mittenti
+     */
+    public static final int PORTA = 50_000;
+
+    /**
+     * Il testo ripetuto per comporre i messaggi
+     */
+    private static final String FRASE = "ci vediamo alle otto davanti all'aula di informatica, il portatile è già carico? ";
+
+    private Dati() {}
+
+    /**
+     * Crea un {@link Utente} con un identificativo derivato dal seme, senza registrarne la creazione nel log
+     * @param indice l'indice dell'utente
+     * @param casuale il generatore da cui derivare l'identificativo
+     * @return l'utente
+     */
+    public static Utente utente(int indice, SplittableRandom casuale) {
+        return new Utente("utente" + indice, new UUID(casuale.nextLong(), casuale.nextLong()).toString());
+    }
+
+    /**
+     * Compone un testo della lunghezza indicata
+     * @param lunghezza il numero di caratteri
+     * @return il testo
+     */
+    public static String testo(int lunghezza) {
+        return FRASE.repeat(lunghezza / FRASE.length() + 1).substring(0, lunghezza);
+    }
+
+    /**
+     * Crea un messaggio di testo multicast, atteso da 8 destinatari
+     * @param ID l'identificativo del messaggio
+     * @param mittente il mittente
+     * @param testo il contenuto
+     * @param sequenza il numero di sequenza, <code>0</code> se non in sequenza
+     * @return il messaggio
+     * @throws ProtocolException mai, il protocollo è valido
+     */
+    public static Messaggio testo(int ID, Utente mittente, String testo, int sequenza) throws ProtocolException {
+        BitSet destinatari = new BitSet();
+        destinatari.set(0, 8);
+        return new Messaggio(ID, mittente, PORTA, destinatari, testo, true, Protocollo.UDP.multicast, sequenza);
+    }
+
+    /**
+     * Crea un <code>ACK</code> singolo, con l'eco della marca temporale per la misura dell'<code>RTT</code>
+     * @param ID l'identificativo del messaggio
+     * @param mittente il mittente
+     * @param IDconfermato l'identificativo del messaggio confermato
+     * @return l'<code>ACK</code>
+     * @throws ProtocolException mai, il protocollo è valido
+     */
+    public static Messaggio ack(int ID, Utente mittente, int IDconfermato) throws ProtocolException {
+        return new Messaggio(ID, mittente, PORTA, IDconfermato, Messaggio.orologio(), 150, Protocollo.UDP.unicast);
+    }
+
+    /**
+     * Crea un <code>ACK</code> cumulativo che conferma i messaggi da <code>primo</code> a <code>primo + numero - 1</code>, tranne uno su sette, come dopo una perdita sparsa
+     * @param ID l'identificativo del messaggio
+     * @param mittente il mittente
+     * @param primo il primo identificativo confermato
+     * @param numero l'ampiezza dell'intervallo confermato
+     * @return l'<code>ACK</code> cumulativo
+     * @throws MsgException se le conferme non sono valide
+     * @throws ProtocolException mai, il protocollo è valido
+     */
+    public static Messaggio ackCumulativo(int ID, Utente mittente, int primo, int numero) throws MsgException, ProtocolException {
+        TreeSet<Integer> confermati = new TreeSet<>();
+        for(int i = 0; i < numero; i++) {
+            if(i == 0 || i % 7 != 0) confermati.add(primo + i);
+        }
+        return new Messaggio(ID, mittente, PORTA, InsiemeID.da(confermati).getFirst(), Messaggio.orologio(), 150, Protocollo.UDP.unicast);
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * Fornisce i benchmark <code>JMH</code> dei percorsi critici del programma: codifica e decodifica dei messaggi, ricerche in rubrica,
+ * associazione degli <code>ACK</code>, gestione dei datagrammi ricevuti e giornale persistente.
+ * <p>
+ * Contiene:
+ * <ul>
+ *     <li>{@link chat.benchmark.Avvio}</li>
+ *     <li>{@link chat.benchmark.BenchmarkCodec}</li>
+ *     <li>{@link chat.benchmark.BenchmarkCronologia}</li>
+ *     <li>{@link chat.benchmark.BenchmarkGiornale}</li>
+ *     <li>{@link chat.benchmark.BenchmarkRubrica}</li>
+ *     <li>{@link chat.benchmark.Dati}</li>
+ * </ul>
+ * La gestione dei datagrammi ricevuti è misurata da {@link chat.host.BenchmarkRicezione}, nel package di {@link chat.host.MulticastPeer} per accedere al suo metodo di ricezione.
+ * 
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+package chat.benchmark;
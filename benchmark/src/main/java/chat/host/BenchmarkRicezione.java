@@ -0,0 +1,188 @@
+package chat.host;
+
+import chat.benchmark.Dati;
+import chat.comunicazione.CodecBinario;
+import chat.comunicazione.Cronologia;
+import chat.comunicazione.Messaggio;
+import chat.comunicazione.Pacchetto;
+import chat.comunicazione.RilevatoreLacune;
+import chat.eccezioni.MsgException;
+import chat.eccezioni.NoSuchUserException;
+import chat.eccezioni.ProtocolException;
+import chat.utenze.Rubrica;
+import chat.utenze.Utente;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark della gestione completa di un datagramma ricevuto, esclusa la socket.
+ * <p>
+ * I datagrammi, già codificati, vengono consegnati a un {@link MulticastPeer} non avviato attraverso il metodo {@link MulticastPeer#ricevi(ByteBuffer, InetAddress)},
+ * che ripete il percorso dei datagrammi ricevuti dalla rete: riconoscimento e apertura dei {@link Pacchetto}, decodifica, verifica della sequenza con il {@link RilevatoreLacune},
+ * memorizzazione nella {@link Cronologia}, riconoscimento del mittente in {@link Rubrica} e, per un <code>ACK</code>, misura dell'<code>RTT</code> e associazione al messaggio confermato,
+ * oltre alla misura del traffico e della durata della gestione. Per questo il benchmark si trova nel package di {@link MulticastPeer}.
+ * <p>
+ * Il <code>multicastPeer</code> comunica su una {@link ReteSimulata} priva di altri host e non ha ascoltatori registrati. I messaggi di testo ricevuti vengono confermati con <code>ACK</code> cumulativi,
+ * inviati ogni {@link #INTERVALLO_ACK} millisecondi, così che non venga misurato anche l'invio dell'<code>ACK</code> di risposta. Il mittente è già in rubrica, come durante una conversazione.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkRicezione {
+
+    /**
+     * Tipologia dei datagrammi ricevuti
+     */
+    public enum Tipo {
+
+        /**
+         * Un messaggio di testo di 128 caratteri per datagramma
+         */
+        TESTO,
+
+        /**
+         * Un <code>ACK</code> singolo per datagramma
+         */
+        ACK,
+
+        /**
+         * Un {@link Pacchetto} di 8 messaggi di testo di 32 caratteri per datagramma
+         */
+        PACCHETTO
+    }
+
+    /**
+     * Il numero di datagrammi precalcolati, potenza di 2
+     */
+    private static final int DATAGRAMMI = 4096;
+
+    /**
+     * Il numero di messaggi di testo in ciascun {@link Pacchetto}
+     */
+    private static final int MESSAGGI_PER_PACCHETTO = 8;
+
+    /**
+     * La capienza di ciascun {@link Pacchetto}, pari al carico utile di un datagramma su <code>Ethernet</code>
+     */
+    private static final int CAPIENZA_PACCHETTO = 1472;
+
+    /**
+     * L'intervallo degli <code>ACK</code> cumulativi del {@link #multicastPeer}, in millisecondi, più lungo di un'iterazione del benchmark
+     */
+    private static final long INTERVALLO_ACK = 60_000;
+
+    /**
+     * La tipologia dei datagrammi
+     */
+    @Param({"TESTO", "ACK", "PACCHETTO"})
+    public Tipo tipo;
+
+    /**
+     * Indica se i messaggi di testo sono in sequenza, come nel multicast affidabile. Non ha effetto sugli <code>ACK</code>, che non sono mai in sequenza
+     */
+    @Param({"false", "true"})
+    public boolean affidabile;
+
+    /**
+     * La rete su cui comunica il {@link #multicastPeer}
+     */
+    private ReteSimulata rete;
+
+    /**
+     * Il <code>multicastPeer</code> che riceve i datagrammi
+     */
+    private MulticastPeer multicastPeer;
+
+    /**
+     * Il mittente dei datagrammi
+     */
+    private Utente remoto;
+
+    /**
+     * L'indirizzo del mittente
+     */
+    private InetAddress indirizzo;
+
+    /**
+     * I datagrammi codificati
+     */
+    private byte[][] datagrammi;
+
+    /**
+     * La posizione corrente nei {@link #datagrammi}
+     */
+    private int cursore;
+
+    @Setup
+    public void prepara() throws MsgException, NoSuchUserException, ProtocolException {
+        Messaggio.setCodec(new CodecBinario());
+        SplittableRandom casuale = new SplittableRandom(21);
+        rete = new ReteSimulata(CondizioniRete.IDEALI, 21);
+        InetAddress host = rete.nuovoHost();
+        indirizzo = rete.nuovoHost();
+        multicastPeer = new MulticastPeer("locale", false, new GroupChat("230.19.6.5", 19065, rete.apri(host, 19065)), rete.apri(host, 0));
+        multicastPeer.setACKCumulativi(INTERVALLO_ACK);
+        Utente locale = multicastPeer.getUtente();
+        remoto = Dati.utente(1, casuale);
+        multicastPeer.getRubrica().aggiungiUtente(remoto, indirizzo, Dati.PORTA);
+        Cronologia cronologia = multicastPeer.getCronologia();
+
+        String testo = Dati.testo(128);
+        String testoBreve = Dati.testo(32);
+        datagrammi = new byte[DATAGRAMMI][];
+        int sequenza = 0;
+        for(int i = 0; i < DATAGRAMMI; i++) {
+            switch (tipo) {
+                case TESTO -> datagrammi[i] = Messaggio.configMsg(Dati.testo(i + 1, remoto, testo, affidabile ? ++sequenza : 0));
+                case ACK -> {
+                    cronologia.storicizzaMessaggio(Dati.testo(cronologia.getNewID(), locale, testo, 0));
+                    datagrammi[i] = Messaggio.configMsg(Dati.ack(i + 1, remoto, i + 1));
+                }
+                case PACCHETTO -> {
+                    Pacchetto pacchetto = new Pacchetto(CAPIENZA_PACCHETTO);
+                    for(int j = 0; j < MESSAGGI_PER_PACCHETTO; j++) {
+                        byte[] codificato = Messaggio.configMsg(Dati.testo(i * MESSAGGI_PER_PACCHETTO + j + 1, remoto, testoBreve, affidabile ? ++sequenza : 0));
+                        if(!pacchetto.aggiungi(codificato)) throw new IllegalStateException("Capienza del pacchetto insufficiente");
+                    }
+                    datagrammi[i] = pacchetto.getDatagramma();
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void chiudi() {
+        rete.chiudi();
+    }
+
+    @Benchmark
+    public void ricevi() throws IOException {
+        int i = cursore++ & (DATAGRAMMI - 1);
+        /* esauriti i datagrammi la sequenza del mittente ricomincia, come per un nuovo mittente */
+        if(i == 0) multicastPeer.getRilevatoreLacune().rimuovi(remoto.getIDutente());
+        multicastPeer.ricevi(ByteBuffer.wrap(datagrammi[i]), indirizzo);
+    }
+}
@@ -0,0 +1,245 @@
+package chat.carico;
+
+import chat.eccezioni.CommunicationException;
+import chat.gestione.OutputType;
+import chat.gestione.ProjectOutput;
+import chat.host.CicloEventi;
+import chat.host.GroupChat;
+import chat.host.MulticastPeer;
+import chat.host.ReteSimulata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generatore di carico senza terminale: avvia più {@link MulticastPeer} nello stesso gruppo, nella stessa JVM o suddivisi tra più processi dello stesso host,
+ * e li fa conversare alla frequenza richiesta per misurare il comportamento del programma al crescere del gruppo.
+ * <p>
+ * L'esecuzione si svolge in tre fasi:
+ * <ul>
+ *     <li>preparazione: i peer si uniscono al gruppo e si scoprono a vicenda attraverso i messaggi <code>join-group</code> e di saluto;</li>
+ *     <li>invio: ciascun peer invia messaggi a frequenza costante, al gruppo o, nella frazione richiesta, a un partecipante casuale;</li>
+ *     <li>attesa: gli invii cessano e si attendono le ultime consegne e gli ultimi <code>ACK</code>.</li>
+ * </ul>
+ * Al termine viene stampato un rapporto con throughput di invio e consegna, percentili della latenza di consegna, messaggi persi e rapporto tra <code>ACK</code> ricevuti e attesi.
+ * <p>
+ * Con più processi, il processo avviato dall'utente non partecipa al gruppo: avvia i processi figli con lo stesso classpath e un istante di inizio comune,
+ * quindi ne unisce i {@link RisultatiCarico}. L'output della chat dei peer viene scartato, mentre gli errori restano visibili.
+ * <p>
+ * Con l'opzione <code>--simulata</code> i peer comunicano attraverso una {@link ReteSimulata} anziché le socket del sistema operativo, ciascuno da un proprio host:
+ * perdite, duplicazioni, riordini, latenze e limiti di banda sono riprodotti a partire dal seme indicato, e il rapporto comprende le statistiche della rete.
+ * I peer misurano il tempo e pianificano le proprie attività sull'orologio virtuale della rete, fatto avanzare al ritmo del tempo reale.
+ * <p>
+ * Ad esempio: <code>java -cp MulticastUDPSocketChat.jar chat.carico.GeneratoreCarico --peer 50 --processi 5 --frequenza 20 --privati 0.2</code>
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.2
+ * @project MulticastUDPSocketChat
+ */
+public class GeneratoreCarico {
+
+    /**
+     * Il tempo concesso ai processi figli per l'avvio della JVM, in millisecondi, prima della preparazione
+     */
+    private static final long AVVIO_PROCESSI = 2000;
+
+    /**
+     * Il tempo concesso ai processi figli per la chiusura dei peer e il salvataggio dei risultati, in millisecondi
+     */
+    private static final long CHIUSURA_PROCESSI = 30_000;
+
+    /**
+     * Il numero di {@link Thread} che accodano i messaggi di tutti i peer del processo
+     */
+    private static final int THREAD_INVIO = 2;
+
+    /**
+     * Avvia il generatore di carico con i parametri forniti nella forma <code>--opzione valore</code>, tutti facoltativi; <code>--help</code> ne stampa l'elenco completo.
+     * <ul>
+     *     <li>Dimensione del gruppo: <code>--peer N</code> peer totali, suddivisi tra <code>--processi P</code> processi</li>
+     *     <li>Carico: <code>--frequenza F</code> messaggi al secondo per peer, di <code>--dimensione C</code> caratteri, di cui la frazione <code>--privati X</code> a un partecipante casuale</li>
+     *     <li>Fasi, in secondi: <code>--preparazione S</code>, <code>--durata S</code> e <code>--attesa S</code></li>
+     *     <li>Rete: <code>--gruppo IP</code>, <code>--porta N</code> e <code>--interfaccia NOME</code> del <code>gruppo</code> multicast</li>
+     *     <li>Protocollo: <code>--nio</code> per la ricezione con un unico {@link chat.host.CicloEventi}, <code>--affidabile</code> per il multicast affidabile,
+     *     <code>--ack-cumulativi MS</code> e <code>--accorpamento MS</code> per gli intervalli degli <code>ACK</code> cumulativi e dell'accorpamento dei messaggi</li>
+     *     <li>Rete simulata: <code>--simulata</code>, con le condizioni <code>--perdita</code>, <code>--duplicazione</code>, <code>--riordino</code>, <code>--ritardo-riordino</code>,
+     *     <code>--latenza</code>, <code>--variazione</code>, <code>--banda</code> e <code>--coda</code>, riprodotte a partire da <code>--seme N</code></li>
+     * </ul>
+     * Le opzioni <code>--totali</code>, <code>--processo</code>, <code>--inizio</code> e <code>--risultati</code> sono riservate ai processi figli, avviati dal generatore stesso quando <code>--processi</code> è maggiore di 1.
+     * <p>
+     * Il rapporto viene stampato sull'output standard, mentre l'output della chat dei peer viene scartato; i parametri non validi vengono segnalati sull'errore standard insieme all'elenco delle opzioni.
+     * @param args i parametri dell'esecuzione, descritti in {@link ParametriCarico#UTILIZZO}
+     */
+    public static void main(String[] args) {
+        PrintStream terminale = System.out;
+        if(args.length == 1 && (args[0].equals("--help") || args[0].equals("-h"))) {
+            terminale.println(ParametriCarico.UTILIZZO);
+            return;
+        }
+        /* l'output della chat di decine di peer renderebbe illeggibile il rapporto: viene scartato prima che ProjectOutput e ChatLogger acquisiscano System.out */
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        try {
+            ParametriCarico parametri = ParametriCarico.da(args);
+            RisultatiCarico risultati = parametri.processi() > 1 ? coordina(parametri) : esegui(parametri);
+            if(parametri.isFiglio()) {
+                risultati.salva(parametri.risultati());
+            } else {
+                terminale.println(risultati.getRapporto(parametri));
+            }
+        } catch (IllegalArgumentException e) {
+            ProjectOutput.stampa(e.getMessage() + "\n" + ParametriCarico.UTILIZZO, OutputType.STDERR);
+        } catch (Exception e) {
+            ProjectOutput.stampa("Errore: " + e.getMessage(), OutputType.STDERR);
+        }
+        ProjectOutput.svuota(1000);
+    }
+
+    /**
+     * Esegue tutti i peer richiesti nel processo corrente
+     * @param parametri i parametri dell'esecuzione
+     * @return i risultati del processo
+     * @throws IOException se non è possibile creare o avviare un peer
+     * @throws CommunicationException se non è disponibile alcuna interfaccia di rete multicast
+     * @throws InterruptedException se il {@link Thread} viene interrotto durante l'attesa
+     * @throws IllegalArgumentException se l'interfaccia di rete non esiste
+     */
+    private static RisultatiCarico esegui(ParametriCarico parametri) throws IOException, CommunicationException, InterruptedException, IllegalArgumentException {
+        RisultatiCarico risultati = new RisultatiCarico();
+        ReteSimulata rete = parametri.rete() != null ? new ReteSimulata(parametri.rete(), parametri.seme()) : null;
+        if(rete != null) rete.avviaTempoReale();
+        NetworkInterface interfaccia = rete == null ? interfaccia(parametri.interfaccia()) : null;
+        CicloEventi cicloEventi = parametri.nio() && rete == null ? new CicloEventi() : null;
+        List<PeerCarico> peer = new ArrayList<>();
+        ScheduledExecutorService pianificatore = Executors.newScheduledThreadPool(THREAD_INVIO, r -> {
+            Thread thread = new Thread(r, "Thread del generatore di carico");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            for(int i = 0; i < parametri.peer(); i++) {
+                String username = "carico" + parametri.processo() + "_" + i;
+                GroupChat gruppo;
+                MulticastPeer multicastPeer;
+                if(rete != null) {
+                    InetAddress host = rete.nuovoHost();
+                    gruppo = new GroupChat(parametri.gruppo(), parametri.porta(), rete.apri(host, parametri.porta()));
+                    multicastPeer = new MulticastPeer(username, false, gruppo, rete.apri(host, 0), rete, rete.nuovoPianificatore());
+                } else {
+                    gruppo = new GroupChat(parametri.gruppo(), parametri.porta(), parametri.nio(), interfaccia);
+                    multicastPeer = new MulticastPeer(username, false, gruppo, cicloEventi);
+                }
+                if(parametri.accorpamento() > 0) gruppo.abilitaAccorpamento(parametri.accorpamento());
+                multicastPeer.setMulticastAffidabile(parametri.affidabile());
+                if(parametri.ackCumulativi() > 0) multicastPeer.setACKCumulativi(parametri.ackCumulativi());
+                peer.add(new PeerCarico(multicastPeer, parametri, risultati, parametri.seme() * 31 + ((long) parametri.processo() << 32 | i)));
+                multicastPeer.configura();
+                multicastPeer.avvia(false);
+            }
+
+            long inizio = parametri.inizio() > 0 ? parametri.inizio() : System.currentTimeMillis() + parametri.preparazione() * 1000L;
+            attendi(inizio);
+            for(PeerCarico peerCarico : peer) peerCarico.inizia();
+
+            /* gli invii dei peer sono sfasati uniformemente all'interno del periodo, per non accodarli tutti nello stesso istante */
+            long periodo = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / parametri.frequenza()));
+            for(int i = 0; i < peer.size(); i++) {
+                pianificatore.scheduleAtFixedRate(peer.get(i)::invia, periodo * i / peer.size(), periodo, TimeUnit.NANOSECONDS);
+            }
+            attendi(inizio + parametri.durata() * 1000L);
+            pianificatore.shutdownNow();
+            pianificatore.awaitTermination(1, TimeUnit.SECONDS);
+
+            attendi(inizio + (parametri.durata() + parametri.attesa()) * 1000L);
+            for(PeerCarico peerCarico : peer) peerCarico.termina();
+            if(rete != null) risultati.setStatisticheRete(rete.getStatistiche());
+        } finally {
+            pianificatore.shutdownNow();
+            for(PeerCarico peerCarico : peer) peerCarico.getPeer().chiudi();
+            if(cicloEventi != null) cicloEventi.chiudi();
+            if(rete != null) rete.chiudi();
+        }
+        return risultati;
+    }
+
+    /**
+     * Suddivide i peer tra più processi figli, ne attende la terminazione e ne unisce i risultati
+     * @param parametri i parametri dell'esecuzione
+     * @return i risultati di tutti i processi
+     * @throws IOException se non è possibile avviare un processo o leggerne i risultati
+     * @throws InterruptedException se il {@link Thread} viene interrotto durante l'attesa
+     */
+    private static RisultatiCarico coordina(ParametriCarico parametri) throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("carico");
+        long inizio = System.currentTimeMillis() + AVVIO_PROCESSI + parametri.preparazione() * 1000L;
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processi = new ArrayList<>();
+        List<Path> file = new ArrayList<>();
+        RisultatiCarico risultati = new RisultatiCarico();
+
+        try {
+            for(int p = 0; p < parametri.processi(); p++) {
+                int peer = parametri.peer() / parametri.processi() + (p < parametri.peer() % parametri.processi() ? 1 : 0);
+                file.add(directory.resolve("processo-" + p + ".properties"));
+                List<String> comando = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path"), GeneratoreCarico.class.getName()));
+                comando.addAll(parametri.argomentiFiglio(p, peer, inizio, file.get(p)));
+                processi.add(new ProcessBuilder(comando).inheritIO().start());
+            }
+
+            long scadenza = inizio + (parametri.durata() + parametri.attesa()) * 1000L + CHIUSURA_PROCESSI;
+            for(int p = 0; p < processi.size(); p++) {
+                Process processo = processi.get(p);
+                if(!processo.waitFor(Math.max(0, scadenza - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    ProjectOutput.stampa("Il processo " + p + " non è terminato in tempo: risultati esclusi", OutputType.STDERR);
+                } else if(!Files.exists(file.get(p))) {
+                    ProjectOutput.stampa("Il processo " + p + " è terminato senza risultati (codice " + processo.exitValue() + ")", OutputType.STDERR);
+                } else {
+                    risultati.unisci(RisultatiCarico.carica(file.get(p)));
+                }
+            }
+        } finally {
+            for(Process processo : processi) processo.destroyForcibly();
+            for(Path risultatiProcesso : file) Files.deleteIfExists(risultatiProcesso);
+            Files.deleteIfExists(directory);
+        }
+        return risultati;
+    }
+
+    /**
+     * Determina l'interfaccia di rete richiesta
+     * @param nome il nome dell'interfaccia, {@link ParametriCarico#INTERFACCIA_LOOPBACK} o {@link ParametriCarico#INTERFACCIA_AUTOMATICA}
+     * @return l'interfaccia di rete, <code>null</code> per la selezione automatica di {@link GroupChat}
+     * @throws SocketException se si verifica un errore nella ricerca dell'interfaccia
+     * @throws IllegalArgumentException se l'interfaccia non esiste
+     */
+    private static NetworkInterface interfaccia(String nome) throws SocketException, IllegalArgumentException {
+        if(nome.equals(ParametriCarico.INTERFACCIA_AUTOMATICA)) return null;
+        NetworkInterface interfaccia = nome.equals(ParametriCarico.INTERFACCIA_LOOPBACK)
+                ? NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress())
+                : NetworkInterface.getByName(nome);
+        if(interfaccia == null) throw new IllegalArgumentException("Interfaccia di rete non trovata: " + nome);
+        return interfaccia;
+    }
+
+    /**
+     * Attende fino a un istante
+     * @param istante l'istante in millisecondi dall'epoca
+     * @throws InterruptedException se il {@link Thread} viene interrotto durante l'attesa
+     */
+    private static void attendi(long istante) throws InterruptedException {
+        long attesa = istante - System.currentTimeMillis();
+        if(attesa > 0) Thread.sleep(attesa);
+    }
+}
@@ -0,0 +1,220 @@
+package chat.carico;
+
+import chat.host.CondizioniRete;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parametri di un'esecuzione del {@link GeneratoreCarico}, letti dalla riga di comando nella forma <code>--opzione valore</code>.
+ * <p>
+ * I parametri {@link #totali()}, {@link #processo()}, {@link #inizio()} e {@link #risultati()} vengono impostati dal generatore per ciascun processo figlio
+ * e non devono essere indicati dall'utente.
+ *
+ * @param peer il numero di {@link chat.host.MulticastPeer} del processo, o di tutti i processi se {@link #processi()} è maggiore di 1
+ * @param processi il numero di processi tra cui suddividere i peer
+ * @param frequenza i messaggi inviati al secondo da ciascun peer
+ * @param dimensione la lunghezza in caratteri di ciascun messaggio
+ * @param privati la frazione di messaggi privati, tra <code>0</code> e <code>1</code>
+ * @param durata la durata dell'invio, in secondi
+ * @param preparazione l'attesa prima dell'invio, in secondi, durante la quale i peer si scoprono a vicenda
+ * @param attesa l'attesa dopo l'invio, in secondi, per le ultime consegne e gli ultimi <code>ACK</code>
+ * @param gruppo l'indirizzo multicast del gruppo
+ * @param porta la porta del gruppo
+ * @param interfaccia il nome dell'interfaccia di rete, {@link #INTERFACCIA_LOOPBACK} per l'interfaccia di loopback, {@link #INTERFACCIA_AUTOMATICA} per la selezione automatica di {@link chat.host.GroupChat}
+ * @param nio <code>true</code> per servire la ricezione di tutti i peer del processo con un unico {@link chat.host.CicloEventi}
+ * @param affidabile <code>true</code> per il multicast affidabile
+ * @param ackCumulativi l'intervallo degli <code>ACK</code> cumulativi in millisecondi, <code>0</code> per gli <code>ACK</code> singoli
+ * @param accorpamento l'attesa massima dell'accorpamento dei messaggi multicast in millisecondi, <code>0</code> per disabilitarlo
+ * @param rete le {@link CondizioniRete} della {@link chat.host.ReteSimulata} su cui comunicano i peer, <code>null</code> per le socket UDP del sistema operativo
+ * @param seme il seme della rete simulata e della scelta dei messaggi privati
+ * @param totali il numero di peer di tutti i processi
+ * @param processo l'indice del processo, utilizzato negli username dei peer
+ * @param inizio l'istante di inizio dell'invio in millisecondi dall'epoca, <code>0</code> per calcolarlo al termine dell'avvio
+ * @param risultati il file in cui il processo figlio salva i risultati, <code>null</code> per stampare il rapporto
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+public record ParametriCarico(int peer, int processi, double frequenza, int dimensione, double privati, int durata, int preparazione, int attesa,
+                              String gruppo, int porta, String interfaccia, boolean nio, boolean affidabile, long ackCumulativi, long accorpamento,
+                              CondizioniRete rete, long seme, int totali, int processo, long inizio, Path risultati) {
+
+    /**
+     * Il nome che indica l'interfaccia di rete dell'indirizzo di loopback, qualunque sia il suo nome nel sistema
+     */
+    public static final String INTERFACCIA_LOOPBACK = "loopback";
+
+    /**
+     * Il nome che indica la selezione automatica dell'interfaccia di rete da parte di {@link chat.host.GroupChat}
+     */
+    public static final String INTERFACCIA_AUTOMATICA = "auto";
+
+    /**
+     * Il ritardo predefinito dei datagrammi riordinati dalla rete simulata, in microsecondi
+     */
+    private static final long RITARDO_RIORDINO = 2000;
+
+    /**
+     * La coda di uscita predefinita di ciascun host della rete simulata, in byte
+     */
+    private static final int CODA_RETE = 256 * 1024;
+
+    /**
+     * Le opzioni delle condizioni della rete simulata, che ne implicano l'utilizzo
+     */
+    private static final Set<String> OPZIONI_RETE = Set.of("--perdita", "--duplicazione", "--riordino", "--ritardo-riordino", "--latenza", "--variazione", "--banda", "--coda");
+
+    /**
+     * Le opzioni accettate dal generatore, con i valori predefiniti
+     */
+    public static final String UTILIZZO = """
+            Opzioni:
+              --peer N            peer totali (default 10)
+              --processi P        processi tra cui suddividere i peer (default 1)
+              --frequenza F       messaggi al secondo per peer (default 10)
+              --dimensione C      caratteri per messaggio (default 64)
+              --privati X         frazione di messaggi privati, tra 0 e 1 (default 0.1)
+              --durata S          secondi di invio (default 10)
+              --preparazione S    secondi di attesa prima dell'invio (default 3)
+              --attesa S          secondi di attesa dopo l'invio (default 2)
+              --gruppo IP         indirizzo multicast (default 230.19.6.6)
+              --porta N           porta del gruppo (default 19066)
+              --interfaccia NOME  interfaccia di rete, 'auto' per la selezione automatica (default loopback)
+              --nio               ricezione con un unico CicloEventi per processo
+              --affidabile        multicast affidabile
+              --ack-cumulativi MS intervallo degli ACK cumulativi (default 0, ACK singoli)
+              --accorpamento MS   attesa massima dell'accorpamento multicast (default 0, disabilitato)
+              --seme N            seme dei messaggi privati e della rete simulata (default 1)
+            Rete simulata in memoria, in un unico processo (le condizioni implicano --simulata):
+              --simulata          peer collegati da una ReteSimulata anziché dalle socket UDP
+              --perdita X         probabilità di perdita di ciascun datagramma (default 0)
+              --duplicazione X    probabilità di duplicazione (default 0)
+              --riordino X        probabilità che un datagramma sia consegnato dopo i successivi (default 0)
+              --ritardo-riordino US ritardo dei datagrammi riordinati in µs (default 2000)
+              --latenza US        latenza minima in µs (default 0)
+              --variazione US     variazione massima della latenza in µs (default 0)
+              --banda B           banda in uscita di ciascun peer in byte/s (default 0, illimitata)
+              --coda B            coda di uscita di ciascun peer in byte (default 262144)""";
+
+    /**
+     * Verifica la validità dei parametri
+     * @throws IllegalArgumentException se uno dei parametri non è valido
+     */
+    public ParametriCarico {
+        if(peer < 1) throw new IllegalArgumentException("Il numero di peer deve essere positivo");
+        if(processi < 1 || processi > peer) throw new IllegalArgumentException("Il numero di processi deve essere compreso tra 1 e il numero di peer");
+        if(!(frequenza > 0)) throw new IllegalArgumentException("La frequenza deve essere positiva");
+        if(dimensione < 1) throw new IllegalArgumentException("La dimensione dei messaggi deve essere positiva");
+        if(!(privati >= 0 && privati <= 1)) throw new IllegalArgumentException("La frazione di messaggi privati deve essere compresa tra 0 e 1");
+        if(durata < 1 || preparazione < 0 || attesa < 0) throw new IllegalArgumentException("Durate non valide");
+        if(ackCumulativi < 0 || accorpamento < 0) throw new IllegalArgumentException("Gli intervalli non possono essere negativi");
+        if(rete != null && processi > 1) throw new IllegalArgumentException("La rete simulata richiede un unico processo");
+        if(totali < peer) throw new IllegalArgumentException("Il numero di peer totali non può essere inferiore a quello del processo");
+    }
+
+    /**
+     * Legge i parametri dalla riga di comando
+     * @param args gli argomenti della riga di comando
+     * @return i parametri letti, con i valori predefiniti per le opzioni non indicate
+     * @throws IllegalArgumentException se un'opzione è sconosciuta, priva di valore o non valida
+     */
+    public static ParametriCarico da(String[] args) throws IllegalArgumentException {
+        int peer = 10, processi = 1, dimensione = 64, durata = 10, preparazione = 3, attesa = 2, porta = 19066, totali = 0, processo = 0;
+        double frequenza = 10, privati = 0.1;
+        String gruppo = "230.19.6.6", interfaccia = INTERFACCIA_LOOPBACK;
+        boolean nio = false, affidabile = false, simulata = false;
+        long ackCumulativi = 0, accorpamento = 0, inizio = 0, seme = 1;
+        double perdita = 0, duplicazione = 0, riordino = 0;
+        long latenza = 0, variazione = 0, ritardoRiordino = RITARDO_RIORDINO, banda = 0;
+        int coda = CODA_RETE;
+        Path risultati = null;
+
+        try {
+            for(int i = 0; i < args.length; i++) {
+                String opzione = args[i];
+                if(opzione.equals("--nio")) {
+                    nio = true;
+                    continue;
+                }
+                if(opzione.equals("--affidabile")) {
+                    affidabile = true;
+                    continue;
+                }
+                if(opzione.equals("--simulata")) {
+                    simulata = true;
+                    continue;
+                }
+                if(i + 1 >= args.length) throw new IllegalArgumentException("Valore mancante per l'opzione " + opzione);
+                String valore = args[++i];
+                switch (opzione) {
+                    case "--peer" -> peer = Integer.parseInt(valore);
+                    case "--processi" -> processi = Integer.parseInt(valore);
+                    case "--frequenza" -> frequenza = Double.parseDouble(valore);
+                    case "--dimensione" -> dimensione = Integer.parseInt(valore);
+                    case "--privati" -> privati = Double.parseDouble(valore);
+                    case "--durata" -> durata = Integer.parseInt(valore);
+                    case "--preparazione" -> preparazione = Integer.parseInt(valore);
+                    case "--attesa" -> attesa = Integer.parseInt(valore);
+                    case "--gruppo" -> gruppo = valore;
+                    case "--porta" -> porta = Integer.parseInt(valore);
+                    case "--interfaccia" -> interfaccia = valore;
+                    case "--ack-cumulativi" -> ackCumulativi = Long.parseLong(valore);
+                    case "--accorpamento" -> accorpamento = Long.parseLong(valore);
+                    case "--seme" -> seme = Long.parseLong(valore);
+                    case "--perdita" -> perdita = Double.parseDouble(valore);
+                    case "--duplicazione" -> duplicazione = Double.parseDouble(valore);
+                    case "--riordino" -> riordino = Double.parseDouble(valore);
+                    case "--ritardo-riordino" -> ritardoRiordino = Long.parseLong(valore);
+                    case "--latenza" -> latenza = Long.parseLong(valore);
+                    case "--variazione" -> variazione = Long.parseLong(valore);
+                    case "--banda" -> banda = Long.parseLong(valore);
+                    case "--coda" -> coda = Integer.parseInt(valore);
+                    case "--totali" -> totali = Integer.parseInt(valore);
+                    case "--processo" -> processo = Integer.parseInt(valore);
+                    case "--inizio" -> inizio = Long.parseLong(valore);
+                    case "--risultati" -> risultati = Path.of(valore);
+                    default -> throw new IllegalArgumentException("Opzione sconosciuta: " + opzione);
+                }
+                if(OPZIONI_RETE.contains(opzione)) simulata = true;
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valore numerico non valido: " + e.getMessage());
+        }
+        CondizioniRete rete = simulata ? new CondizioniRete(perdita, duplicazione, riordino, latenza, variazione, ritardoRiordino, banda, coda) : null;
+        return new ParametriCarico(peer, processi, frequenza, dimensione, privati, durata, preparazione, attesa, gruppo, porta, interfaccia, nio, affidabile,
+                ackCumulativi, accorpamento, rete, seme, Math.max(totali, peer), processo, inizio, risultati);
+    }
+
+    /**
+     * Indica se i parametri sono quelli di un processo figlio, che salva i risultati invece di stampare il rapporto
+     * @return <code>true</code> se è indicato il file dei {@link #risultati()}
+     */
+    public boolean isFiglio() {
+        return risultati != null;
+    }
+
+    /**
+     * Compone gli argomenti della riga di comando di un processo figlio
+     * @param processo l'indice del processo figlio
+     * @param peer il numero di peer del processo figlio
+     * @param inizio l'istante di inizio dell'invio, comune a tutti i processi
+     * @param risultati il file in cui il processo figlio salva i risultati
+     * @return gli argomenti del processo figlio
+     */
+    public List<String> argomentiFiglio(int processo, int peer, long inizio, Path risultati) {
+        List<String> argomenti = new ArrayList<>(List.of(
+                "--peer", String.valueOf(peer), "--totali", String.valueOf(this.peer), "--processo", String.valueOf(processo),
+                "--inizio", String.valueOf(inizio), "--risultati", risultati.toString(),
+                "--frequenza", String.valueOf(frequenza), "--dimensione", String.valueOf(dimensione), "--privati", String.valueOf(privati),
+                "--durata", String.valueOf(durata), "--preparazione", String.valueOf(preparazione), "--attesa", String.valueOf(attesa),
+                "--gruppo", gruppo, "--porta", String.valueOf(porta), "--interfaccia", interfaccia,
+                "--ack-cumulativi", String.valueOf(ackCumulativi), "--accorpamento", String.valueOf(accorpamento), "--seme", String.valueOf(seme)));
+        if(nio) argomenti.add("--nio");
+        if(affidabile) argomenti.add("--affidabile");
+        return argomenti;
+    }
+}
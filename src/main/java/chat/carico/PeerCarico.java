@@ -0,0 +1,163 @@
+package chat.carico;
+
+import chat.comunicazione.Messaggio;
+import chat.eccezioni.NoSuchUserException;
+import chat.host.MulticastPeer;
+import chat.utenze.IndiceRubrica;
+import chat.utenze.Rubrica;
+
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Un {@link MulticastPeer} pilotato dal {@link GeneratoreCarico}: invia i messaggi di carico e misura la latenza di quelli ricevuti.
+ * <p>
+ * Ciascun messaggio di carico inizia con {@link #PREFISSO} seguito dall'istante di invio in microsecondi dall'epoca, comune a tutti i processi dello stesso host,
+ * ed è completato fino alla dimensione richiesta. Gli altri messaggi ricevuti, come i saluti ai nuovi partecipanti, vengono ignorati.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+class PeerCarico {
+
+    /**
+     * Il prefisso dei messaggi di carico
+     */
+    static final String PREFISSO = "carico:";
+
+    /**
+     * Il peer pilotato
+     */
+    private final MulticastPeer peer;
+
+    /**
+     * I parametri dell'esecuzione
+     */
+    private final ParametriCarico parametri;
+
+    /**
+     * I risultati dell'esecuzione, condivisi da tutti i peer del processo
+     */
+    private final RisultatiCarico risultati;
+
+    /**
+     * Il testo di riempimento dei messaggi
+     */
+    private final String riempimento;
+
+    /**
+     * Il generatore casuale della scelta tra messaggi al gruppo e privati, utilizzato solo dal {@link Thread} che esegue {@link #invia()}
+     */
+    private final SplittableRandom casuale;
+
+    /**
+     * Gli <code>ACK</code> attesi e ricevuti dal peer all'inizio dell'invio
+     */
+    private long ackAttesiIniziali, ackRicevutiIniziali;
+
+    /**
+     * Crea un {@link PeerCarico} e registra presso il peer l'ascoltatore dei messaggi ricevuti, che ne misura la latenza
+     * @param peer il peer da pilotare, non ancora avviato
+     * @param parametri i parametri dell'esecuzione
+     * @param risultati i risultati dell'esecuzione
+     * @param seme il seme del generatore casuale
+     */
+    PeerCarico(MulticastPeer peer, ParametriCarico parametri, RisultatiCarico risultati, long seme) {
+        this.peer = peer;
+        this.parametri = parametri;
+        this.risultati = risultati;
+        this.riempimento = "x".repeat(parametri.dimensione());
+        this.casuale = new SplittableRandom(seme);
+        peer.suMessaggio(this::consegna);
+    }
+
+    /**
+     * Restituisce il peer pilotato
+     * @return il {@link MulticastPeer}
+     */
+    MulticastPeer getPeer() {
+        return peer;
+    }
+
+    /**
+     * Registra lo stato del peer all'inizio dell'invio: la completezza della {@link Rubrica} e gli <code>ACK</code> già attesi e ricevuti durante la preparazione
+     */
+    void inizia() {
+        ackAttesiIniziali = peer.getCronologia().getACKAttesi();
+        ackRicevutiIniziali = peer.getCronologia().getACKRicevuti();
+        risultati.registraPeer(peer.getRubrica().partecipantiGruppo() >= parametri.totali() - 1);
+    }
+
+    /**
+     * Invia un messaggio di carico al gruppo o, con la probabilità richiesta, a un partecipante scelto a caso. Il messaggio viene accodato senza attendere l'invio.
+     */
+    void invia() {
+        String intestazione = PREFISSO + microsecondi() + ":";
+        String testo = intestazione + riempimento.substring(0, Math.max(0, parametri.dimensione() - intestazione.length()));
+        boolean privato = casuale.nextDouble() < parametri.privati();
+        CompletableFuture<Messaggio> esito;
+        try {
+            esito = privato ? peer.inviaPrivato(testo, destinatarioCasuale()) : peer.inviaGruppo(testo);
+        } catch (NoSuchUserException e) {
+            risultati.registraRifiuto();
+            return;
+        }
+        int destinatari = privato ? 1 : parametri.totali() - 1;
+        esito.whenComplete((messaggio, e) -> {
+            if(e == null) {
+                risultati.registraInvio(privato, destinatari);
+            } else {
+                risultati.registraRifiuto();
+            }
+        });
+    }
+
+    /**
+     * Sceglie a caso un partecipante in {@link Rubrica}
+     * @return l'<code>UUID</code> del partecipante
+     * @throws NoSuchUserException se la rubrica è vuota
+     */
+    private String destinatarioCasuale() throws NoSuchUserException {
+        Rubrica rubrica = peer.getRubrica();
+        BitSet slot = rubrica.destinatari();
+        int scelto = slot.nextSetBit(0);
+        for(int salti = slot.isEmpty() ? 0 : casuale.nextInt(slot.cardinality()); salti > 0; salti--) scelto = slot.nextSetBit(scelto + 1);
+        IndiceRubrica destinatario = rubrica.ottieniInfoDaSlot(scelto);
+        if(destinatario == null) throw new NoSuchUserException("Nessun partecipante in rubrica");
+        return destinatario.UUID();
+    }
+
+    /**
+     * Registra la consegna di un messaggio di carico, con la latenza dall'invio. Invocato dal {@link Thread} di ricezione del peer.
+     * @param messaggio il messaggio ricevuto
+     */
+    private void consegna(Messaggio messaggio) {
+        String testo = messaggio.getMsg();
+        if(!testo.startsWith(PREFISSO)) return;
+        try {
+            long inviato = Long.parseLong(testo, PREFISSO.length(), testo.indexOf(':', PREFISSO.length()), 10);
+            risultati.registraConsegna((microsecondi() - inviato) * 1000);
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            /* messaggio di un altro programma con lo stesso prefisso */
+        }
+    }
+
+    /**
+     * Registra gli <code>ACK</code> attesi e ricevuti dal peer dall'inizio dell'invio
+     */
+    void termina() {
+        risultati.registraACK(peer.getCronologia().getACKAttesi() - ackAttesiIniziali, peer.getCronologia().getACKRicevuti() - ackRicevutiIniziali);
+    }
+
+    /**
+     * Restituisce l'istante corrente in microsecondi dall'epoca, confrontabile tra processi diversi dello stesso host
+     * @return l'istante corrente
+     */
+    private static long microsecondi() {
+        Instant ora = Instant.now();
+        return ora.getEpochSecond() * 1_000_000 + ora.getNano() / 1000;
+    }
+}
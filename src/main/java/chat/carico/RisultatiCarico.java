@@ -0,0 +1,243 @@
+package chat.carico;
+
+import chat.gestione.IstogrammaLatenze;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Risultati di un'esecuzione del {@link GeneratoreCarico}: messaggi inviati e consegnati, latenze di consegna e <code>ACK</code>.
+ * <p>
+ * I contatori sono aggiornati senza lock dai {@link Thread} di invio e di ricezione di tutti i peer del processo.
+ * I risultati dei processi figli vengono salvati in un file di {@link Properties} e uniti dal processo che coordina l'esecuzione.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+public class RisultatiCarico {
+
+    /**
+     * I peer che hanno partecipato all'esecuzione
+     */
+    private final LongAdder peer = new LongAdder();
+
+    /**
+     * I peer che all'inizio dell'invio conoscevano tutti gli altri peer
+     */
+    private final LongAdder rubricheComplete = new LongAdder();
+
+    /**
+     * I messaggi inviati al gruppo
+     */
+    private final LongAdder inviatiGruppo = new LongAdder();
+
+    /**
+     * I messaggi privati inviati
+     */
+    private final LongAdder inviatiPrivati = new LongAdder();
+
+    /**
+     * I messaggi scartati dalla coda di invio o il cui invio è fallito
+     */
+    private final LongAdder rifiutati = new LongAdder();
+
+    /**
+     * Le consegne attese: ciascun messaggio al gruppo è atteso da tutti gli altri peer, ciascun messaggio privato dal solo destinatario
+     */
+    private final LongAdder consegneAttese = new LongAdder();
+
+    /**
+     * I messaggi consegnati
+     */
+    private final LongAdder consegnati = new LongAdder();
+
+    /**
+     * Gli <code>ACK</code> attesi per i messaggi inviati durante l'esecuzione
+     */
+    private final LongAdder ackAttesi = new LongAdder();
+
+    /**
+     * Gli <code>ACK</code> ricevuti durante l'esecuzione. Comprendono gli <code>ACK</code> tardivi dei saluti della preparazione:
+     * un rapporto superiore al 100% indica che la preparazione non si era ancora conclusa all'inizio dell'invio
+     */
+    private final LongAdder ackRicevuti = new LongAdder();
+
+    /**
+     * Le latenze di consegna, dall'invio alla ricezione
+     */
+    private final IstogrammaLatenze latenze = new IstogrammaLatenze();
+
+    /**
+     * Le statistiche della {@link chat.host.ReteSimulata}, <code>null</code> se i peer hanno comunicato attraverso le socket UDP
+     */
+    private String statisticheRete;
+
+    /**
+     * Registra un peer partecipante
+     * @param rubricaCompleta indica se all'inizio dell'invio il peer conosceva tutti gli altri peer
+     */
+    void registraPeer(boolean rubricaCompleta) {
+        peer.increment();
+        if(rubricaCompleta) rubricheComplete.increment();
+    }
+
+    /**
+     * Registra un messaggio inviato
+     * @param privato indica se il messaggio è privato
+     * @param destinatari il numero di destinatari attesi
+     */
+    void registraInvio(boolean privato, int destinatari) {
+        (privato ? inviatiPrivati : inviatiGruppo).increment();
+        consegneAttese.add(destinatari);
+    }
+
+    /**
+     * Registra un messaggio scartato dalla coda di invio o il cui invio è fallito
+     */
+    void registraRifiuto() {
+        rifiutati.increment();
+    }
+
+    /**
+     * Registra un messaggio consegnato
+     * @param nanosecondi la latenza di consegna
+     */
+    void registraConsegna(long nanosecondi) {
+        consegnati.increment();
+        latenze.registra(nanosecondi);
+    }
+
+    /**
+     * Registra gli <code>ACK</code> di un peer relativi all'esecuzione
+     * @param attesi gli <code>ACK</code> attesi
+     * @param ricevuti gli <code>ACK</code> ricevuti
+     */
+    void registraACK(long attesi, long ricevuti) {
+        ackAttesi.add(attesi);
+        ackRicevuti.add(ricevuti);
+    }
+
+    /**
+     * Imposta le statistiche della {@link chat.host.ReteSimulata}, aggiunte al rapporto
+     * @param statistiche le statistiche della rete
+     */
+    void setStatisticheRete(String statistiche) {
+        this.statisticheRete = statistiche;
+    }
+
+    /**
+     * Aggiunge i risultati di un altro processo
+     * @param altri i risultati da unire
+     */
+    public void unisci(RisultatiCarico altri) {
+        peer.add(altri.peer.sum());
+        rubricheComplete.add(altri.rubricheComplete.sum());
+        inviatiGruppo.add(altri.inviatiGruppo.sum());
+        inviatiPrivati.add(altri.inviatiPrivati.sum());
+        rifiutati.add(altri.rifiutati.sum());
+        consegneAttese.add(altri.consegneAttese.sum());
+        consegnati.add(altri.consegnati.sum());
+        ackAttesi.add(altri.ackAttesi.sum());
+        ackRicevuti.add(altri.ackRicevuti.sum());
+        latenze.unisci(altri.latenze);
+    }
+
+    /**
+     * Salva i risultati in un file di {@link Properties}
+     * @param file il file dei risultati
+     * @throws IOException se non è possibile scrivere il file
+     */
+    public void salva(Path file) throws IOException {
+        Properties valori = new Properties();
+        valori.setProperty("peer", String.valueOf(peer.sum()));
+        valori.setProperty("rubricheComplete", String.valueOf(rubricheComplete.sum()));
+        valori.setProperty("inviatiGruppo", String.valueOf(inviatiGruppo.sum()));
+        valori.setProperty("inviatiPrivati", String.valueOf(inviatiPrivati.sum()));
+        valori.setProperty("rifiutati", String.valueOf(rifiutati.sum()));
+        valori.setProperty("consegneAttese", String.valueOf(consegneAttese.sum()));
+        valori.setProperty("consegnati", String.valueOf(consegnati.sum()));
+        valori.setProperty("ackAttesi", String.valueOf(ackAttesi.sum()));
+        valori.setProperty("ackRicevuti", String.valueOf(ackRicevuti.sum()));
+        valori.setProperty("latenze", latenze.esporta());
+        try (Writer scrittore = Files.newBufferedWriter(file)) {
+            valori.store(scrittore, "Risultati del generatore di carico");
+        }
+    }
+
+    /**
+     * Legge i risultati salvati con {@link #salva(Path)}
+     * @param file il file dei risultati
+     * @return i risultati letti
+     * @throws IOException se non è possibile leggere il file o il suo contenuto non è valido
+     */
+    public static RisultatiCarico carica(Path file) throws IOException {
+        Properties valori = new Properties();
+        try (Reader lettore = Files.newBufferedReader(file)) {
+            valori.load(lettore);
+        }
+        RisultatiCarico risultati = new RisultatiCarico();
+        try {
+            risultati.peer.add(Long.parseLong(valori.getProperty("peer")));
+            risultati.rubricheComplete.add(Long.parseLong(valori.getProperty("rubricheComplete")));
+            risultati.inviatiGruppo.add(Long.parseLong(valori.getProperty("inviatiGruppo")));
+            risultati.inviatiPrivati.add(Long.parseLong(valori.getProperty("inviatiPrivati")));
+            risultati.rifiutati.add(Long.parseLong(valori.getProperty("rifiutati")));
+            risultati.consegneAttese.add(Long.parseLong(valori.getProperty("consegneAttese")));
+            risultati.consegnati.add(Long.parseLong(valori.getProperty("consegnati")));
+            risultati.ackAttesi.add(Long.parseLong(valori.getProperty("ackAttesi")));
+            risultati.ackRicevuti.add(Long.parseLong(valori.getProperty("ackRicevuti")));
+            risultati.latenze.unisci(IstogrammaLatenze.importa(valori.getProperty("latenze")));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IOException("Risultati non validi in " + file + ": " + e.getMessage());
+        }
+        return risultati;
+    }
+
+    /**
+     * Compone il rapporto finale dell'esecuzione
+     * @param parametri i parametri dell'esecuzione
+     * @return il rapporto, su più righe
+     */
+    public String getRapporto(ParametriCarico parametri) {
+        long inviati = inviatiGruppo.sum() + inviatiPrivati.sum();
+        long attese = consegneAttese.sum();
+        long consegne = consegnati.sum();
+        long attesiACK = ackAttesi.sum();
+        double durata = parametri.durata();
+        return String.format("Generatore di carico: %d peer in %d processi, %s msg/s per peer, %d caratteri, %.0f%% privati, %d s%n",
+                        peer.sum(), parametri.processi(), formatta(parametri.frequenza()), parametri.dimensione(), parametri.privati() * 100, parametri.durata())
+                + String.format("Rubriche complete all'inizio dell'invio: %d su %d%n", rubricheComplete.sum(), peer.sum())
+                + String.format("Inviati: %d (%d al gruppo, %d privati) | %.1f msg/s | rifiutati: %d%n",
+                        inviati, inviatiGruppo.sum(), inviatiPrivati.sum(), inviati / durata, rifiutati.sum())
+                + String.format("Consegnati: %d su %d attesi (%.2f%%) | %.1f msg/s | persi: %d%n",
+                        consegne, attese, percentuale(consegne, attese), consegne / durata, Math.max(0, attese - consegne))
+                + String.format("ACK: %d su %d attesi (%.2f%%)%n", ackRicevuti.sum(), attesiACK, percentuale(ackRicevuti.sum(), attesiACK))
+                + "Latenza di consegna: " + latenze.getRiepilogo()
+                + (statisticheRete != null ? System.lineSeparator() + statisticheRete : "");
+    }
+
+    /**
+     * Calcola una percentuale
+     * @param parte la parte
+     * @param totale il totale
+     * @return la percentuale, <code>0</code> se il totale è nullo
+     */
+    private static double percentuale(long parte, long totale) {
+        return totale == 0 ? 0 : 100.0 * parte / totale;
+    }
+
+    /**
+     * Formatta un numero senza decimali superflui
+     * @param valore il numero
+     * @return il numero formattato
+     */
+    private static String formatta(double valore) {
+        return valore == Math.rint(valore) ? String.valueOf((long) valore) : String.valueOf(valore);
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * Fornisce il generatore di carico, che avvia più {@link chat.host.MulticastPeer} senza terminale sull'interfaccia di loopback e ne misura throughput, latenze, perdite e <code>ACK</code>.
+ * <p>
+ * Contiene:
+ * <ul>
+ *     <li>{@link chat.carico.GeneratoreCarico}</li>
+ *     <li>{@link chat.carico.ParametriCarico}</li>
+ *     <li>chat.carico.PeerCarico</li>
+ *     <li>{@link chat.carico.RisultatiCarico}</li>
+ * </ul>
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+package chat.carico;
@@ -0,0 +1,88 @@
+package chat.comunicazione;
+
+import chat.eccezioni.NoSuchUserException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Raccoglie gli <code>ID</code> dei messaggi ricevuti da ciascun mittente in attesa di essere confermati con un unico messaggio di <code>acknowledge</code> cumulativo.
+ * <p>
+ * Invece di inviare un <code>ACK</code> per ciascun messaggio ricevuto, il {@link chat.host.MulticastPeer} registra gli <code>ID</code> attraverso il metodo {@link #registra(String, int)} e, periodicamente, invia a ciascun mittente gli {@link InsiemeID} restituiti da {@link #svuota()}.
+ * <p>
+ * Per ciascun mittente viene inoltre conservato il meno recente dei messaggi registrati attraverso {@link #registra(Messaggio)}, la cui marca temporale viene restituita in eco dal primo <code>ACK</code> cumulativo per la misura dell'<code>RTT</code>:
+ * il relativo ritardo rappresenta così il tempo massimo per cui le conferme sono state trattenute.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @see InsiemeID
+ * @project MulticastUDPSocketChat
+ */
+public class AccumulatoreACK {
+
+    /**
+     * Le conferme da inviare a un mittente
+     * @param insiemi gli {@link InsiemeID} da confermare
+     * @param eco il messaggio di cui restituire in eco la marca temporale, <code>null</code> se nessuno
+     */
+    public record Conferme(List<InsiemeID> insiemi, Messaggio eco) {}
+
+    /**
+     * Gli <code>ID</code> da confermare, per <code>UUID</code> del mittente
+     */
+    private Map<String, TreeSet<Integer>> daConfermare;
+
+    /**
+     * Il meno recente dei messaggi ricevuti da confermare, per <code>UUID</code> del mittente
+     */
+    private Map<String, Messaggio> primi;
+
+    /**
+     * Crea un {@link AccumulatoreACK} vuoto
+     */
+    public AccumulatoreACK() {
+        this.daConfermare = new HashMap<>();
+        this.primi = new HashMap<>();
+    }
+
+    /**
+     * Registra un messaggio ricevuto da confermare
+     * @param UUID l'identificativo univoco del mittente
+     * @param ID l'<code>ID</code> del messaggio ricevuto
+     */
+    public synchronized void registra(String UUID, int ID) {
+        daConfermare.computeIfAbsent(UUID, k -> new TreeSet<>()).add(ID);
+    }
+
+    /**
+     * Registra un messaggio ricevuto da confermare, conservandolo come eco della marca temporale se è il primo dall'ultimo invio per il relativo mittente
+     * @param messaggio il messaggio ricevuto
+     * @throws NoSuchUserException se il messaggio è privo di mittente
+     */
+    public synchronized void registra(Messaggio messaggio) throws NoSuchUserException {
+        registra(messaggio.getIDutente(), messaggio.getID());
+        primi.putIfAbsent(messaggio.getIDutente(), messaggio);
+    }
+
+    /**
+     * Restituisce e rimuove tutti gli <code>ID</code> da confermare
+     * @return le {@link Conferme} da inviare, per <code>UUID</code> del mittente
+     */
+    public Map<String, Conferme> svuota() {
+        Map<String, TreeSet<Integer>> svuotati;
+        Map<String, Messaggio> echi;
+        synchronized (this) {
+            if(daConfermare.isEmpty()) return Map.of();
+            svuotati = daConfermare;
+            echi = primi;
+            daConfermare = new HashMap<>();
+            primi = new HashMap<>();
+        }
+
+        Map<String, Conferme> conferme = new HashMap<>();
+        svuotati.forEach((UUID, IDs) -> conferme.put(UUID, new Conferme(InsiemeID.da(IDs), echi.get(UUID))));
+        return conferme;
+    }
+}
@@ -0,0 +1,134 @@
+package chat.comunicazione;
+
+import chat.eccezioni.MsgException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+
+/**
+ * Segmento su disco in cui la {@link Cronologia} trasferisce i messaggi espulsi dalla memoria secondo la {@link PoliticaEspulsione#ARCHIVIA}.
+ * <p>
+ * Ciascun messaggio viene accodato al file nel formato del {@link CodecBinario}, preceduto dalla direzione (1 byte, <code>1</code> per i messaggi inviati) e dalla lunghezza (4 byte).
+ * Le scritture sono bufferizzate: i messaggi archiviati sono resi persistenti al più tardi con il metodo {@link #chiudi()}.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public class ArchivioCronologia {
+
+    /**
+     * Il {@link CodecBinario} utilizzato per la codifica dei messaggi archiviati, indipendente dal codec scelto per la rete
+     */
+    private static final CodecBinario CODEC = new CodecBinario();
+
+    /**
+     * Il file del segmento
+     */
+    private final Path file;
+
+    /**
+     * Lo stream di scrittura in coda al segmento
+     */
+    private final DataOutputStream output;
+
+    /**
+     * Il numero di messaggi archiviati
+     */
+    private long messaggiArchiviati;
+
+    /**
+     * Il numero di byte scritti nel segmento
+     */
+    private long byteArchiviati;
+
+    /**
+     * Apre, o crea se non esiste, un segmento in cui archiviare i messaggi
+     * @param file il file del segmento
+     * @throws IOException se non è possibile aprire il file in scrittura
+     */
+    public ArchivioCronologia(final Path file) throws IOException {
+        this.file = file;
+        this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+    }
+
+    /**
+     * Accoda un messaggio al segmento
+     * @param messaggio il messaggio da archiviare
+     * @param inviato <code>true</code> per un messaggio inviato, <code>false</code> per un messaggio ricevuto
+     * @throws MsgException se il messaggio non può essere codificato
+     * @throws IOException se si verifica un errore di scrittura
+     */
+    public synchronized void archivia(Messaggio messaggio, boolean inviato) throws MsgException, IOException {
+        byte[] codificato = CODEC.codifica(messaggio);
+        output.writeByte(inviato ? 1 : 0);
+        output.writeInt(codificato.length);
+        output.write(codificato);
+        messaggiArchiviati++;
+        byteArchiviati += 1 + 4 + codificato.length;
+    }
+
+    /**
+     * Scorre in ordine i messaggi del segmento, compresi quelli archiviati in sessioni precedenti
+     * @param operazione l'operazione da eseguire per ciascun messaggio, con la direzione (<code>true</code> per i messaggi inviati)
+     * @throws IOException se si verifica un errore di lettura
+     * @throws MsgException se il segmento contiene un messaggio non valido
+     */
+    public synchronized void scorri(BiConsumer<Boolean, Messaggio> operazione) throws IOException, MsgException {
+        output.flush();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while(true) {
+                boolean inviato;
+                try {
+                    inviato = input.readByte() == 1;
+                } catch (EOFException e) {
+                    return;
+                }
+                byte[] codificato = new byte[input.readInt()];
+                input.readFully(codificato);
+                operazione.accept(inviato, CODEC.decodifica(ByteBuffer.wrap(codificato)));
+            }
+        }
+    }
+
+    /**
+     * Restituisce il numero di messaggi archiviati nella sessione corrente
+     * @return il numero di messaggi archiviati
+     */
+    public synchronized long getMessaggiArchiviati() {
+        return messaggiArchiviati;
+    }
+
+    /**
+     * Restituisce il numero di byte scritti nel segmento nella sessione corrente
+     * @return il numero di byte archiviati
+     */
+    public synchronized long getByteArchiviati() {
+        return byteArchiviati;
+    }
+
+    /**
+     * Restituisce il file del segmento
+     * @return il file del segmento
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Rende persistenti i messaggi archiviati e chiude il segmento
+     * @throws IOException se si verifica un errore di scrittura
+     */
+    public synchronized void chiudi() throws IOException {
+        output.close();
+    }
+}
@@ -0,0 +1,86 @@
+package chat.comunicazione;
+
+import chat.eccezioni.MsgException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Battito (<code>heartbeat</code>) inviato periodicamente al <code>gruppo</code> da ciascun partecipante, per segnalare di essere ancora attivo.
+ * <p>
+ * Il formato prevede l'intestazione comune del {@link CodecBinario} con <code>opcode</code> {@link CodecBinario#OP_BATTITO}, seguita da:
+ * <ol>
+ *     <li>l'<code>UUID</code> del mittente (16 byte)</li>
+ *     <li>la porta unicast del mittente (4 byte)</li>
+ *     <li>l'intervallo tra due battiti del mittente, in millisecondi (4 byte)</li>
+ *     <li>l'ultimo numero di sequenza multicast affidabile inviato dal mittente (4 byte), <code>0</code> se nessuno</li>
+ *     <li>lo username del mittente (2 byte di lunghezza seguiti dal testo UTF-8)</li>
+ * </ol>
+ * Lo username consente di inserire nuovamente in rubrica un partecipante rimosso per errore, ad esempio al termine di una partizione della rete.
+ * L'ultimo numero di sequenza consente ai destinatari di rilevare la perdita degli ultimi messaggi di una raffica, non seguiti da altri messaggi: vedi {@link RilevatoreLacune#annuncia(String, int)}.
+ *
+ * @param IDmittente l'identificativo univoco del mittente
+ * @param username lo username del mittente
+ * @param portaMittente la porta unicast del mittente
+ * @param intervallo l'intervallo tra due battiti del mittente, in millisecondi
+ * @param ultimaSequenza l'ultimo numero di sequenza multicast affidabile inviato dal mittente, <code>0</code> se nessuno
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+public record Battito(String IDmittente, String username, int portaMittente, int intervallo, int ultimaSequenza) {
+
+    /**
+     * Codifica il {@link Battito}
+     * @return il datagramma da inviare
+     * @throws MsgException se l'identificativo del mittente non è un <code>UUID</code> valido o lo username è troppo lungo
+     */
+    public byte[] codifica() throws MsgException {
+        UUID mittente;
+        try {
+            mittente = UUID.fromString(IDmittente);
+        } catch (IllegalArgumentException e) {
+            throw new MsgException("Identificativo utente non valido: " + IDmittente);
+        }
+        byte[] nome = username.getBytes(StandardCharsets.UTF_8);
+        if(nome.length > 0xFFFF) throw new MsgException("Username troppo lungo per essere codificato");
+
+        ByteBuffer buffer = ByteBuffer.allocate(CodecBinario.DIMENSIONE_INTESTAZIONE + 16 + 4 + 4 + 4 + 2 + nome.length);
+        CodecBinario.scriviIntestazione(buffer, CodecBinario.OP_BATTITO);
+        buffer.putLong(mittente.getMostSignificantBits());
+        buffer.putLong(mittente.getLeastSignificantBits());
+        buffer.putInt(portaMittente);
+        buffer.putInt(intervallo);
+        buffer.putInt(ultimaSequenza);
+        buffer.putShort((short) nome.length);
+        buffer.put(nome);
+        return buffer.array();
+    }
+
+    /**
+     * Decodifica un {@link Battito} ricevuto
+     * @param dati il datagramma ricevuto, tra <code>position</code> e <code>limit</code> del buffer
+     * @return il battito decodificato
+     * @throws MsgException se il datagramma non è un battito valido
+     */
+    public static Battito decodifica(ByteBuffer dati) throws MsgException {
+        ByteBuffer buffer = dati.slice();
+        try {
+            if(CodecBinario.leggiIntestazione(buffer) != CodecBinario.OP_BATTITO) throw new MsgException("Battito non valido");
+            UUID mittente = new UUID(buffer.getLong(), buffer.getLong());
+            int porta = buffer.getInt();
+            int intervallo = buffer.getInt();
+            int ultimaSequenza = buffer.getInt();
+            byte[] nome = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(nome);
+            if(nome.length == 0) throw new MsgException("Username del battito assente");
+            if(intervallo <= 0) throw new MsgException("Intervallo del battito non valido: " + intervallo);
+            if(ultimaSequenza < 0) throw new MsgException("Numero di sequenza del battito non valido: " + ultimaSequenza);
+            return new Battito(mittente.toString(), new String(nome, StandardCharsets.UTF_8), porta, intervallo, ultimaSequenza);
+        } catch (BufferUnderflowException e) {
+            throw new MsgException("Battito troncato");
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package chat.comunicazione;
+
+import chat.eccezioni.MsgException;
+import chat.utenze.Utente;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalTime;
+import java.util.UUID;
+
+/**
+ * {@link CodecMessaggio} binario, compatto e versionato.
+ * <p>
+ * Ciascun {@link Messaggio} viene codificato in <code>big-endian</code> secondo il seguente formato:
+ * <ol>
+ *     <li>{@link #MAGIA} (2 byte) e {@link #VERSIONE} del formato (1 byte)</li>
+ *     <li><code>opcode</code> (1 byte): {@link #OP_MESSAGGIO}, {@link #OP_ACK} oppure {@link #OP_ACK_CUMULATIVO}</li>
+ *     <li><code>flag</code> (1 byte): il bit meno significativo indica un messaggio di gruppo</li>
+ *     <li>{@link Protocollo} (1 byte), <code>0</code> se assente</li>
+ *     <li><code>ID</code>, <code>portaMittente</code>, <code>targetACK</code> e numero di <code>sequenza</code> (4 byte ciascuno)</li>
+ *     <li><code>timestamp</code> in nanosecondi dalla mezzanotte (8 byte)</li>
+ *     <li>marca temporale ad alta risoluzione in microsecondi (8 byte): l'istante di trasmissione secondo {@link Messaggio#orologio()}, per gli <code>ACK</code> la marca del messaggio confermato restituita in eco</li>
+ *     <li><code>UUID</code> del mittente (16 byte)</li>
+ *     <li>username del mittente (2 byte di lunghezza seguiti dal testo UTF-8)</li>
+ *     <li>contenuto del messaggio (4 byte di lunghezza seguiti dal testo UTF-8); per gli <code>ACK</code> l'<code>ID</code> confermato e il ritardo dell'<code>ACK</code> in microsecondi (4 byte ciascuno); per gli <code>ACK</code> cumulativi il ritardo (4 byte) seguito dall'{@link InsiemeID} confermato secondo il formato di {@link InsiemeID#scrivi(java.nio.ByteBuffer)}</li>
+ * </ol>
+ * A differenza del {@link CodecSerializzazione}, nessun descrittore di classe viene trasmesso.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.3
+ * @project MulticastUDPSocketChat
+ */
+public class CodecBinario implements CodecMessaggio {
+
+    /**
+     * Numero magico che identifica i datagrammi del programma ("MU")
+     */
+    public static final short MAGIA = 0x4D55;
+
+    /**
+     * Versione corrente del formato binario
+     */
+    public static final byte VERSIONE = 6;
+
+    /**
+     * <code>opcode</code> di un generico {@link Messaggio}
+     */
+    public static final byte OP_MESSAGGIO = 1;
+
+    /**
+     * <code>opcode</code> di un {@link Messaggio} di tipo <code>acknowledge</code>
+     */
+    public static final byte OP_ACK = 2;
+
+    /**
+     * <code>opcode</code> di un frammento di datagramma
+     * @see Frammentatore
+     */
+    public static final byte OP_FRAMMENTO = 3;
+
+    /**
+     * <code>opcode</code> di un datagramma che raccoglie più messaggi
+     * @see Pacchetto
+     */
+    public static final byte OP_PACCHETTO = 4;
+
+    /**
+     * <code>opcode</code> di un {@link Messaggio} di tipo <code>acknowledge</code> cumulativo
+     * @see InsiemeID
+     */
+    public static final byte OP_ACK_CUMULATIVO = 5;
+
+    /**
+     * <code>opcode</code> di una richiesta di ritrasmissione
+     * @see RichiestaRitrasmissione
+     */
+    public static final byte OP_NACK = 6;
+
+    /**
+     * <code>opcode</code> di un battito di un partecipante
+     * @see Battito
+     */
+    public static final byte OP_BATTITO = 7;
+
+    /**
+     * Dimensione dell'intestazione comune (magia, versione e <code>opcode</code>)
+     */
+    public static final int DIMENSIONE_INTESTAZIONE = 4;
+
+    /**
+     * Dimensione della parte a lunghezza fissa di un {@link Messaggio} codificato
+     */
+    private static final int DIMENSIONE_FISSA = DIMENSIONE_INTESTAZIONE + 2 + 4 * 4 + 8 + 8 + 16 + 2;
+
+    /**
+     * Elenco dei protocolli codificabili: l'indice di ciascuno, incrementato di <code>1</code>, è il valore trasmesso
+     */
+    private static final Enum<?>[] PROTOCOLLI = {
+            Protocollo.UDP.unicast,
+            Protocollo.UDP.multicast,
+            Protocollo.UDP.broadcast,
+            Protocollo.TCP.unicast
+    };
+
+    @Override
+    public byte[] codifica(Messaggio messaggio) throws MsgException {
+        if(messaggio == null) throw new MsgException("Impossibile codificare un messaggio nullo");
+        if(messaggio.getUtente() == null) throw new MsgException("Impossibile codificare un messaggio privo di mittente");
+
+        InsiemeID conferme = messaggio.getConferme();
+        byte[] username = messaggio.getUtente().getUsername().getBytes(StandardCharsets.UTF_8);
+        boolean ACKsingolo = conferme == null && messaggio.isACK();
+        byte[] testo = conferme != null || ACKsingolo || messaggio.getMsg() == null ? new byte[0] : messaggio.getMsg().getBytes(StandardCharsets.UTF_8);
+        if(username.length > 0xFFFF) throw new MsgException("Username troppo lungo per essere codificato");
+
+        UUID IDutente;
+        try {
+            IDutente = UUID.fromString(messaggio.getUtente().getIDutente());
+        } catch (IllegalArgumentException e) {
+            throw new MsgException("Identificativo utente non valido: " + messaggio.getUtente().getIDutente());
+        }
+
+        int dimensioneContenuto = conferme != null ? 4 + conferme.dimensioneCodificata() : ACKsingolo ? 8 : 4 + testo.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(DIMENSIONE_FISSA + username.length + dimensioneContenuto);
+        scriviIntestazione(buffer, conferme != null ? OP_ACK_CUMULATIVO : ACKsingolo ? OP_ACK : OP_MESSAGGIO);
+        buffer.put((byte) (messaggio.isMsgGruppo() ? 1 : 0));
+        buffer.put(codificaProtocollo(messaggio.getProtocollo()));
+        buffer.putInt(messaggio.getID());
+        buffer.putInt(messaggio.getPortaMittente());
+        buffer.putInt(messaggio.getTargetACK());
+        buffer.putInt(messaggio.getSequenza());
+        buffer.putLong(messaggio.getOrario().toNanoOfDay());
+        buffer.putLong(messaggio.isACK() ? messaggio.getMarcaTemporale() : Messaggio.orologio());
+        buffer.putLong(IDutente.getMostSignificantBits());
+        buffer.putLong(IDutente.getLeastSignificantBits());
+        buffer.putShort((short) username.length);
+        buffer.put(username);
+        if(conferme != null) {
+            buffer.putInt(messaggio.getRitardoACK());
+            conferme.scrivi(buffer);
+        } else if(ACKsingolo) {
+            buffer.putInt(messaggio.getIDconfermato());
+            buffer.putInt(messaggio.getRitardoACK());
+        } else {
+            buffer.putInt(testo.length);
+            buffer.put(testo);
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public Messaggio decodifica(ByteBuffer dati) throws MsgException {
+        ByteBuffer buffer = dati.slice();
+        try {
+            byte opcode = leggiIntestazione(buffer);
+            if(opcode != OP_MESSAGGIO && opcode != OP_ACK && opcode != OP_ACK_CUMULATIVO) throw new MsgException("Opcode non valido: " + opcode);
+
+            boolean msgGruppo = (buffer.get() & 1) != 0;
+            Enum<?> protocollo = decodificaProtocollo(buffer.get());
+            int ID = buffer.getInt();
+            int portaMittente = buffer.getInt();
+            int targetACK = buffer.getInt();
+            int sequenza = buffer.getInt();
+            LocalTime orario = LocalTime.ofNanoOfDay(buffer.getLong());
+            long marcaTemporale = buffer.getLong();
+            UUID IDutente = new UUID(buffer.getLong(), buffer.getLong());
+            String username = leggiTesto(buffer, Short.toUnsignedInt(buffer.getShort()));
+            Utente utente = new Utente(username, IDutente.toString());
+
+            if(opcode == OP_ACK_CUMULATIVO) {
+                int ritardoACK = buffer.getInt();
+                InsiemeID conferme = InsiemeID.leggi(buffer);
+                return new Messaggio(ID, utente, portaMittente, true, targetACK, conferme.toString(), msgGruppo, protocollo, orario, conferme, sequenza, 0, marcaTemporale, ritardoACK);
+            }
+
+            if(opcode == OP_ACK) {
+                int IDconfermato = buffer.getInt();
+                int ritardoACK = buffer.getInt();
+                return new Messaggio(ID, utente, portaMittente, true, targetACK, String.valueOf(IDconfermato), msgGruppo, protocollo, orario, null, sequenza, IDconfermato, marcaTemporale, ritardoACK);
+            }
+
+            String testo = leggiTesto(buffer, buffer.getInt());
+            return new Messaggio(ID, utente, portaMittente, false, targetACK, testo, msgGruppo, protocollo, orario, null, sequenza, 0, marcaTemporale, 0);
+        } catch (BufferUnderflowException e) {
+            throw new MsgException("Messaggio troncato: " + dati.remaining() + " byte disponibili");
+        } catch (DateTimeException | IllegalArgumentException e) {
+            throw new MsgException("Messaggio non valido: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean riconosce(ByteBuffer dati) {
+        return dati.remaining() >= DIMENSIONE_INTESTAZIONE && dati.getShort(dati.position()) == MAGIA;
+    }
+
+    /**
+     * Scrive l'intestazione comune a tutti i datagrammi in formato binario
+     * @param buffer il buffer di destinazione
+     * @param opcode l'<code>opcode</code> del contenuto che segue
+     */
+    public static void scriviIntestazione(ByteBuffer buffer, byte opcode) {
+        buffer.putShort(MAGIA);
+        buffer.put(VERSIONE);
+        buffer.put(opcode);
+    }
+
+    /**
+     * Legge e verifica l'intestazione comune a tutti i datagrammi in formato binario
+     * @param buffer il buffer da cui leggere, posizionato all'inizio dell'intestazione
+     * @return l'<code>opcode</code> letto
+     * @throws MsgException se la magia o la versione non corrispondono
+     */
+    public static byte leggiIntestazione(ByteBuffer buffer) throws MsgException {
+        if(buffer.remaining() < DIMENSIONE_INTESTAZIONE || buffer.getShort() != MAGIA) throw new MsgException("Formato binario non riconosciuto");
+        byte versione = buffer.get();
+        if(versione != VERSIONE) throw new MsgException("Versione del formato non supportata: " + versione);
+        return buffer.get();
+    }
+
+    /**
+     * Restituisce l'<code>opcode</code> di un datagramma in formato binario senza modificare la <code>position</code> del buffer
+     * @param dati il buffer da analizzare
+     * @return l'<code>opcode</code> se il formato è riconosciuto, <code>0</code> altrimenti
+     */
+    public static byte opcode(ByteBuffer dati) {
+        if(dati.remaining() < DIMENSIONE_INTESTAZIONE || dati.getShort(dati.position()) != MAGIA) return 0;
+        return dati.get(dati.position() + 3);
+    }
+
+    /**
+     * Legge un testo UTF-8 della lunghezza indicata
+     * @param buffer il buffer da cui leggere
+     * @param lunghezza il numero di byte del testo
+     * @return il testo letto
+     * @throws MsgException se la lunghezza non è coerente con i dati disponibili
+     */
+    private static String leggiTesto(ByteBuffer buffer, int lunghezza) throws MsgException {
+        if(lunghezza < 0 || lunghezza > buffer.remaining()) throw new MsgException("Lunghezza del testo non valida: " + lunghezza);
+        String testo;
+        if(buffer.hasArray()) {
+            testo = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), lunghezza, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + lunghezza);
+        } else {
+            byte[] copia = new byte[lunghezza];
+            buffer.get(copia);
+            testo = new String(copia, StandardCharsets.UTF_8);
+        }
+        return testo;
+    }
+
+    /**
+     * Codifica il {@link Protocollo} in un singolo byte
+     * @param protocollo il protocollo da codificare, eventualmente <code>null</code>
+     * @return il valore da trasmettere
+     * @throws MsgException se il protocollo non è previsto dal formato
+     */
+    private static byte codificaProtocollo(Enum<?> protocollo) throws MsgException {
+        if(protocollo == null) return 0;
+        for(int i = 0; i < PROTOCOLLI.length; i++) {
+            if(PROTOCOLLI[i] == protocollo) return (byte) (i + 1);
+        }
+        throw new MsgException("Protocollo non codificabile: " + protocollo);
+    }
+
+    /**
+     * Decodifica il {@link Protocollo} trasmesso
+     * @param valore il valore ricevuto
+     * @return il protocollo corrispondente, <code>null</code> se assente
+     * @throws MsgException se il valore non corrisponde ad alcun protocollo
+     */
+    private static Enum<?> decodificaProtocollo(byte valore) throws MsgException {
+        if(valore == 0) return null;
+        if(valore < 0 || valore > PROTOCOLLI.length) throw new MsgException("Protocollo non valido: " + valore);
+        return PROTOCOLLI[valore - 1];
+    }
+}
@@ -0,0 +1,42 @@
+package chat.comunicazione;
+
+import chat.eccezioni.MsgException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Codifica e decodifica di un {@link Messaggio} nel formato trasmesso in rete.
+ * <p>
+ * Le implementazioni disponibili sono {@link CodecBinario}, formato compatto e versionato utilizzato di default, e {@link CodecSerializzazione}, basato sulla serializzazione Java e mantenuto per compatibilità con le versioni precedenti del programma.
+ * Il <code>codec</code> utilizzato in output può essere scelto attraverso il metodo {@link Messaggio#setCodec(CodecMessaggio)}.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @see Messaggio#configMsg(Messaggio)
+ * @project MulticastUDPSocketChat
+ */
+public interface CodecMessaggio {
+
+    /**
+     * Codifica il <code>messaggio</code> fornito
+     * @param messaggio il messaggio da codificare
+     * @return l'array di byte del messaggio codificato
+     * @throws MsgException se si verifica un problema durante la codifica
+     */
+    byte[] codifica(Messaggio messaggio) throws MsgException;
+
+    /**
+     * Decodifica un <code>messaggio</code> a partire dai byte compresi tra la <code>position</code> e il <code>limit</code> del buffer fornito
+     * @param dati il buffer che contiene il messaggio codificato
+     * @return il messaggio originale
+     * @throws MsgException se i dati forniti non rappresentano un messaggio valido
+     */
+    Messaggio decodifica(ByteBuffer dati) throws MsgException;
+
+    /**
+     * Verifica se i dati forniti sono stati codificati con il formato di questo <code>codec</code>, senza modificare la <code>position</code> del buffer
+     * @param dati il buffer da verificare
+     * @return <code>true</code> se il formato è riconosciuto, <code>false</code> altrimenti
+     */
+    boolean riconosce(ByteBuffer dati);
+}
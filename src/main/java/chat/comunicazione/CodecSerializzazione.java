@@ -0,0 +1,69 @@
+package chat.comunicazione;
+
+import chat.eccezioni.MsgException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link CodecMessaggio} basato sulla serializzazione Java di {@link Messaggio}.
+ * <p>
+ * Corrisponde al formato utilizzato fino alla versione <code>v1.2</code>: ciascun datagramma contiene anche i descrittori delle classi serializzate.
+ * È mantenuto per comunicare con <code>host</code> che non supportano il {@link CodecBinario}.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public class CodecSerializzazione implements CodecMessaggio {
+
+    /**
+     * Intestazione di ciascuno stream prodotto da un {@link ObjectOutputStream}
+     */
+    private static final short MAGIA_STREAM = (short) 0xACED;
+
+    @Override
+    public byte[] codifica(Messaggio messaggio) throws MsgException {
+        if(messaggio == null) throw new MsgException("Impossibile serializzare un messaggio nullo");
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            ObjectOutputStream os = new ObjectOutputStream(outputStream);
+            os.writeObject(messaggio);
+            os.flush();
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new MsgException("Errore nella serializzazione del messaggio");
+        }
+    }
+
+    @Override
+    public Messaggio decodifica(ByteBuffer dati) throws MsgException {
+        InputStream inputStream;
+        if(dati.hasArray()) {
+            inputStream = new ByteArrayInputStream(dati.array(), dati.arrayOffset() + dati.position(), dati.remaining());
+        } else {
+            byte[] copia = new byte[dati.remaining()];
+            dati.duplicate().get(copia);
+            inputStream = new ByteArrayInputStream(copia);
+        }
+
+        try {
+            ObjectInputStream is = new ObjectInputStream(inputStream);
+            Object test = is.readObject();
+            if (test instanceof Messaggio){
+                return (Messaggio) test;
+            } else {
+                throw new MsgException("Il messaggio ricevuto non è valido");
+            }
+        } catch (ClassNotFoundException e) {
+            throw new MsgException("Errore nella deserializzazione del messaggio: impossibile ricostruire il messaggio");
+        } catch (IOException e) {
+            throw new MsgException("Errore nella deserializzazione del messaggio: errore di I/O");
+        }
+    }
+
+    @Override
+    public boolean riconosce(ByteBuffer dati) {
+        return dati.remaining() >= 2 && dati.getShort(dati.position()) == MAGIA_STREAM;
+    }
+}
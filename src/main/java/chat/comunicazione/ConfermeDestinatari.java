@@ -0,0 +1,133 @@
+package chat.comunicazione;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Le conferme attese e ricevute da ciascun destinatario di un {@link Messaggio} inviato, indicizzate per <code>slot</code> della {@link chat.utenze.Rubrica}.
+ * <p>
+ * I destinatari attesi sono fissati all'invio; ciascuna conferma imposta in modo atomico il bit del relativo destinatario, così che un <code>ACK</code> duplicato o proveniente da un utente non atteso venga ignorato
+ * e che i destinatari che non hanno ancora confermato il messaggio siano noti con esattezza.
+ * <p>
+ * Conserva inoltre lo stato delle riparazioni del messaggio, ovvero delle ritrasmissioni in unicast ai soli destinatari mancanti, aggiornato esclusivamente dal {@link Thread} che le esegue.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @see Messaggio#ACK(int)
+ * @project MulticastUDPSocketChat
+ */
+public class ConfermeDestinatari {
+
+    /**
+     * I bit degli slot dei destinatari attesi
+     */
+    private final long[] attesi;
+
+    /**
+     * I bit degli slot dei destinatari che hanno confermato il messaggio
+     */
+    private final AtomicLongArray ricevuti;
+
+    /**
+     * Il numero di destinatari attesi
+     */
+    private final int numeroAttesi;
+
+    /**
+     * Il numero di riparazioni eseguite
+     */
+    private int riparazioni;
+
+    /**
+     * L'istante, in microsecondi di {@link Messaggio#orologio()}, a partire dal quale eseguire la prossima riparazione. <code>0</code> se non ancora pianificata.
+     */
+    private long prossimaRiparazione;
+
+    /**
+     * Crea le {@link ConfermeDestinatari} di un messaggio
+     * @param destinatari gli slot dei destinatari attesi
+     */
+    public ConfermeDestinatari(BitSet destinatari) {
+        this.attesi = destinatari.toLongArray();
+        this.ricevuti = new AtomicLongArray(attesi.length);
+        this.numeroAttesi = destinatari.cardinality();
+    }
+
+    /**
+     * Registra in modo atomico la conferma di un destinatario
+     * @param slot lo slot del destinatario
+     * @return <code>true</code> se il destinatario era atteso e non aveva ancora confermato il messaggio, <code>false</code> altrimenti
+     */
+    public boolean conferma(int slot) {
+        if(slot < 0 || (slot >>> 6) >= attesi.length) return false;
+        int parola = slot >>> 6;
+        long bit = 1L << slot;
+        if((attesi[parola] & bit) == 0) return false;
+
+        long attuale;
+        do {
+            attuale = ricevuti.get(parola);
+            if((attuale & bit) != 0) return false;
+        } while(!ricevuti.compareAndSet(parola, attuale, attuale | bit));
+        return true;
+    }
+
+    /**
+     * Verifica se un destinatario ha confermato il messaggio
+     * @param slot lo slot del destinatario
+     * @return <code>true</code> se il destinatario ha confermato il messaggio
+     */
+    public boolean isConfermato(int slot) {
+        return slot >= 0 && (slot >>> 6) < attesi.length && (ricevuti.get(slot >>> 6) & (1L << slot)) != 0;
+    }
+
+    /**
+     * Restituisce il numero di destinatari attesi
+     * @return il numero di destinatari attesi
+     */
+    public int getNumeroAttesi() {
+        return numeroAttesi;
+    }
+
+    /**
+     * Restituisce gli slot dei destinatari attesi che non hanno ancora confermato il messaggio
+     * @return gli slot mancanti, in ordine crescente
+     */
+    public int[] mancanti() {
+        BitSet mancanti = new BitSet(attesi.length * 64);
+        for(int i = 0; i < attesi.length; i++) {
+            long parola = attesi[i] & ~ricevuti.get(i);
+            while(parola != 0) {
+                mancanti.set(i * 64 + Long.numberOfTrailingZeros(parola));
+                parola &= parola - 1;
+            }
+        }
+        return mancanti.stream().toArray();
+    }
+
+    /**
+     * Restituisce il numero di riparazioni eseguite
+     * @return il numero di riparazioni
+     */
+    public int getRiparazioni() {
+        return riparazioni;
+    }
+
+    /**
+     * Restituisce l'istante a partire dal quale eseguire la prossima riparazione
+     * @return l'istante in microsecondi, <code>0</code> se non ancora pianificata
+     */
+    public long getProssimaRiparazione() {
+        return prossimaRiparazione;
+    }
+
+    /**
+     * Pianifica la prossima riparazione
+     * @param istante l'istante, in microsecondi, a partire dal quale eseguirla
+     * @param eseguita <code>true</code> se è appena stata eseguita una riparazione, da conteggiare
+     */
+    public void pianificaRiparazione(long istante, boolean eseguita) {
+        if(eseguita) riparazioni++;
+        prossimaRiparazione = istante;
+    }
+}
@@ -2,10 +2,23 @@ package chat.comunicazione;
 
 import chat.gestione.ChatLogger;
 import chat.gestione.ChatLoggerType;
+import chat.gestione.EventiChat;
+import chat.gestione.IstogrammaLatenze;
+import chat.gestione.Orologio;
+import chat.eccezioni.MsgException;
 import chat.eccezioni.NoSuchUserException;
 import chat.utenze.Utente;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
 
 /**
  * Cronologia dei messaggi inviati e ricevuti da un dato {@link chat.host.MulticastPeer}>
@@ -14,45 +27,311 @@ import java.util.ArrayList;
  * {@link #messaggiInviati} e {@link #messaggiRicevuti} rappresentano le due collezioni principali su cui si basa una <code>cronologia</code> e vengono gestiti rispettivamente dai metodi {@link #storicizzaMessaggio(Messaggio)} e {@link #nuovoMessaggio(Messaggio)}.
  * <p>
  * È possibile ottenere una stima approssimativa e statistica dei soli dati trasmessi attraverso il metodo {@link #getStatistiche()}, sfruttando il meccanismo di <code>ACK</code> implementato dal programma.
+ * Il riepilogo ha dimensione costante: i contatori e l'{@link IstogrammaLatenze} della latenza tra invio e <code>ACK</code> vengono aggiornati all'arrivo di ciascun <code>ACK</code>, mentre il dettaglio per messaggio è consultabile a pagine con il metodo {@link #getDettaglio(int)}.
  * Ciascun {@link Messaggio}, se configurato come messaggio di <code>acknowledge</code>, restituirà <code>true</code> invocando il metodo {@link Messaggio#isACK()}.
+ * <p>
+ * I messaggi inviati che attendono <code>ACK</code>, tra gli ultimi {@link #DIMENSIONE_INDICE_ACK} <code>ID</code> assegnati, sono inoltre indicizzati per <code>ID</code> in un buffer circolare ({@link #inviatiPerID}), così che ciascun <code>ACK</code> ricevuto venga associato al messaggio confermato in tempo costante e senza acquisire il lock della <code>cronologia</code>.
+ * <p>
+ * La memoria occupata è limitata da un budget, espresso in numero di messaggi e in byte stimati, configurabile con il metodo {@link #setLimite(int, long, PoliticaEspulsione, Path)}.
+ * Superato il budget, i messaggi meno recenti vengono espulsi e scartati oppure trasferiti in un {@link ArchivioCronologia} su disco, secondo la {@link PoliticaEspulsione} scelta.
+ * Le statistiche complessive sono mantenute da contatori aggiornati ad ogni messaggio e restano quindi corrette anche dopo le espulsioni.
+ * <p>
+ * I messaggi in memoria sono indicizzati per termine in un {@link IndiceTestuale}, consultabile con il metodo {@link #cerca(String, String, int)}; i messaggi espulsi vengono rimossi anche dall'indice.
+ * <p>
+ * Se è associato un {@link Giornale}, ciascun messaggio memorizzato vi viene anche registrato, così da poter ripristinare la <code>cronologia</code> al riavvio con il metodo {@link #ripristina(boolean, Messaggio)}.
+ * <p>
+ * Gli <code>ACK</code> vengono associati allo <code>slot</code> della {@link chat.utenze.Rubrica} del mittente con il metodo {@link #confermaDiLettura(Messaggio, int)}: per i messaggi che registrano le {@link ConfermeDestinatari}, i duplicati non vengono conteggiati.
+ * I messaggi in sequenza non ancora confermati da tutti i destinatari sono restituiti dal metodo {@link #nonConfermati()}, per la loro ritrasmissione in unicast ai soli destinatari mancanti.
+ * <p>
+ * La latenza tra invio e <code>ACK</code> è misurata sull'{@link Orologio} indicato alla creazione, ad esempio quello virtuale di una {@link chat.host.ReteSimulata}.
  * 
  * @author Matteo Bagnoletti Tini
- * @version 1.0
+ * @version 1.10
  * @see Messaggio
  * @project MulticastUDPSocketChat
  */
 public class Cronologia {
     
     /**
-     * L'insieme dei messaggi ricevuti memorizzati nella {@link Cronologia}
+     * L'insieme dei messaggi ricevuti memorizzati nella {@link Cronologia}, dal meno recente
+     */
+    private final ArrayDeque<Messaggio> messaggiRicevuti;
+
+    /**
+     * L'insieme dei messaggi inviati memorizzati nella {@link Cronologia}, dal meno recente
+     */
+    private final ArrayDeque<Messaggio> messaggiInviati;
+
+    /**
+     * L'ultimo <code>ID</code> assegnato dall'{@link chat.host.MulticastPeer} che fa uso di uno specifico oggetto <code>cronologia</code>
+     */
+    private final AtomicInteger ultimoID;
+
+    /**
+     * Il numero massimo predefinito di messaggi conservati in memoria
+     */
+    public static final int MESSAGGI_MASSIMI = 10000;
+
+    /**
+     * La stima, in byte, dell'occupazione di un {@link Messaggio} escluso il contenuto testuale
+     */
+    private static final int BYTE_PER_MESSAGGIO = 128;
+
+    /**
+     * Il numero massimo di messaggi conservati in memoria
+     */
+    private int messaggiMassimi;
+
+    /**
+     * Il numero massimo di byte stimati conservati in memoria
+     */
+    private long byteMassimi;
+
+    /**
+     * I byte stimati occupati dai messaggi in memoria
+     */
+    private long byteOccupati;
+
+    /**
+     * La {@link PoliticaEspulsione} applicata ai messaggi meno recenti al superamento del budget
+     */
+    private PoliticaEspulsione politica;
+
+    /**
+     * L'archivio su disco dei messaggi espulsi, <code>null</code> se la politica è {@link PoliticaEspulsione#SCARTA}
+     */
+    private ArchivioCronologia archivio;
+
+    /**
+     * Il numero complessivo di messaggi inviati e ricevuti, compresi quelli espulsi
+     */
+    private long totaleInviati, totaleRicevuti;
+
+    /**
+     * Il numero di messaggi espulsi dalla memoria
+     */
+    private long espulsi;
+
+    /**
+     * L'{@link IndiceTestuale} dei messaggi in memoria
+     */
+    private final IndiceTestuale indice;
+
+    /**
+     * Il numero di messaggi ripristinati da un {@link Giornale}
+     */
+    private long ripristinati;
+
+    /**
+     * Il {@link Giornale} persistente in cui registrare i messaggi memorizzati, <code>null</code> se non configurato
+     */
+    private Giornale giornale;
+
+    /**
+     * Il numero complessivo di messaggi inviati per cui sono stati ricevuti tutti gli <code>ACK</code> attesi, aggiornato senza lock
      */
-    private ArrayList<Messaggio> messaggiRicevuti;
+    private final AtomicLong totaleConfermati;
 
     /**
-     * L'insieme dei messaggi inviati memorizzati nella {@link Cronologia}
+     * Il numero complessivo di <code>ACK</code> attesi per i messaggi inviati
      */
-    private ArrayList<Messaggio> messaggiInviati;
+    private long totaleACKAttesi;
 
     /**
-     * L'elenco di ID utilizzati dall'{@link chat.host.MulticastPeer} che fa uso di uno specifico oggetto <code>cronologia</code> 
+     * Il numero complessivo di <code>ACK</code> ricevuti e associati a un messaggio inviato, aggiornato senza lock
      */
-    private ArrayList<Integer> IDs;
+    private final AtomicLong totaleACKRicevuti;
+
+    /**
+     * L'{@link IstogrammaLatenze} del tempo trascorso tra la memorizzazione di un messaggio inviato e la ricezione di ciascun <code>ACK</code>
+     */
+    private final IstogrammaLatenze latenzeACK;
+
+    /**
+     * Il numero di messaggi per pagina del dettaglio
+     * @see #getDettaglio(int)
+     */
+    public static final int MESSAGGI_PER_PAGINA = 20;
 
     /**
      * L'utente inizializzato di un {@link chat.host.MulticastPeer} in cui è utilizzata la {@link Cronologia}
      */
     private final Utente utente;
 
+    /**
+     * L'{@link Orologio} su cui sono misurati gli istanti di invio e la latenza degli <code>ACK</code>
+     */
+    private final Orologio orologio;
+
+    /**
+     * Il numero di messaggi inviati indicizzati per <code>ID</code> in attesa di <code>ACK</code>. Deve essere una potenza di 2.
+     */
+    public static final int DIMENSIONE_INDICE_ACK = 4096;
+
+    /**
+     * Buffer circolare degli ultimi messaggi inviati, nella posizione <code>ID & (DIMENSIONE_INDICE_ACK - 1)</code>
+     * @see #confermaDiLettura(Messaggio)
+     */
+    private final AtomicReferenceArray<Messaggio> inviatiPerID;
+
+    /**
+     * Il numero di messaggi multicast affidabili conservati per un'eventuale ritrasmissione
+     */
+    public static final int DIMENSIONE_FINESTRA = 1024;
+
+    /**
+     * Finestra di ritrasmissione: gli ultimi {@link #DIMENSIONE_FINESTRA} messaggi inviati in sequenza, indicizzati per numero di sequenza
+     * @see #ottieniPerRitrasmissione(int)
+     */
+    private final Messaggio[] finestraRitrasmissione;
+
+    /**
+     * L'ultimo numero di sequenza assegnato ai messaggi multicast affidabili
+     */
+    private int ultimaSequenza;
+
+    /**
+     * Il numero massimo di ritrasmissioni in unicast di un messaggio ai destinatari che non lo hanno confermato
+     * @see #nonConfermati()
+     */
+    public static final int RIPARAZIONI_MASSIME = 5;
+
+    /**
+     * I messaggi in sequenza inviati con {@link ConfermeDestinatari} e non ancora confermati da tutti i destinatari, dal meno recente
+     */
+    private final ArrayDeque<Messaggio> inAttesaDiConferma;
+
     /**
      * Crea un'istanza di {@link Cronologia}
      * 
      * @param utente l'utente di un dato {@link chat.host.MulticastPeer} che fa uso della cronologia 
      */
     public Cronologia(Utente utente) {
-        messaggiRicevuti = new ArrayList<>();
-        messaggiInviati = new ArrayList<>();
-        IDs = new ArrayList<>();
+        this(utente, Orologio.SISTEMA);
+    }
+
+    /**
+     * Crea un'istanza di {@link Cronologia} che misura la latenza degli <code>ACK</code> sull'{@link Orologio} indicato
+     *
+     * @param utente l'utente di un dato {@link chat.host.MulticastPeer} che fa uso della cronologia
+     * @param orologio l'orologio su cui misurare gli istanti di invio
+     */
+    public Cronologia(Utente utente, Orologio orologio) {
+        messaggiRicevuti = new ArrayDeque<>();
+        messaggiInviati = new ArrayDeque<>();
+        ultimoID = new AtomicInteger();
+        totaleConfermati = new AtomicLong();
+        totaleACKRicevuti = new AtomicLong();
+        latenzeACK = new IstogrammaLatenze();
+        messaggiMassimi = MESSAGGI_MASSIMI;
+        byteMassimi = Long.MAX_VALUE;
+        politica = PoliticaEspulsione.SCARTA;
+        indice = new IndiceTestuale();
+        finestraRitrasmissione = new Messaggio[DIMENSIONE_FINESTRA];
+        inviatiPerID = new AtomicReferenceArray<>(DIMENSIONE_INDICE_ACK);
+        inAttesaDiConferma = new ArrayDeque<>();
         this.utente = utente;
+        this.orologio = orologio;
+    }
+
+    /**
+     * Imposta il budget di memoria della {@link Cronologia} e la {@link PoliticaEspulsione} dei messaggi in eccesso, applicandoli subito ai messaggi già memorizzati.
+     * L'eventuale archivio configurato in precedenza viene chiuso prima di aprire il nuovo, così che due archivi sullo stesso file non siano mai aperti in scrittura insieme:
+     * se il nuovo archivio non può essere aperto, i messaggi espulsi vengono scartati.
+     * @param messaggiMassimi il numero massimo di messaggi, inviati e ricevuti, conservati in memoria
+     * @param byteMassimi il numero massimo di byte stimati conservati in memoria, <code>0</code> per non porre limiti
+     * @param politica la {@link PoliticaEspulsione} dei messaggi meno recenti
+     * @param file il file dell'{@link ArchivioCronologia}, richiesto solo con la politica {@link PoliticaEspulsione#ARCHIVIA}
+     * @throws IllegalArgumentException se il numero di messaggi non è positivo, i byte sono negativi o manca il file dell'archivio
+     * @throws IOException se non è possibile aprire l'archivio
+     */
+    public synchronized void setLimite(int messaggiMassimi, long byteMassimi, PoliticaEspulsione politica, Path file) throws IllegalArgumentException, IOException {
+        if(messaggiMassimi <= 0) throw new IllegalArgumentException("Il numero massimo di messaggi deve essere positivo");
+        if(byteMassimi < 0) throw new IllegalArgumentException("Il numero massimo di byte non può essere negativo");
+        if(politica == PoliticaEspulsione.ARCHIVIA && file == null) throw new IllegalArgumentException("File dell'archivio non specificato");
+
+        chiudi();
+        if(politica == PoliticaEspulsione.ARCHIVIA) this.archivio = new ArchivioCronologia(file);
+        this.messaggiMassimi = messaggiMassimi;
+        this.byteMassimi = byteMassimi == 0 ? Long.MAX_VALUE : byteMassimi;
+        this.politica = politica;
+        applicaLimite();
+        ChatLogger.log("(Cronologia) limite impostato a {} messaggi e {} byte, politica {}", ChatLoggerType.OPTIONAL, messaggiMassimi, byteMassimi > 0 ? byteMassimi : "illimitati", politica);
+    }
+
+    /**
+     * Restituisce il numero massimo di messaggi conservati in memoria
+     * @return il numero massimo di messaggi
+     */
+    public synchronized int getMessaggiMassimi() {
+        return messaggiMassimi;
+    }
+
+    /**
+     * Associa un {@link Giornale} in cui registrare i messaggi memorizzati da questo momento in poi
+     * @param giornale il giornale, <code>null</code> per interrompere la registrazione
+     */
+    public synchronized void setGiornale(Giornale giornale) {
+        this.giornale = giornale;
+    }
+
+    /**
+     * Registra un messaggio nel {@link #giornale}, se configurato
+     * @param messaggio il messaggio memorizzato
+     * @param inviato <code>true</code> per un messaggio inviato, <code>false</code> per un messaggio ricevuto
+     */
+    private void registraNelGiornale(Messaggio messaggio, boolean inviato) {
+        if(giornale == null) return;
+        try {
+            giornale.registra(messaggio, inviato);
+        } catch (MsgException | IOException e) {
+            ChatLogger.log("(Cronologia) impossibile registrare nel giornale il messaggio con msgID {}: {}", ChatLoggerType.OPTIONAL, messaggio.getID(), e.getMessage());
+        }
+    }
+
+    /**
+     * Ripristina un messaggio di una sessione precedente, ad esempio riprodotto da un {@link Giornale}.
+     * Il messaggio viene memorizzato senza essere indicizzato per gli <code>ACK</code> o la ritrasmissione, non viene registrato nuovamente nel giornale ed è soggetto al budget.
+     * @param inviato <code>true</code> per un messaggio inviato, <code>false</code> per un messaggio ricevuto
+     * @param messaggio il messaggio da ripristinare
+     */
+    public synchronized void ripristina(boolean inviato, Messaggio messaggio) {
+        (inviato ? messaggiInviati : messaggiRicevuti).addLast(messaggio);
+        byteOccupati += stimaByte(messaggio);
+        indice.aggiungi(messaggio);
+        ripristinati++;
+        applicaLimite();
+    }
+
+    /**
+     * Stima l'occupazione in memoria di un {@link Messaggio}
+     * @param messaggio il messaggio
+     * @return i byte stimati
+     */
+    private static long stimaByte(Messaggio messaggio) {
+        String msg = messaggio.getMsg();
+        return BYTE_PER_MESSAGGIO + (msg == null ? 0 : 2L * msg.length());
+    }
+
+    /**
+     * Espelle i messaggi meno recenti finché la {@link Cronologia} non rientra nel budget, scegliendo ogni volta la collezione più numerosa
+     */
+    private void applicaLimite() {
+        while(!messaggiInviati.isEmpty() || !messaggiRicevuti.isEmpty()) {
+            if(messaggiInviati.size() + messaggiRicevuti.size() <= messaggiMassimi && byteOccupati <= byteMassimi) return;
+            boolean inviato = messaggiInviati.size() >= messaggiRicevuti.size();
+            Messaggio messaggio = inviato ? messaggiInviati.pollFirst() : messaggiRicevuti.pollFirst();
+            byteOccupati -= stimaByte(messaggio);
+            indice.rimuovi(messaggio);
+            espulsi++;
+            if(archivio != null) {
+                try {
+                    archivio.archivia(messaggio, inviato);
+                } catch (MsgException | IOException e) {
+                    ChatLogger.log("(Cronologia) impossibile archiviare il messaggio con msgID {}: {}", ChatLoggerType.OPTIONAL, messaggio.getID(), e.getMessage());
+                }
+            }
+        }
     }
 
     /**
@@ -61,68 +340,324 @@ public class Cronologia {
      */
     public synchronized void nuovoMessaggio(final Messaggio messaggio) throws NoSuchUserException {
         if(!messaggio.getIDutente().equals(utente.getIDutente())) {
-            messaggiRicevuti.add(messaggio);
-            ChatLogger.log("(Cronologia) messaggio in ingresso memorizzato: " + messaggio.getMsg() + " da " + messaggio.getUsername() + " (" + messaggio.getIDutente() + ")", ChatLoggerType.OPTIONAL);
+            messaggiRicevuti.addLast(messaggio);
+            byteOccupati += stimaByte(messaggio);
+            totaleRicevuti++;
+            indice.aggiungi(messaggio);
+            registraNelGiornale(messaggio, false);
+            applicaLimite();
+            ChatLogger.log("(Cronologia) messaggio in ingresso memorizzato: {} da {} ({})", ChatLoggerType.OPTIONAL, messaggio.getMsg(), messaggio.getUsername(), messaggio.getIDutente());
         } else {
-            ChatLogger.log("(Cronologia) messaggio personale '" + messaggio.getMsg() + "' non memorizzato [loop-back]", ChatLoggerType.OPTIONAL);
+            ChatLogger.log("(Cronologia) messaggio personale '{}' non memorizzato [loop-back]", ChatLoggerType.OPTIONAL, messaggio.getMsg());
         }
     }
 
     /**
-     * Memorizza un nuovo {@link Messaggio} inviato in output
+     * Memorizza un nuovo {@link Messaggio} inviato in output. I messaggi che attendono almeno un <code>ACK</code> vengono indicizzati per <code>ID</code> nel buffer {@link #inviatiPerID}:
+     * gli <code>ACK</code>, i messaggi di servizio e gli altri messaggi senza conferme attese non occupano lo slot di un messaggio ancora da confermare.
+     * I messaggi in sequenza vengono inoltre conservati nella {@link #finestraRitrasmissione}.
+     * <p>
+     * Entrambi gli indici hanno dimensione fissa e non sono soggetti al budget: un messaggio espulso può quindi ricevere ancora gli <code>ACK</code> e le richieste di ritrasmissione, finché non viene sovrascritto.
      * @param messaggio il messaggio inviato
      */
     public synchronized void storicizzaMessaggio(final Messaggio messaggio) {
-        messaggiInviati.add(messaggio);
-        ChatLogger.log("(Cronologia) messaggio in uscita memorizzato: " + messaggio.getMsg() + " con msgID " + messaggio.getID(), ChatLoggerType.OPTIONAL);
+        messaggiInviati.addLast(messaggio);
+        byteOccupati += stimaByte(messaggio);
+        messaggio.setIstanteInvio(orologio.adesso());
+        totaleInviati++;
+        totaleACKAttesi += messaggio.getTargetACK();
+        indice.aggiungi(messaggio);
+        if(messaggio.getTargetACK() == 0) totaleConfermati.incrementAndGet();
+        if(messaggio.getTargetACK() > 0) inviatiPerID.set(messaggio.getID() & (DIMENSIONE_INDICE_ACK - 1), messaggio);
+        if(messaggio.getSequenza() > 0) {
+            finestraRitrasmissione[messaggio.getSequenza() % DIMENSIONE_FINESTRA] = messaggio;
+            if(messaggio.getDestinatari() != null && messaggio.getTargetACK() > 0) {
+                if(inAttesaDiConferma.size() == DIMENSIONE_FINESTRA) inAttesaDiConferma.pollFirst();
+                inAttesaDiConferma.addLast(messaggio);
+            }
+        }
+        ChatLogger.log("(Cronologia) messaggio in uscita memorizzato: {} con msgID {}", ChatLoggerType.OPTIONAL, messaggio.getMsg(), messaggio.getID());
+        registraNelGiornale(messaggio, true);
+        applicaLimite();
     }
 
     /**
-     * Ricevuto un {@link Messaggio} di <code>acknowledge</code> ricerca la corrispondenza tra l'<code>ID</code> contenuto nel corpo del <code>messaggio</code> e l'<code>ID</code> di ciascuno dei {@link #messaggiInviati}.
-     * Se la ricerca va a buon fine, il valore <code>contaACK</code> del <code>messaggio</code> viene incrementato con il metodo {@link Messaggio#ACK()}.
+     * Ricevuto un {@link Messaggio} di <code>acknowledge</code>, individua il messaggio confermato nel buffer {@link #inviatiPerID} a partire dall'<code>ID</code> trasportato dall'<code>ACK</code>.
+     * Se il messaggio è ancora presente, il valore <code>contaACK</code> viene incrementato in modo atomico con il metodo {@link Messaggio#ACK()}.
+     * <p>
+     * Un <code>ACK</code> cumulativo conferma ciascun <code>ID</code> del proprio {@link InsiemeID} tra gli ultimi {@link #DIMENSIONE_INDICE_ACK} assegnati, gli unici ancora indicizzati:
+     * il costo è proporzionale al numero di <code>ID</code> confermati e indicizzati, limitato dalle dimensioni di un {@link InsiemeID} qualunque sia l'<code>ACK</code> ricevuto.
+     * Il metodo non acquisisce il lock della <code>cronologia</code>.
      * 
      * @param messaggio il messaggio ACK ricevuto
      */
-    public synchronized void confermaDiLettura(final Messaggio messaggio) {
-        ChatLogger.log("(Cronologia) messaggio di ACK ricevuto: ricerca in corso per msgID " + messaggio.getMsg(), ChatLoggerType.OPTIONAL);
-        for(Messaggio msgInviato : messaggiInviati){
-            if((msgInviato.getID() == Integer.parseInt(messaggio.getMsg())) && (msgInviato.isInviatoCorrettamente() == 0)){
-                msgInviato.ACK();
-                ChatLogger.log("(Cronologia) match msgID per ACK avvenuto", ChatLoggerType.OPTIONAL);
-            }
+    public void confermaDiLettura(final Messaggio messaggio) {
+        confermaDiLettura(messaggio, -1);
+    }
+
+    /**
+     * Ricevuto un {@link Messaggio} di <code>acknowledge</code>, lo associa al messaggio confermato come {@link #confermaDiLettura(Messaggio)}, registrando la conferma del mittente dell'<code>ACK</code> con il metodo {@link Messaggio#ACK(int)}.
+     * Il metodo non acquisisce il lock della <code>cronologia</code> ed emette un evento {@link EventiChat.Conferma}.
+     *
+     * @param messaggio il messaggio ACK ricevuto
+     * @param slot lo slot della {@link chat.utenze.Rubrica} del mittente dell'<code>ACK</code>, <code>-1</code> se non noto
+     */
+    public void confermaDiLettura(final Messaggio messaggio, final int slot) {
+        ChatLogger.log("(Cronologia) messaggio di ACK ricevuto: ricerca in corso per msgID {}", ChatLoggerType.OPTIONAL, messaggio.getMsg());
+        EventiChat.Conferma evento = new EventiChat.Conferma();
+        evento.begin();
+        InsiemeID conferme = messaggio.getConferme();
+        if(conferme != null) {
+            int ultimo = ultimoID.get();
+            conferme.perOgni(ultimo - DIMENSIONE_INDICE_ACK + 1, ultimo, ID -> conferma(ID, slot));
+        } else {
+            conferma(messaggio.getIDconfermato(), slot);
+        }
+        if(evento.shouldCommit()) {
+            evento.mittente = messaggio.getUtente() != null ? messaggio.getUtente().getIDutente() : null;
+            evento.slot = slot;
+            evento.confermati = conferme != null ? conferme.dimensione() : 1;
+            evento.conferme = conferme != null ? conferme.toString() : Integer.toString(messaggio.getIDconfermato());
+            evento.commit();
+        }
+    }
+
+    /**
+     * Conferma la ricezione di un singolo messaggio inviato, se ancora presente nel buffer {@link #inviatiPerID}.
+     * Ciascun <code>ACK</code> associato aggiorna l'istogramma {@link #latenzeACK}; quello che completa gli <code>ACK</code> attesi aggiorna anche il contatore {@link #totaleConfermati}.
+     * @param ID l'<code>ID</code> del messaggio confermato
+     * @param slot lo slot del mittente dell'<code>ACK</code>, <code>-1</code> se non noto
+     */
+    private void conferma(int ID, int slot) {
+        Messaggio msgInviato = inviatiPerID.get(ID & (DIMENSIONE_INDICE_ACK - 1));
+        if(msgInviato == null || msgInviato.getID() != ID) return;
+        Messaggio.EsitoACK esito = slot >= 0 ? msgInviato.ACK(slot) : msgInviato.ACK();
+        if(esito != Messaggio.EsitoACK.IGNORATO) {
+            latenzeACK.registra(orologio.adesso() - msgInviato.getIstanteInvio());
+            totaleACKRicevuti.incrementAndGet();
+            if(esito == Messaggio.EsitoACK.COMPLETATO) totaleConfermati.incrementAndGet();
+            ChatLogger.log("(Cronologia) match msgID per ACK avvenuto", ChatLoggerType.OPTIONAL);
+        }
+    }
+
+    /**
+     * Rinuncia alle conferme di un destinatario che ha lasciato il gruppo, per tutti i messaggi inviati ancora nel buffer {@link #inviatiPerID}, con il metodo {@link Messaggio#esonera(int)}:
+     * gli <code>ACK</code> attesi diminuiscono e i messaggi che attendevano soltanto il destinatario risultano confermati. Il contatore {@link #totaleConfermati} viene aggiornato
+     * solo per i messaggi completati dall'esonero, non per quelli completati da un <code>ACK</code> concorrente, già conteggiati da {@link #conferma(int, int)}.
+     * @param slot lo slot della {@link chat.utenze.Rubrica} del destinatario
+     * @return il numero di messaggi che attendevano la conferma del destinatario
+     */
+    public synchronized int esonera(int slot) {
+        int esonerati = 0;
+        for(int i = 0; i < DIMENSIONE_INDICE_ACK; i++) {
+            Messaggio messaggio = inviatiPerID.get(i);
+            if(messaggio == null) continue;
+            Messaggio.EsitoACK esito = messaggio.esonera(slot);
+            if(esito == Messaggio.EsitoACK.IGNORATO) continue;
+            esonerati++;
+            totaleACKAttesi--;
+            if(esito == Messaggio.EsitoACK.COMPLETATO) totaleConfermati.incrementAndGet();
         }
+        if(esonerati > 0) ChatLogger.log("(Cronologia) {} messaggi non attendono più la conferma dello slot {}", ChatLoggerType.OPTIONAL, esonerati, slot);
+        return esonerati;
     }
 
     /**
      * Fornisce un nuovo <code>ID</code> per un {@link Messaggio} creato da uno specifico {@link chat.host.MulticastPeer} incrementando di <code>1</code> ad ogni chiamata
      * @return il nuovo <code>ID</code> generato
      */
-    public synchronized int getNewID() {
-        IDs.add(IDs.size() + 1);
-        return IDs.getLast();
+    public int getNewID() {
+        return ultimoID.incrementAndGet();
+    }
+
+    /**
+     * Fornisce un nuovo numero di sequenza per un {@link Messaggio} multicast affidabile, incrementando di <code>1</code> ad ogni chiamata
+     * @return il nuovo numero di sequenza, a partire da <code>1</code>
+     */
+    public synchronized int getNuovaSequenza() {
+        return ++ultimaSequenza;
+    }
+
+    /**
+     * Restituisce un {@link Messaggio} inviato in sequenza, se ancora presente nella {@link #finestraRitrasmissione}
+     * @param sequenza il numero di sequenza del messaggio
+     * @return il messaggio da ritrasmettere, <code>null</code> se non più disponibile
+     */
+    public synchronized Messaggio ottieniPerRitrasmissione(int sequenza) {
+        if(sequenza <= 0) return null;
+        Messaggio messaggio = finestraRitrasmissione[sequenza % DIMENSIONE_FINESTRA];
+        return messaggio != null && messaggio.getSequenza() == sequenza ? messaggio : null;
     }
 
     /**
-     * Calcola le statistiche inerenti ai {@link #messaggiInviati}.
+     * Restituisce, in ordine crescente, i messaggi inviati in sequenza ancora presenti nella {@link #finestraRitrasmissione} il cui numero di sequenza appartiene all'insieme richiesto.
+     * Vengono scorse le sole posizioni della finestra, non l'insieme: il costo non supera {@link #DIMENSIONE_FINESTRA}, qualunque sia l'insieme ricevuto.
+     * @param sequenze i numeri di sequenza richiesti
+     * @return i messaggi da ritrasmettere, eventualmente nessuno
+     */
+    public synchronized List<Messaggio> ottieniPerRitrasmissione(InsiemeID sequenze) {
+        List<Messaggio> messaggi = new ArrayList<>();
+        for(int sequenza = Math.max(1, ultimaSequenza - DIMENSIONE_FINESTRA + 1); sequenza > 0 && sequenza <= ultimaSequenza; sequenza++) {
+            if(!sequenze.contiene(sequenza)) continue;
+            Messaggio messaggio = ottieniPerRitrasmissione(sequenza);
+            if(messaggio != null) messaggi.add(messaggio);
+        }
+        return messaggi;
+    }
+
+    /**
+     * Restituisce i messaggi in sequenza ancora nella finestra di ritrasmissione e non confermati da tutti i destinatari, dal meno recente.
+     * I messaggi confermati, usciti dalla finestra o già ritrasmessi {@link #RIPARAZIONI_MASSIME} volte vengono dimenticati.
+     * @return i messaggi da riparare
+     * @see ConfermeDestinatari#mancanti()
+     */
+    public synchronized List<Messaggio> nonConfermati() {
+        List<Messaggio> nonConfermati = new ArrayList<>();
+        Iterator<Messaggio> messaggi = inAttesaDiConferma.iterator();
+        while(messaggi.hasNext()) {
+            Messaggio messaggio = messaggi.next();
+            if(messaggio.getContaACK() >= messaggio.getTargetACK() || messaggio.getDestinatari().getRiparazioni() >= RIPARAZIONI_MASSIME
+                    || ottieniPerRitrasmissione(messaggio.getSequenza()) != messaggio) {
+                messaggi.remove();
+            } else {
+                nonConfermati.add(messaggio);
+            }
+        }
+        return nonConfermati;
+    }
+
+    /**
+     * Restituisce il numero complessivo di <code>ACK</code> attesi per i messaggi inviati
+     * @return il numero di <code>ACK</code> attesi
+     */
+    public synchronized long getACKAttesi() {
+        return totaleACKAttesi;
+    }
+
+    /**
+     * Restituisce il numero complessivo di <code>ACK</code> ricevuti e associati a un messaggio inviato
+     * @return il numero di <code>ACK</code> ricevuti
+     */
+    public long getACKRicevuti() {
+        return totaleACKRicevuti.get();
+    }
+
+    /**
+     * Restituisce l'{@link IstogrammaLatenze} del tempo trascorso tra la memorizzazione di un messaggio inviato e la ricezione di ciascun <code>ACK</code>
+     * @return l'istogramma delle latenze degli <code>ACK</code>
+     */
+    public IstogrammaLatenze getLatenzeACK() {
+        return latenzeACK;
+    }
+
+    /**
+     * Restituisce il numero di messaggi in sequenza in attesa della conferma di tutti i destinatari
+     * @return il numero di messaggi in attesa di conferma
+     */
+    public synchronized int getInAttesaDiConferma() {
+        return inAttesaDiConferma.size();
+    }
+
+    /**
+     * Calcola il riepilogo delle statistiche inerenti ai messaggi inviati e ricevuti.
      * <p>
-     * Per ciascun <code>messaggio</code>, viene invocato il metodo {@link Messaggio#isInviatoCorrettamente()} ottenendo una stima dei messaggi in cui il numero di <code>ACK</code> corrisponde al valore atteso.
+     * Il riepilogo è ottenuto dai contatori complessivi, che comprendono anche i messaggi espulsi, e dall'istogramma {@link #latenzeACK}: la sua dimensione e il suo costo non dipendono dal numero di messaggi memorizzati.
+     * Il rapporto di consegna è il rapporto tra gli <code>ACK</code> ricevuti e quelli attesi.
      *     
      * @return le statistiche calcolate
      */
-    public String getStatistiche() {
-        String stat = "Calcolo statistiche...\n";
-        int msgInviati = messaggiInviati.size();
-        int msgInviatiCorrettamente = 0;
-        for(Messaggio msg : messaggiInviati){
-            msgInviatiCorrettamente += msg.isInviatoCorrettamente();
-            stat += "(msgID " + msg.getID() + ") " + msg.getContaACK() + " ACK di " + msg.getTargetACK() + " richiesti, con contenuto: '" + msg.getMsg() + "'\n";
+    public synchronized String getStatistiche() {
+        long msgInviatiCorrettamente = totaleConfermati.get();
+        double tot = totaleInviati == 0 ? 100.0 : Math.round(((double) msgInviatiCorrettamente / (double) totaleInviati) * 100.0);
+        double consegna = totaleACKAttesi == 0 ? 100.0 : Math.round((double) totaleACKRicevuti.get() / totaleACKAttesi * 1000.0) / 10.0;
+
+        StringBuilder stat = new StringBuilder("Calcolo statistiche...\n");
+        stat.append("Messaggi inviati: ").append(totaleInviati).append(" | ");
+        stat.append("Messaggi con ACK: ").append(msgInviatiCorrettamente).append(" | ");
+        stat.append("Percentuale di successo: ").append(tot).append("%\n");
+        stat.append("ACK ricevuti: ").append(totaleACKRicevuti.get()).append(" di ").append(totaleACKAttesi).append(" attesi | ");
+        stat.append("Rapporto di consegna: ").append(consegna).append("%\n");
+        stat.append("Latenza ACK: ").append(latenzeACK.getRiepilogo()).append("\n");
+        stat.append("Messaggi ricevuti: ").append(totaleRicevuti).append(" | ");
+        stat.append("In memoria: ").append(messaggiInviati.size() + messaggiRicevuti.size()).append(" (").append(byteOccupati).append(" byte stimati) | ");
+        stat.append("Espulsi: ").append(espulsi);
+        if(archivio != null) stat.append(" (archiviati ").append(archivio.getMessaggiArchiviati()).append(" in ").append(archivio.getFile()).append(")");
+        if(ripristinati > 0) stat.append(" | Ripristinati: ").append(ripristinati);
+        if(giornale != null) stat.append(" | Giornale: ").append(giornale.getNumeroMessaggi()).append(" messaggi in ").append(giornale.getNumeroSegmenti()).append(" segmenti");
+        stat.append(" | Indice: ").append(indice.getNumeroMessaggi()).append(" messaggi, ").append(indice.getNumeroTermini()).append(" termini");
+        return stat.toString();
+    }
+
+    /**
+     * Restituisce una pagina del dettaglio dei {@link #messaggiInviati} ancora in memoria, dal più recente: per ciascun messaggio viene riportato il numero di <code>ACK</code> ricevuti rispetto al valore atteso.
+     * @param pagina il numero della pagina, a partire da <code>1</code>, di {@link #MESSAGGI_PER_PAGINA} messaggi
+     * @return la pagina del dettaglio
+     * @throws IllegalArgumentException se il numero della pagina non è positivo
+     */
+    public String getDettaglio(int pagina) throws IllegalArgumentException {
+        return getDettaglio(pagina, null);
+    }
+
+    /**
+     * Restituisce una pagina del dettaglio dei {@link #messaggiInviati} ancora in memoria, come {@link #getDettaglio(int)}, riportando per i messaggi che registrano le {@link ConfermeDestinatari} i destinatari che non li hanno ancora confermati
+     * @param pagina il numero della pagina, a partire da <code>1</code>, di {@link #MESSAGGI_PER_PAGINA} messaggi
+     * @param aliasDaSlot la funzione che restituisce l'alias del destinatario di uno slot, <code>null</code> per non riportare i destinatari mancanti
+     * @return la pagina del dettaglio
+     * @throws IllegalArgumentException se il numero della pagina non è positivo
+     */
+    public synchronized String getDettaglio(int pagina, IntFunction<String> aliasDaSlot) throws IllegalArgumentException {
+        if(pagina <= 0) throw new IllegalArgumentException("Il numero della pagina deve essere positivo");
+        int pagine = Math.max(1, (messaggiInviati.size() + MESSAGGI_PER_PAGINA - 1) / MESSAGGI_PER_PAGINA);
+        StringBuilder stat = new StringBuilder("Messaggi inviati in memoria, pagina " + pagina + " di " + pagine + ":");
+
+        Iterator<Messaggio> messaggi = messaggiInviati.descendingIterator();
+        for(int i = 0; i < (pagina - 1) * MESSAGGI_PER_PAGINA && messaggi.hasNext(); i++) messaggi.next();
+        for(int i = 0; i < MESSAGGI_PER_PAGINA && messaggi.hasNext(); i++) {
+            Messaggio msg = messaggi.next();
+            stat.append("\n(msgID ").append(msg.getID()).append(") ").append(msg.getContaACK()).append(" ACK di ").append(msg.getTargetACK()).append(" richiesti, con contenuto: '").append(msg.getMsg()).append("'");
+            if(aliasDaSlot != null && msg.getDestinatari() != null && msg.getContaACK() < msg.getTargetACK()) {
+                StringBuilder mancanti = new StringBuilder();
+                for(int slot : msg.getDestinatari().mancanti()) {
+                    String alias = aliasDaSlot.apply(slot);
+                    mancanti.append(mancanti.isEmpty() ? "" : ", ").append(alias != null ? alias : "slot " + slot);
+                }
+                stat.append(" | mancano: ").append(mancanti);
+                if(msg.getDestinatari().getRiparazioni() > 0) stat.append(" (").append(msg.getDestinatari().getRiparazioni()).append(" ritrasmissioni)");
+            }
         }
+        return stat.toString();
+    }
+
+    /**
+     * Cerca tra i messaggi in memoria quelli che contengono tutti i termini indicati, dal più recente
+     * @param termini i termini da cercare
+     * @param UUIDmittente l'identificativo univoco del mittente dei messaggi, <code>null</code> per qualsiasi mittente
+     * @param massimo il numero massimo di risultati
+     * @return i messaggi trovati, dal più recente
+     * @see IndiceTestuale#cerca(String, String, int)
+     */
+    public List<Messaggio> cerca(String termini, String UUIDmittente, int massimo) {
+        return indice.cerca(termini, UUIDmittente, massimo);
+    }
 
-        double tot = Math.round(((double) msgInviatiCorrettamente / (double) msgInviati) * 100.0);
+    /**
+     * Restituisce l'archivio su disco dei messaggi espulsi
+     * @return l'{@link ArchivioCronologia}, <code>null</code> se la politica è {@link PoliticaEspulsione#SCARTA}
+     */
+    public synchronized ArchivioCronologia getArchivio() {
+        return archivio;
+    }
 
-        stat += "Messaggi inviati: " + msgInviati + " | ";
-        stat += "Messaggi con ACK: " + msgInviatiCorrettamente + " | ";
-        stat += "Percentuale di successo: " + tot + "%";
-        return stat;
+    /**
+     * Chiude l'eventuale {@link ArchivioCronologia}, rendendo persistenti i messaggi archiviati
+     */
+    public synchronized void chiudi() {
+        if(archivio == null) return;
+        try {
+            archivio.chiudi();
+        } catch (IOException e) {
+            ChatLogger.log("(Cronologia) impossibile chiudere l'archivio: {}", ChatLoggerType.OPTIONAL, e.getMessage());
+        }
+        archivio = null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+package chat.comunicazione;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Suddivide i datagrammi più grandi dell'<code>MTU</code> configurata in frammenti, ricomposti in ricezione da un {@link Riassemblatore}.
+ * <p>
+ * Ciascun frammento è composto dall'intestazione comune del {@link CodecBinario} con <code>opcode</code> {@link CodecBinario#OP_FRAMMENTO}, seguita da:
+ * <ol>
+ *     <li>l'identificativo del mittente (8 byte), generato casualmente per ciascun <code>frammentatore</code></li>
+ *     <li>l'identificativo del datagramma originale (4 byte)</li>
+ *     <li>l'indice del frammento e il numero totale di frammenti (2 byte ciascuno)</li>
+ *     <li>la porzione di dati trasportata</li>
+ * </ol>
+ * I datagrammi che non superano l'<code>MTU</code> vengono inviati senza modifiche.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public class Frammentatore {
+
+    /**
+     * La dimensione massima del contenuto di un datagramma UDP su IPv4
+     */
+    public static final int MTU_MASSIMA = 65507;
+
+    /**
+     * L'<code>MTU</code> predefinita, tale da non richiedere la frammentazione IP su una rete Ethernet
+     */
+    public static final int MTU_PREDEFINITA = 1400;
+
+    /**
+     * Dimensione dell'intestazione di ciascun frammento
+     */
+    public static final int DIMENSIONE_INTESTAZIONE = CodecBinario.DIMENSIONE_INTESTAZIONE + 8 + 4 + 2 + 2;
+
+    /**
+     * Il numero massimo di frammenti per datagramma
+     */
+    public static final int FRAMMENTI_MASSIMI = 0xFFFF;
+
+    /**
+     * L'identificativo del mittente trasmesso in ciascun frammento
+     */
+    private final long IDmittente;
+
+    /**
+     * Il generatore degli identificativi dei datagrammi frammentati
+     */
+    private final AtomicInteger IDdatagrammi;
+
+    /**
+     * La dimensione massima di ciascun datagramma inviato
+     */
+    private volatile int mtu;
+
+    /**
+     * Crea un {@link Frammentatore} con l'{@link #MTU_PREDEFINITA}
+     */
+    public Frammentatore() {
+        this.IDmittente = ThreadLocalRandom.current().nextLong();
+        this.IDdatagrammi = new AtomicInteger();
+        this.mtu = MTU_PREDEFINITA;
+    }
+
+    /**
+     * Imposta la dimensione massima di ciascun datagramma inviato
+     * @param mtu la nuova <code>MTU</code>
+     * @throws IllegalArgumentException se l'<code>MTU</code> non può contenere l'intestazione di un frammento o supera l'{@link #MTU_MASSIMA}
+     */
+    public void setMTU(int mtu) throws IllegalArgumentException {
+        if(mtu <= DIMENSIONE_INTESTAZIONE || mtu > MTU_MASSIMA) throw new IllegalArgumentException("MTU non nel range valido (" + (DIMENSIONE_INTESTAZIONE + 1) + "-" + MTU_MASSIMA + ")");
+        this.mtu = mtu;
+    }
+
+    /**
+     * Restituisce la dimensione massima di ciascun datagramma inviato
+     * @return l'<code>MTU</code> configurata
+     */
+    public int getMTU() {
+        return mtu;
+    }
+
+    /**
+     * Suddivide i dati forniti in frammenti non più grandi dell'<code>MTU</code>
+     * @param dati il datagramma da inviare
+     * @return l'elenco dei datagrammi da inviare: il solo datagramma originale se non supera l'<code>MTU</code>
+     * @throws IllegalArgumentException se il datagramma richiede più di {@link #FRAMMENTI_MASSIMI} frammenti
+     */
+    public List<byte[]> frammenta(byte[] dati) throws IllegalArgumentException {
+        int mtu = this.mtu;
+        if(dati.length <= mtu) return List.of(dati);
+
+        int capienza = mtu - DIMENSIONE_INTESTAZIONE;
+        int totale = (dati.length + capienza - 1) / capienza;
+        if(totale > FRAMMENTI_MASSIMI) throw new IllegalArgumentException("Messaggio troppo grande: " + dati.length + " byte");
+
+        int IDdatagramma = IDdatagrammi.incrementAndGet();
+        List<byte[]> frammenti = new ArrayList<>(totale);
+        for(int indice = 0; indice < totale; indice++) {
+            int inizio = indice * capienza;
+            int lunghezza = Math.min(capienza, dati.length - inizio);
+
+            ByteBuffer frammento = ByteBuffer.allocate(DIMENSIONE_INTESTAZIONE + lunghezza);
+            CodecBinario.scriviIntestazione(frammento, CodecBinario.OP_FRAMMENTO);
+            frammento.putLong(IDmittente);
+            frammento.putInt(IDdatagramma);
+            frammento.putShort((short) indice);
+            frammento.putShort((short) totale);
+            frammento.put(dati, inizio, lunghezza);
+            frammenti.add(frammento.array());
+        }
+        return frammenti;
+    }
+}
@@ -0,0 +1,409 @@
+package chat.comunicazione;
+
+import chat.eccezioni.MsgException;
+import chat.gestione.ChatLogger;
+import chat.gestione.ChatLoggerType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Giornale persistente, in sola aggiunta, dei messaggi inviati e ricevuti da un {@link chat.host.MulticastPeer}, che consente di ripristinare la {@link Cronologia} al riavvio.
+ * <p>
+ * I messaggi vengono numerati in ordine di registrazione e accodati, nel formato del {@link CodecBinario}, a file di <code>segmento</code> di dimensione massima prefissata, superata la quale viene aperto un nuovo segmento.
+ * Ciascun segmento prende il nome dal numero del suo primo messaggio ed è affiancato da un <code>indice</code> sparso che associa un messaggio ogni {@link #PASSO_INDICE} alla sua posizione nel file:
+ * in questo modo è possibile riprodurre gli ultimi messaggi senza leggere l'intero giornale.
+ * <p>
+ * Ciascun record è composto da lunghezza (4 byte), direzione (1 byte, <code>1</code> per i messaggi inviati) e messaggio codificato.
+ * Le scritture sono raccolte in un buffer <code>direct</code> e trasferite al {@link FileChannel} quando il buffer è pieno o con il metodo {@link #scarica()}; la lettura avviene attraverso {@link MappedByteBuffer}.
+ * All'apertura un eventuale record troncato in coda all'ultimo segmento, ad esempio per un'interruzione improvvisa del programma, viene rimosso.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public class Giornale {
+
+    /**
+     * La dimensione massima predefinita di un segmento, in byte
+     */
+    public static final long DIMENSIONE_SEGMENTO = 64L * 1024 * 1024;
+
+    /**
+     * Il numero di messaggi tra due voci consecutive dell'indice sparso
+     */
+    public static final int PASSO_INDICE = 256;
+
+    /**
+     * La dimensione dell'intestazione di un record: lunghezza e direzione
+     */
+    private static final int INTESTAZIONE_RECORD = 4 + 1;
+
+    /**
+     * La dimensione di una voce dell'indice: numero del messaggio e posizione nel segmento
+     */
+    private static final int VOCE_INDICE = 8 + 8;
+
+    /**
+     * La dimensione del buffer di scrittura, in byte
+     */
+    private static final int DIMENSIONE_BUFFER = 64 * 1024;
+
+    /**
+     * Il {@link CodecBinario} utilizzato per la codifica dei messaggi, indipendente dal codec scelto per la rete
+     */
+    private static final CodecBinario CODEC = new CodecBinario();
+
+    /**
+     * La directory dei segmenti
+     */
+    private final Path directory;
+
+    /**
+     * La dimensione massima di un segmento, in byte
+     */
+    private final long dimensioneSegmento;
+
+    /**
+     * I segmenti del giornale, per numero del primo messaggio
+     */
+    private final TreeMap<Long, Path> segmenti;
+
+    /**
+     * Il segmento corrente, in scrittura
+     */
+    private FileChannel segmento;
+
+    /**
+     * L'indice sparso del segmento corrente, in scrittura
+     */
+    private FileChannel indice;
+
+    /**
+     * Il numero del primo messaggio del segmento corrente
+     */
+    private long baseSegmento;
+
+    /**
+     * La posizione in cui verrà scritto il prossimo record del segmento corrente, compresi i byte ancora nel buffer
+     */
+    private long posizioneSegmento;
+
+    /**
+     * Il numero che verrà assegnato al prossimo messaggio registrato
+     */
+    private long prossimoRecord;
+
+    /**
+     * I record in attesa di essere scritti nel segmento corrente
+     */
+    private final ByteBuffer bufferRecord;
+
+    /**
+     * Le voci dell'indice in attesa di essere scritte, sempre dopo i record a cui fanno riferimento
+     */
+    private final ByteBuffer bufferIndice;
+
+    /**
+     * Apre, o crea se non esiste, un {@link Giornale} con segmenti di dimensione predefinita
+     * @param directory la directory dei segmenti
+     * @throws IOException se non è possibile aprire o ripristinare il giornale
+     */
+    public Giornale(final Path directory) throws IOException {
+        this(directory, DIMENSIONE_SEGMENTO);
+    }
+
+    /**
+     * Apre, o crea se non esiste, un {@link Giornale}
+     * @param directory la directory dei segmenti
+     * @param dimensioneSegmento la dimensione massima di un segmento, in byte
+     * @throws IOException se non è possibile aprire o ripristinare il giornale
+     * @throws IllegalArgumentException se la dimensione dei segmenti non è compresa tra la dimensione del buffer di scrittura e <code>Integer.MAX_VALUE</code>
+     */
+    public Giornale(final Path directory, final long dimensioneSegmento) throws IOException, IllegalArgumentException {
+        if(dimensioneSegmento < DIMENSIONE_BUFFER || dimensioneSegmento > Integer.MAX_VALUE) throw new IllegalArgumentException("Dimensione dei segmenti non valida: " + dimensioneSegmento);
+        this.directory = Files.createDirectories(directory);
+        this.dimensioneSegmento = dimensioneSegmento;
+        this.segmenti = new TreeMap<>();
+        this.bufferRecord = ByteBuffer.allocateDirect(DIMENSIONE_BUFFER);
+        this.bufferIndice = ByteBuffer.allocate(VOCE_INDICE * (DIMENSIONE_BUFFER / PASSO_INDICE + 1));
+
+        try (Stream<Path> file = Files.list(this.directory)) {
+            file.filter(percorso -> percorso.getFileName().toString().endsWith(".seg"))
+                    .forEach(percorso -> {
+                        String nome = percorso.getFileName().toString();
+                        try {
+                            segmenti.put(Long.parseLong(nome.substring(0, nome.length() - 4)), percorso);
+                        } catch (NumberFormatException e) {
+                            ChatLogger.log("(Giornale) file ignorato: {}", ChatLoggerType.OPTIONAL, nome);
+                        }
+                    });
+        }
+
+        if(segmenti.isEmpty()) {
+            apriSegmento(0);
+        } else {
+            ripristinaUltimoSegmento();
+        }
+        ChatLogger.log("(Giornale) aperto in {}: {} messaggi in {} segmenti", ChatLoggerType.OPTIONAL, this.directory, prossimoRecord, segmenti.size());
+    }
+
+    /**
+     * Restituisce il percorso dell'indice di un segmento
+     * @param base il numero del primo messaggio del segmento
+     * @return il percorso dell'indice
+     */
+    private Path percorsoIndice(long base) {
+        return directory.resolve(String.format("%020d.idx", base));
+    }
+
+    /**
+     * Crea un nuovo segmento vuoto e lo rende il segmento corrente
+     * @param base il numero del primo messaggio del segmento
+     * @throws IOException se non è possibile creare il segmento
+     */
+    private void apriSegmento(long base) throws IOException {
+        Path percorso = directory.resolve(String.format("%020d.seg", base));
+        segmento = FileChannel.open(percorso, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        indice = FileChannel.open(percorsoIndice(base), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segmenti.put(base, percorso);
+        baseSegmento = base;
+        posizioneSegmento = 0;
+        prossimoRecord = base;
+    }
+
+    /**
+     * Riapre in scrittura l'ultimo segmento: a partire dall'ultima voce dell'indice ne conta i messaggi, rimuovendo un eventuale record troncato in coda
+     * @throws IOException se non è possibile leggere o troncare il segmento
+     */
+    private void ripristinaUltimoSegmento() throws IOException {
+        Map.Entry<Long, Path> ultimo = segmenti.lastEntry();
+        baseSegmento = ultimo.getKey();
+        segmento = FileChannel.open(ultimo.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        indice = FileChannel.open(percorsoIndice(baseSegmento), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long dimensione = segmento.size();
+        long[] voci = leggiIndice(baseSegmento, dimensione);
+        int numeroVoci = voci.length / 2;
+        long record = numeroVoci > 0 ? voci[voci.length - 2] : baseSegmento;
+        long posizione = numeroVoci > 0 ? voci[voci.length - 1] : 0;
+
+        MappedByteBuffer dati = segmento.map(FileChannel.MapMode.READ_ONLY, 0, dimensione);
+        dati.position((int) posizione);
+        while(saltaRecord(dati)) record++;
+
+        if(dati.position() < dimensione) {
+            ChatLogger.log("(Giornale) rimossi {} byte non validi in coda al segmento {}", ChatLoggerType.OPTIONAL, dimensione - dati.position(), ultimo.getValue().getFileName());
+            segmento.truncate(dati.position());
+        }
+        indice.truncate((long) numeroVoci * VOCE_INDICE);
+        segmento.position(dati.position());
+        indice.position((long) numeroVoci * VOCE_INDICE);
+        posizioneSegmento = dati.position();
+        prossimoRecord = record;
+    }
+
+    /**
+     * Legge le voci valide dell'indice di un segmento, ignorando quelle incomplete o oltre la fine dei dati
+     * @param base il numero del primo messaggio del segmento
+     * @param dimensioneDati la dimensione dei dati del segmento
+     * @return le voci dell'indice, come coppie consecutive di numero del messaggio e posizione
+     * @throws IOException se non è possibile leggere l'indice
+     */
+    private long[] leggiIndice(long base, long dimensioneDati) throws IOException {
+        Path percorso = percorsoIndice(base);
+        if(!Files.exists(percorso)) return new long[0];
+        ByteBuffer contenuto = ByteBuffer.wrap(Files.readAllBytes(percorso));
+        long[] voci = new long[contenuto.remaining() / VOCE_INDICE * 2];
+        int valide = 0;
+        while(contenuto.remaining() >= VOCE_INDICE) {
+            long record = contenuto.getLong();
+            long posizione = contenuto.getLong();
+            if(posizione >= dimensioneDati) break;
+            voci[valide++] = record;
+            voci[valide++] = posizione;
+        }
+        return valide == voci.length ? voci : Arrays.copyOf(voci, valide);
+    }
+
+    /**
+     * Avanza oltre il record nella posizione corrente, se completo
+     * @param dati i dati del segmento
+     * @return <code>true</code> se il record è completo, <code>false</code> se i dati sono terminati o il record è troncato
+     */
+    private static boolean saltaRecord(ByteBuffer dati) {
+        if(dati.remaining() < INTESTAZIONE_RECORD) return false;
+        int lunghezza = dati.getInt(dati.position());
+        if(lunghezza <= 0 || lunghezza > dati.remaining() - INTESTAZIONE_RECORD) return false;
+        dati.position(dati.position() + INTESTAZIONE_RECORD + lunghezza);
+        return true;
+    }
+
+    /**
+     * Registra un messaggio in coda al giornale, aprendo un nuovo segmento se quello corrente non ha più spazio
+     * @param messaggio il messaggio da registrare
+     * @param inviato <code>true</code> per un messaggio inviato, <code>false</code> per un messaggio ricevuto
+     * @throws MsgException se il messaggio non può essere codificato
+     * @throws IOException se si verifica un errore di scrittura
+     */
+    public synchronized void registra(Messaggio messaggio, boolean inviato) throws MsgException, IOException {
+        byte[] codificato = CODEC.codifica(messaggio);
+        int dimensioneRecord = INTESTAZIONE_RECORD + codificato.length;
+
+        if(posizioneSegmento > 0 && posizioneSegmento + dimensioneRecord > dimensioneSegmento) ruota();
+        if(bufferRecord.remaining() < dimensioneRecord || bufferIndice.remaining() < VOCE_INDICE) scarica();
+
+        if((prossimoRecord - baseSegmento) % PASSO_INDICE == 0) {
+            bufferIndice.putLong(prossimoRecord).putLong(posizioneSegmento);
+        }
+        if(dimensioneRecord > bufferRecord.capacity()) {
+            ByteBuffer record = ByteBuffer.allocate(dimensioneRecord);
+            record.putInt(codificato.length).put((byte) (inviato ? 1 : 0)).put(codificato).flip();
+            while(record.hasRemaining()) segmento.write(record);
+        } else {
+            bufferRecord.putInt(codificato.length).put((byte) (inviato ? 1 : 0)).put(codificato);
+        }
+        posizioneSegmento += dimensioneRecord;
+        prossimoRecord++;
+    }
+
+    /**
+     * Chiude il segmento corrente e ne apre uno nuovo a partire dal prossimo messaggio
+     * @throws IOException se non è possibile chiudere o creare il segmento
+     */
+    private void ruota() throws IOException {
+        sincronizza();
+        segmento.close();
+        indice.close();
+        apriSegmento(prossimoRecord);
+        ChatLogger.log("(Giornale) nuovo segmento a partire dal messaggio {}", ChatLoggerType.OPTIONAL, prossimoRecord);
+    }
+
+    /**
+     * Trasferisce al sistema operativo i record e le voci dell'indice in attesa nei buffer. I record vengono sempre scritti prima delle voci che vi fanno riferimento.
+     * @throws IOException se si verifica un errore di scrittura
+     */
+    public synchronized void scarica() throws IOException {
+        bufferRecord.flip();
+        while(bufferRecord.hasRemaining()) segmento.write(bufferRecord);
+        bufferRecord.clear();
+        bufferIndice.flip();
+        while(bufferIndice.hasRemaining()) indice.write(bufferIndice);
+        bufferIndice.clear();
+    }
+
+    /**
+     * Scarica i buffer e forza la scrittura su disco del segmento corrente e del suo indice
+     * @throws IOException se si verifica un errore di scrittura
+     */
+    public synchronized void sincronizza() throws IOException {
+        scarica();
+        segmento.force(false);
+        indice.force(false);
+    }
+
+    /**
+     * Riproduce in ordine i messaggi registrati a partire da un dato numero, sfruttando l'indice sparso per individuare la posizione di partenza.
+     * I record che non è possibile decodificare vengono ignorati.
+     * @param daRecord il numero del primo messaggio da riprodurre
+     * @param operazione l'operazione da eseguire per ciascun messaggio, con la direzione (<code>true</code> per i messaggi inviati)
+     * @return il numero di messaggi riprodotti
+     * @throws IOException se si verifica un errore di lettura
+     */
+    public synchronized long riproduci(long daRecord, BiConsumer<Boolean, Messaggio> operazione) throws IOException {
+        scarica();
+        daRecord = Math.max(daRecord, segmenti.firstKey());
+        long riprodotti = 0, scartati = 0;
+
+        for(Map.Entry<Long, Path> voce : segmenti.tailMap(segmenti.floorKey(daRecord), true).entrySet()) {
+            long base = voce.getKey();
+            try (FileChannel canale = FileChannel.open(voce.getValue(), StandardOpenOption.READ)) {
+                long dimensione = base == baseSegmento ? posizioneSegmento : canale.size();
+                MappedByteBuffer dati = canale.map(FileChannel.MapMode.READ_ONLY, 0, dimensione);
+
+                long record = base;
+                if(daRecord > base) {
+                    long[] voci = leggiIndice(base, dimensione);
+                    for(int i = 0; i < voci.length && voci[i] <= daRecord; i += 2) {
+                        record = voci[i];
+                        dati.position((int) voci[i + 1]);
+                    }
+                    while(record < daRecord && saltaRecord(dati)) record++;
+                }
+
+                while(dati.remaining() >= INTESTAZIONE_RECORD) {
+                    int lunghezza = dati.getInt();
+                    if(lunghezza <= 0 || lunghezza > dati.remaining() - 1) break;
+                    boolean inviato = dati.get() == 1;
+                    ByteBuffer codificato = dati.slice(dati.position(), lunghezza);
+                    dati.position(dati.position() + lunghezza);
+                    try {
+                        operazione.accept(inviato, CODEC.decodifica(codificato));
+                        riprodotti++;
+                    } catch (MsgException e) {
+                        scartati++;
+                    }
+                }
+            }
+        }
+        if(scartati > 0) ChatLogger.log("(Giornale) {} messaggi non validi ignorati", ChatLoggerType.OPTIONAL, scartati);
+        return riprodotti;
+    }
+
+    /**
+     * Riproduce in ordine gli ultimi messaggi registrati
+     * @param numero il numero massimo di messaggi da riprodurre
+     * @param operazione l'operazione da eseguire per ciascun messaggio, con la direzione (<code>true</code> per i messaggi inviati)
+     * @return il numero di messaggi riprodotti
+     * @throws IOException se si verifica un errore di lettura
+     * @see #riproduci(long, BiConsumer)
+     */
+    public synchronized long riproduciUltimi(long numero, BiConsumer<Boolean, Messaggio> operazione) throws IOException {
+        return riproduci(prossimoRecord - numero, operazione);
+    }
+
+    /**
+     * Restituisce il numero di messaggi registrati nel giornale
+     * @return il numero di messaggi registrati
+     */
+    public synchronized long getNumeroMessaggi() {
+        return prossimoRecord;
+    }
+
+    /**
+     * Restituisce il numero di segmenti del giornale
+     * @return il numero di segmenti
+     */
+    public synchronized int getNumeroSegmenti() {
+        return segmenti.size();
+    }
+
+    /**
+     * Restituisce la directory dei segmenti
+     * @return la directory dei segmenti
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Rende persistenti i messaggi registrati e chiude il segmento corrente
+     * @throws IOException se si verifica un errore di scrittura
+     */
+    public synchronized void chiudi() throws IOException {
+        if(!segmento.isOpen()) return;
+        sincronizza();
+        segmento.close();
+        indice.close();
+    }
+}
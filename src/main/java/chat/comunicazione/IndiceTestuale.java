@@ -0,0 +1,202 @@
+package chat.comunicazione;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Indice invertito, aggiornato in modo incrementale, dei termini contenuti nei messaggi di una {@link Cronologia}.
+ * <p>
+ * Ciascun {@link Messaggio} indicizzato riceve un numero progressivo ed è aggiunto, per ogni termine che contiene, a una <code>lista di occorrenze</code> ordinata per numero.
+ * Una ricerca interseca le liste dei termini richiesti partendo dalla più corta e dai messaggi più recenti, con una ricerca binaria nelle altre liste: il costo dipende dal numero di risultati richiesti e non dalla dimensione della cronologia.
+ * <p>
+ * I messaggi espulsi dalla {@link Cronologia} vengono marcati come rimossi; ciascuna lista viene compattata quando le occorrenze rimosse superano la metà, così che l'indice rispetti il budget della cronologia.
+ * I messaggi di <code>acknowledge</code> non vengono indicizzati.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public class IndiceTestuale {
+
+    /**
+     * Un {@link Messaggio} indicizzato
+     */
+    private static final class Documento {
+        private final int numero;
+        private final Messaggio messaggio;
+        private final String mittente;
+        private boolean rimosso;
+
+        private Documento(int numero, Messaggio messaggio, String mittente) {
+            this.numero = numero;
+            this.messaggio = messaggio;
+            this.mittente = mittente;
+        }
+    }
+
+    /**
+     * Le occorrenze di un termine, ordinate per numero del {@link Documento}
+     */
+    private static final class Occorrenze {
+        private Documento[] documenti = new Documento[4];
+        private int dimensione;
+        private int rimossi;
+
+        private void aggiungi(Documento documento) {
+            if(dimensione == documenti.length) documenti = Arrays.copyOf(documenti, dimensione * 2);
+            documenti[dimensione++] = documento;
+        }
+
+        private boolean contiene(Documento documento) {
+            int basso = 0, alto = dimensione - 1;
+            while(basso <= alto) {
+                int medio = (basso + alto) >>> 1;
+                int numero = documenti[medio].numero;
+                if(numero < documento.numero) basso = medio + 1;
+                else if(numero > documento.numero) alto = medio - 1;
+                else return true;
+            }
+            return false;
+        }
+
+        private void compatta() {
+            int valide = 0;
+            for(int i = 0; i < dimensione; i++) {
+                if(!documenti[i].rimosso) documenti[valide++] = documenti[i];
+            }
+            Arrays.fill(documenti, valide, dimensione, null);
+            dimensione = valide;
+            rimossi = 0;
+            if(documenti.length > 4 && dimensione < documenti.length / 4) documenti = Arrays.copyOf(documenti, Math.max(4, documenti.length / 2));
+        }
+    }
+
+    /**
+     * Le occorrenze di ciascun termine
+     */
+    private final HashMap<String, Occorrenze> termini;
+
+    /**
+     * I documenti indicizzati e non ancora rimossi, per {@link Messaggio}
+     */
+    private final IdentityHashMap<Messaggio, Documento> documenti;
+
+    /**
+     * Il numero del prossimo documento indicizzato
+     */
+    private int prossimoNumero;
+
+    /**
+     * Crea un {@link IndiceTestuale} vuoto
+     */
+    public IndiceTestuale() {
+        this.termini = new HashMap<>();
+        this.documenti = new IdentityHashMap<>();
+    }
+
+    /**
+     * Suddivide un testo nei suoi termini: sequenze di lettere e cifre, convertite in minuscolo e senza ripetizioni
+     * @param testo il testo da suddividere
+     * @return i termini del testo, nell'ordine in cui compaiono
+     */
+    public static Set<String> termini(String testo) {
+        Set<String> termini = new LinkedHashSet<>();
+        if(testo == null) return termini;
+        StringBuilder termine = new StringBuilder();
+        for(int i = 0; i <= testo.length(); i++) {
+            char carattere = i < testo.length() ? testo.charAt(i) : ' ';
+            if(Character.isLetterOrDigit(carattere)) {
+                termine.append(Character.toLowerCase(carattere));
+            } else if(!termine.isEmpty()) {
+                termini.add(termine.toString());
+                termine.setLength(0);
+            }
+        }
+        return termini;
+    }
+
+    /**
+     * Indicizza un {@link Messaggio}. I messaggi di <code>acknowledge</code> e quelli già indicizzati vengono ignorati.
+     * @param messaggio il messaggio da indicizzare
+     */
+    public synchronized void aggiungi(Messaggio messaggio) {
+        if(messaggio.isACK() || documenti.containsKey(messaggio)) return;
+        Set<String> terminiMessaggio = termini(messaggio.getMsg());
+        if(terminiMessaggio.isEmpty()) return;
+
+        Documento documento = new Documento(prossimoNumero++, messaggio, messaggio.getUtente() != null ? messaggio.getUtente().getIDutente() : null);
+        documenti.put(messaggio, documento);
+        for(String termine : terminiMessaggio) {
+            termini.computeIfAbsent(termine, t -> new Occorrenze()).aggiungi(documento);
+        }
+    }
+
+    /**
+     * Rimuove un {@link Messaggio} dall'indice, compattando le liste di occorrenze in cui i messaggi rimossi superano la metà
+     * @param messaggio il messaggio da rimuovere
+     */
+    public synchronized void rimuovi(Messaggio messaggio) {
+        Documento documento = documenti.remove(messaggio);
+        if(documento == null) return;
+        documento.rimosso = true;
+        for(String termine : termini(messaggio.getMsg())) {
+            Occorrenze occorrenze = termini.get(termine);
+            if(occorrenze == null || ++occorrenze.rimossi * 2 <= occorrenze.dimensione) continue;
+            occorrenze.compatta();
+            if(occorrenze.dimensione == 0) termini.remove(termine);
+        }
+    }
+
+    /**
+     * Cerca i messaggi che contengono tutti i termini di un testo, dal più recente
+     * @param testo i termini da cercare
+     * @param UUIDmittente l'identificativo univoco del mittente dei messaggi, <code>null</code> per qualsiasi mittente
+     * @param massimo il numero massimo di risultati
+     * @return i messaggi trovati, dal più recente
+     */
+    public synchronized List<Messaggio> cerca(String testo, String UUIDmittente, int massimo) {
+        List<Messaggio> risultati = new ArrayList<>();
+        Set<String> terminiRicerca = termini(testo);
+        if(terminiRicerca.isEmpty() || massimo <= 0) return risultati;
+
+        Occorrenze[] liste = new Occorrenze[terminiRicerca.size()];
+        int i = 0;
+        for(String termine : terminiRicerca) {
+            liste[i] = termini.get(termine);
+            if(liste[i++] == null) return risultati;
+        }
+        Arrays.sort(liste, Comparator.comparingInt(occorrenze -> occorrenze.dimensione - occorrenze.rimossi));
+
+        Occorrenze piuCorta = liste[0];
+        for(int j = piuCorta.dimensione - 1; j >= 0 && risultati.size() < massimo; j--) {
+            Documento candidato = piuCorta.documenti[j];
+            if(candidato.rimosso || (UUIDmittente != null && !UUIDmittente.equals(candidato.mittente))) continue;
+            boolean trovato = true;
+            for(int k = 1; k < liste.length && trovato; k++) trovato = liste[k].contiene(candidato);
+            if(trovato) risultati.add(candidato.messaggio);
+        }
+        return risultati;
+    }
+
+    /**
+     * Restituisce il numero di messaggi indicizzati
+     * @return il numero di messaggi indicizzati
+     */
+    public synchronized int getNumeroMessaggi() {
+        return documenti.size();
+    }
+
+    /**
+     * Restituisce il numero di termini distinti indicizzati
+     * @return il numero di termini
+     */
+    public synchronized int getNumeroTermini() {
+        return termini.size();
+    }
+}
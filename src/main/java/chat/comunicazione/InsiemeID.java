@@ -0,0 +1,245 @@
+package chat.comunicazione;
+
+import chat.eccezioni.MsgException;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Rappresentazione compatta di un insieme di <code>ID</code> di {@link Messaggio}, utilizzata dai messaggi di <code>acknowledge</code> cumulativi e dalle {@link RichiestaRitrasmissione} per i numeri di sequenza mancanti.
+ * <p>
+ * L'insieme comprende tutti gli <code>ID</code> dell'intervallo {@link #getBase()} - {@link #getUltimoContiguo()} e, per ciascun bit <code>i</code> impostato nella {@link #bitmap}, l'<code>ID</code> <code>ultimoContiguo + 1 + i</code>.
+ * <p>
+ * Dalla versione <code>v1.1</code> l'intervallo contiguo comprende al più {@link #INTERVALLO_MASSIMO} <code>ID</code>, come la {@link #bitmap}: un insieme ricevuto dalla rete non può quindi
+ * imporre a chi lo scorre un costo superiore a <code>2 * INTERVALLO_MASSIMO</code> <code>ID</code>. Gli <code>ID</code> contigui più numerosi vengono suddivisi da {@link #da(SortedSet)} in più insiemi.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+public class InsiemeID implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Il numero massimo di <code>long</code> della {@link #bitmap}
+     */
+    public static final int BITMAP_MASSIMA = 16;
+
+    /**
+     * Il numero massimo di <code>ID</code> dell'intervallo contiguo, pari a quelli rappresentabili dalla {@link #bitmap} e alla {@link Cronologia#DIMENSIONE_FINESTRA}
+     */
+    public static final int INTERVALLO_MASSIMO = BITMAP_MASSIMA * 64;
+
+    /**
+     * Il primo <code>ID</code> dell'insieme
+     */
+    private final int base;
+
+    /**
+     * L'<code>ID</code> più alto tale che tutti gli <code>ID</code> a partire da {@link #base} appartengono all'insieme
+     */
+    private final int ultimoContiguo;
+
+    /**
+     * Gli <code>ID</code> successivi a {@link #ultimoContiguo}, non contigui
+     */
+    private final long[] bitmap;
+
+    /**
+     * Crea un {@link InsiemeID}
+     * @param base il primo <code>ID</code> dell'insieme
+     * @param ultimoContiguo l'<code>ID</code> più alto dell'intervallo contiguo a partire da <code>base</code>
+     * @param bitmap gli <code>ID</code> successivi a <code>ultimoContiguo</code>
+     * @throws IllegalArgumentException se l'intervallo o la <code>bitmap</code> non sono validi
+     */
+    public InsiemeID(final int base, final int ultimoContiguo, final long[] bitmap) throws IllegalArgumentException {
+        if(!intervalloValido(base, ultimoContiguo)) throw new IllegalArgumentException("Intervallo di ID non valido: " + base + "-" + ultimoContiguo);
+        if(bitmap == null || bitmap.length > BITMAP_MASSIMA) throw new IllegalArgumentException("Bitmap di ID non valida");
+        this.base = base;
+        this.ultimoContiguo = ultimoContiguo;
+        this.bitmap = bitmap;
+    }
+
+    /**
+     * Suddivide un insieme ordinato di <code>ID</code> nel minor numero di {@link InsiemeID}
+     * @param IDs gli <code>ID</code> da rappresentare
+     * @return l'elenco degli {@link InsiemeID} che rappresentano gli <code>ID</code> forniti
+     */
+    public static List<InsiemeID> da(SortedSet<Integer> IDs) {
+        List<InsiemeID> insiemi = new ArrayList<>();
+        Iterator<Integer> iteratore = IDs.iterator();
+        Integer prossimo = iteratore.hasNext() ? iteratore.next() : null;
+
+        while(prossimo != null) {
+            int base = prossimo;
+            int ultimoContiguo = base;
+            prossimo = iteratore.hasNext() ? iteratore.next() : null;
+            while(prossimo != null && prossimo == ultimoContiguo + 1 && ultimoContiguo - base + 1 < INTERVALLO_MASSIMO) {
+                ultimoContiguo = prossimo;
+                prossimo = iteratore.hasNext() ? iteratore.next() : null;
+            }
+
+            long[] bitmap = new long[BITMAP_MASSIMA];
+            int bitUsati = 0;
+            while(prossimo != null && (long) prossimo - ultimoContiguo - 1 < BITMAP_MASSIMA * 64L) {
+                int bit = prossimo - ultimoContiguo - 1;
+                bitmap[bit >>> 6] |= 1L << (bit & 63);
+                bitUsati = bit + 1;
+                prossimo = iteratore.hasNext() ? iteratore.next() : null;
+            }
+            insiemi.add(new InsiemeID(base, ultimoContiguo, Arrays.copyOf(bitmap, (bitUsati + 63) >>> 6)));
+        }
+        return insiemi;
+    }
+
+    /**
+     * Restituisce la dimensione in byte dell'insieme codificato con il metodo {@link #scrivi(ByteBuffer)}
+     * @return la dimensione codificata
+     */
+    public int dimensioneCodificata() {
+        return 4 + 4 + 1 + bitmap.length * 8;
+    }
+
+    /**
+     * Codifica l'insieme: <code>base</code> e <code>ultimoContiguo</code> (4 byte ciascuno), numero di elementi della <code>bitmap</code> (1 byte) e la <code>bitmap</code> (8 byte per elemento)
+     * @param buffer il buffer di destinazione
+     */
+    public void scrivi(ByteBuffer buffer) {
+        buffer.putInt(base);
+        buffer.putInt(ultimoContiguo);
+        buffer.put((byte) bitmap.length);
+        for(long parola : bitmap) buffer.putLong(parola);
+    }
+
+    /**
+     * Decodifica un insieme codificato con il metodo {@link #scrivi(ByteBuffer)}
+     * @param buffer il buffer da cui leggere
+     * @return l'insieme decodificato
+     * @throws MsgException se l'insieme codificato non è valido
+     * @throws java.nio.BufferUnderflowException se il buffer non contiene l'intero insieme
+     */
+    public static InsiemeID leggi(ByteBuffer buffer) throws MsgException {
+        int base = buffer.getInt();
+        int ultimoContiguo = buffer.getInt();
+        long[] bitmap = new long[Byte.toUnsignedInt(buffer.get())];
+        if(bitmap.length > BITMAP_MASSIMA || !intervalloValido(base, ultimoContiguo)) throw new MsgException("Insieme di ID non valido");
+        for(int i = 0; i < bitmap.length; i++) bitmap[i] = buffer.getLong();
+        return new InsiemeID(base, ultimoContiguo, bitmap);
+    }
+
+    /**
+     * Verifica un insieme decodificato con la serializzazione Java, che non invoca il costruttore
+     * @param input lo stream da cui leggere
+     * @throws IOException se si verifica un errore nella lettura
+     * @throws ClassNotFoundException se una classe serializzata non è disponibile
+     * @throws InvalidObjectException se l'insieme non è valido
+     */
+    @Serial
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+        if(bitmap == null || bitmap.length > BITMAP_MASSIMA || !intervalloValido(base, ultimoContiguo)) throw new InvalidObjectException("Insieme di ID non valido");
+    }
+
+    /**
+     * Verifica che l'intervallo contiguo non sia vuoto e comprenda al più {@link #INTERVALLO_MASSIMO} <code>ID</code>
+     * @param base il primo <code>ID</code> dell'intervallo
+     * @param ultimoContiguo l'ultimo <code>ID</code> dell'intervallo
+     * @return <code>true</code> se l'intervallo è valido
+     */
+    private static boolean intervalloValido(int base, int ultimoContiguo) {
+        return ultimoContiguo >= base && (long) ultimoContiguo - base < INTERVALLO_MASSIMO;
+    }
+
+    /**
+     * Restituisce il primo <code>ID</code> dell'insieme
+     * @return il primo <code>ID</code> dell'insieme
+     */
+    public int getBase() {
+        return base;
+    }
+
+    /**
+     * Restituisce l'<code>ID</code> più alto dell'intervallo contiguo a partire da {@link #getBase()}
+     * @return l'ultimo <code>ID</code> contiguo
+     */
+    public int getUltimoContiguo() {
+        return ultimoContiguo;
+    }
+
+    /**
+     * Restituisce una copia della {@link #bitmap} degli <code>ID</code> non contigui
+     * @return la bitmap degli <code>ID</code> non contigui
+     */
+    public long[] getBitmap() {
+        return bitmap.clone();
+    }
+
+    /**
+     * Verifica se un <code>ID</code> appartiene all'insieme
+     * @param ID l'<code>ID</code> da verificare
+     * @return <code>true</code> se l'<code>ID</code> appartiene all'insieme, <code>false</code> altrimenti
+     */
+    public boolean contiene(int ID) {
+        if(ID >= base && ID <= ultimoContiguo) return true;
+        long bit = (long) ID - ultimoContiguo - 1;
+        return bit >= 0 && bit < bitmap.length * 64L && (bitmap[(int) (bit >>> 6)] & (1L << (bit & 63))) != 0;
+    }
+
+    /**
+     * Esegue l'operazione fornita per ciascun <code>ID</code> dell'insieme, in ordine crescente
+     * @param operazione l'operazione da eseguire
+     */
+    public void perOgni(IntConsumer operazione) {
+        perOgni(Integer.MIN_VALUE, Integer.MAX_VALUE, operazione);
+    }
+
+    /**
+     * Esegue l'operazione fornita per ciascun <code>ID</code> dell'insieme compreso tra <code>minimo</code> e <code>massimo</code>, in ordine crescente.
+     * Gli <code>ID</code> contigui esterni all'intervallo non vengono scorsi.
+     * @param minimo il primo <code>ID</code> ammesso
+     * @param massimo l'ultimo <code>ID</code> ammesso
+     * @param operazione l'operazione da eseguire
+     */
+    public void perOgni(int minimo, int massimo, IntConsumer operazione) {
+        long fine = Math.min(ultimoContiguo, massimo);
+        for(long ID = Math.max(base, minimo); ID <= fine; ID++) operazione.accept((int) ID);
+        for(int i = 0; i < bitmap.length; i++) {
+            long parola = bitmap[i];
+            while(parola != 0) {
+                long ID = (long) ultimoContiguo + 1 + (i << 6) + Long.numberOfTrailingZeros(parola);
+                if(ID > massimo) return;
+                if(ID >= minimo) operazione.accept((int) ID);
+                parola &= parola - 1;
+            }
+        }
+    }
+
+    /**
+     * Restituisce il numero di <code>ID</code> dell'insieme
+     * @return il numero di <code>ID</code> dell'insieme
+     */
+    public int dimensione() {
+        long dimensione = (long) ultimoContiguo - base + 1;
+        for(long parola : bitmap) dimensione += Long.bitCount(parola);
+        return (int) Math.min(dimensione, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public String toString() {
+        String insieme = base == ultimoContiguo ? String.valueOf(base) : base + "-" + ultimoContiguo;
+        long nonContigui = dimensione() - ((long) ultimoContiguo - base + 1);
+        if(nonContigui > 0) insieme += " (+" + nonContigui + " fuori sequenza)";
+        return insieme;
+    }
+}
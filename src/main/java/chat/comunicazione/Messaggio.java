@@ -3,12 +3,18 @@ package chat.comunicazione;
 import chat.eccezioni.MsgException;
 import chat.eccezioni.NoSuchUserException;
 import chat.eccezioni.ProtocolException;
+import chat.gestione.EventiChat;
+import chat.gestione.Orologio;
 import chat.utenze.Rubrica;
 import chat.utenze.Utente;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * Generico messaggio scambiato in una comunicazione di rete tra end-point {@link chat.host.MulticastPeer}.
@@ -20,15 +26,63 @@ import java.time.format.DateTimeFormatter;
  * L'attributo {@link #utente} contiene l'oggetto <code>utente</code> che ha generato il <code>messaggio</code>, mentre il metodo {@link #isMsgGruppo()} permette di identificare messaggi provenienti da gruppi di <code>host</code>.
  * <p>
  * Dalla versione <code>v1.2</code> è necessario specificare per ciascun <code>messaggio</code> il {@link Protocollo} impiegato per il suo invio e ricezione. 
+ * <p>
+ * Dalla versione <code>v1.3</code> la codifica in rete è demandata a un {@link CodecMessaggio}, di default il {@link CodecBinario}.
+ * <p>
+ * Dalla versione <code>v1.4</code> un messaggio di <code>acknowledge</code> trasporta l'<code>ID</code> confermato come intero ({@link #getIDconfermato()}) e il contatore degli <code>ACK</code> ricevuti è aggiornato in modo atomico, senza lock.
+ * <p>
+ * Dalla versione <code>v1.6</code> un messaggio inviato può registrare le conferme di ciascun destinatario in un insieme di {@link ConfermeDestinatari}, indicizzato per <code>slot</code> della {@link Rubrica}: gli <code>ACK</code> duplicati non vengono conteggiati e i destinatari mancanti sono noti.
+ * <p>
+ * Dalla versione <code>v1.8</code> è possibile attendere un numero minimo di <code>ACK</code> di un messaggio inviato con {@link #attendiConferme(int)}.
+ * <p>
+ * Dalla versione <code>v1.9</code> gli <code>ACK</code> attesi diminuiscono quando un destinatario lascia il gruppo prima di confermare il messaggio: vedi {@link #esonera(int)}.
+ * Gli <code>ACK</code> e gli esoneri restituiscono un {@link EsitoACK}, che distingue l'unica invocazione che ha completato gli <code>ACK</code> attesi.
+ * <p>
+ * Dalla versione <code>v1.10</code> l'{@link #orologio()} delle marche temporali è impostabile con {@link #setOrologio(Orologio)}, ad esempio con quello virtuale di una {@link chat.host.ReteSimulata}.
  *     
  * @author Matteo Bagnoletti Tini
- * @version 1.2
+ * @version 1.10
  * @project MulticastUDPSocketChat
  */
 public class Messaggio implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Il {@link CodecMessaggio} utilizzato per la codifica dei messaggi in output
+     */
+    private static volatile CodecMessaggio codec = new CodecBinario();
+
+    /**
+     * L'{@link Orologio} da cui derivano le marche temporali, di default quello di sistema
+     */
+    private static volatile Orologio tempo = Orologio.SISTEMA;
+
+    /**
+     * I {@link CodecMessaggio} riconosciuti in input, indipendentemente dal {@link #codec} scelto per l'output
+     */
+    private static final CodecMessaggio[] CODEC_INPUT = { new CodecBinario(), new CodecSerializzazione() };
+
+    /**
+     * Esito della registrazione di un <code>ACK</code> o dell'esonero di un destinatario
+     */
+    public enum EsitoACK {
+        /**
+         * <code>ACK</code> duplicato, non atteso o giunto dopo tutti quelli attesi, oppure destinatario non atteso: nulla è cambiato
+         */
+        IGNORATO,
+
+        /**
+         * <code>ACK</code> conteggiato o destinatario esonerato, senza completare gli <code>ACK</code> attesi o dopo che un'altra invocazione li aveva già completati
+         */
+        REGISTRATO,
+
+        /**
+         * <code>ACK</code> conteggiato o destinatario esonerato, che ha completato gli <code>ACK</code> attesi: restituito a una sola invocazione per messaggio
+         */
+        COMPLETATO
+    }
+
     /**
      * L'identificativo univoco incrementale del messaggio
      */
@@ -62,12 +116,32 @@ public class Messaggio implements Serializable {
     /**
      * Il numero di ACK ricevuti
      */
-    private int contaACK;
+    private volatile int contaACK;
+
+    /**
+     * Aggiornamento atomico di {@link #contaACK}
+     */
+    private static final AtomicIntegerFieldUpdater<Messaggio> CONTA_ACK = AtomicIntegerFieldUpdater.newUpdater(Messaggio.class, "contaACK");
+
+    /**
+     * Il numero di ACK attesi, ridotto dai destinatari esonerati con {@link #esonera(int)}
+     */
+    private volatile int targetACK;
+
+    /**
+     * Aggiornamento atomico di {@link #targetACK}
+     */
+    private static final AtomicIntegerFieldUpdater<Messaggio> TARGET_ACK = AtomicIntegerFieldUpdater.newUpdater(Messaggio.class, "targetACK");
+
+    /**
+     * Vale <code>1</code> dopo che un'invocazione ha restituito {@link EsitoACK#COMPLETATO}, <code>0</code> altrimenti
+     */
+    private transient volatile int completato;
 
     /**
-     * Il numero di ACK attesi
+     * Aggiornamento atomico di {@link #completato}
      */
-    private final int targetACK;
+    private static final AtomicIntegerFieldUpdater<Messaggio> COMPLETATO = AtomicIntegerFieldUpdater.newUpdater(Messaggio.class, "completato");
 
     /**
      * Protocollo e tipologia di comunicazione utilizzato. Inserito per scopi futuri.
@@ -78,6 +152,61 @@ public class Messaggio implements Serializable {
      * L'orario esatto in cui il messaggio è stato generato
      */
     private final LocalTime timestamp;
+
+    /**
+     * Gli <code>ID</code> confermati da un <code>ACK</code> cumulativo, <code>null</code> per tutti gli altri messaggi
+     */
+    private final InsiemeID conferme;
+
+    /**
+     * Il numero di sequenza del messaggio multicast affidabile, assegnato in modo monotono dal mittente. <code>0</code> se il messaggio non è in sequenza.
+     * @see Cronologia#getNuovaSequenza()
+     */
+    private final int sequenza;
+
+    /**
+     * L'<code>ID</code> del messaggio confermato da un <code>ACK</code> singolo, <code>0</code> per tutti gli altri messaggi
+     */
+    private final int IDconfermato;
+
+    /**
+     * La marca temporale ad alta risoluzione, in microsecondi dell'{@link #orologio()} del mittente originale: per i messaggi ricevuti è l'istante di trasmissione assegnato dal {@link CodecBinario}, per gli <code>ACK</code> è la marca del messaggio confermato, restituita in eco.
+     * <code>0</code> se non disponibile.
+     */
+    private final long marcaTemporale;
+
+    /**
+     * Il tempo, in microsecondi, trascorso tra la ricezione del messaggio confermato e la creazione dell'<code>ACK</code>, da sottrarre alla misura dell'<code>RTT</code>. <code>0</code> per tutti gli altri messaggi.
+     */
+    private final int ritardoACK;
+
+    /**
+     * L'istante di ricezione, in microsecondi dell'{@link #orologio()} locale, per il calcolo del {@link #ritardoACK}. <code>0</code> per i messaggi non ricevuti. Non viene trasmesso.
+     */
+    private transient long istanteRicezione;
+
+    /**
+     * L'istante, in nanosecondi, in cui il messaggio è stato memorizzato per l'invio, per la misura della latenza degli <code>ACK</code>. Non viene trasmesso.
+     * @see Cronologia#storicizzaMessaggio(Messaggio)
+     */
+    private transient volatile long istanteInvio;
+
+    /**
+     * Le conferme attese e ricevute da ciascun destinatario, <code>null</code> se viene conteggiato il solo numero di <code>ACK</code>. Non vengono trasmesse.
+     * @see #ACK(int)
+     */
+    private final transient ConfermeDestinatari destinatari;
+
+    /**
+     * Il numero di <code>ACK</code> al cui raggiungimento viene completata l'{@link #attesaConferme}. Non viene trasmesso.
+     */
+    private transient volatile int quorum;
+
+    /**
+     * Il {@link CompletableFuture} completato al raggiungimento del {@link #quorum}, <code>null</code> se non richiesto. Non viene trasmesso.
+     * @see #attendiConferme(int)
+     */
+    private transient volatile CompletableFuture<Messaggio> attesaConferme;
     
     /**
      * Crea un'istanza di {@link Messaggio}
@@ -91,15 +220,58 @@ public class Messaggio implements Serializable {
      * @throws ProtocolException se il parametro <code>protocollo</code> non è un valido {@link Protocollo}
      */
     public Messaggio(final int ID, final Utente utente, int portaMittente, final int targetACK, final String msg, final boolean isDaGruppo, final Enum<?> protocollo) throws ProtocolException {
+        this(ID, utente, portaMittente, targetACK, msg, isDaGruppo, protocollo, 0);
+    }
+
+    /**
+     * Crea un'istanza di {@link Messaggio} multicast affidabile, identificato da un numero di sequenza
+     * @param ID l'ID univoco incrementale del messaggio
+     * @param utente l'utente mittente del messaggio
+     * @param portaMittente il numero di porta su cui il mittente è in ascolto per eventuali datagrammi unicast
+     * @param targetACK il numero di ACK attesi
+     * @param msg il contenuto del messaggio
+     * @param isDaGruppo indica se il messaggio proviene da {@link chat.host.GroupChat}
+     * @param protocollo il {@link Protocollo} utilizzato per l'invio e la ricezione del <code>messaggio</code>
+     * @param sequenza il numero di sequenza del messaggio, <code>0</code> se non in sequenza
+     * @throws ProtocolException se il parametro <code>protocollo</code> non è un valido {@link Protocollo}
+     */
+    public Messaggio(final int ID, final Utente utente, int portaMittente, final int targetACK, final String msg, final boolean isDaGruppo, final Enum<?> protocollo, final int sequenza) throws ProtocolException {
+        this(ID, utente, portaMittente, targetACK, null, msg, isDaGruppo, protocollo, sequenza);
+    }
+
+    /**
+     * Crea un'istanza di {@link Messaggio} che registra le conferme di ciascun destinatario, identificato dal proprio <code>slot</code> della {@link Rubrica}
+     * @param ID l'ID univoco incrementale del messaggio
+     * @param utente l'utente mittente del messaggio
+     * @param portaMittente il numero di porta su cui il mittente è in ascolto per eventuali datagrammi unicast
+     * @param destinatari gli slot dei destinatari da cui sono attesi gli ACK
+     * @param msg il contenuto del messaggio
+     * @param isDaGruppo indica se il messaggio proviene da {@link chat.host.GroupChat}
+     * @param protocollo il {@link Protocollo} utilizzato per l'invio e la ricezione del <code>messaggio</code>
+     * @param sequenza il numero di sequenza del messaggio, <code>0</code> se non in sequenza
+     * @throws ProtocolException se il parametro <code>protocollo</code> non è un valido {@link Protocollo}
+     * @see Rubrica#destinatari()
+     */
+    public Messaggio(final int ID, final Utente utente, int portaMittente, final BitSet destinatari, final String msg, final boolean isDaGruppo, final Enum<?> protocollo, final int sequenza) throws ProtocolException {
+        this(ID, utente, portaMittente, destinatari.cardinality(), new ConfermeDestinatari(destinatari), msg, isDaGruppo, protocollo, sequenza);
+    }
+
+    private Messaggio(final int ID, final Utente utente, int portaMittente, final int targetACK, final ConfermeDestinatari destinatari, final String msg, final boolean isDaGruppo, final Enum<?> protocollo, final int sequenza) throws ProtocolException {
         this.ID = ID;
         this.utente = utente;
         this.portaMittente = portaMittente;
         this.ACK = false;
         this.targetACK = targetACK;
+        this.destinatari = destinatari;
         this.contaACK = 0;
         this.msg = msg;
         this.msgGruppo = isDaGruppo;
         this.timestamp = LocalTime.now();
+        this.conferme = null;
+        this.sequenza = sequenza;
+        this.IDconfermato = 0;
+        this.marcaTemporale = 0;
+        this.ritardoACK = 0;
         
         if(protocollo == null || protocollo.getClass().getEnclosingClass() == Protocollo.class){
             this.protocollo = protocollo;
@@ -116,20 +288,121 @@ public class Messaggio implements Serializable {
      * @param isACK indica se il messaggio è un ACK
      * @param msgID l'identificativo del messaggio di cui è ACK
      * @param protocollo il {@link Protocollo} utilizzato per l'invio e la ricezione del <code>messaggio</code>
-     * @throws MsgException se il messaggio non è ACK
+     * @throws MsgException se il messaggio non è ACK o l'identificativo non è numerico
      * @throws ProtocolException se il parametro <code>protocollo</code> non è un valido {@link Protocollo}
+     * @see #Messaggio(int, Utente, int, int, Enum)
      */
     public Messaggio(final int ID, final Utente utente, final int portaMittente, final boolean isACK, final String msgID, final Enum<?> protocollo) throws MsgException, ProtocolException {
+        this(ID, utente, portaMittente, IDdaTesto(isACK, msgID), protocollo);
+    }
+
+    /**
+     * Crea un'istanza di {@link Messaggio} di tipo <code>acknowledge</code> per un singolo messaggio
+     * @param ID l'identificativo univoco incrementale del messaggio
+     * @param utente il mittente del messaggio
+     * @param portaMittente il numero di porta su cui il mittente è in ascolto per eventuali datagrammi unicast
+     * @param IDconfermato l'identificativo del messaggio di cui è ACK
+     * @param protocollo il {@link Protocollo} utilizzato per l'invio e la ricezione del <code>messaggio</code>
+     * @throws ProtocolException se il parametro <code>protocollo</code> non è un valido {@link Protocollo}
+     */
+    public Messaggio(final int ID, final Utente utente, final int portaMittente, final int IDconfermato, final Enum<?> protocollo) throws ProtocolException {
+        this(ID, utente, portaMittente, IDconfermato, 0, 0, protocollo);
+    }
+
+    /**
+     * Crea un'istanza di {@link Messaggio} di tipo <code>acknowledge</code> per un singolo messaggio, che restituisce in eco la marca temporale del messaggio confermato per la misura dell'<code>RTT</code>
+     * @param ID l'identificativo univoco incrementale del messaggio
+     * @param utente il mittente del messaggio
+     * @param portaMittente il numero di porta su cui il mittente è in ascolto per eventuali datagrammi unicast
+     * @param IDconfermato l'identificativo del messaggio di cui è ACK
+     * @param marcaEco la {@link #getMarcaTemporale() marca temporale} del messaggio confermato
+     * @param ritardoACK il tempo, in microsecondi, trascorso dalla ricezione del messaggio confermato
+     * @param protocollo il {@link Protocollo} utilizzato per l'invio e la ricezione del <code>messaggio</code>
+     * @throws ProtocolException se il parametro <code>protocollo</code> non è un valido {@link Protocollo}
+     */
+    public Messaggio(final int ID, final Utente utente, final int portaMittente, final int IDconfermato, final long marcaEco, final int ritardoACK, final Enum<?> protocollo) throws ProtocolException {
+        this.ID = ID;
+        this.utente = utente;
+        this.portaMittente = portaMittente;
+        this.ACK = true;
+        this.targetACK = 0;
+        this.contaACK = 0;
+        this.msg = String.valueOf(IDconfermato);
+        this.msgGruppo = false;
+        this.timestamp = LocalTime.now();
+        this.conferme = null;
+        this.sequenza = 0;
+        this.IDconfermato = IDconfermato;
+        this.marcaTemporale = marcaEco;
+        this.ritardoACK = ritardoACK;
+        this.destinatari = null;
+
+        if(protocollo == null || protocollo.getClass().getEnclosingClass() == Protocollo.class){
+            this.protocollo = protocollo;
+        } else {
+            throw new ProtocolException("Il parametro " + protocollo + " non è un valido Protocollo");
+        }
+    }
+
+    /**
+     * Converte l'identificativo testuale di un <code>ACK</code> nel corrispondente intero
+     * @param isACK indica se il messaggio è un ACK
+     * @param msgID l'identificativo testuale
+     * @return l'identificativo del messaggio confermato
+     * @throws MsgException se il messaggio non è ACK o l'identificativo non è numerico
+     */
+    private static int IDdaTesto(final boolean isACK, final String msgID) throws MsgException {
         if(!isACK) throw new MsgException("Formato ACK non valido");
+        try {
+            return Integer.parseInt(msgID);
+        } catch (NumberFormatException e) {
+            throw new MsgException("Identificativo ACK non valido: " + msgID);
+        }
+    }
+
+    /**
+     * Crea un'istanza di {@link Messaggio} di tipo <code>acknowledge</code> cumulativo, che conferma con un unico messaggio tutti gli <code>ID</code> dell'{@link InsiemeID} fornito
+     * @param ID l'identificativo univoco incrementale del messaggio
+     * @param utente il mittente del messaggio
+     * @param portaMittente il numero di porta su cui il mittente è in ascolto per eventuali datagrammi unicast
+     * @param conferme gli identificativi dei messaggi di cui è ACK
+     * @param protocollo il {@link Protocollo} utilizzato per l'invio e la ricezione del <code>messaggio</code>
+     * @throws MsgException se l'insieme di <code>ID</code> è <code>null</code>
+     * @throws ProtocolException se il parametro <code>protocollo</code> non è un valido {@link Protocollo}
+     */
+    public Messaggio(final int ID, final Utente utente, final int portaMittente, final InsiemeID conferme, final Enum<?> protocollo) throws MsgException, ProtocolException {
+        this(ID, utente, portaMittente, conferme, 0, 0, protocollo);
+    }
+
+    /**
+     * Crea un'istanza di {@link Messaggio} di tipo <code>acknowledge</code> cumulativo, che restituisce in eco la marca temporale di uno dei messaggi confermati per la misura dell'<code>RTT</code>
+     * @param ID l'identificativo univoco incrementale del messaggio
+     * @param utente il mittente del messaggio
+     * @param portaMittente il numero di porta su cui il mittente è in ascolto per eventuali datagrammi unicast
+     * @param conferme gli identificativi dei messaggi di cui è ACK
+     * @param marcaEco la {@link #getMarcaTemporale() marca temporale} di uno dei messaggi confermati, <code>0</code> per nessuno
+     * @param ritardoACK il tempo, in microsecondi, trascorso dalla ricezione di tale messaggio
+     * @param protocollo il {@link Protocollo} utilizzato per l'invio e la ricezione del <code>messaggio</code>
+     * @throws MsgException se l'insieme di <code>ID</code> è <code>null</code>
+     * @throws ProtocolException se il parametro <code>protocollo</code> non è un valido {@link Protocollo}
+     */
+    public Messaggio(final int ID, final Utente utente, final int portaMittente, final InsiemeID conferme, final long marcaEco, final int ritardoACK, final Enum<?> protocollo) throws MsgException, ProtocolException {
+        if(conferme == null) throw new MsgException("Formato ACK cumulativo non valido");
         this.ID = ID;
         this.utente = utente;
         this.portaMittente = portaMittente;
         this.ACK = true;
         this.targetACK = 0;
         this.contaACK = 0;
-        this.msg = msgID;
+        this.msg = conferme.toString();
         this.msgGruppo = false;
         this.timestamp = LocalTime.now();
+        this.conferme = conferme;
+        this.sequenza = 0;
+        this.IDconfermato = 0;
+        this.marcaTemporale = marcaEco;
+        this.ritardoACK = ritardoACK;
+        this.destinatari = null;
 
         if(protocollo == null || protocollo.getClass().getEnclosingClass() == Protocollo.class){
             this.protocollo = protocollo;
@@ -138,6 +411,43 @@ public class Messaggio implements Serializable {
         }
     }
 
+    /**
+     * Ricostruisce un {@link Messaggio} ricevuto in rete, a partire dai valori decodificati da un {@link CodecMessaggio}
+     * @param ID l'identificativo univoco incrementale del messaggio
+     * @param utente il mittente del messaggio
+     * @param portaMittente il numero di porta su cui il mittente è in ascolto per eventuali datagrammi unicast
+     * @param isACK indica se il messaggio è un ACK
+     * @param targetACK il numero di ACK attesi
+     * @param msg il contenuto del messaggio
+     * @param isDaGruppo indica se il messaggio proviene da {@link chat.host.GroupChat}
+     * @param protocollo il {@link Protocollo} utilizzato per l'invio e la ricezione del <code>messaggio</code>
+     * @param timestamp l'orario in cui il messaggio è stato generato
+     * @param conferme gli identificativi confermati da un <code>ACK</code> cumulativo, <code>null</code> per tutti gli altri messaggi
+     * @param sequenza il numero di sequenza del messaggio, <code>0</code> se non in sequenza
+     * @param IDconfermato l'<code>ID</code> confermato da un <code>ACK</code> singolo, <code>0</code> per tutti gli altri messaggi
+     * @param marcaTemporale la marca temporale di trasmissione, o quella restituita in eco da un <code>ACK</code>
+     * @param ritardoACK il ritardo di un <code>ACK</code>, in microsecondi, <code>0</code> per tutti gli altri messaggi
+     */
+    Messaggio(final int ID, final Utente utente, final int portaMittente, final boolean isACK, final int targetACK, final String msg, final boolean isDaGruppo, final Enum<?> protocollo, final LocalTime timestamp, final InsiemeID conferme, final int sequenza, final int IDconfermato, final long marcaTemporale, final int ritardoACK) {
+        this.ID = ID;
+        this.utente = utente;
+        this.portaMittente = portaMittente;
+        this.ACK = isACK;
+        this.targetACK = targetACK;
+        this.contaACK = 0;
+        this.msg = msg;
+        this.msgGruppo = isDaGruppo;
+        this.protocollo = protocollo;
+        this.timestamp = timestamp;
+        this.conferme = conferme;
+        this.sequenza = sequenza;
+        this.IDconfermato = IDconfermato;
+        this.marcaTemporale = marcaTemporale;
+        this.ritardoACK = ritardoACK;
+        this.destinatari = null;
+        this.istanteRicezione = orologio();
+    }
+
     /**
      * Restituisce l'{@link #ID} univoco incrementale del <code>messaggio</code>
      * @return l'{@link #ID} univoco incrementale del <code>messaggio</code>
@@ -178,6 +488,36 @@ public class Messaggio implements Serializable {
         return ACK;
     }
 
+    /**
+     * Restituisce il numero di sequenza del messaggio multicast affidabile
+     * @return il numero di sequenza, <code>0</code> se il messaggio non è in sequenza
+     */
+    public int getSequenza() {
+        return sequenza;
+    }
+
+    /**
+     * Restituisce gli <code>ID</code> confermati da un <code>ACK</code> cumulativo
+     * @return gli <code>ID</code> confermati, <code>null</code> se il <code>messaggio</code> non è un <code>ACK</code> cumulativo
+     */
+    public InsiemeID getConferme() {
+        return conferme;
+    }
+
+    /**
+     * Restituisce l'<code>ID</code> del messaggio confermato da un <code>ACK</code> singolo.
+     * Per gli <code>ACK</code> ricevuti da <code>host</code> con il {@link CodecSerializzazione} di versioni precedenti, l'<code>ID</code> viene ricavato dal contenuto testuale.
+     * @return l'<code>ID</code> confermato, <code>0</code> se il messaggio non è un <code>ACK</code> singolo
+     */
+    public int getIDconfermato() {
+        if(IDconfermato != 0 || !ACK || conferme != null || msg == null) return IDconfermato;
+        try {
+            return Integer.parseInt(msg);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     /**
      * Restituisce il contenuto del <code>messaggio</code>
      * @return il contenuto del <code>messaggio</code>
@@ -227,7 +567,7 @@ public class Messaggio implements Serializable {
      * @return true se sono stati ottenuti tutti gli ACK richiesti
      */
     public int isInviatoCorrettamente() {
-        return contaACK == targetACK ? 1 : 0;
+        return contaACK >= targetACK ? 1 : 0;
     }
 
     /**
@@ -245,14 +585,161 @@ public class Messaggio implements Serializable {
     public String getTimestamp() {
         return this.timestamp.format(DateTimeFormatter.ofPattern("k:mm"));
     }
+
+    /**
+     * Restituisce l'orario esatto, non formattato, in cui il <code>messaggio</code> è stato generato
+     * @return l'orario esatto in cui il <code>messaggio</code> è stato generato
+     */
+    public LocalTime getOrario() {
+        return this.timestamp;
+    }
     
     /**
-     * Aumenta il contatore di ACK ricevuti fino al valore atteso, {@link #targetACK}.
+     * Restituisce l'orologio ad alta risoluzione utilizzato per le marche temporali, monotono ma significativo solo all'interno dello stesso processo
+     * @return l'istante corrente in microsecondi
+     * @see #setOrologio(Orologio)
+     */
+    public static long orologio() {
+        return tempo.adesso() / 1000;
+    }
+
+    /**
+     * Imposta l'{@link Orologio} da cui derivano le marche temporali e i tempi misurati attraverso {@link #orologio()}.
+     * L'orologio è condiviso da tutti i messaggi del processo: va impostato prima di avviare la comunicazione e deve essere lo stesso per tutti gli <code>host</code> che comunicano tra loro.
+     * @param orologio l'orologio da utilizzare, {@link Orologio#SISTEMA} per quello di sistema
+     * @throws IllegalArgumentException se l'<code>orologio</code> è <code>null</code>
+     */
+    public static void setOrologio(Orologio orologio) throws IllegalArgumentException {
+        if(orologio == null) throw new IllegalArgumentException("Orologio non valido: null");
+        Messaggio.tempo = orologio;
+    }
+
+    /**
+     * Restituisce la marca temporale ad alta risoluzione del <code>messaggio</code>
+     * @return l'istante di trasmissione per un messaggio ricevuto, la marca restituita in eco per un <code>ACK</code>, <code>0</code> se non disponibile
+     * @see #orologio()
+     */
+    public long getMarcaTemporale() {
+        return marcaTemporale;
+    }
+
+    /**
+     * Restituisce il tempo trascorso tra la ricezione del messaggio confermato e la creazione dell'<code>ACK</code>
+     * @return il ritardo in microsecondi, <code>0</code> se il messaggio non è un <code>ACK</code>
+     */
+    public int getRitardoACK() {
+        return ritardoACK;
+    }
+
+    /**
+     * Calcola il tempo trascorso dalla ricezione del <code>messaggio</code>, da riportare come ritardo nel relativo <code>ACK</code>
+     * @return il tempo trascorso in microsecondi, <code>0</code> se il messaggio non è stato ricevuto in rete
+     */
+    public int getTempoDallaRicezione() {
+        return istanteRicezione == 0 ? 0 : (int) Math.min(orologio() - istanteRicezione, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Registra l'istante in cui il messaggio è stato memorizzato per l'invio
+     * @param istanteInvio l'istante in nanosecondi, ottenuto dall'{@link Orologio} della {@link Cronologia}
+     */
+    void setIstanteInvio(long istanteInvio) {
+        this.istanteInvio = istanteInvio;
+    }
+
+    /**
+     * Restituisce l'istante in cui il messaggio è stato memorizzato per l'invio
+     * @return l'istante in nanosecondi, <code>0</code> per i messaggi ricevuti
+     */
+    long getIstanteInvio() {
+        return istanteInvio;
+    }
+
+    /**
+     * Aumenta in modo atomico il contatore di ACK ricevuti fino al valore atteso, {@link #targetACK}.
+     * @return {@link EsitoACK#COMPLETATO} se l'ACK ha completato quelli attesi, {@link EsitoACK#IGNORATO} se erano già stati ricevuti tutti gli ACK attesi, {@link EsitoACK#REGISTRATO} altrimenti
      * @see #contaACK
      * @see #targetACK
      */
-    public void ACK() {
-        this.contaACK += 1;
+    public EsitoACK ACK() {
+        int attuale;
+        do {
+            attuale = contaACK;
+            if(attuale >= targetACK) return EsitoACK.IGNORATO;
+        } while(!CONTA_ACK.compareAndSet(this, attuale, attuale + 1));
+        verificaQuorum(attuale + 1);
+        return verificaCompletamento();
+    }
+
+    /**
+     * Registra l'ACK di un destinatario. Se il messaggio registra le {@link ConfermeDestinatari}, il contatore viene incrementato solo alla prima conferma di un destinatario atteso;
+     * altrimenti si comporta come {@link #ACK()}.
+     * @param slot lo slot della {@link Rubrica} del mittente dell'ACK
+     * @return {@link EsitoACK#COMPLETATO} se l'ACK ha completato quelli attesi, {@link EsitoACK#IGNORATO} se l'ACK è duplicato, non atteso o se erano già stati ricevuti tutti gli ACK attesi,
+     * {@link EsitoACK#REGISTRATO} altrimenti
+     */
+    public EsitoACK ACK(int slot) {
+        if(destinatari == null) return ACK();
+        if(!destinatari.conferma(slot)) return EsitoACK.IGNORATO;
+        verificaQuorum(CONTA_ACK.incrementAndGet(this));
+        return verificaCompletamento();
+    }
+
+    /**
+     * Rinuncia alla conferma di un destinatario che non fa più parte del gruppo, ad esempio perché rimosso dalla {@link Rubrica} come guasto: il destinatario non è più atteso,
+     * né riparato, e il numero di <code>ACK</code> attesi diminuisce di <code>1</code>. Ha effetto solo se il messaggio registra le {@link ConfermeDestinatari}.
+     * @param slot lo slot della {@link Rubrica} del destinatario
+     * @return {@link EsitoACK#IGNORATO} se il destinatario non era atteso o aveva già confermato il messaggio, {@link EsitoACK#COMPLETATO} se l'esonero ha completato gli ACK attesi,
+     * {@link EsitoACK#REGISTRATO} altrimenti
+     */
+    public EsitoACK esonera(int slot) {
+        /* il bit del destinatario viene impostato come per una conferma, così che un suo ACK tardivo, o di un nuovo utente con lo stesso slot, non venga conteggiato */
+        if(destinatari == null || !destinatari.conferma(slot)) return EsitoACK.IGNORATO;
+        TARGET_ACK.decrementAndGet(this);
+        verificaQuorum(contaACK);
+        return verificaCompletamento();
+    }
+
+    /**
+     * Verifica, dopo un <code>ACK</code> o un esonero, se gli <code>ACK</code> ricevuti hanno raggiunto quelli attesi. Un <code>ACK</code> e un esonero concorrenti possono osservare
+     * entrambi il completamento: solo il primo che aggiorna {@link #completato} lo segnala.
+     * @return {@link EsitoACK#COMPLETATO} per la sola invocazione che ha segnalato il completamento, {@link EsitoACK#REGISTRATO} altrimenti
+     */
+    private EsitoACK verificaCompletamento() {
+        if(contaACK >= targetACK && COMPLETATO.compareAndSet(this, 0, 1)) return EsitoACK.COMPLETATO;
+        return EsitoACK.REGISTRATO;
+    }
+
+    /**
+     * Richiede la notifica del raggiungimento di un numero minimo di <code>ACK</code>. Da invocare prima dell'invio, al più una volta per messaggio.
+     * @param quorum il numero di <code>ACK</code> da attendere, limitato a {@link #getTargetACK()}
+     * @return il {@link CompletableFuture} completato con il messaggio stesso al raggiungimento del quorum, immediatamente se già raggiunto
+     */
+    public CompletableFuture<Messaggio> attendiConferme(int quorum) {
+        CompletableFuture<Messaggio> attesa = new CompletableFuture<>();
+        this.quorum = Math.max(0, Math.min(quorum, targetACK));
+        this.attesaConferme = attesa;
+        verificaQuorum(contaACK);
+        return attesa;
+    }
+
+    /**
+     * Completa l'{@link #attesaConferme} se il numero di <code>ACK</code> ricevuti ha raggiunto il {@link #quorum}, limitato agli <code>ACK</code> ancora attesi
+     * @param contaACK il numero di <code>ACK</code> ricevuti
+     * @return il numero di <code>ACK</code> ricevuti
+     */
+    private int verificaQuorum(int contaACK) {
+        CompletableFuture<Messaggio> attesa = attesaConferme;
+        if(attesa != null && contaACK >= Math.min(quorum, targetACK)) attesa.complete(this);
+        return contaACK;
+    }
+
+    /**
+     * Restituisce le conferme attese e ricevute da ciascun destinatario
+     * @return le {@link ConfermeDestinatari}, <code>null</code> se viene conteggiato il solo numero di ACK
+     */
+    public ConfermeDestinatari getDestinatari() {
+        return destinatari;
     }
     
     /**
@@ -276,43 +763,99 @@ public class Messaggio implements Serializable {
     }
 
     /**
-     * Serializza il <code>messaggio</code> fornito
-     * @param messaggio il messaggio da serializzare
-     * @return l'array di byte del messaggio serializzato
-     * @throws MsgException se si verifica un problema durante la serializzazione o se il <code>messaggio</code> fornito è <code>null</code>
+     * Imposta il {@link CodecMessaggio} utilizzato per la codifica dei messaggi in output.
+     * La decodifica riconosce in ogni caso tutti i formati supportati.
+     * @param codec il codec da utilizzare
+     * @throws IllegalArgumentException se il <code>codec</code> è <code>null</code>
+     */
+    public static void setCodec(CodecMessaggio codec) throws IllegalArgumentException {
+        if(codec == null) throw new IllegalArgumentException("Codec non valido: null");
+        Messaggio.codec = codec;
+    }
+
+    /**
+     * Restituisce il {@link CodecMessaggio} utilizzato per la codifica dei messaggi in output
+     * @return il codec utilizzato
+     */
+    public static CodecMessaggio getCodec() {
+        return codec;
+    }
+
+    /**
+     * Codifica il <code>messaggio</code> fornito attraverso il {@link CodecMessaggio} impostato, emettendo un evento {@link EventiChat.Codifica}
+     * @param messaggio il messaggio da codificare
+     * @return l'array di byte del messaggio codificato
+     * @throws MsgException se si verifica un problema durante la codifica o se il <code>messaggio</code> fornito è <code>null</code>
      */
     public static byte[] configMsg(Messaggio messaggio) throws MsgException {
         if(messaggio == null) throw new MsgException("Impossibile serializzare un messaggio nullo");
-        try {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            ObjectOutputStream os = new ObjectOutputStream(outputStream);
-            os.writeObject(messaggio);
-            return outputStream.toByteArray();
-        } catch (IOException e) {
-            throw new MsgException("Errore nella serializzazione del messaggio");
+        EventiChat.Codifica evento = new EventiChat.Codifica();
+        evento.begin();
+        byte[] codificato = codec.codifica(messaggio);
+        if(evento.shouldCommit()) {
+            evento.msgID = messaggio.ID;
+            evento.mittente = messaggio.utente != null ? messaggio.utente.getIDutente() : null;
+            evento.ack = messaggio.isACK();
+            evento.dimensione = codificato.length;
+            evento.commit();
         }
+        return codificato;
     }
 
     /**
-     * Restituisce il messaggio ricevuto a partire da un array di byte serializzato
-     * @param arrayInput l'array di byte che rappresenta un <code>messaggio</code> serializzato
+     * Restituisce il messaggio ricevuto a partire da un array di byte codificato
+     * @param arrayInput l'array di byte che rappresenta un <code>messaggio</code> codificato
      * @return il messaggio originale
-     * @throws MsgException se si verifica un problema durante la serializzazione
+     * @throws MsgException se si verifica un problema durante la decodifica
      */
     public static Messaggio configMsg(byte[] arrayInput) throws MsgException {
+        if(arrayInput == null) throw new MsgException("Impossibile decodificare un messaggio nullo");
+        return configMsg(ByteBuffer.wrap(arrayInput));
+    }
+
+    /**
+     * Restituisce il messaggio ricevuto a partire dai byte compresi tra la <code>position</code> e il <code>limit</code> del buffer fornito.
+     * Il formato viene individuato tra quelli supportati dai {@link #CODEC_INPUT}. La decodifica emette un evento {@link EventiChat.Decodifica}, anche se non riuscita.
+     * @param dati il buffer che contiene il <code>messaggio</code> codificato
+     * @return il messaggio originale
+     * @throws MsgException se il formato non è riconosciuto o si verifica un problema durante la decodifica
+     */
+    public static Messaggio configMsg(ByteBuffer dati) throws MsgException {
+        EventiChat.Decodifica evento = new EventiChat.Decodifica();
+        evento.begin();
+        int dimensione = dati.remaining();
+        Messaggio messaggio;
         try {
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(arrayInput);
-            ObjectInputStream is = new ObjectInputStream(inputStream);
-            Object test = is.readObject();
-            if (test instanceof Messaggio){
-                return (Messaggio) test;
-            } else {
-                throw new MsgException("Il messaggio ricevuto non è valido");
+            messaggio = decodifica(dati);
+        } catch (MsgException e) {
+            if(evento.shouldCommit()) {
+                evento.dimensione = dimensione;
+                evento.errore = e.getMessage();
+                evento.commit();
             }
-        } catch (ClassNotFoundException e) {
-            throw new MsgException("Errore nella deserializzazione del messaggio: impossibile ricostruire il messaggio");
-        } catch (IOException e) {
-            throw new MsgException("Errore nella deserializzazione del messaggio: errore di I/O");
+            throw e;
+        }
+        if(evento.shouldCommit()) {
+            evento.msgID = messaggio.ID;
+            evento.mittente = messaggio.utente != null ? messaggio.utente.getIDutente() : null;
+            evento.ack = messaggio.isACK();
+            evento.sequenza = messaggio.getSequenza();
+            evento.dimensione = dimensione;
+            evento.commit();
+        }
+        return messaggio;
+    }
+
+    /**
+     * Decodifica un messaggio con il primo dei {@link #CODEC_INPUT} che ne riconosce il formato
+     * @param dati il buffer che contiene il <code>messaggio</code> codificato
+     * @return il messaggio originale
+     * @throws MsgException se il formato non è riconosciuto o si verifica un problema durante la decodifica
+     */
+    private static Messaggio decodifica(ByteBuffer dati) throws MsgException {
+        for(CodecMessaggio codecInput : CODEC_INPUT) {
+            if(codecInput.riconosce(dati)) return codecInput.decodifica(dati);
         }
+        throw new MsgException("Il messaggio ricevuto non è in un formato riconosciuto");
     }
 }
@@ -0,0 +1,167 @@
+package chat.comunicazione;
+
+import chat.eccezioni.MsgException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Datagramma che raccoglie più messaggi codificati, in modo da ridurre il numero di datagrammi inviati durante raffiche di messaggi brevi.
+ * <p>
+ * Il formato prevede l'intestazione comune del {@link CodecBinario} con <code>opcode</code> {@link CodecBinario#OP_PACCHETTO}, il numero di messaggi contenuti (2 byte) e, per ciascun messaggio, la sua lunghezza (4 byte) seguita dai suoi byte.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public class Pacchetto {
+
+    /**
+     * Dimensione dell'intestazione di un {@link Pacchetto}
+     */
+    public static final int DIMENSIONE_INTESTAZIONE = CodecBinario.DIMENSIONE_INTESTAZIONE + 2;
+
+    /**
+     * Dimensione del prefisso di lunghezza di ciascun messaggio
+     */
+    public static final int DIMENSIONE_PREFISSO = 4;
+
+    /**
+     * Il numero massimo di messaggi contenuti in un {@link Pacchetto}
+     */
+    public static final int MESSAGGI_MASSIMI = 0xFFFF;
+
+    /**
+     * I messaggi raccolti
+     */
+    private final List<byte[]> messaggi;
+
+    /**
+     * La dimensione massima del datagramma risultante
+     */
+    private final int capienza;
+
+    /**
+     * La dimensione del datagramma risultante con i messaggi raccolti
+     */
+    private int dimensione;
+
+    /**
+     * La somma degli istanti, in nanosecondi, in cui ciascun messaggio è stato aggiunto
+     */
+    private long sommaAccodamenti;
+
+    /**
+     * L'istante, in nanosecondi, in cui è stato aggiunto il primo messaggio
+     */
+    private long primoAccodamento;
+
+    /**
+     * Crea un {@link Pacchetto} vuoto
+     * @param capienza la dimensione massima del datagramma risultante
+     */
+    public Pacchetto(final int capienza) {
+        this.messaggi = new ArrayList<>();
+        this.capienza = capienza;
+        this.dimensione = DIMENSIONE_INTESTAZIONE;
+    }
+
+    /**
+     * Verifica se un messaggio della dimensione indicata può essere inserito in un {@link Pacchetto} vuoto
+     * @param lunghezza la dimensione del messaggio codificato
+     * @param capienza la dimensione massima del datagramma
+     * @return <code>true</code> se il messaggio può essere accorpato, <code>false</code> altrimenti
+     */
+    public static boolean accorpabile(int lunghezza, int capienza) {
+        return DIMENSIONE_INTESTAZIONE + DIMENSIONE_PREFISSO + lunghezza <= capienza;
+    }
+
+    /**
+     * Aggiunge un messaggio codificato, se c'è spazio sufficiente
+     * @param messaggio il messaggio codificato
+     * @return <code>true</code> se il messaggio è stato aggiunto, <code>false</code> se il {@link Pacchetto} è pieno
+     */
+    public boolean aggiungi(byte[] messaggio) {
+        if(messaggi.size() == MESSAGGI_MASSIMI || dimensione + DIMENSIONE_PREFISSO + messaggio.length > capienza) return false;
+        long adesso = System.nanoTime();
+        if(messaggi.isEmpty()) primoAccodamento = adesso;
+        messaggi.add(messaggio);
+        dimensione += DIMENSIONE_PREFISSO + messaggio.length;
+        sommaAccodamenti += adesso;
+        return true;
+    }
+
+    /**
+     * Verifica se il {@link Pacchetto} non contiene messaggi
+     * @return <code>true</code> se vuoto, <code>false</code> altrimenti
+     */
+    public boolean isVuoto() {
+        return messaggi.isEmpty();
+    }
+
+    /**
+     * Restituisce il numero di messaggi raccolti
+     * @return il numero di messaggi raccolti
+     */
+    public int getNumeroMessaggi() {
+        return messaggi.size();
+    }
+
+    /**
+     * Restituisce l'attesa complessiva, in nanosecondi, dei messaggi raccolti fino all'istante indicato
+     * @param adesso l'istante di invio, in nanosecondi
+     * @return la somma delle attese di ciascun messaggio
+     */
+    public long getAttesaComplessiva(long adesso) {
+        return adesso * messaggi.size() - sommaAccodamenti;
+    }
+
+    /**
+     * Restituisce l'attesa, in nanosecondi, del primo messaggio raccolto fino all'istante indicato
+     * @param adesso l'istante di invio, in nanosecondi
+     * @return l'attesa del primo messaggio
+     */
+    public long getAttesaMassima(long adesso) {
+        return messaggi.isEmpty() ? 0 : adesso - primoAccodamento;
+    }
+
+    /**
+     * Restituisce il datagramma da inviare. Un {@link Pacchetto} con un solo messaggio viene inviato come semplice messaggio.
+     * @return il datagramma da inviare
+     */
+    public byte[] getDatagramma() {
+        if(messaggi.size() == 1) return messaggi.getFirst();
+
+        ByteBuffer datagramma = ByteBuffer.allocate(dimensione);
+        CodecBinario.scriviIntestazione(datagramma, CodecBinario.OP_PACCHETTO);
+        datagramma.putShort((short) messaggi.size());
+        for(byte[] messaggio : messaggi) {
+            datagramma.putInt(messaggio.length);
+            datagramma.put(messaggio);
+        }
+        return datagramma.array();
+    }
+
+    /**
+     * Estrae i messaggi contenuti in un {@link Pacchetto} ricevuto, senza copiarne i byte
+     * @param dati il datagramma ricevuto, tra <code>position</code> e <code>limit</code> del buffer
+     * @return l'elenco dei messaggi contenuti, ciascuno come porzione del buffer originale
+     * @throws MsgException se il datagramma non è un {@link Pacchetto} valido
+     */
+    public static List<ByteBuffer> spacchetta(ByteBuffer dati) throws MsgException {
+        ByteBuffer pacchetto = dati.slice();
+        if(CodecBinario.leggiIntestazione(pacchetto) != CodecBinario.OP_PACCHETTO || pacchetto.remaining() < 2) throw new MsgException("Pacchetto non valido");
+
+        int numero = Short.toUnsignedInt(pacchetto.getShort());
+        List<ByteBuffer> messaggi = new ArrayList<>(numero);
+        for(int i = 0; i < numero; i++) {
+            if(pacchetto.remaining() < DIMENSIONE_PREFISSO) throw new MsgException("Pacchetto troncato");
+            int lunghezza = pacchetto.getInt();
+            if(lunghezza < 0 || lunghezza > pacchetto.remaining()) throw new MsgException("Lunghezza del messaggio non valida: " + lunghezza);
+            messaggi.add(pacchetto.slice(pacchetto.position(), lunghezza));
+            pacchetto.position(pacchetto.position() + lunghezza);
+        }
+        return messaggi;
+    }
+}
@@ -0,0 +1,21 @@
+package chat.comunicazione;
+
+/**
+ * Politica applicata dalla {@link Cronologia} ai messaggi meno recenti quando viene superato il limite di memoria
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ * @see Cronologia#setLimite(int, long, PoliticaEspulsione, java.nio.file.Path)
+ */
+public enum PoliticaEspulsione {
+
+    /**
+     * {@link PoliticaEspulsione} che scarta definitivamente i messaggi espulsi, mantenendone solo il conteggio nelle statistiche
+     */
+    SCARTA,
+
+    /**
+     * {@link PoliticaEspulsione} che trasferisce i messaggi espulsi su disco, in un {@link ArchivioCronologia}
+     */
+    ARCHIVIA
+}
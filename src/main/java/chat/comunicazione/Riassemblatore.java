@@ -0,0 +1,176 @@
+package chat.comunicazione;
+
+import chat.eccezioni.MsgException;
+import chat.gestione.ChatLogger;
+import chat.gestione.ChatLoggerType;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Ricompone i datagrammi suddivisi da un {@link Frammentatore}.
+ * <p>
+ * I frammenti vengono raccolti in una tabella indicizzata per mittente e identificativo del datagramma.
+ * Un datagramma incompleto viene scartato se non è completato entro il {@link #timeout} oppure se la memoria occupata dai frammenti in attesa supera la {@link #memoriaMassima}, a partire dai datagrammi meno recenti.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public class Riassemblatore {
+
+    /**
+     * Chiave della tabella di riassemblaggio
+     * @param IDmittente l'identificativo del {@link Frammentatore} mittente
+     * @param IDdatagramma l'identificativo del datagramma frammentato
+     */
+    private record Chiave(long IDmittente, int IDdatagramma) {}
+
+    /**
+     * Datagramma in attesa di essere completato
+     */
+    private static final class Parziale {
+        private final byte[][] frammenti;
+        private final long creazione;
+        private int ricevuti;
+        private int dimensione;
+
+        private Parziale(int totale, long creazione) {
+            this.frammenti = new byte[totale][];
+            this.creazione = creazione;
+        }
+    }
+
+    /**
+     * I datagrammi in attesa, in ordine di arrivo del primo frammento
+     */
+    private final LinkedHashMap<Chiave, Parziale> inAttesa;
+
+    /**
+     * Il tempo massimo, in millisecondi, per la ricezione di tutti i frammenti di un datagramma
+     */
+    private final long timeout;
+
+    /**
+     * La memoria massima, in byte, occupata dai frammenti in attesa
+     */
+    private final long memoriaMassima;
+
+    /**
+     * La memoria attualmente occupata dai frammenti in attesa
+     */
+    private long memoriaOccupata;
+
+    /**
+     * Il numero di datagrammi ricomposti
+     */
+    private long completati;
+
+    /**
+     * Il numero di datagrammi scartati per timeout o per superamento della memoria massima
+     */
+    private long scartati;
+
+    /**
+     * Crea un {@link Riassemblatore}
+     * @param timeout il tempo massimo, in millisecondi, per la ricezione di tutti i frammenti di un datagramma
+     * @param memoriaMassima la memoria massima, in byte, occupata dai frammenti in attesa
+     * @throws IllegalArgumentException se uno dei parametri non è positivo
+     */
+    public Riassemblatore(final long timeout, final long memoriaMassima) throws IllegalArgumentException {
+        if(timeout <= 0 || memoriaMassima <= 0) throw new IllegalArgumentException("Timeout e memoria massima devono essere positivi");
+        this.inAttesa = new LinkedHashMap<>();
+        this.timeout = timeout;
+        this.memoriaMassima = memoriaMassima;
+    }
+
+    /**
+     * Memorizza un frammento ricevuto
+     * @param dati il frammento, tra <code>position</code> e <code>limit</code> del buffer
+     * @return il datagramma ricomposto se il frammento era l'ultimo mancante, <code>null</code> altrimenti
+     * @throws MsgException se il frammento non è valido
+     */
+    public synchronized ByteBuffer aggiungi(ByteBuffer dati) throws MsgException {
+        ByteBuffer frammento = dati.slice();
+        if(CodecBinario.leggiIntestazione(frammento) != CodecBinario.OP_FRAMMENTO || frammento.remaining() < Frammentatore.DIMENSIONE_INTESTAZIONE - CodecBinario.DIMENSIONE_INTESTAZIONE) {
+            throw new MsgException("Frammento non valido");
+        }
+
+        long adesso = System.currentTimeMillis();
+        rimuoviScaduti(adesso);
+
+        Chiave chiave = new Chiave(frammento.getLong(), frammento.getInt());
+        int indice = Short.toUnsignedInt(frammento.getShort());
+        int totale = Short.toUnsignedInt(frammento.getShort());
+        if(totale == 0 || indice >= totale) throw new MsgException("Indice di frammento non valido: " + indice + " di " + totale);
+
+        Parziale parziale = inAttesa.get(chiave);
+        if(parziale == null) {
+            parziale = new Parziale(totale, adesso);
+            inAttesa.put(chiave, parziale);
+        } else if(parziale.frammenti.length != totale) {
+            throw new MsgException("Numero di frammenti non coerente per il datagramma " + chiave.IDdatagramma());
+        }
+
+        if(parziale.frammenti[indice] == null) {
+            byte[] contenuto = new byte[frammento.remaining()];
+            frammento.get(contenuto);
+            parziale.frammenti[indice] = contenuto;
+            parziale.ricevuti++;
+            parziale.dimensione += contenuto.length;
+            memoriaOccupata += contenuto.length;
+        }
+
+        if(parziale.ricevuti == totale) {
+            inAttesa.remove(chiave);
+            memoriaOccupata -= parziale.dimensione;
+            completati++;
+
+            ByteBuffer completo = ByteBuffer.allocate(parziale.dimensione);
+            for(byte[] contenuto : parziale.frammenti) completo.put(contenuto);
+            return completo.flip();
+        }
+
+        liberaMemoria();
+        return null;
+    }
+
+    /**
+     * Scarta i datagrammi il cui primo frammento è stato ricevuto da più del {@link #timeout}
+     * @param adesso l'istante corrente in millisecondi
+     */
+    private void rimuoviScaduti(long adesso) {
+        Iterator<Parziale> iteratore = inAttesa.values().iterator();
+        while(iteratore.hasNext()) {
+            Parziale parziale = iteratore.next();
+            if(adesso - parziale.creazione < timeout) break;
+            iteratore.remove();
+            memoriaOccupata -= parziale.dimensione;
+            scartati++;
+            ChatLogger.log("(Riassemblatore) datagramma incompleto scartato per timeout: {} frammenti di {}", ChatLoggerType.OPTIONAL, parziale.ricevuti, parziale.frammenti.length);
+        }
+    }
+
+    /**
+     * Scarta i datagrammi meno recenti finché la memoria occupata non rientra nella {@link #memoriaMassima}
+     */
+    private void liberaMemoria() {
+        Iterator<Parziale> iteratore = inAttesa.values().iterator();
+        while(memoriaOccupata > memoriaMassima && iteratore.hasNext()) {
+            Parziale parziale = iteratore.next();
+            iteratore.remove();
+            memoriaOccupata -= parziale.dimensione;
+            scartati++;
+            ChatLogger.log("(Riassemblatore) datagramma incompleto scartato per memoria insufficiente", ChatLoggerType.OPTIONAL);
+        }
+    }
+
+    /**
+     * Restituisce le statistiche di riassemblaggio
+     * @return le statistiche di riassemblaggio
+     */
+    public synchronized String getStatistiche() {
+        return "Datagrammi ricomposti: " + completati + " | Scartati: " + scartati + " | In attesa: " + inAttesa.size() + " (" + memoriaOccupata + " byte)";
+    }
+}
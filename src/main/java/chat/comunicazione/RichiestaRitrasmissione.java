@@ -0,0 +1,68 @@
+package chat.comunicazione;
+
+import chat.eccezioni.MsgException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Richiesta di ritrasmissione (<code>NACK</code>) dei messaggi multicast affidabili non ricevuti, inviata in unicast al mittente originale.
+ * <p>
+ * Il formato prevede l'intestazione comune del {@link CodecBinario} con <code>opcode</code> {@link CodecBinario#OP_NACK}, seguita da:
+ * <ol>
+ *     <li>l'<code>UUID</code> del richiedente (16 byte)</li>
+ *     <li>la porta unicast del richiedente (4 byte)</li>
+ *     <li>i numeri di sequenza mancanti, secondo il formato di {@link InsiemeID#scrivi(ByteBuffer)}</li>
+ * </ol>
+ *
+ * @param IDrichiedente l'identificativo univoco dell'utente che richiede la ritrasmissione
+ * @param portaRichiedente la porta unicast su cui il richiedente attende i messaggi ritrasmessi
+ * @param mancanti i numeri di sequenza mancanti
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @see RilevatoreLacune
+ * @project MulticastUDPSocketChat
+ */
+public record RichiestaRitrasmissione(String IDrichiedente, int portaRichiedente, InsiemeID mancanti) {
+
+    /**
+     * Codifica la {@link RichiestaRitrasmissione}
+     * @return il datagramma da inviare
+     * @throws MsgException se l'identificativo del richiedente non è un <code>UUID</code> valido
+     */
+    public byte[] codifica() throws MsgException {
+        UUID richiedente;
+        try {
+            richiedente = UUID.fromString(IDrichiedente);
+        } catch (IllegalArgumentException e) {
+            throw new MsgException("Identificativo utente non valido: " + IDrichiedente);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(CodecBinario.DIMENSIONE_INTESTAZIONE + 16 + 4 + mancanti.dimensioneCodificata());
+        CodecBinario.scriviIntestazione(buffer, CodecBinario.OP_NACK);
+        buffer.putLong(richiedente.getMostSignificantBits());
+        buffer.putLong(richiedente.getLeastSignificantBits());
+        buffer.putInt(portaRichiedente);
+        mancanti.scrivi(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Decodifica una {@link RichiestaRitrasmissione} ricevuta
+     * @param dati il datagramma ricevuto, tra <code>position</code> e <code>limit</code> del buffer
+     * @return la richiesta decodificata
+     * @throws MsgException se il datagramma non è una richiesta valida
+     */
+    public static RichiestaRitrasmissione decodifica(ByteBuffer dati) throws MsgException {
+        ByteBuffer buffer = dati.slice();
+        try {
+            if(CodecBinario.leggiIntestazione(buffer) != CodecBinario.OP_NACK) throw new MsgException("Richiesta di ritrasmissione non valida");
+            UUID richiedente = new UUID(buffer.getLong(), buffer.getLong());
+            int porta = buffer.getInt();
+            return new RichiestaRitrasmissione(richiedente.toString(), porta, InsiemeID.leggi(buffer));
+        } catch (BufferUnderflowException e) {
+            throw new MsgException("Richiesta di ritrasmissione troncata");
+        }
+    }
+}
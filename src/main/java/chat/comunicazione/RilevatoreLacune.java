@@ -0,0 +1,236 @@
+package chat.comunicazione;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.ToLongFunction;
+
+/**
+ * Rileva i messaggi multicast affidabili mancanti a partire dai numeri di sequenza ricevuti da ciascun mittente.
+ * <p>
+ * Per ciascun mittente viene memorizzato il prossimo numero di sequenza atteso e l'insieme dei numeri ricevuti fuori ordine.
+ * I numeri compresi tra il prossimo atteso e il più alto ricevuto, ma non ancora ricevuti, costituiscono una <code>lacuna</code> da richiedere al mittente con una {@link RichiestaRitrasmissione}.
+ * Trascorso il numero massimo di richieste senza progressi, la lacuna viene abbandonata.
+ * <p>
+ * La perdita degli ultimi messaggi di una raffica non è rivelata da alcun messaggio successivo: per questo il mittente annuncia periodicamente l'ultimo numero di sequenza inviato,
+ * registrato con {@link #annuncia(String, int)}, e i numeri annunciati ma non ancora ricevuti costituiscono anch'essi una lacuna.
+ * <p>
+ * Attraverso {@link #mancanti(String, long, long)} le richieste possono essere cadenzate sul timeout di ritrasmissione di ciascun mittente: una nuova richiesta viene restituita solo allo scadere del timeout, raddoppiato a ogni tentativo senza progressi.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.2
+ * @project MulticastUDPSocketChat
+ */
+public class RilevatoreLacune {
+
+    /**
+     * Esito della registrazione di un numero di sequenza
+     */
+    public enum Esito {
+        /**
+         * Messaggio mai ricevuto in precedenza, senza nuove lacune
+         */
+        NUOVO,
+
+        /**
+         * Messaggio mai ricevuto in precedenza, che ha rivelato nuove lacune
+         */
+        LACUNA,
+
+        /**
+         * Messaggio già ricevuto: va scartato
+         */
+        DUPLICATO
+    }
+
+    /**
+     * Stato della ricezione da un singolo mittente
+     */
+    private static final class StatoMittente {
+        private int prossima;
+        private final TreeSet<Integer> ricevutiOltre = new TreeSet<>();
+        private int annunciata;
+        private int tentativi;
+        private long prossimaRichiesta;
+
+        private StatoMittente(int prossima) {
+            this.prossima = prossima;
+        }
+
+        private void avanza() {
+            while(!ricevutiOltre.isEmpty() && ricevutiOltre.first() == prossima) {
+                ricevutiOltre.pollFirst();
+                prossima++;
+                tentativi = 0;
+                prossimaRichiesta = 0;
+            }
+        }
+
+        private int ultimaNota() {
+            return Math.max(ricevutiOltre.isEmpty() ? prossima - 1 : ricevutiOltre.last(), annunciata);
+        }
+
+        private boolean lacunosa() {
+            return ultimaNota() >= prossima;
+        }
+    }
+
+    /**
+     * Il numero massimo di numeri di sequenza richiesti con una singola {@link RichiestaRitrasmissione}
+     */
+    private static final int MANCANTI_MASSIMI = InsiemeID.BITMAP_MASSIMA * 64;
+
+    /**
+     * Il numero massimo di raddoppi del timeout tra due richieste di ritrasmissione consecutive
+     */
+    private static final int RADDOPPI_MASSIMI = 4;
+
+    /**
+     * Lo stato della ricezione, per <code>UUID</code> del mittente
+     */
+    private final Map<String, StatoMittente> mittenti;
+
+    /**
+     * Il numero massimo di richieste di ritrasmissione per una lacuna prima di abbandonarla
+     */
+    private final int tentativiMassimi;
+
+    /**
+     * Crea un {@link RilevatoreLacune}
+     * @param tentativiMassimi il numero massimo di richieste di ritrasmissione per una lacuna prima di abbandonarla
+     * @throws IllegalArgumentException se il numero di tentativi non è positivo
+     */
+    public RilevatoreLacune(final int tentativiMassimi) throws IllegalArgumentException {
+        if(tentativiMassimi <= 0) throw new IllegalArgumentException("Il numero di tentativi deve essere positivo");
+        this.mittenti = new HashMap<>();
+        this.tentativiMassimi = tentativiMassimi;
+    }
+
+    /**
+     * Registra la ricezione di un messaggio in sequenza. Il primo messaggio ricevuto da un mittente ne stabilisce la sequenza iniziale.
+     * @param UUID l'identificativo univoco del mittente
+     * @param sequenza il numero di sequenza del messaggio
+     * @return l'{@link Esito} della registrazione
+     */
+    public synchronized Esito registra(String UUID, int sequenza) {
+        StatoMittente stato = mittenti.get(UUID);
+        if(stato == null) {
+            mittenti.put(UUID, new StatoMittente(sequenza + 1));
+            return Esito.NUOVO;
+        }
+
+        int ultimaNota = stato.ultimaNota();
+        if(sequenza < stato.prossima || !stato.ricevutiOltre.add(sequenza)) return Esito.DUPLICATO;
+
+        boolean lacuna = sequenza > ultimaNota + 1;
+        stato.avanza();
+        return lacuna ? Esito.LACUNA : Esito.NUOVO;
+    }
+
+    /**
+     * Registra l'ultimo numero di sequenza inviato da un mittente, così da rilevare la perdita degli ultimi messaggi di una raffica.
+     * L'annuncio di un mittente da cui non è ancora stato ricevuto alcun messaggio viene ignorato: la sequenza iniziale è stabilita dal primo messaggio ricevuto.
+     * @param UUID l'identificativo univoco del mittente
+     * @param ultimaSequenza l'ultimo numero di sequenza inviato dal mittente
+     * @return <code>true</code> se l'annuncio ha rivelato nuovi messaggi mancanti
+     */
+    public synchronized boolean annuncia(String UUID, int ultimaSequenza) {
+        StatoMittente stato = mittenti.get(UUID);
+        if(stato == null || ultimaSequenza <= stato.annunciata) return false;
+        int ultimaNota = stato.ultimaNota();
+        stato.annunciata = ultimaSequenza;
+        return ultimaSequenza > ultimaNota;
+    }
+
+    /**
+     * Restituisce i numeri di sequenza mancanti di un mittente e conta una nuova richiesta di ritrasmissione.
+     * Superato il numero massimo di richieste, le lacune correnti vengono abbandonate.
+     * @param UUID l'identificativo univoco del mittente
+     * @return gli {@link InsiemeID} dei numeri di sequenza mancanti, vuoto se non ve ne sono
+     */
+    public synchronized List<InsiemeID> mancanti(String UUID) {
+        StatoMittente stato = mittenti.get(UUID);
+        if(stato == null || !stato.lacunosa()) return List.of();
+        return calcolaMancanti(stato);
+    }
+
+    /**
+     * Restituisce i numeri di sequenza mancanti di un mittente solo se è scaduto il timeout dalla richiesta precedente, secondo le modalità di {@link #mancanti(String)}.
+     * Il timeout successivo è pari a quello indicato, raddoppiato per ciascun tentativo senza progressi.
+     * @param UUID l'identificativo univoco del mittente
+     * @param adesso l'istante corrente
+     * @param timeout il timeout di ritrasmissione del mittente, nella stessa unità di <code>adesso</code>
+     * @return gli {@link InsiemeID} dei numeri di sequenza mancanti, vuoto se non ve ne sono o se il timeout non è ancora scaduto
+     */
+    public synchronized List<InsiemeID> mancanti(String UUID, long adesso, long timeout) {
+        StatoMittente stato = mittenti.get(UUID);
+        if(stato == null || !stato.lacunosa() || adesso < stato.prossimaRichiesta) return List.of();
+        List<InsiemeID> mancanti = calcolaMancanti(stato);
+        stato.prossimaRichiesta = adesso + (timeout << Math.min(Math.max(stato.tentativi - 1, 0), RADDOPPI_MASSIMI));
+        return mancanti;
+    }
+
+    /**
+     * Calcola i numeri di sequenza mancanti di un mittente e conta una nuova richiesta di ritrasmissione
+     * @param stato lo stato della ricezione dal mittente, con almeno un messaggio mancante
+     * @return gli {@link InsiemeID} dei numeri di sequenza mancanti
+     */
+    private List<InsiemeID> calcolaMancanti(StatoMittente stato) {
+        if(++stato.tentativi > tentativiMassimi) {
+            if(stato.ricevutiOltre.isEmpty()) {
+                stato.prossima = stato.annunciata + 1;
+                stato.tentativi = 0;
+                stato.prossimaRichiesta = 0;
+            } else {
+                stato.prossima = stato.ricevutiOltre.first();
+                stato.avanza();
+            }
+            return List.of();
+        }
+
+        TreeSet<Integer> mancanti = new TreeSet<>();
+        int ultimo = stato.ultimaNota();
+        for(int sequenza = stato.prossima; sequenza <= ultimo && mancanti.size() < MANCANTI_MASSIMI; sequenza++) {
+            if(!stato.ricevutiOltre.contains(sequenza)) mancanti.add(sequenza);
+        }
+        return InsiemeID.da(mancanti);
+    }
+
+    /**
+     * Restituisce i numeri di sequenza mancanti di tutti i mittenti, secondo le modalità di {@link #mancanti(String)}
+     * @return gli {@link InsiemeID} dei numeri di sequenza mancanti, per <code>UUID</code> del mittente
+     */
+    public synchronized Map<String, List<InsiemeID>> mancanti() {
+        Map<String, List<InsiemeID>> lacune = new HashMap<>();
+        for(String UUID : mittenti.keySet()) {
+            List<InsiemeID> mancanti = mancanti(UUID);
+            if(!mancanti.isEmpty()) lacune.put(UUID, mancanti);
+        }
+        return lacune;
+    }
+
+    /**
+     * Restituisce i numeri di sequenza mancanti dei mittenti il cui timeout è scaduto, secondo le modalità di {@link #mancanti(String, long, long)}
+     * @param adesso l'istante corrente
+     * @param timeout il timeout di ritrasmissione di ciascun mittente, per <code>UUID</code>
+     * @return gli {@link InsiemeID} dei numeri di sequenza mancanti, per <code>UUID</code> del mittente
+     */
+    public synchronized Map<String, List<InsiemeID>> mancanti(long adesso, ToLongFunction<String> timeout) {
+        Map<String, List<InsiemeID>> lacune = new HashMap<>();
+        for(Map.Entry<String, StatoMittente> mittente : mittenti.entrySet()) {
+            if(!mittente.getValue().lacunosa() || adesso < mittente.getValue().prossimaRichiesta) continue;
+            List<InsiemeID> mancanti = mancanti(mittente.getKey(), adesso, timeout.applyAsLong(mittente.getKey()));
+            if(!mancanti.isEmpty()) lacune.put(mittente.getKey(), mancanti);
+        }
+        return lacune;
+    }
+
+    /**
+     * Dimentica lo stato della ricezione da un mittente, ad esempio quando abbandona il gruppo
+     * @param UUID l'identificativo univoco del mittente
+     */
+    public synchronized void rimuovi(String UUID) {
+        mittenti.remove(UUID);
+    }
+}
@@ -6,11 +6,29 @@
  * <p>
  * Dalla versione <code>v1.2</code> ciascun <code>messaggio</code> deve contenere il {@link chat.comunicazione.Protocollo} utilizzato.   
  * <p>
+ * Dalla versione <code>v1.3</code> la codifica di ciascun <code>messaggio</code> è demandata a un {@link chat.comunicazione.CodecMessaggio}.
+ * <p>
  * Contiene:
  * <ul>
+ *     <li>{@link chat.comunicazione.AccumulatoreACK}</li>
+ *     <li>{@link chat.comunicazione.ArchivioCronologia}</li>
+ *     <li>{@link chat.comunicazione.Battito}</li>
+ *     <li>{@link chat.comunicazione.CodecBinario}</li>
+ *     <li>{@link chat.comunicazione.CodecMessaggio}</li>
+ *     <li>{@link chat.comunicazione.CodecSerializzazione}</li>
+ *     <li>{@link chat.comunicazione.ConfermeDestinatari}</li>
  *     <li>{@link chat.comunicazione.Cronologia}</li>
+ *     <li>{@link chat.comunicazione.Frammentatore}</li>
+ *     <li>{@link chat.comunicazione.Giornale}</li>
+ *     <li>{@link chat.comunicazione.IndiceTestuale}</li>
+ *     <li>{@link chat.comunicazione.InsiemeID}</li>
  *     <li>{@link chat.comunicazione.Messaggio}</li>
+ *     <li>{@link chat.comunicazione.Pacchetto}</li>
+ *     <li>{@link chat.comunicazione.PoliticaEspulsione}</li>
  *     <li>{@link chat.comunicazione.Protocollo}</li>
+ *     <li>{@link chat.comunicazione.Riassemblatore}</li>
+ *     <li>{@link chat.comunicazione.RichiestaRitrasmissione}</li>
+ *     <li>{@link chat.comunicazione.RilevatoreLacune}</li>
  * </ul>
  * 
  * @author Matteo Bagnoletti Tini
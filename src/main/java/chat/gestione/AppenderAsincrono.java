@@ -0,0 +1,391 @@
+package chat.gestione;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Inoltra gli eventi del {@link ChatLogger} alle {@link DestinazioneLog} attraverso un {@link Thread} dedicato.
+ * <p>
+ * Gli eventi sono accodati in un buffer circolare senza lock, con più produttori e un solo consumatore: ciascun produttore riserva una posizione con un'operazione <code>compare-and-set</code>,
+ * ne scrive i campi e la pubblica registrandone il numero progressivo. Le posizioni sono preallocate e riutilizzate, così che l'accodamento di un evento non allochi memoria.
+ * <p>
+ * Il testo di ciascun evento viene composto a partire dal modello e dagli argomenti dal {@link Thread} dell'<code>appender</code>, che lo scrive su tutte le destinazioni e le svuota al termine di ciascun gruppo di eventi.
+ * Con il buffer pieno, gli eventi {@link ChatLoggerType#OPTIONAL} vengono scartati e conteggiati, mentre quelli {@link ChatLoggerType#MANDATORY} attendono che si liberi una posizione.
+ * <p>
+ * Un {@link AppenderAsincrono} si crea e si avvia con il metodo {@link #avvia(int)}.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+public class AppenderAsincrono {
+
+    /**
+     * Una posizione del buffer circolare, riutilizzata per più eventi
+     */
+    private static final class Evento {
+        private long istante;
+        private ChatLoggerType tipologia;
+        private String thread;
+        private String modello;
+        private int argomenti;
+        private Object primo, secondo, terzo;
+    }
+
+    /**
+     * Il numero di posizioni del buffer circolare di default
+     */
+    public static final int CAPACITA = 8192;
+
+    /**
+     * Le posizioni del buffer circolare
+     */
+    private final Evento[] eventi;
+
+    /**
+     * Il numero progressivo dell'evento pubblicato in ciascuna posizione, <code>-1</code> se nessuno
+     */
+    private final AtomicLongArray pubblicati;
+
+    /**
+     * La maschera degli indici del buffer circolare
+     */
+    private final int maschera;
+
+    /**
+     * Il numero progressivo della prossima posizione da riservare
+     */
+    private final AtomicLong scrittura;
+
+    /**
+     * Il numero progressivo del prossimo evento da inoltrare
+     */
+    private final AtomicLong lettura;
+
+    /**
+     * Il numero di eventi scartati per buffer pieno
+     */
+    private final AtomicLong scartati;
+
+    /**
+     * Le destinazioni degli eventi
+     */
+    private final List<DestinazioneLog> destinazioni;
+
+    /**
+     * Le destinazioni rimosse, da chiudere dal {@link #consumatore}
+     */
+    private final Queue<DestinazioneLog> daChiudere;
+
+    /**
+     * Il {@link Thread} dell'<code>appender</code>, assegnato da {@link #avvia(int)} prima che l'<code>appender</code> venga restituito
+     */
+    private Thread consumatore;
+
+    /**
+     * Indica se il {@link #consumatore} è in attesa di nuovi eventi
+     */
+    private volatile boolean inAttesa;
+
+    /**
+     * Indica se l'<code>appender</code> è stato chiuso
+     */
+    private volatile boolean chiuso;
+
+    /**
+     * Il numero di eventi scartati già segnalati
+     */
+    private long scartatiSegnalati;
+
+    /**
+     * Il testo in costruzione, riutilizzato per ciascun evento
+     */
+    private final StringBuilder testo;
+
+    /**
+     * Crea un {@link AppenderAsincrono}, senza avviarne il {@link Thread}
+     * @param capacita il numero di posizioni del buffer circolare, arrotondato alla potenza di 2 successiva
+     * @throws IllegalArgumentException se la capacità non è positiva
+     */
+    private AppenderAsincrono(int capacita) throws IllegalArgumentException {
+        if(capacita <= 0 || capacita > 1 << 30) throw new IllegalArgumentException("Capacità non valida: " + capacita);
+        int dimensione = Integer.highestOneBit(capacita - 1) << 1;
+        if(capacita == 1) dimensione = 1;
+        this.eventi = new Evento[dimensione];
+        for(int i = 0; i < dimensione; i++) eventi[i] = new Evento();
+        this.pubblicati = new AtomicLongArray(dimensione);
+        for(int i = 0; i < dimensione; i++) pubblicati.set(i, -1);
+        this.maschera = dimensione - 1;
+        this.scrittura = new AtomicLong();
+        this.lettura = new AtomicLong();
+        this.scartati = new AtomicLong();
+        this.destinazioni = new CopyOnWriteArrayList<>();
+        this.daChiudere = new ConcurrentLinkedQueue<>();
+        this.testo = new StringBuilder(256);
+    }
+
+    /**
+     * Crea un {@link AppenderAsincrono} e ne avvia il {@link Thread}
+     * @param capacita il numero di posizioni del buffer circolare, arrotondato alla potenza di 2 successiva
+     * @return l'<code>appender</code> avviato
+     * @throws IllegalArgumentException se la capacità non è positiva
+     */
+    public static AppenderAsincrono avvia(int capacita) throws IllegalArgumentException {
+        AppenderAsincrono appender = new AppenderAsincrono(capacita);
+        appender.consumatore = new Thread(appender::inoltra, "chat-logger");
+        appender.consumatore.setDaemon(true);
+        appender.consumatore.start();
+        return appender;
+    }
+
+    /**
+     * Accoda un evento
+     * @param tipologia la {@link ChatLoggerType} dell'evento
+     * @param modello il testo dell'evento, con un segnaposto <code>{}</code> per ciascun argomento
+     * @param argomenti il numero di argomenti, da <code>0</code> a <code>3</code>
+     * @param primo il primo argomento
+     * @param secondo il secondo argomento
+     * @param terzo il terzo argomento
+     * @return <code>true</code> se l'evento è stato accodato, <code>false</code> se è stato scartato
+     */
+    public boolean accoda(ChatLoggerType tipologia, String modello, int argomenti, Object primo, Object secondo, Object terzo) {
+        if(chiuso) return false;
+        long posizione;
+        while(true) {
+            posizione = scrittura.get();
+            if(posizione - lettura.get() > maschera) {
+                if(tipologia != ChatLoggerType.MANDATORY || Thread.currentThread() == consumatore) {
+                    scartati.incrementAndGet();
+                    return false;
+                }
+                LockSupport.unpark(consumatore);
+                LockSupport.parkNanos(50_000);
+                continue;
+            }
+            if(scrittura.compareAndSet(posizione, posizione + 1)) break;
+        }
+
+        Evento evento = eventi[(int) posizione & maschera];
+        evento.istante = System.currentTimeMillis();
+        evento.tipologia = tipologia;
+        evento.thread = Thread.currentThread().getName();
+        evento.modello = modello;
+        evento.argomenti = argomenti;
+        evento.primo = primo;
+        evento.secondo = secondo;
+        evento.terzo = terzo;
+        pubblicati.set((int) posizione & maschera, posizione);
+        if(inAttesa) LockSupport.unpark(consumatore);
+        return true;
+    }
+
+    /**
+     * Ciclo del {@link #consumatore}: inoltra gli eventi pubblicati alle destinazioni, attendendo quando il buffer è vuoto, fino alla chiusura
+     */
+    private void inoltra() {
+        while(true) {
+            int inoltrati = inoltraPubblicati();
+            chiudiRimosse();
+            if(inoltrati > 0) continue;
+            if(chiuso) break;
+            inAttesa = true;
+            if(!isPubblicato(lettura.get())) LockSupport.parkNanos(this, 100_000_000);
+            inAttesa = false;
+        }
+        daChiudere.addAll(destinazioni);
+        destinazioni.clear();
+        chiudiRimosse();
+    }
+
+    /**
+     * Chiude le destinazioni rimosse
+     */
+    private void chiudiRimosse() {
+        DestinazioneLog destinazione;
+        while((destinazione = daChiudere.poll()) != null) {
+            try {
+                destinazione.chiudi();
+            } catch (IOException e) {
+                ProjectOutput.stampa("Impossibile chiudere la destinazione di log: " + e.getMessage(), OutputType.STDERR);
+            }
+        }
+    }
+
+    /**
+     * Verifica se l'evento con un dato numero progressivo è stato pubblicato
+     * @param posizione il numero progressivo dell'evento
+     * @return <code>true</code> se pubblicato
+     */
+    private boolean isPubblicato(long posizione) {
+        return pubblicati.get((int) posizione & maschera) == posizione;
+    }
+
+    /**
+     * Inoltra alle destinazioni tutti gli eventi pubblicati in sequenza, svuotandole al termine
+     * @return il numero di eventi inoltrati
+     */
+    private int inoltraPubblicati() {
+        int inoltrati = 0;
+        long posizione = lettura.get();
+        while(isPubblicato(posizione)) {
+            Evento evento = eventi[(int) posizione & maschera];
+            String messaggio;
+            try {
+                messaggio = componi(evento);
+            } catch (RuntimeException e) {
+                messaggio = evento.modello + " [argomenti non rappresentabili: " + e + "]";
+            }
+            long istante = evento.istante;
+            ChatLoggerType tipologia = evento.tipologia;
+            String thread = evento.thread;
+            evento.modello = null;
+            evento.primo = evento.secondo = evento.terzo = null;
+
+            scrivi(istante, tipologia, thread, messaggio);
+            lettura.set(++posizione);
+            inoltrati++;
+        }
+
+        long scartatiOra = scartati.get();
+        if(scartatiOra > scartatiSegnalati) {
+            String avviso = (scartatiOra - scartatiSegnalati) + " eventi di log scartati per buffer pieno";
+            ProjectOutput.stampa(avviso, OutputType.LOG);
+            scrivi(System.currentTimeMillis(), ChatLoggerType.MANDATORY, consumatore.getName(), avviso);
+            scartatiSegnalati = scartatiOra;
+            inoltrati++;
+        }
+
+        if(inoltrati > 0) {
+            for(DestinazioneLog destinazione : destinazioni) {
+                try {
+                    destinazione.svuota();
+                } catch (IOException e) {
+                    ProjectOutput.stampa("Impossibile scrivere il log: " + e.getMessage(), OutputType.STDERR);
+                }
+            }
+        }
+        return inoltrati;
+    }
+
+    /**
+     * Scrive un evento su tutte le destinazioni
+     * @param istante l'istante dell'evento
+     * @param tipologia la {@link ChatLoggerType} dell'evento
+     * @param thread il nome del {@link Thread} che ha registrato l'evento
+     * @param messaggio il testo dell'evento
+     */
+    private void scrivi(long istante, ChatLoggerType tipologia, String thread, String messaggio) {
+        for(DestinazioneLog destinazione : destinazioni) {
+            try {
+                destinazione.scrivi(istante, tipologia, thread, messaggio);
+            } catch (IOException e) {
+                ProjectOutput.stampa("Impossibile scrivere il log: " + e.getMessage(), OutputType.STDERR);
+            }
+        }
+    }
+
+    /**
+     * Compone il testo di un evento sostituendo, nell'ordine, ciascun segnaposto <code>{}</code> del modello con un argomento
+     * @param evento l'evento
+     * @return il testo composto
+     */
+    private String componi(Evento evento) {
+        return componi(testo, evento.modello, evento.argomenti, evento.primo, evento.secondo, evento.terzo);
+    }
+
+    /**
+     * Compone il testo di un evento sostituendo, nell'ordine, ciascun segnaposto <code>{}</code> del modello con un argomento
+     * @param testo il {@link StringBuilder} da riutilizzare per la composizione
+     * @param modello il testo dell'evento, con un segnaposto <code>{}</code> per ciascun argomento
+     * @param argomenti il numero di argomenti, da <code>0</code> a <code>3</code>
+     * @param primo il primo argomento
+     * @param secondo il secondo argomento
+     * @param terzo il terzo argomento
+     * @return il testo composto
+     */
+    static String componi(StringBuilder testo, String modello, int argomenti, Object primo, Object secondo, Object terzo) {
+        if(argomenti == 0) return modello;
+        testo.setLength(0);
+        int inizio = 0;
+        for(int i = 0; i < argomenti; i++) {
+            int segnaposto = modello.indexOf("{}", inizio);
+            if(segnaposto < 0) break;
+            testo.append(modello, inizio, segnaposto).append(i == 0 ? primo : i == 1 ? secondo : terzo);
+            inizio = segnaposto + 2;
+        }
+        return testo.append(modello, inizio, modello.length()).toString();
+    }
+
+    /**
+     * Aggiunge una destinazione degli eventi
+     * @param destinazione la {@link DestinazioneLog} da aggiungere
+     */
+    public void aggiungi(DestinazioneLog destinazione) {
+        destinazioni.add(destinazione);
+    }
+
+    /**
+     * Rimuove una destinazione degli eventi, che viene chiusa dal {@link Thread} dell'<code>appender</code> dopo aver inoltrato gli eventi in corso
+     * @param destinazione la {@link DestinazioneLog} da rimuovere
+     * @return <code>true</code> se la destinazione era presente
+     */
+    public boolean rimuovi(DestinazioneLog destinazione) {
+        if(!destinazioni.remove(destinazione)) return false;
+        daChiudere.add(destinazione);
+        LockSupport.unpark(consumatore);
+        return true;
+    }
+
+    /**
+     * Attende che tutti gli eventi accodati finora siano stati inoltrati alle destinazioni
+     * @param millisecondi il tempo massimo di attesa
+     * @return <code>true</code> se tutti gli eventi sono stati inoltrati, <code>false</code> allo scadere del tempo
+     */
+    public boolean svuota(long millisecondi) {
+        long obiettivo = scrittura.get();
+        long scadenza = System.nanoTime() + millisecondi * 1_000_000;
+        while(lettura.get() < obiettivo) {
+            if(Thread.currentThread() == consumatore || !consumatore.isAlive() || System.nanoTime() - scadenza > 0) return false;
+            LockSupport.unpark(consumatore);
+            LockSupport.parkNanos(100_000);
+        }
+        return true;
+    }
+
+    /**
+     * Inoltra gli eventi ancora accodati, chiude tutte le destinazioni e termina il {@link Thread} dell'<code>appender</code>. Gli eventi successivi vengono ignorati.
+     * @param millisecondi il tempo massimo di attesa
+     */
+    public void chiudi(long millisecondi) {
+        svuota(millisecondi);
+        chiuso = true;
+        LockSupport.unpark(consumatore);
+        try {
+            consumatore.join(millisecondi);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Restituisce il numero di eventi scartati per buffer pieno
+     * @return il numero di eventi scartati
+     */
+    public long getScartati() {
+        return scartati.get();
+    }
+
+    /**
+     * Restituisce il numero di eventi in attesa di essere inoltrati
+     * @return il numero di eventi accodati
+     */
+    public long getInCoda() {
+        return Math.max(0, scrittura.get() - lettura.get());
+    }
+}
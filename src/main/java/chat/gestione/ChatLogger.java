@@ -1,9 +1,23 @@
 package chat.gestione;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
 /**
  * Classe per il logging di eventi
+ * <p>
+ * Un evento {@link ChatLoggerType#OPTIONAL} con il logging disabilitato non esegue alcuna operazione: per evitare di comporne il testo, i metodi accettano un modello con fino a tre argomenti,
+ * sostituiti ai segnaposto <code>{}</code> solo se l'evento viene registrato, oppure un {@link Supplier} del testo, invocato solo se l'evento viene registrato.
+ * <p>
+ * Gli eventi registrati vengono accodati senza lock in un {@link AppenderAsincrono}, che ne compone il testo e li inoltra alle {@link DestinazioneLog} dal proprio {@link Thread}:
+ * di default la sola {@link DestinazioneConsole}, a cui è possibile affiancare un file di log con il metodo {@link #setFileLog(Path, long, int)}.
+ * Gli eventi ancora accodati vengono inoltrati alla terminazione del programma, prima che {@link ProjectOutput} completi l'output.
+ * <p>
+ * Gli eventi {@link ChatLoggerType#MANDATORY} vengono invece stampati a video dal {@link Thread} che li registra, attraverso {@link ProjectOutput}, così da mantenerne l'ordine rispetto al resto dell'output:
+ * la {@link DestinazioneConsole} li ignora, mentre le altre destinazioni li ricevono dall'{@link AppenderAsincrono} come di consueto.
  * @author Matteo Bagnoletti Tini
- * @version 1.0
+ * @version 1.2
  * @project MulticastUDPSocketChat
  */
 public class ChatLogger {
@@ -13,14 +27,38 @@ public class ChatLogger {
      */
     private static volatile boolean abilita;
 
+    /**
+     * Il tempo massimo di attesa, in millisecondi, per l'inoltro degli eventi accodati alla terminazione del programma
+     */
+    private static final long ATTESA_CHIUSURA = 2000;
+
+    /**
+     * L'{@link AppenderAsincrono} degli eventi registrati
+     */
+    private static final AppenderAsincrono APPENDER = AppenderAsincrono.avvia(AppenderAsincrono.CAPACITA);
+
+    /**
+     * Il file di log corrente, <code>null</code> se assente
+     * @see #setFileLog(Path, long, int)
+     */
+    private static DestinazioneFileRotante fileLog;
+
+    static {
+        APPENDER.aggiungi(new DestinazioneConsole());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            APPENDER.chiudi(ATTESA_CHIUSURA);
+            ProjectOutput.svuota(ATTESA_CHIUSURA);
+        }, "chat-logger-chiusura"));
+    }
+
     /**
      * Registra ed eventualmente segnala eventi durante l'esecuzione del programma
      * @param messaggio il messaggio di cui effettuare il log
      * @deprecated sostituito da {@link #log(String, ChatLoggerType)}
      */
     @Deprecated
-    public synchronized static void log(String messaggio) {
-        if (abilita) ProjectOutput.outputApp(messaggio, false, true);
+    public static void log(String messaggio) {
+        log(messaggio, ChatLoggerType.OPTIONAL);
     }
 
     /**
@@ -29,17 +67,89 @@ public class ChatLogger {
      * @param tipologia la tipologia di log
      * @see ChatLoggerType
      */
-    public synchronized static void log(String messaggio, ChatLoggerType tipologia) {
-        if ((tipologia == ChatLoggerType.MANDATORY) || (tipologia== ChatLoggerType.OPTIONAL && abilita)) {
-            ProjectOutput.stampa(messaggio, OutputType.LOG);
+    public static void log(String messaggio, ChatLoggerType tipologia) {
+        if (isAttivo(tipologia)) registra(tipologia, messaggio, 0, null, null, null);
+    }
+
+    /**
+     * Registra ed eventualmente segnala eventi durante l'esecuzione del programma, ottenendo il messaggio solo se l'evento viene registrato
+     * @param messaggio il {@link Supplier} del messaggio di cui effettuare il log
+     * @param tipologia la tipologia di log
+     * @see ChatLoggerType
+     */
+    public static void log(Supplier<String> messaggio, ChatLoggerType tipologia) {
+        if (isAttivo(tipologia)) registra(tipologia, messaggio.get(), 0, null, null, null);
+    }
+
+    /**
+     * Registra ed eventualmente segnala eventi durante l'esecuzione del programma. Il messaggio viene composto solo se l'evento viene registrato.
+     * @param modello il messaggio di cui effettuare il log, con un segnaposto <code>{}</code> per l'argomento
+     * @param tipologia la tipologia di log
+     * @param primo l'argomento del messaggio
+     * @see ChatLoggerType
+     */
+    public static void log(String modello, ChatLoggerType tipologia, Object primo) {
+        if (isAttivo(tipologia)) registra(tipologia, modello, 1, primo, null, null);
+    }
+
+    /**
+     * Registra ed eventualmente segnala eventi durante l'esecuzione del programma. Il messaggio viene composto solo se l'evento viene registrato.
+     * @param modello il messaggio di cui effettuare il log, con un segnaposto <code>{}</code> per ciascun argomento
+     * @param tipologia la tipologia di log
+     * @param primo il primo argomento del messaggio
+     * @param secondo il secondo argomento del messaggio
+     * @see ChatLoggerType
+     */
+    public static void log(String modello, ChatLoggerType tipologia, Object primo, Object secondo) {
+        if (isAttivo(tipologia)) registra(tipologia, modello, 2, primo, secondo, null);
+    }
+
+    /**
+     * Registra ed eventualmente segnala eventi durante l'esecuzione del programma. Il messaggio viene composto solo se l'evento viene registrato.
+     * @param modello il messaggio di cui effettuare il log, con un segnaposto <code>{}</code> per ciascun argomento
+     * @param tipologia la tipologia di log
+     * @param primo il primo argomento del messaggio
+     * @param secondo il secondo argomento del messaggio
+     * @param terzo il terzo argomento del messaggio
+     * @see ChatLoggerType
+     */
+    public static void log(String modello, ChatLoggerType tipologia, Object primo, Object secondo, Object terzo) {
+        if (isAttivo(tipologia)) registra(tipologia, modello, 3, primo, secondo, terzo);
+    }
+
+    /**
+     * Registra un evento: un evento {@link ChatLoggerType#MANDATORY} viene composto e stampato a video immediatamente, quindi accodato nell'{@link AppenderAsincrono} per le altre destinazioni
+     * @param tipologia la tipologia di log
+     * @param modello il messaggio di cui effettuare il log, con un segnaposto <code>{}</code> per ciascun argomento
+     * @param argomenti il numero di argomenti, da <code>0</code> a <code>3</code>
+     * @param primo il primo argomento del messaggio
+     * @param secondo il secondo argomento del messaggio
+     * @param terzo il terzo argomento del messaggio
+     */
+    private static void registra(ChatLoggerType tipologia, String modello, int argomenti, Object primo, Object secondo, Object terzo) {
+        if (tipologia == ChatLoggerType.MANDATORY) {
+            String testo = AppenderAsincrono.componi(new StringBuilder(), modello, argomenti, primo, secondo, terzo);
+            ProjectOutput.stampa(testo, OutputType.LOG);
+            APPENDER.accoda(tipologia, testo, 0, null, null, null);
+        } else {
+            APPENDER.accoda(tipologia, modello, argomenti, primo, secondo, terzo);
         }
     }
 
+    /**
+     * Verifica se un evento di una data tipologia verrebbe registrato, così da evitarne del tutto la preparazione
+     * @param tipologia la tipologia di log
+     * @return true se l'evento verrebbe registrato, false altrimenti
+     */
+    public static boolean isAttivo(ChatLoggerType tipologia) {
+        return tipologia == ChatLoggerType.MANDATORY || (tipologia == ChatLoggerType.OPTIONAL && abilita);
+    }
+
     /**
      * Abilita o disabilita il {@link ChatLogger}
      * @param abilita true per abilitare il logging, false altrimenti
      */
-    public synchronized static void abilita(boolean abilita) {
+    public static void abilita(boolean abilita) {
         ChatLogger.abilita = abilita;
         if(abilita) {
             log("Logging: ON", ChatLoggerType.MANDATORY);
@@ -53,7 +163,64 @@ public class ChatLogger {
      * Restituisce lo status di operatività del {@link ChatLogger}
      * @return true se abilitato, false altrimenti
      */
-    public synchronized static boolean isAbilitato() {
+    public static boolean isAbilitato() {
         return ChatLogger.abilita;
     }
+
+    /**
+     * Affianca alla console un file di log, ruotato al raggiungimento di una dimensione massima, sostituendo l'eventuale file precedente
+     * @param file il file di log, <code>null</code> per rimuovere il file corrente
+     * @param dimensioneMassima la dimensione massima del file, in byte, prima della rotazione
+     * @param fileMassimi il numero massimo di file ruotati da conservare
+     * @throws IOException se il file non può essere aperto
+     * @see DestinazioneFileRotante
+     */
+    public static synchronized void setFileLog(Path file, long dimensioneMassima, int fileMassimi) throws IOException {
+        DestinazioneFileRotante nuovo = file != null ? new DestinazioneFileRotante(file, dimensioneMassima, fileMassimi) : null;
+        if(fileLog != null) APPENDER.rimuovi(fileLog);
+        fileLog = nuovo;
+        if(nuovo != null) APPENDER.aggiungi(nuovo);
+    }
+
+    /**
+     * Aggiunge una {@link DestinazioneLog} degli eventi registrati
+     * @param destinazione la destinazione da aggiungere
+     */
+    public static void aggiungiDestinazione(DestinazioneLog destinazione) {
+        APPENDER.aggiungi(destinazione);
+    }
+
+    /**
+     * Rimuove e chiude una {@link DestinazioneLog} degli eventi registrati
+     * @param destinazione la destinazione da rimuovere
+     * @return true se la destinazione era presente
+     */
+    public static boolean rimuoviDestinazione(DestinazioneLog destinazione) {
+        return APPENDER.rimuovi(destinazione);
+    }
+
+    /**
+     * Attende che tutti gli eventi registrati finora siano stati inoltrati alle destinazioni
+     * @param millisecondi il tempo massimo di attesa
+     * @return true se tutti gli eventi sono stati inoltrati, false allo scadere del tempo
+     */
+    public static boolean svuota(long millisecondi) {
+        return APPENDER.svuota(millisecondi);
+    }
+
+    /**
+     * Restituisce il numero di eventi in attesa di essere inoltrati alle destinazioni
+     * @return il numero di eventi accodati
+     */
+    public static long getInCoda() {
+        return APPENDER.getInCoda();
+    }
+
+    /**
+     * Restituisce il numero di eventi scartati perché il buffer dell'{@link AppenderAsincrono} era pieno
+     * @return il numero di eventi scartati
+     */
+    public static long getScartati() {
+        return APPENDER.getScartati();
+    }
 }
@@ -0,0 +1,59 @@
+package chat.gestione;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contatore dei datagrammi e dei byte transitati in una direzione attraverso un socket.
+ * <p>
+ * La registrazione di un datagramma non acquisisce alcun lock e, grazie ai {@link LongAdder}, non genera contesa tra più {@link Thread}.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ * @see RegistroMetriche
+ */
+public class ContatoreTraffico {
+
+    /**
+     * Il numero di datagrammi registrati
+     */
+    private final LongAdder datagrammi;
+
+    /**
+     * Il numero di byte registrati
+     */
+    private final LongAdder dimensione;
+
+    /**
+     * Crea un {@link ContatoreTraffico} azzerato
+     */
+    public ContatoreTraffico() {
+        this.datagrammi = new LongAdder();
+        this.dimensione = new LongAdder();
+    }
+
+    /**
+     * Registra un datagramma
+     * @param byteDatagramma la dimensione del datagramma in byte
+     */
+    public void registra(int byteDatagramma) {
+        datagrammi.increment();
+        dimensione.add(byteDatagramma);
+    }
+
+    /**
+     * Restituisce il numero di datagrammi registrati
+     * @return il numero di datagrammi
+     */
+    public long getDatagrammi() {
+        return datagrammi.sum();
+    }
+
+    /**
+     * Restituisce il numero di byte registrati
+     * @return il numero di byte
+     */
+    public long getByte() {
+        return dimensione.sum();
+    }
+}
@@ -0,0 +1,17 @@
+package chat.gestione;
+
+/**
+ * {@link DestinazioneLog} che stampa a video gli eventi attraverso {@link ProjectOutput#stampa(String, OutputType)} come {@link OutputType#LOG}.
+ * Gli eventi {@link ChatLoggerType#MANDATORY} vengono ignorati: il {@link ChatLogger} li stampa a video direttamente dal {@link Thread} che li registra.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+public class DestinazioneConsole implements DestinazioneLog {
+
+    @Override
+    public void scrivi(long istante, ChatLoggerType tipologia, String thread, String testo) {
+        if (tipologia != ChatLoggerType.MANDATORY) ProjectOutput.stampa(testo, OutputType.LOG);
+    }
+}
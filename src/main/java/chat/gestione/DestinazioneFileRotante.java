@@ -0,0 +1,144 @@
+package chat.gestione;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * {@link DestinazioneLog} che accoda gli eventi a un file di testo, ruotandolo al raggiungimento di una dimensione massima.
+ * <p>
+ * Ciascun evento occupa una riga nel formato <code>istante [thread] TIPOLOGIA testo</code>. Superata la dimensione massima, il file corrente diventa <code>file.1</code>,
+ * i file precedenti scalano di una posizione e il più vecchio oltre il numero massimo viene eliminato.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public class DestinazioneFileRotante implements DestinazioneLog {
+
+    /**
+     * Il formato dell'istante di ciascun evento
+     */
+    private static final DateTimeFormatter FORMATO_ISTANTE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    /**
+     * Il file corrente
+     */
+    private final Path file;
+
+    /**
+     * La dimensione massima del file corrente, in byte
+     */
+    private final long dimensioneMassima;
+
+    /**
+     * Il numero massimo di file ruotati conservati oltre a quello corrente
+     */
+    private final int fileMassimi;
+
+    /**
+     * Il buffer di scrittura sul file corrente
+     */
+    private BufferedWriter scrittore;
+
+    /**
+     * La dimensione stimata del file corrente, in byte
+     */
+    private long dimensione;
+
+    /**
+     * La riga in costruzione, riutilizzata per ciascun evento
+     */
+    private final StringBuilder riga;
+
+    /**
+     * Crea una {@link DestinazioneFileRotante}, accodando gli eventi al file se già esistente
+     * @param file il file di log
+     * @param dimensioneMassima la dimensione massima del file, in byte, prima della rotazione
+     * @param fileMassimi il numero massimo di file ruotati da conservare
+     * @throws IOException se il file non può essere aperto
+     * @throws IllegalArgumentException se la dimensione non è positiva o il numero di file è negativo
+     */
+    public DestinazioneFileRotante(Path file, long dimensioneMassima, int fileMassimi) throws IOException, IllegalArgumentException {
+        if(dimensioneMassima <= 0 || fileMassimi < 0) throw new IllegalArgumentException("Dimensione o numero di file di log non validi");
+        this.file = file;
+        this.dimensioneMassima = dimensioneMassima;
+        this.fileMassimi = fileMassimi;
+        this.riga = new StringBuilder(256);
+        Path cartella = file.toAbsolutePath().getParent();
+        if(cartella != null) Files.createDirectories(cartella);
+        apri();
+    }
+
+    /**
+     * Apre il file corrente in accodamento
+     * @throws IOException se il file non può essere aperto
+     */
+    private void apri() throws IOException {
+        scrittore = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        dimensione = Files.size(file);
+    }
+
+    @Override
+    public void scrivi(long istante, ChatLoggerType tipologia, String thread, String testo) throws IOException {
+        riga.setLength(0);
+        riga.append(FORMATO_ISTANTE.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(istante), ZoneId.systemDefault())))
+                .append(" [").append(thread).append("] ").append(tipologia).append(' ').append(testo).append('\n');
+        if(dimensione > 0 && dimensione + riga.length() > dimensioneMassima) ruota();
+        scrittore.append(riga);
+        dimensione += riga.length();
+    }
+
+    /**
+     * Ruota i file di log e apre un nuovo file corrente
+     * @throws IOException se i file non possono essere rinominati
+     */
+    private void ruota() throws IOException {
+        scrittore.close();
+        if(fileMassimi == 0) {
+            Files.deleteIfExists(file);
+        } else {
+            Files.deleteIfExists(ruotato(fileMassimi));
+            for(int i = fileMassimi - 1; i >= 1; i--) {
+                if(Files.exists(ruotato(i))) Files.move(ruotato(i), ruotato(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(file, ruotato(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        apri();
+    }
+
+    /**
+     * Restituisce il percorso di un file ruotato
+     * @param indice la posizione del file, a partire da <code>1</code> per il più recente
+     * @return il percorso del file
+     */
+    private Path ruotato(int indice) {
+        return file.resolveSibling(file.getFileName() + "." + indice);
+    }
+
+    @Override
+    public void svuota() throws IOException {
+        scrittore.flush();
+    }
+
+    @Override
+    public void chiudi() throws IOException {
+        scrittore.close();
+    }
+
+    /**
+     * Restituisce il file corrente
+     * @return il percorso del file di log
+     */
+    public Path getFile() {
+        return file;
+    }
+}
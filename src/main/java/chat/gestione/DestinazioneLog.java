@@ -0,0 +1,40 @@
+package chat.gestione;
+
+import java.io.IOException;
+
+/**
+ * Destinazione degli eventi registrati dal {@link ChatLogger}.
+ * <p>
+ * I metodi vengono invocati esclusivamente dal {@link Thread} dell'{@link AppenderAsincrono}: un'implementazione non deve quindi essere sincronizzata,
+ * ma non deve a sua volta invocare il {@link ChatLogger}.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @see DestinazioneConsole
+ * @see DestinazioneFileRotante
+ * @project MulticastUDPSocketChat
+ */
+public interface DestinazioneLog {
+
+    /**
+     * Scrive un evento
+     * @param istante l'istante dell'evento, in millisecondi dall'epoca
+     * @param tipologia la {@link ChatLoggerType} dell'evento
+     * @param thread il nome del {@link Thread} che ha registrato l'evento
+     * @param testo il testo dell'evento, già formattato
+     * @throws IOException se si verifica un errore di scrittura
+     */
+    void scrivi(long istante, ChatLoggerType tipologia, String thread, String testo) throws IOException;
+
+    /**
+     * Rende persistenti gli eventi scritti, al termine di ciascun gruppo di eventi
+     * @throws IOException se si verifica un errore di scrittura
+     */
+    default void svuota() throws IOException {}
+
+    /**
+     * Chiude la destinazione, rilasciando le risorse
+     * @throws IOException se si verifica un errore di chiusura
+     */
+    default void chiudi() throws IOException {}
+}
@@ -0,0 +1,256 @@
+package chat.gestione;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Eventi di <code>JDK Flight Recorder</code> emessi dai percorsi di invio, ricezione, codifica e conferma dei messaggi.
+ * <p>
+ * Ciascun evento misura la durata dell'operazione e ne riporta dimensioni e identificativi degli utenti coinvolti, così che una registrazione avviata con
+ * <code>jcmd &lt;pid&gt; JFR.start</code> ricostruisca la sequenza completa di un messaggio lento. Gli eventi vengono emessi con lo schema
+ * <pre>
+ *     EventiChat.Codifica evento = new EventiChat.Codifica();
+ *     evento.begin();
+ *     ...
+ *     if(evento.shouldCommit()) {
+ *         evento.dimensione = ...;
+ *         evento.commit();
+ *     }
+ * </pre>
+ * per cui, con la registrazione disattivata, non viene letto né composto alcun campo e l'oggetto evento viene eliminato dal compilatore <code>JIT</code>.
+ * Gli eventi non registrano lo <code>stack trace</code>, per contenere il costo anche con la registrazione attiva.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+public final class EventiChat {
+
+    /**
+     * La categoria comune a tutti gli eventi
+     */
+    private static final String CATEGORIA = "MulticastUDPSocketChat";
+
+    /**
+     * Classe non istanziabile: contiene solo le definizioni degli eventi
+     */
+    private EventiChat() {}
+
+    /**
+     * Codifica di un messaggio in uscita
+     */
+    @Name("chat.Codifica")
+    @Label("Codifica messaggio")
+    @Category({CATEGORIA, "Codifica"})
+    @StackTrace(false)
+    public static class Codifica extends Event {
+
+        /**
+         * L'identificativo del messaggio codificato
+         */
+        @Label("msgID")
+        public int msgID;
+
+        /**
+         * L'identificativo univoco del mittente
+         */
+        @Label("Mittente")
+        @Description("UUID del mittente")
+        public String mittente;
+
+        /**
+         * Indica se il messaggio codificato è un <code>ACK</code>
+         */
+        @Label("ACK")
+        public boolean ack;
+
+        /**
+         * La dimensione del messaggio codificato, in byte
+         */
+        @Label("Dimensione")
+        @DataAmount
+        public int dimensione;
+    }
+
+    /**
+     * Decodifica di un messaggio in ingresso
+     */
+    @Name("chat.Decodifica")
+    @Label("Decodifica messaggio")
+    @Category({CATEGORIA, "Codifica"})
+    @StackTrace(false)
+    public static class Decodifica extends Event {
+
+        /**
+         * L'identificativo del messaggio decodificato, <code>0</code> se la decodifica non è riuscita
+         */
+        @Label("msgID")
+        public int msgID;
+
+        /**
+         * L'identificativo univoco del mittente, <code>null</code> se la decodifica non è riuscita
+         */
+        @Label("Mittente")
+        @Description("UUID del mittente")
+        public String mittente;
+
+        /**
+         * Indica se il messaggio decodificato è un <code>ACK</code>
+         */
+        @Label("ACK")
+        public boolean ack;
+
+        /**
+         * Il numero di sequenza del multicast affidabile, <code>0</code> se assente
+         */
+        @Label("Sequenza")
+        @Description("Numero di sequenza del multicast affidabile, 0 se assente")
+        public int sequenza;
+
+        /**
+         * La dimensione del datagramma decodificato, in byte
+         */
+        @Label("Dimensione")
+        @DataAmount
+        public int dimensione;
+
+        /**
+         * La causa del fallimento della decodifica, <code>null</code> se riuscita
+         */
+        @Label("Errore")
+        @Description("Causa del fallimento della decodifica, assente se riuscita")
+        public String errore;
+    }
+
+    /**
+     * Invio di un messaggio al gruppo multicast, eventualmente accorpato
+     */
+    @Name("chat.InvioMulticast")
+    @Label("Invio multicast")
+    @Category({CATEGORIA, "Rete"})
+    @StackTrace(false)
+    public static class InvioMulticast extends Event {
+
+        /**
+         * L'indirizzo e la porta del <code>gruppo</code> multicast
+         */
+        @Label("Gruppo")
+        public String gruppo;
+
+        /**
+         * La dimensione del messaggio inviato, in byte
+         */
+        @Label("Dimensione")
+        @DataAmount
+        public int dimensione;
+
+        /**
+         * Indica se il messaggio è stato aggiunto a un {@link chat.comunicazione.Pacchetto} anziché inviato immediatamente
+         */
+        @Label("Accorpato")
+        @Description("Indica se il messaggio è stato aggiunto a un pacchetto anziché inviato immediatamente")
+        public boolean accorpato;
+    }
+
+    /**
+     * Invio di un datagramma unicast, eventualmente in più frammenti
+     */
+    @Name("chat.InvioUnicast")
+    @Label("Invio unicast")
+    @Category({CATEGORIA, "Rete"})
+    @StackTrace(false)
+    public static class InvioUnicast extends Event {
+
+        /**
+         * L'indirizzo e la porta del destinatario
+         */
+        @Label("Destinatario")
+        @Description("Indirizzo e porta del destinatario")
+        public String destinatario;
+
+        /**
+         * La dimensione del datagramma inviato, in byte, prima della frammentazione
+         */
+        @Label("Dimensione")
+        @DataAmount
+        public int dimensione;
+
+        /**
+         * Il numero di frammenti inviati, <code>1</code> se il datagramma non è stato frammentato
+         */
+        @Label("Frammenti")
+        public int frammenti;
+    }
+
+    /**
+     * Gestione completa di un datagramma ricevuto
+     */
+    @Name("chat.Ricezione")
+    @Label("Ricezione datagramma")
+    @Category({CATEGORIA, "Rete"})
+    @StackTrace(false)
+    public static class Ricezione extends Event {
+
+        /**
+         * Il <code>socket</code> di ricezione, <code>unicast</code> o <code>multicast</code>
+         */
+        @Label("Socket")
+        @Description("unicast o multicast")
+        public String socket;
+
+        /**
+         * L'indirizzo del mittente
+         */
+        @Label("Mittente")
+        @Description("Indirizzo del mittente")
+        public String mittente;
+
+        /**
+         * La dimensione del datagramma ricevuto, in byte
+         */
+        @Label("Dimensione")
+        @DataAmount
+        public int dimensione;
+    }
+
+    /**
+     * Associazione di un <code>ACK</code> ricevuto ai messaggi inviati
+     */
+    @Name("chat.Conferma")
+    @Label("Conferma di lettura")
+    @Category({CATEGORIA, "Affidabilità"})
+    @StackTrace(false)
+    public static class Conferma extends Event {
+
+        /**
+         * L'identificativo univoco del mittente dell'<code>ACK</code>
+         */
+        @Label("Mittente")
+        @Description("UUID del mittente dell'ACK")
+        public String mittente;
+
+        /**
+         * Lo slot della {@link chat.utenze.Rubrica} occupato dal mittente, <code>-1</code> se non noto
+         */
+        @Label("Slot")
+        @Description("Slot della rubrica del mittente, -1 se non noto")
+        public int slot;
+
+        /**
+         * Il numero di messaggi confermati dall'<code>ACK</code>
+         */
+        @Label("Messaggi confermati")
+        public int confermati;
+
+        /**
+         * Gli identificativi dei messaggi confermati, in forma testuale
+         */
+        @Label("msgID confermati")
+        public String conferme;
+    }
+}
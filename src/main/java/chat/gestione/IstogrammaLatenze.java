@@ -0,0 +1,230 @@
+package chat.gestione;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Istogramma log-lineare di latenze, espresse in nanosecondi, sul modello di <code>HdrHistogram</code>.
+ * <p>
+ * I valori sono raggruppati per potenze di 2 e ciascuna potenza è suddivisa in {@link #SOTTOINTERVALLI} intervalli lineari: l'errore relativo di ogni percentile è quindi inferiore a <code>1/SOTTOINTERVALLI</code>, con memoria costante indipendente dal numero di campioni.
+ * <p>
+ * La registrazione di un campione non acquisisce alcun lock e può avvenire da più {@link Thread} contemporaneamente.
+ * Più istogrammi possono essere uniti con {@link #unisci(IstogrammaLatenze)}, anche se raccolti in processi diversi attraverso {@link #esporta()} e {@link #importa(String)}.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.2
+ * @project MulticastUDPSocketChat
+ */
+public class IstogrammaLatenze {
+
+    /**
+     * Il numero di bit dei sottointervalli lineari di ciascuna potenza di 2
+     */
+    private static final int BIT_SOTTOINTERVALLI = 5;
+
+    /**
+     * Il numero di sottointervalli lineari di ciascuna potenza di 2
+     */
+    public static final int SOTTOINTERVALLI = 1 << BIT_SOTTOINTERVALLI;
+
+    /**
+     * Il valore massimo registrabile, in nanosecondi (circa 18 minuti): i valori maggiori vengono registrati come tale
+     */
+    public static final long VALORE_MASSIMO = (1L << 40) - 1;
+
+    /**
+     * I conteggi di ciascun intervallo
+     */
+    private final AtomicLongArray conteggi;
+
+    /**
+     * Il numero di campioni registrati
+     */
+    private final AtomicLong campioni;
+
+    /**
+     * La somma dei campioni registrati, in nanosecondi
+     */
+    private final AtomicLong somma;
+
+    /**
+     * Il campione massimo registrato, in nanosecondi
+     */
+    private final AtomicLong massimo;
+
+    /**
+     * Crea un {@link IstogrammaLatenze} vuoto
+     */
+    public IstogrammaLatenze() {
+        this.conteggi = new AtomicLongArray(indice(VALORE_MASSIMO) + 1);
+        this.campioni = new AtomicLong();
+        this.somma = new AtomicLong();
+        this.massimo = new AtomicLong();
+    }
+
+    /**
+     * Calcola l'intervallo di un valore
+     * @param valore il valore, compreso tra <code>0</code> e {@link #VALORE_MASSIMO}
+     * @return l'indice dell'intervallo
+     */
+    private static int indice(long valore) {
+        if(valore < SOTTOINTERVALLI) return (int) valore;
+        int esponente = 63 - Long.numberOfLeadingZeros(valore);
+        int blocco = esponente - BIT_SOTTOINTERVALLI + 1;
+        int sottointervallo = (int) (valore >>> (esponente - BIT_SOTTOINTERVALLI)) & (SOTTOINTERVALLI - 1);
+        return (blocco << BIT_SOTTOINTERVALLI) + sottointervallo;
+    }
+
+    /**
+     * Calcola il valore massimo compreso in un intervallo
+     * @param indice l'indice dell'intervallo
+     * @return il limite superiore dell'intervallo
+     */
+    private static long limiteSuperiore(int indice) {
+        if(indice < SOTTOINTERVALLI) return indice;
+        int blocco = indice >>> BIT_SOTTOINTERVALLI;
+        long inferiore = (long) (SOTTOINTERVALLI + (indice & (SOTTOINTERVALLI - 1))) << (blocco - 1);
+        return inferiore + (1L << (blocco - 1)) - 1;
+    }
+
+    /**
+     * Registra un campione
+     * @param nanosecondi la latenza misurata. I valori negativi vengono ignorati.
+     */
+    public void registra(long nanosecondi) {
+        if(nanosecondi < 0) return;
+        long valore = Math.min(nanosecondi, VALORE_MASSIMO);
+        conteggi.incrementAndGet(indice(valore));
+        campioni.incrementAndGet();
+        somma.addAndGet(valore);
+        massimo.accumulateAndGet(valore, Math::max);
+    }
+
+    /**
+     * Aggiunge all'istogramma i campioni registrati in un altro istogramma
+     * @param altro l'istogramma da unire
+     */
+    public void unisci(IstogrammaLatenze altro) {
+        for(int i = 0; i < conteggi.length(); i++) {
+            long conteggio = altro.conteggi.get(i);
+            if(conteggio > 0) conteggi.addAndGet(i, conteggio);
+        }
+        campioni.addAndGet(altro.campioni.get());
+        somma.addAndGet(altro.somma.get());
+        massimo.accumulateAndGet(altro.massimo.get(), Math::max);
+    }
+
+    /**
+     * Esporta l'istogramma in forma testuale compatta: numero di campioni, somma, massimo e conteggi dei soli intervalli non vuoti
+     * @return l'istogramma esportato, nel formato <code>campioni;somma;massimo;indice:conteggio,...</code>
+     * @see #importa(String)
+     */
+    public String esporta() {
+        StringBuilder testo = new StringBuilder().append(campioni.get()).append(';').append(somma.get()).append(';').append(massimo.get()).append(';');
+        String separatore = "";
+        for(int i = 0; i < conteggi.length(); i++) {
+            long conteggio = conteggi.get(i);
+            if(conteggio == 0) continue;
+            testo.append(separatore).append(i).append(':').append(conteggio);
+            separatore = ",";
+        }
+        return testo.toString();
+    }
+
+    /**
+     * Ricostruisce un istogramma esportato con {@link #esporta()}
+     * @param testo l'istogramma esportato
+     * @return l'istogramma ricostruito
+     * @throws IllegalArgumentException se il testo non è nel formato di {@link #esporta()}
+     */
+    public static IstogrammaLatenze importa(String testo) throws IllegalArgumentException {
+        String[] parti = testo.split(";", -1);
+        if(parti.length != 4) throw new IllegalArgumentException("Formato dell'istogramma non valido");
+        IstogrammaLatenze istogramma = new IstogrammaLatenze();
+        try {
+            istogramma.campioni.set(Long.parseLong(parti[0]));
+            istogramma.somma.set(Long.parseLong(parti[1]));
+            istogramma.massimo.set(Long.parseLong(parti[2]));
+            if(!parti[3].isEmpty()) {
+                for(String intervallo : parti[3].split(",")) {
+                    int separatore = intervallo.indexOf(':');
+                    istogramma.conteggi.set(Integer.parseInt(intervallo.substring(0, separatore)), Long.parseLong(intervallo.substring(separatore + 1)));
+                }
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Formato dell'istogramma non valido: " + e.getMessage());
+        }
+        return istogramma;
+    }
+
+    /**
+     * Restituisce il numero di campioni registrati
+     * @return il numero di campioni
+     */
+    public long getCampioni() {
+        return campioni.get();
+    }
+
+    /**
+     * Restituisce la somma dei campioni registrati
+     * @return la somma in nanosecondi
+     */
+    public long getSomma() {
+        return somma.get();
+    }
+
+    /**
+     * Restituisce la media dei campioni registrati
+     * @return la media in nanosecondi, <code>0</code> se non vi sono campioni
+     */
+    public long getMedia() {
+        long numero = campioni.get();
+        return numero == 0 ? 0 : somma.get() / numero;
+    }
+
+    /**
+     * Restituisce il campione massimo registrato
+     * @return il massimo in nanosecondi
+     */
+    public long getMassimo() {
+        return massimo.get();
+    }
+
+    /**
+     * Calcola un percentile dei campioni registrati, approssimato per eccesso al limite superiore del relativo intervallo
+     * @param percentile il percentile richiesto, compreso tra <code>0</code> e <code>100</code>
+     * @return il valore del percentile in nanosecondi, <code>0</code> se non vi sono campioni
+     * @throws IllegalArgumentException se il percentile non è compreso tra <code>0</code> e <code>100</code>
+     */
+    public long percentile(double percentile) throws IllegalArgumentException {
+        if(percentile < 0 || percentile > 100) throw new IllegalArgumentException("Percentile non valido: " + percentile);
+        long numero = campioni.get();
+        if(numero == 0) return 0;
+        long soglia = Math.max(1, (long) Math.ceil(percentile / 100 * numero));
+        long cumulato = 0;
+        for(int i = 0; i < conteggi.length(); i++) {
+            cumulato += conteggi.get(i);
+            if(cumulato >= soglia) return Math.min(limiteSuperiore(i), massimo.get());
+        }
+        return massimo.get();
+    }
+
+    /**
+     * Restituisce un riepilogo dell'istogramma: numero di campioni, media, percentili 50, 99 e 99.9 e massimo, in millisecondi
+     * @return il riepilogo dell'istogramma
+     */
+    public String getRiepilogo() {
+        if(campioni.get() == 0) return "nessun campione";
+        return campioni.get() + " campioni | media " + millisecondi(getMedia()) + " | p50 " + millisecondi(percentile(50)) + " | p99 " + millisecondi(percentile(99))
+                + " | p99.9 " + millisecondi(percentile(99.9)) + " | max " + millisecondi(getMassimo());
+    }
+
+    /**
+     * Formatta una durata in millisecondi
+     * @param nanosecondi la durata in nanosecondi
+     * @return la durata formattata
+     */
+    private static String millisecondi(long nanosecondi) {
+        return String.format("%.3f ms", nanosecondi / 1e6);
+    }
+}
@@ -0,0 +1,163 @@
+package chat.gestione;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <code>MBean</code> dinamico che espone attraverso <code>JMX</code>, in sola lettura, le metriche di un {@link RegistroMetriche}.
+ * <p>
+ * Ciascun {@link RegistroMetriche.Tipo#CONTATORE} e ciascuna {@link RegistroMetriche.Tipo#MISURA} corrisponde a un attributo con il nome dell'{@link RegistroMetriche.Metrica#identificativo()};
+ * ciascun {@link RegistroMetriche.Tipo#RIEPILOGO} a più attributi, con l'identificativo privo dell'unità <code>_seconds</code> e i suffissi <code>_campioni</code>, <code>_media_ms</code>, <code>_p50_ms</code>, <code>_p99_ms</code>, <code>_p999_ms</code> e <code>_max_ms</code>.
+ * I valori vengono letti dal registro ad ogni richiesta.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+public class MBeanMetriche implements DynamicMBean {
+
+    /**
+     * I suffissi degli attributi di ciascun {@link RegistroMetriche.Tipo#RIEPILOGO}
+     */
+    private static final String[] SUFFISSI_RIEPILOGO = {"_campioni", "_media_ms", "_p50_ms", "_p99_ms", "_p999_ms", "_max_ms"};
+
+    /**
+     * Il registro delle metriche esposte
+     */
+    private final RegistroMetriche registro;
+
+    /**
+     * Il nome con cui l'<code>MBean</code> è registrato, <code>null</code> se non registrato
+     */
+    private ObjectName nome;
+
+    /**
+     * Crea un {@link MBeanMetriche}
+     * @param registro il {@link RegistroMetriche} da esporre
+     */
+    public MBeanMetriche(RegistroMetriche registro) {
+        this.registro = registro;
+    }
+
+    /**
+     * Registra l'<code>MBean</code> nel {@link MBeanServer} della piattaforma con il nome <code>chat:type=MulticastPeer,id=&lt;identificativo&gt;</code>
+     * @param identificativo l'identificativo del {@link chat.host.MulticastPeer}
+     * @throws JMException se l'<code>MBean</code> non può essere registrato
+     */
+    public synchronized void registra(String identificativo) throws JMException {
+        if(nome != null) return;
+        ObjectName daRegistrare = new ObjectName("chat:type=MulticastPeer,id=" + ObjectName.quote(identificativo));
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, daRegistrare);
+        } catch (InstanceAlreadyExistsException e) {
+            throw new JMException("MBean già registrato: " + daRegistrare);
+        }
+        nome = daRegistrare;
+    }
+
+    /**
+     * Rimuove l'<code>MBean</code> dal {@link MBeanServer} della piattaforma, se registrato
+     */
+    public synchronized void annulla() {
+        if(nome == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(nome);
+        } catch (InstanceNotFoundException ignored) {
+            /* già rimosso */
+        } catch (JMException e) {
+            ChatLogger.log("Impossibile rimuovere l'MBean delle metriche: {}", ChatLoggerType.OPTIONAL, e.getMessage());
+        }
+        nome = null;
+    }
+
+    /**
+     * Restituisce l'identificativo di una metrica come attributo: per un {@link RegistroMetriche.Tipo#RIEPILOGO}, esposto in millisecondi, viene rimossa l'unità <code>_seconds</code>
+     * @param metrica la metrica
+     * @return l'identificativo dell'attributo, o il prefisso degli attributi di un riepilogo
+     */
+    private static String identificativo(RegistroMetriche.Metrica metrica) {
+        String identificativo = metrica.identificativo();
+        return metrica.tipo() == RegistroMetriche.Tipo.RIEPILOGO ? identificativo.replace("_seconds", "") : identificativo;
+    }
+
+    @Override
+    public Object getAttribute(String attributo) throws AttributeNotFoundException {
+        for(RegistroMetriche.Metrica metrica : registro.getMetriche()) {
+            String identificativo = identificativo(metrica);
+            if(metrica.tipo() != RegistroMetriche.Tipo.RIEPILOGO) {
+                if(identificativo.equals(attributo)) return metrica.valore().getAsDouble();
+                continue;
+            }
+            if(!attributo.startsWith(identificativo)) continue;
+            IstogrammaLatenze istogramma = metrica.istogramma();
+            switch (attributo.substring(identificativo.length())) {
+                case "_campioni" -> { return istogramma.getCampioni(); }
+                case "_media_ms" -> { return istogramma.getMedia() / 1e6; }
+                case "_p50_ms" -> { return istogramma.percentile(50) / 1e6; }
+                case "_p99_ms" -> { return istogramma.percentile(99) / 1e6; }
+                case "_p999_ms" -> { return istogramma.percentile(99.9) / 1e6; }
+                case "_max_ms" -> { return istogramma.getMassimo() / 1e6; }
+                default -> { }
+            }
+        }
+        throw new AttributeNotFoundException(attributo);
+    }
+
+    @Override
+    public void setAttribute(Attribute attributo) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Attributo in sola lettura: " + attributo.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributi) {
+        AttributeList valori = new AttributeList();
+        for(String attributo : attributi) {
+            try {
+                valori.add(new Attribute(attributo, getAttribute(attributo)));
+            } catch (AttributeNotFoundException ignored) {
+                /* gli attributi sconosciuti vengono omessi, come previsto da DynamicMBean */
+            }
+        }
+        return valori;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributi) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String operazione, Object[] parametri, String[] firma) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(operazione), "Operazione non supportata: " + operazione);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributi = new ArrayList<>();
+        for(RegistroMetriche.Metrica metrica : registro.getMetriche()) {
+            String identificativo = identificativo(metrica);
+            if(metrica.tipo() != RegistroMetriche.Tipo.RIEPILOGO) {
+                attributi.add(new MBeanAttributeInfo(identificativo, Double.class.getName(), metrica.descrizione(), true, false, false));
+                continue;
+            }
+            for(String suffisso : SUFFISSI_RIEPILOGO) {
+                String tipo = suffisso.equals("_campioni") ? Long.class.getName() : Double.class.getName();
+                attributi.add(new MBeanAttributeInfo(identificativo + suffisso, tipo, metrica.descrizione(), true, false, false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "Metriche di un MulticastPeer", attributi.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
@@ -0,0 +1,26 @@
+package chat.gestione;
+
+/**
+ * Sorgente del tempo monotono con cui vengono misurati timeout, marche temporali e latenze.
+ * <p>
+ * Di default viene utilizzato l'orologio di sistema, {@link #SISTEMA}. Una {@link chat.host.ReteSimulata} fornisce invece il proprio orologio virtuale, che avanza solo con
+ * {@link chat.host.ReteSimulata#avanza(long)}: i componenti che lo ricevono misurano il tempo della rete, indipendentemente dal tempo reale impiegato.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+@FunctionalInterface
+public interface Orologio {
+
+    /**
+     * L'orologio di sistema, basato su {@link System#nanoTime()}
+     */
+    Orologio SISTEMA = System::nanoTime;
+
+    /**
+     * Restituisce l'istante corrente, significativo solo per differenza con altri istanti dello stesso orologio
+     * @return l'istante corrente in nanosecondi
+     */
+    long adesso();
+}
@@ -2,13 +2,35 @@ package chat.gestione;
 
 /**
  * Classe di gestione dell'output del programma
+ * <p>
+ * L'output viene accodato senza attesa in un {@link RendererTerminale}, che lo disegna a gruppi da un {@link Thread} dedicato:
+ * i {@link Thread} che producono l'output, come quelli di ricezione, non si contendono quindi il terminale.
+ * L'output ancora accodato viene disegnato alla terminazione del programma.
  * @author Matteo Bagnoletti Tini
- * @version 1.0
+ * @version 1.2
  * @project MulticastUDPSocketChat
  * @see OutputType
  */
 public class ProjectOutput {
 
+    /**
+     * Il tempo massimo di attesa, in millisecondi, per il disegno dell'output accodato alla terminazione del programma
+     */
+    private static final long ATTESA_CHIUSURA = 2000;
+
+    /**
+     * Il {@link RendererTerminale} dell'output del programma
+     */
+    private static final RendererTerminale RENDERER = RendererTerminale.avvia(System.out, System.err);
+
+    static {
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> RENDERER.svuota(ATTESA_CHIUSURA), "chat-output-chiusura"));
+        } catch (IllegalStateException e) {
+            /* primo output durante la terminazione del programma: l'output viene completato da chi lo produce, come il ChatLogger */
+        }
+    }
+
     /**
      *Stampa a video di un dato messaggio
      * @param output il messaggio da stampare
@@ -17,29 +39,49 @@ public class ProjectOutput {
      * @deprecated sostituito da {@link #stampa(String, OutputType)}
      */
     @Deprecated
-    public static synchronized void outputApp(String output, boolean isErrore, boolean isCommento){
+    public static void outputApp(String output, boolean isErrore, boolean isCommento){
         if(isErrore) {
-            System.err.println("\033[1;31m#\033[0m\033[31m " + output + "\033[0m");
+            stampa(output, OutputType.STDERR);
         } else if(isCommento) {
-            System.out.println("\033[1;37m# " + output + "\033[0m");
+            stampa(output, OutputType.LOG);
         } else {
-            System.out.println("\033[1;32m> \033[0m" + output);
+            stampa(output, OutputType.STDOUT);
         }
     }
 
     /**
-     * Stampa a video di un dato <code>messaggio</code>
+     * Stampa a video di un dato <code>messaggio</code>, senza attenderne la scrittura
      * @param output il messaggio da stampare
      * @param tipologia la tipologia di output
      * @see OutputType
      */
-    public static synchronized void stampa(String output, OutputType tipologia) {
-        switch (tipologia) {
-            case OutputType.STDOUT -> System.out.println("\033[1;32m> \033[0m" + output);
-            
-            case OutputType.STDERR -> System.err.println("\033[1;31m#\033[0m\033[31m " + output + "\033[0m");
-            
-            case OutputType.LOG -> System.out.println("\033[1;37m# " + output + "\033[0m");
-        }
+    public static void stampa(String output, OutputType tipologia) {
+        RENDERER.accoda(output, tipologia);
+    }
+
+    /**
+     * Attende che tutto l'output accodato finora sia stato stampato a video
+     * @param millisecondi il tempo massimo di attesa
+     * @return true se tutto l'output è stato stampato, false allo scadere del tempo
+     */
+    public static boolean svuota(long millisecondi) {
+        return RENDERER.svuota(millisecondi);
+    }
+
+    /**
+     * Restituisce il numero di righe in attesa di essere stampate a video
+     * @return il numero di righe accodate
+     */
+    public static long getInCoda() {
+        return RENDERER.getInCoda();
+    }
+
+    /**
+     * Restituisce il numero di righe di log omesse per compattare l'output
+     * @return il numero di righe omesse
+     * @see RendererTerminale
+     */
+    public static long getOmesse() {
+        return RENDERER.getOmesse();
     }
 }
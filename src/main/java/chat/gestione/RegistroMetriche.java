@@ -0,0 +1,244 @@
+package chat.gestione;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Registro delle metriche di un {@link chat.host.MulticastPeer}.
+ * <p>
+ * Il registro non conserva alcun valore: ciascuna metrica è letta, al momento della consultazione, dal contatore o dall'{@link IstogrammaLatenze} della classe che la aggiorna,
+ * così che la misura non aggiunga alcun costo ai percorsi di invio e ricezione. Sono previste tre tipologie di metrica:
+ * <ul>
+ *     <li>{@link Tipo#CONTATORE}: un valore che può solo crescere, come i datagrammi ricevuti</li>
+ *     <li>{@link Tipo#MISURA}: un valore istantaneo, come la profondità di una coda</li>
+ *     <li>{@link Tipo#RIEPILOGO}: una distribuzione di latenze, esposta come percentili, somma e numero di campioni</li>
+ * </ul>
+ * Le metriche possono essere consultate a video con il metodo {@link #getRiepilogo()}, nel formato testuale di <code>Prometheus</code> con il metodo {@link #formatoPrometheus()}
+ * e attraverso <code>JMX</code> con un {@link MBeanMetriche}.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ * @see ServerMetriche
+ */
+public class RegistroMetriche {
+
+    /**
+     * Tipologia di metrica
+     */
+    public enum Tipo {
+
+        /**
+         * Valore crescente
+         */
+        CONTATORE("counter"),
+
+        /**
+         * Valore istantaneo
+         */
+        MISURA("gauge"),
+
+        /**
+         * Distribuzione di latenze
+         */
+        RIEPILOGO("summary");
+
+        /**
+         * Il nome della tipologia nel formato di <code>Prometheus</code>
+         */
+        private final String prometheus;
+
+        Tipo(String prometheus) {
+            this.prometheus = prometheus;
+        }
+    }
+
+    /**
+     * Una metrica registrata
+     * @param nome il nome della metrica
+     * @param etichette le etichette della metrica nel formato <code>chiave="valore"</code>, separate da virgola, vuote se assenti
+     * @param descrizione la descrizione della metrica
+     * @param tipo la tipologia della metrica
+     * @param valore la funzione di lettura del valore, <code>null</code> per un {@link Tipo#RIEPILOGO}
+     * @param istogramma l'{@link IstogrammaLatenze} di un {@link Tipo#RIEPILOGO}, <code>null</code> altrimenti
+     */
+    public record Metrica(String nome, String etichette, String descrizione, Tipo tipo, DoubleSupplier valore, IstogrammaLatenze istogramma) {
+
+        /**
+         * Restituisce l'identificativo della metrica, composto dal nome e dai valori delle etichette
+         * @return l'identificativo, univoco nel registro
+         */
+        public String identificativo() {
+            if(etichette.isEmpty()) return nome;
+            StringBuilder identificativo = new StringBuilder(nome);
+            for(String etichetta : etichette.split(",")) {
+                identificativo.append('_').append(etichetta.substring(etichetta.indexOf('=') + 2, etichetta.length() - 1));
+            }
+            return identificativo.toString();
+        }
+    }
+
+    /**
+     * I quantili esposti per ciascun {@link Tipo#RIEPILOGO}
+     */
+    public static final double[] QUANTILI = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * Il formato ammesso per i nomi delle metriche
+     */
+    private static final Pattern FORMATO_NOME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    /**
+     * Le metriche registrate, in ordine di registrazione
+     */
+    private final List<Metrica> metriche;
+
+    /**
+     * Crea un {@link RegistroMetriche} vuoto
+     */
+    public RegistroMetriche() {
+        this.metriche = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Registra una metrica
+     * @param metrica la metrica da registrare
+     * @throws IllegalArgumentException se il nome non è valido o una metrica con lo stesso nome ed etichette è già registrata
+     */
+    private synchronized void registra(Metrica metrica) throws IllegalArgumentException {
+        if(!FORMATO_NOME.matcher(metrica.nome()).matches()) throw new IllegalArgumentException("Nome di metrica non valido: " + metrica.nome());
+        for(Metrica registrata : metriche) {
+            if(registrata.identificativo().equals(metrica.identificativo())) throw new IllegalArgumentException("Metrica già registrata: " + metrica.identificativo());
+        }
+        metriche.add(metrica);
+    }
+
+    /**
+     * Registra un {@link Tipo#CONTATORE}
+     * @param nome il nome della metrica
+     * @param etichette le etichette della metrica nel formato <code>chiave="valore"</code>, separate da virgola, vuote se assenti
+     * @param descrizione la descrizione della metrica
+     * @param valore la funzione di lettura del valore
+     * @throws IllegalArgumentException se il nome non è valido o la metrica è già registrata
+     */
+    public void contatore(String nome, String etichette, String descrizione, DoubleSupplier valore) throws IllegalArgumentException {
+        registra(new Metrica(nome, etichette, descrizione, Tipo.CONTATORE, valore, null));
+    }
+
+    /**
+     * Registra una {@link Tipo#MISURA}
+     * @param nome il nome della metrica
+     * @param etichette le etichette della metrica nel formato <code>chiave="valore"</code>, separate da virgola, vuote se assenti
+     * @param descrizione la descrizione della metrica
+     * @param valore la funzione di lettura del valore
+     * @throws IllegalArgumentException se il nome non è valido o la metrica è già registrata
+     */
+    public void misura(String nome, String etichette, String descrizione, DoubleSupplier valore) throws IllegalArgumentException {
+        registra(new Metrica(nome, etichette, descrizione, Tipo.MISURA, valore, null));
+    }
+
+    /**
+     * Registra un {@link Tipo#RIEPILOGO} di latenze, esposto in secondi
+     * @param nome il nome della metrica
+     * @param etichette le etichette della metrica nel formato <code>chiave="valore"</code>, separate da virgola, vuote se assenti
+     * @param descrizione la descrizione della metrica
+     * @param istogramma l'{@link IstogrammaLatenze} della distribuzione
+     * @throws IllegalArgumentException se il nome non è valido o la metrica è già registrata
+     */
+    public void riepilogo(String nome, String etichette, String descrizione, IstogrammaLatenze istogramma) throws IllegalArgumentException {
+        registra(new Metrica(nome, etichette, descrizione, Tipo.RIEPILOGO, null, istogramma));
+    }
+
+    /**
+     * Restituisce le metriche registrate
+     * @return una copia della lista delle metriche, in ordine di registrazione
+     */
+    public List<Metrica> getMetriche() {
+        return new ArrayList<>(metriche);
+    }
+
+    /**
+     * Restituisce un riepilogo leggibile delle metriche, una per riga
+     * @return il riepilogo delle metriche
+     */
+    public String getRiepilogo() {
+        StringBuilder riepilogo = new StringBuilder("Metriche:");
+        for(Metrica metrica : metriche) {
+            riepilogo.append("\n").append(metrica.nome());
+            if(!metrica.etichette().isEmpty()) riepilogo.append('{').append(metrica.etichette()).append('}');
+            riepilogo.append(' ');
+            if(metrica.tipo() == Tipo.RIEPILOGO) {
+                riepilogo.append(metrica.istogramma().getRiepilogo());
+            } else {
+                riepilogo.append(formatta(metrica.valore().getAsDouble()));
+            }
+        }
+        return riepilogo.toString();
+    }
+
+    /**
+     * Restituisce le metriche nel formato testuale di esposizione di <code>Prometheus</code> (versione <code>0.0.4</code>).
+     * Le latenze vengono esposte in secondi.
+     * @return le metriche nel formato di <code>Prometheus</code>
+     */
+    public String formatoPrometheus() {
+        List<Metrica> istantanea = getMetriche();
+        Set<String> nomi = new LinkedHashSet<>();
+        for(Metrica metrica : istantanea) nomi.add(metrica.nome());
+
+        StringBuilder testo = new StringBuilder(4096);
+        for(String nome : nomi) {
+            boolean intestazione = false;
+            for(Metrica metrica : istantanea) {
+                if(!metrica.nome().equals(nome)) continue;
+                if(!intestazione) {
+                    testo.append("# HELP ").append(nome).append(' ').append(metrica.descrizione().replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+                    testo.append("# TYPE ").append(nome).append(' ').append(metrica.tipo().prometheus).append('\n');
+                    intestazione = true;
+                }
+                if(metrica.tipo() == Tipo.RIEPILOGO) {
+                    IstogrammaLatenze istogramma = metrica.istogramma();
+                    long campioni = istogramma.getCampioni();
+                    for(double quantile : QUANTILI) {
+                        String etichetta = "quantile=\"" + quantile + "\"";
+                        campione(testo, nome, metrica.etichette().isEmpty() ? etichetta : metrica.etichette() + "," + etichetta, campioni == 0 ? Double.NaN : istogramma.percentile(quantile * 100) / 1e9);
+                    }
+                    campione(testo, nome + "_sum", metrica.etichette(), istogramma.getSomma() / 1e9);
+                    campione(testo, nome + "_count", metrica.etichette(), campioni);
+                } else {
+                    campione(testo, nome, metrica.etichette(), metrica.valore().getAsDouble());
+                }
+            }
+        }
+        return testo.toString();
+    }
+
+    /**
+     * Accoda un campione nel formato di <code>Prometheus</code>
+     * @param testo il testo in costruzione
+     * @param nome il nome del campione
+     * @param etichette le etichette del campione, vuote se assenti
+     * @param valore il valore del campione
+     */
+    private static void campione(StringBuilder testo, String nome, String etichette, double valore) {
+        testo.append(nome);
+        if(!etichette.isEmpty()) testo.append('{').append(etichette).append('}');
+        testo.append(' ').append(formatta(valore)).append('\n');
+    }
+
+    /**
+     * Formatta un valore, senza decimali se intero
+     * @param valore il valore da formattare
+     * @return il valore formattato
+     */
+    private static String formatta(double valore) {
+        if(Double.isNaN(valore)) return "NaN";
+        if(valore == Math.rint(valore) && Math.abs(valore) < 1e15) return Long.toString((long) valore);
+        return Double.toString(valore);
+    }
+}
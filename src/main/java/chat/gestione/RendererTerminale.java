@@ -0,0 +1,317 @@
+package chat.gestione;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Disegna a video l'output del programma per conto di {@link ProjectOutput}, attraverso un {@link Thread} dedicato.
+ * <p>
+ * Le righe vengono accodate senza lock e senza attesa da qualsiasi {@link Thread}, e scritte a gruppi (<code>frame</code>) al più ogni {@link #DURATA_FRAME} millisecondi
+ * su un buffer di grandi dimensioni per ciascun flusso. Le righe vengono scritte nell'ordine di accodamento: il buffer di un flusso viene svuotato al termine del <code>frame</code>
+ * e ogni volta che la riga successiva è destinata all'altro flusso, così che output ed errore standard non si scavalchino a vicenda sul terminale.
+ * <p>
+ * Quando il ritmo dell'output supera quello di lettura, il <code>frame</code> viene compattato: righe diagnostiche ({@link OutputType#STDERR} e {@link OutputType#LOG}) consecutive identiche
+ * vengono stampate una sola volta con il numero di ripetizioni, e le righe {@link OutputType#LOG} oltre le {@link #RIGHE_LOG_PER_FRAME} vengono omesse e conteggiate.
+ * Le righe {@link OutputType#STDOUT}, ovvero i messaggi della chat, non vengono mai compattate né omesse, e le righe {@link OutputType#STDERR} non vengono omesse durante il disegno.
+ * <p>
+ * Le righe diagnostiche in attesa sono comunque limitate, così che un flusso di errori più rapido del terminale non esaurisca la memoria: oltre {@link #CAPACITA_LOG} righe {@link OutputType#LOG}
+ * o {@link #CAPACITA_STDERR} righe {@link OutputType#STDERR} in attesa, le nuove righe vengono scartate all'accodamento e riassunte in un'unica riga con il loro numero.
+ * <p>
+ * Un {@link RendererTerminale} si crea e si avvia con il metodo {@link #avvia(PrintStream, PrintStream)}.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ * @see ProjectOutput
+ */
+public class RendererTerminale {
+
+    /**
+     * Una riga da disegnare
+     * @param testo il testo della riga
+     * @param tipologia la tipologia di output
+     */
+    private record Riga(String testo, OutputType tipologia) {}
+
+    /**
+     * La durata minima di un <code>frame</code>, in millisecondi
+     */
+    public static final long DURATA_FRAME = 16;
+
+    /**
+     * Il numero massimo di righe {@link OutputType#LOG} disegnate in un <code>frame</code>
+     */
+    public static final int RIGHE_LOG_PER_FRAME = 32;
+
+    /**
+     * Il numero massimo di righe {@link OutputType#LOG} in attesa, oltre il quale vengono omesse all'accodamento
+     */
+    public static final int CAPACITA_LOG = 65536;
+
+    /**
+     * Il numero massimo di righe {@link OutputType#STDERR} in attesa, oltre il quale vengono soppresse all'accodamento
+     */
+    public static final int CAPACITA_STDERR = 65536;
+
+    /**
+     * La dimensione, in caratteri, del buffer di scrittura di ciascun flusso
+     */
+    private static final int DIMENSIONE_BUFFER = 1 << 16;
+
+    /**
+     * Le righe in attesa di essere disegnate
+     */
+    private final ConcurrentLinkedQueue<Riga> coda;
+
+    /**
+     * Il numero di righe {@link OutputType#LOG} in attesa
+     */
+    private final AtomicInteger logInCoda;
+
+    /**
+     * Il numero di righe {@link OutputType#STDERR} in attesa
+     */
+    private final AtomicInteger erroriInCoda;
+
+    /**
+     * Il numero di righe accodate
+     */
+    private final AtomicLong accodate;
+
+    /**
+     * Il numero di righe accodate ed elaborate dal {@link #renderer}
+     */
+    private volatile long elaborate;
+
+    /**
+     * Il numero di righe {@link OutputType#LOG} omesse
+     */
+    private final AtomicLong omesse;
+
+    /**
+     * Il numero di righe omesse già segnalate
+     */
+    private long omesseSegnalate;
+
+    /**
+     * Il numero di righe {@link OutputType#STDERR} soppresse
+     */
+    private final AtomicLong soppresse;
+
+    /**
+     * Il numero di righe soppresse già segnalate
+     */
+    private long soppresseSegnalate;
+
+    /**
+     * Il buffer di scrittura dell'output standard
+     */
+    private final Writer out;
+
+    /**
+     * Il buffer di scrittura dell'errore standard
+     */
+    private final Writer err;
+
+    /**
+     * Il buffer di scrittura con righe non ancora svuotate nel <code>frame</code> corrente, <code>null</code> se nessuno
+     */
+    private Writer inScrittura;
+
+    /**
+     * Il {@link Thread} di disegno, assegnato da {@link #avvia(PrintStream, PrintStream)} prima che il <code>renderer</code> venga restituito
+     */
+    private Thread renderer;
+
+    /**
+     * Indica se il {@link #renderer} è in attesa di nuove righe
+     */
+    private volatile boolean inAttesa;
+
+    /**
+     * Crea un {@link RendererTerminale}, senza avviarne il {@link Thread}
+     * @param out il flusso dell'output standard
+     * @param err il flusso dell'errore standard
+     */
+    private RendererTerminale(PrintStream out, PrintStream err) {
+        this.coda = new ConcurrentLinkedQueue<>();
+        this.logInCoda = new AtomicInteger();
+        this.erroriInCoda = new AtomicInteger();
+        this.accodate = new AtomicLong();
+        this.omesse = new AtomicLong();
+        this.soppresse = new AtomicLong();
+        this.out = new BufferedWriter(new OutputStreamWriter(out, out.charset()), DIMENSIONE_BUFFER);
+        this.err = new BufferedWriter(new OutputStreamWriter(err, err.charset()), DIMENSIONE_BUFFER);
+    }
+
+    /**
+     * Crea un {@link RendererTerminale} e ne avvia il {@link Thread}
+     * @param out il flusso dell'output standard
+     * @param err il flusso dell'errore standard
+     * @return il <code>renderer</code> avviato
+     */
+    public static RendererTerminale avvia(PrintStream out, PrintStream err) {
+        RendererTerminale renderer = new RendererTerminale(out, err);
+        renderer.renderer = new Thread(renderer::disegna, "chat-renderer");
+        renderer.renderer.setDaemon(true);
+        renderer.renderer.start();
+        return renderer;
+    }
+
+    /**
+     * Accoda una riga da disegnare, senza attendere. Le righe diagnostiche oltre la capacità della tipologia vengono scartate e conteggiate.
+     * @param testo il testo della riga
+     * @param tipologia la tipologia di output
+     */
+    public void accoda(String testo, OutputType tipologia) {
+        if(tipologia == OutputType.LOG && logInCoda.incrementAndGet() > CAPACITA_LOG) {
+            logInCoda.decrementAndGet();
+            omesse.incrementAndGet();
+            return;
+        }
+        if(tipologia == OutputType.STDERR && erroriInCoda.incrementAndGet() > CAPACITA_STDERR) {
+            erroriInCoda.decrementAndGet();
+            soppresse.incrementAndGet();
+            return;
+        }
+        coda.add(new Riga(testo, tipologia));
+        accodate.incrementAndGet();
+        if(inAttesa) LockSupport.unpark(renderer);
+    }
+
+    /**
+     * Ciclo del {@link #renderer}: attende nuove righe e le disegna, un <code>frame</code> alla volta
+     */
+    private void disegna() {
+        long durataFrame = DURATA_FRAME * 1_000_000;
+        while(true) {
+            if(coda.isEmpty()) {
+                inAttesa = true;
+                while(coda.isEmpty()) LockSupport.park(this);
+                inAttesa = false;
+            }
+
+            long inizio = System.nanoTime();
+            disegnaFrame();
+            long attesa;
+            while((attesa = inizio + durataFrame - System.nanoTime()) > 0) LockSupport.parkNanos(this, attesa);
+        }
+    }
+
+    /**
+     * Disegna tutte le righe in attesa, compattando quelle diagnostiche, e svuota i buffer di scrittura
+     */
+    private void disegnaFrame() {
+        int elaborateFrame = 0;
+        int righeLog = 0;
+        long omesseFrame = 0;
+        Riga precedente = null;
+        int ripetizioni = 0;
+
+        Riga riga;
+        while((riga = coda.poll()) != null) {
+            elaborateFrame++;
+            boolean ripetuta = riga.tipologia() != OutputType.STDOUT && riga.equals(precedente);
+            if(riga.tipologia() == OutputType.LOG) {
+                logInCoda.decrementAndGet();
+                if(righeLog >= RIGHE_LOG_PER_FRAME && !ripetuta) {
+                    omesseFrame++;
+                    continue;
+                }
+            } else if(riga.tipologia() == OutputType.STDERR) {
+                erroriInCoda.decrementAndGet();
+            }
+            if(ripetuta) {
+                ripetizioni++;
+                continue;
+            }
+            if(precedente != null) scrivi(precedente, ripetizioni);
+            if(riga.tipologia() == OutputType.LOG) righeLog++;
+            precedente = riga;
+            ripetizioni = 1;
+        }
+        if(precedente != null) scrivi(precedente, ripetizioni);
+
+        if(omesseFrame > 0) omesse.addAndGet(omesseFrame);
+        long omesseOra = omesse.get();
+        if(omesseOra > omesseSegnalate) {
+            scrivi(new Riga((omesseOra - omesseSegnalate) + " righe di log omesse", OutputType.LOG), 1);
+            omesseSegnalate = omesseOra;
+        }
+        long soppresseOra = soppresse.get();
+        if(soppresseOra > soppresseSegnalate) {
+            scrivi(new Riga((soppresseOra - soppresseSegnalate) + " righe soppresse", OutputType.STDERR), 1);
+            soppresseSegnalate = soppresseOra;
+        }
+
+        try {
+            if(inScrittura != null) inScrittura.flush();
+        } catch (IOException ignored) {
+            /* il terminale non è più disponibile: non c'è altro posto dove segnalarlo */
+        }
+        inScrittura = null;
+        elaborate += elaborateFrame;
+    }
+
+    /**
+     * Scrive una riga sul buffer del flusso corrispondente alla tipologia di output, svuotando prima il buffer dell'altro flusso se contiene righe precedenti
+     * @param riga la riga da scrivere
+     * @param ripetizioni il numero di occorrenze consecutive della riga
+     */
+    private void scrivi(Riga riga, int ripetizioni) {
+        String suffisso = ripetizioni > 1 ? " (x" + ripetizioni + ")" : "";
+        Writer flusso = riga.tipologia() == OutputType.STDERR ? err : out;
+        try {
+            if(inScrittura != null && inScrittura != flusso) inScrittura.flush();
+            inScrittura = flusso;
+            switch (riga.tipologia()) {
+                case OutputType.STDOUT -> out.append("\033[1;32m> \033[0m").append(riga.testo()).append(suffisso).append(System.lineSeparator());
+
+                case OutputType.STDERR -> err.append("\033[1;31m#\033[0m\033[31m ").append(riga.testo()).append(suffisso).append("\033[0m").append(System.lineSeparator());
+
+                case OutputType.LOG -> out.append("\033[1;37m# ").append(riga.testo()).append(suffisso).append("\033[0m").append(System.lineSeparator());
+            }
+        } catch (IOException ignored) {
+            /* il terminale non è più disponibile: non c'è altro posto dove segnalarlo */
+        }
+    }
+
+    /**
+     * Attende che tutte le righe accodate finora siano state disegnate
+     * @param millisecondi il tempo massimo di attesa
+     * @return <code>true</code> se tutte le righe sono state disegnate, <code>false</code> allo scadere del tempo
+     */
+    public boolean svuota(long millisecondi) {
+        long obiettivo = accodate.get();
+        long scadenza = System.nanoTime() + millisecondi * 1_000_000;
+        while(elaborate < obiettivo) {
+            if(Thread.currentThread() == renderer || !renderer.isAlive() || System.nanoTime() - scadenza > 0) return false;
+            LockSupport.unpark(renderer);
+            LockSupport.parkNanos(100_000);
+        }
+        return true;
+    }
+
+    /**
+     * Restituisce il numero di righe {@link OutputType#LOG} omesse per compattare l'output
+     * @return il numero di righe omesse
+     */
+    public long getOmesse() {
+        return omesse.get();
+    }
+
+    /**
+     * Restituisce il numero di righe in attesa di essere disegnate
+     * @return il numero di righe accodate
+     */
+    public long getInCoda() {
+        return Math.max(0, accodate.get() - elaborate);
+    }
+}
@@ -0,0 +1,110 @@
+package chat.gestione;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Server <code>HTTP</code> che espone le metriche di un {@link RegistroMetriche} nel formato testuale di <code>Prometheus</code>, all'indirizzo <code>http://localhost:&lt;porta&gt;/metrics</code>.
+ * <p>
+ * Il server accetta connessioni solo dall'interfaccia di <code>loopback</code> e risponde alle richieste da un unico {@link Thread} dedicato.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ * @see RegistroMetriche#formatoPrometheus()
+ */
+public class ServerMetriche {
+
+    /**
+     * Il percorso delle metriche
+     */
+    public static final String PERCORSO = "/metrics";
+
+    /**
+     * Il tipo di contenuto del formato testuale di <code>Prometheus</code>
+     */
+    private static final String TIPO_CONTENUTO = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * Il registro delle metriche esposte
+     */
+    private final RegistroMetriche registro;
+
+    /**
+     * Il server <code>HTTP</code>
+     */
+    private final HttpServer server;
+
+    /**
+     * L'{@link ExecutorService} che risponde alle richieste
+     */
+    private final ExecutorService esecutore;
+
+    /**
+     * Crea e avvia un {@link ServerMetriche}
+     * @param registro il {@link RegistroMetriche} da esporre
+     * @param porta la porta locale, <code>0</code> per una porta libera qualsiasi
+     * @throws IOException se la porta non è disponibile
+     */
+    public ServerMetriche(RegistroMetriche registro, int porta) throws IOException {
+        this.registro = registro;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), 0);
+        this.server.createContext(PERCORSO, this::rispondi);
+        this.esecutore = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Thread del server delle metriche");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(esecutore);
+        this.server.start();
+    }
+
+    /**
+     * Risponde a una richiesta con le metriche correnti
+     * @param scambio la richiesta <code>HTTP</code>
+     * @throws IOException se si verifica un errore nell'invio della risposta
+     */
+    private void rispondi(HttpExchange scambio) throws IOException {
+        try (scambio) {
+            if(!"GET".equals(scambio.getRequestMethod()) && !"HEAD".equals(scambio.getRequestMethod())) {
+                scambio.getResponseHeaders().set("Allow", "GET, HEAD");
+                scambio.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] corpo = registro.formatoPrometheus().getBytes(StandardCharsets.UTF_8);
+            scambio.getResponseHeaders().set("Content-Type", TIPO_CONTENUTO);
+            if("HEAD".equals(scambio.getRequestMethod())) {
+                scambio.sendResponseHeaders(200, -1);
+                return;
+            }
+            scambio.sendResponseHeaders(200, corpo.length);
+            try (OutputStream out = scambio.getResponseBody()) {
+                out.write(corpo);
+            }
+        }
+    }
+
+    /**
+     * Restituisce la porta locale del server
+     * @return la porta su cui il server è in ascolto
+     */
+    public int getPorta() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Arresta il server
+     */
+    public void chiudi() {
+        server.stop(0);
+        esecutore.shutdownNow();
+    }
+}
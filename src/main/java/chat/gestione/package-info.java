@@ -6,10 +6,22 @@
  * <p>
  * Contiene:
  * <ul>
+ *     <li>{@link chat.gestione.AppenderAsincrono}</li>
  *     <li>{@link chat.gestione.ChatLogger}</li>
  *     <li>{@link chat.gestione.ChatLoggerType}</li>
+ *     <li>{@link chat.gestione.ContatoreTraffico}</li>
+ *     <li>{@link chat.gestione.DestinazioneConsole}</li>
+ *     <li>{@link chat.gestione.DestinazioneFileRotante}</li>
+ *     <li>{@link chat.gestione.DestinazioneLog}</li>
+ *     <li>{@link chat.gestione.EventiChat}</li>
+ *     <li>{@link chat.gestione.IstogrammaLatenze}</li>
+ *     <li>{@link chat.gestione.MBeanMetriche}</li>
+ *     <li>{@link chat.gestione.Orologio}</li>
  *     <li>{@link chat.gestione.OutputType}</li>
  *     <li>{@link chat.gestione.ProjectOutput}</li>
+ *     <li>{@link chat.gestione.RegistroMetriche}</li>
+ *     <li>{@link chat.gestione.RendererTerminale}</li>
+ *     <li>{@link chat.gestione.ServerMetriche}</li>
  * </ul>
  * 
  * @author Matteo Bagnoletti Tini
@@ -0,0 +1,93 @@
+package chat.host;
+
+import chat.gestione.OutputType;
+import chat.gestione.ProjectOutput;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Elenco degli ascoltatori di un tipo di evento di un {@link MulticastPeer}, ciascuno notificato attraverso il proprio {@link Executor} o quello predefinito del peer.
+ * <p>
+ * L'elenco è copiato ad ogni modifica, così che la notifica, eseguita dai {@link Thread} di ricezione, non acquisisca alcun lock.
+ * Un'eccezione sollevata da un ascoltatore viene segnalata senza interrompere la notifica degli altri né la ricezione.
+ *
+ * @param <T> il tipo dell'evento notificato
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+class Ascoltatori<T> {
+
+    /**
+     * Un ascoltatore registrato
+     * @param azione l'azione eseguita ad ogni evento
+     * @param esecutore l'{@link Executor} della notifica, <code>null</code> per quello predefinito del peer
+     * @param <T> il tipo dell'evento notificato
+     */
+    private record Ascoltatore<T>(Consumer<? super T> azione, Executor esecutore) {}
+
+    /**
+     * Gli ascoltatori registrati, in ordine di registrazione
+     */
+    private final CopyOnWriteArrayList<Ascoltatore<T>> elenco = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registra un ascoltatore
+     * @param azione l'azione eseguita ad ogni evento
+     * @param esecutore l'{@link Executor} della notifica, <code>null</code> per quello predefinito del peer
+     */
+    void aggiungi(Consumer<? super T> azione, Executor esecutore) {
+        if(azione == null) throw new IllegalArgumentException("Ascoltatore non valido: null");
+        elenco.add(new Ascoltatore<>(azione, esecutore));
+    }
+
+    /**
+     * Rimuove tutte le registrazioni di un ascoltatore
+     * @param azione l'azione registrata
+     * @return <code>true</code> se l'ascoltatore era registrato
+     */
+    boolean rimuovi(Consumer<?> azione) {
+        return elenco.removeIf(ascoltatore -> ascoltatore.azione() == azione);
+    }
+
+    /**
+     * Verifica se non è registrato alcun ascoltatore
+     * @return <code>true</code> se l'elenco è vuoto
+     */
+    boolean isVuoto() {
+        return elenco.isEmpty();
+    }
+
+    /**
+     * Notifica un evento a tutti gli ascoltatori
+     * @param evento l'evento
+     * @param predefinito l'{@link Executor} degli ascoltatori registrati senza un proprio esecutore
+     */
+    void notifica(T evento, Executor predefinito) {
+        for(Ascoltatore<T> ascoltatore : elenco) {
+            Executor esecutore = ascoltatore.esecutore() != null ? ascoltatore.esecutore() : predefinito;
+            try {
+                esecutore.execute(() -> esegui(ascoltatore, evento));
+            } catch (RejectedExecutionException e) {
+                ProjectOutput.stampa("Notifica scartata dall'esecutore dell'ascoltatore: " + e.getMessage(), OutputType.STDERR);
+            }
+        }
+    }
+
+    /**
+     * Esegue un ascoltatore, segnalando l'eventuale eccezione
+     * @param ascoltatore l'ascoltatore
+     * @param evento l'evento
+     */
+    private void esegui(Ascoltatore<T> ascoltatore, T evento) {
+        try {
+            ascoltatore.azione().accept(evento);
+        } catch (RuntimeException e) {
+            ProjectOutput.stampa("Errore nell'ascoltatore: " + e, OutputType.STDERR);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package chat.host;
+
+import chat.comunicazione.Frammentatore;
+import chat.gestione.ChatLogger;
+import chat.gestione.ChatLoggerType;
+import chat.gestione.OutputType;
+import chat.gestione.ProjectOutput;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ciclo di eventi non bloccante per la ricezione dei datagrammi da più {@link DatagramChannel}.
+ * <p>
+ * Un unico {@link Thread} attende su un {@link Selector} i datagrammi di tutti i canali registrati, sia <code>unicast</code> che <code>multicast</code>, e li consegna al rispettivo {@link GestoreDatagrammi}.
+ * In questo modo uno stesso processo può ospitare più {@link MulticastPeer} o più {@link GroupChat} senza una coppia di {@link Thread} di ricezione per ciascuna socket.
+ * <p>
+ * Per limitare la latenza di ricezione, ad ogni selezione vengono letti al più {@link #LETTURE_PER_SELEZIONE} datagrammi da ciascun canale pronto, prima di passare al successivo.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public class CicloEventi {
+
+    /**
+     * Gestore dei datagrammi ricevuti da un canale registrato
+     */
+    @FunctionalInterface
+    public interface GestoreDatagrammi {
+        /**
+         * Gestisce un datagramma ricevuto. Il buffer è riutilizzato dal {@link CicloEventi} e non deve essere conservato dopo il ritorno del metodo.
+         * @param dati il datagramma ricevuto, tra <code>position</code> e <code>limit</code> del buffer
+         * @param mittente l'indirizzo del mittente
+         */
+        void ricevi(ByteBuffer dati, InetSocketAddress mittente);
+    }
+
+    /**
+     * Il numero massimo di datagrammi letti da un canale ad ogni selezione
+     */
+    public static final int LETTURE_PER_SELEZIONE = 64;
+
+    /**
+     * Il {@link Selector} dei canali registrati
+     */
+    private final Selector selettore;
+
+    /**
+     * Le operazioni di registrazione richieste da altri {@link Thread}, eseguite dal {@link Thread} del ciclo
+     */
+    private final Queue<Runnable> registrazioni;
+
+    /**
+     * Il buffer <code>direct</code> di ricezione, unico in quanto utilizzato dal solo {@link Thread} del ciclo
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Il {@link Thread} del ciclo, <code>null</code> se non ancora avviato
+     */
+    private Thread thread;
+
+    /**
+     * Il numero di selezioni effettuate
+     */
+    private final AtomicLong selezioni;
+
+    /**
+     * Il numero di datagrammi ricevuti
+     */
+    private final AtomicLong datagrammiRicevuti;
+
+    /**
+     * Crea un {@link CicloEventi}. Il {@link Thread} del ciclo viene avviato alla prima registrazione di un canale.
+     * @throws IOException se non è possibile aprire il {@link Selector}
+     */
+    public CicloEventi() throws IOException {
+        this.selettore = Selector.open();
+        this.registrazioni = new ConcurrentLinkedQueue<>();
+        this.buffer = ByteBuffer.allocateDirect(Frammentatore.MTU_MASSIMA);
+        this.selezioni = new AtomicLong();
+        this.datagrammiRicevuti = new AtomicLong();
+    }
+
+    /**
+     * Registra un canale nel ciclo. Il canale viene configurato come non bloccante.
+     * @param canale il {@link DatagramChannel} da cui ricevere
+     * @param gestore il {@link GestoreDatagrammi} dei datagrammi ricevuti dal canale
+     * @throws IOException se non è possibile configurare il canale
+     * @throws IllegalStateException se il ciclo è stato chiuso
+     */
+    public synchronized void registra(final DatagramChannel canale, final GestoreDatagrammi gestore) throws IOException, IllegalStateException {
+        if(!selettore.isOpen()) throw new IllegalStateException("Ciclo di eventi chiuso");
+        canale.configureBlocking(false);
+        registrazioni.add(() -> {
+            try {
+                canale.register(selettore, SelectionKey.OP_READ, gestore);
+            } catch (IOException e) {
+                ProjectOutput.stampa("Impossibile registrare il canale: " + e.getMessage(), OutputType.STDERR);
+            }
+        });
+
+        if(thread == null) {
+            thread = new Thread(this::esegui, "Thread del ciclo di eventi");
+            thread.setDaemon(true);
+            thread.start();
+            ChatLogger.log("Ciclo di eventi avviato", ChatLoggerType.OPTIONAL);
+        } else {
+            selettore.wakeup();
+        }
+    }
+
+    /**
+     * Rimuove un canale dal ciclo, senza chiuderlo
+     * @param canale il {@link DatagramChannel} da rimuovere
+     */
+    public void annulla(final DatagramChannel canale) {
+        SelectionKey chiave = canale.keyFor(selettore);
+        if(chiave != null) {
+            chiave.cancel();
+            selettore.wakeup();
+        }
+    }
+
+    /**
+     * Ciclo principale: esegue le registrazioni in attesa, attende i canali pronti e ne consegna i datagrammi
+     */
+    private void esegui() {
+        try {
+            while(selettore.isOpen()) {
+                Runnable registrazione;
+                while((registrazione = registrazioni.poll()) != null) registrazione.run();
+
+                selettore.select();
+                selezioni.incrementAndGet();
+
+                Iterator<SelectionKey> pronte = selettore.selectedKeys().iterator();
+                while(pronte.hasNext()) {
+                    SelectionKey chiave = pronte.next();
+                    pronte.remove();
+                    if(chiave.isValid() && chiave.isReadable()) leggi(chiave);
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            ChatLogger.log("Ciclo di eventi terminato", ChatLoggerType.OPTIONAL);
+        } catch (IOException e) {
+            ProjectOutput.stampa("Errore nel ciclo di eventi: " + e.getMessage(), OutputType.STDERR);
+        }
+    }
+
+    /**
+     * Legge i datagrammi disponibili su un canale pronto, fino a {@link #LETTURE_PER_SELEZIONE}
+     * @param chiave la {@link SelectionKey} del canale
+     */
+    private void leggi(SelectionKey chiave) {
+        DatagramChannel canale = (DatagramChannel) chiave.channel();
+        GestoreDatagrammi gestore = (GestoreDatagrammi) chiave.attachment();
+
+        for(int letture = 0; letture < LETTURE_PER_SELEZIONE && chiave.isValid(); letture++) {
+            buffer.clear();
+            InetSocketAddress mittente;
+            try {
+                mittente = (InetSocketAddress) canale.receive(buffer);
+            } catch (IOException e) {
+                chiave.cancel();
+                ChatLogger.log("Canale rimosso dal ciclo di eventi: {}", ChatLoggerType.OPTIONAL, e.getMessage());
+                return;
+            }
+            if(mittente == null) return;
+
+            buffer.flip();
+            datagrammiRicevuti.incrementAndGet();
+            try {
+                gestore.ricevi(buffer, mittente);
+            } catch (RuntimeException e) {
+                ProjectOutput.stampa("Errore nella gestione del datagramma: " + e.getMessage(), OutputType.STDERR);
+            }
+        }
+    }
+
+    /**
+     * Restituisce le statistiche del ciclo: selezioni effettuate e datagrammi ricevuti
+     * @return le statistiche del ciclo
+     */
+    public String getStatistiche() {
+        long numeroSelezioni = selezioni.get();
+        String stat = "Ciclo di eventi: " + datagrammiRicevuti.get() + " datagrammi in " + numeroSelezioni + " selezioni";
+        if(numeroSelezioni > 0) stat += " (" + String.format("%.2f", (double) datagrammiRicevuti.get() / numeroSelezioni) + " per selezione)";
+        return stat;
+    }
+
+    /**
+     * Chiude il {@link Selector} e termina il ciclo. I canali registrati non vengono chiusi.
+     */
+    public synchronized void chiudi() {
+        try {
+            selettore.close();
+        } catch (IOException e) {
+            ChatLogger.log("Impossibile chiudere il ciclo di eventi", ChatLoggerType.OPTIONAL);
+        }
+    }
+}
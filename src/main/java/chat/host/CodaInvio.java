@@ -0,0 +1,334 @@
+package chat.host;
+
+import chat.eccezioni.CommunicationException;
+import chat.gestione.ChatLogger;
+import chat.gestione.ChatLoggerType;
+import chat.gestione.IstogrammaLatenze;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coda limitata delle operazioni di invio di un {@link MulticastPeer}, eseguite in ordine da un unico {@link Thread} di scrittura.
+ * <p>
+ * Qualsiasi {@link Thread} può accodare un'operazione attraverso il metodo {@link #accoda(OperazioneInvio)} senza mai attendere l'invio: ottiene un {@link CompletableFuture} completato al termine dell'operazione, oppure in modo eccezionale se l'operazione fallisce o la coda è piena.
+ * In questo modo i {@link Thread} di ricezione non si bloccano in attesa della rete o di altri {@link Thread} che stanno inviando.
+ * <p>
+ * Un'operazione accodata mentre la coda viene chiusa è sempre eseguita dal {@link Thread} di scrittura oppure rifiutata: il relativo {@link CompletableFuture} non resta mai in sospeso.
+ * <p>
+ * In alternativa al {@link Thread} di scrittura, le operazioni possono essere eseguite da un {@link Executor} indicato alla creazione, ad esempio un pianificatore virtuale della
+ * {@link ReteSimulata}: ogni operazione accodata richiede all'{@link Executor} lo svuotamento della coda, che esegue in ordine tutte le operazioni in attesa.
+ * <p>
+ * Per ciascuna operazione vengono misurati l'attesa in coda e la durata dell'invio, e registrata in un {@link IstogrammaLatenze} la latenza complessiva tra accodamento e fine dell'invio.
+ * <p>
+ * Dalla versione v1.3 le operazioni possono essere eseguite da un {@link Executor} al posto del {@link Thread} di scrittura.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.3
+ * @project MulticastUDPSocketChat
+ */
+public class CodaInvio {
+
+    /**
+     * Operazione di invio eseguita dal {@link Thread} di scrittura
+     */
+    @FunctionalInterface
+    public interface OperazioneInvio {
+        /**
+         * Esegue l'operazione di invio
+         * @throws Exception se l'invio non va a buon fine
+         */
+        void esegui() throws Exception;
+    }
+
+    /**
+     * Operazione accodata, con il relativo esito e l'istante di accodamento in nanosecondi
+     */
+    private record Invio(OperazioneInvio operazione, CompletableFuture<Void> esito, long accodamento) {}
+
+    /**
+     * Le operazioni in attesa di essere eseguite
+     */
+    private final BlockingQueue<Invio> coda;
+
+    /**
+     * Il {@link Thread} di scrittura, <code>null</code> se non ancora avviato o se le operazioni sono eseguite dall'{@link #esecutore}
+     */
+    private Thread scrittore;
+
+    /**
+     * L'{@link Executor} che esegue le operazioni, <code>null</code> se vengono eseguite dal {@link Thread} di scrittura
+     */
+    private final Executor esecutore;
+
+    /**
+     * Indica se l'esecuzione delle operazioni è stata avviata
+     */
+    private volatile boolean avviata;
+
+    /**
+     * Il lock che consente a un solo svuotamento alla volta di eseguire le operazioni, quando sono eseguite dall'{@link #esecutore}
+     */
+    private final Object svuotamento;
+
+    /**
+     * Indica se la coda accetta nuove operazioni
+     */
+    private volatile boolean aperta;
+
+    /**
+     * La profondità massima raggiunta dalla coda
+     */
+    private final AtomicInteger profonditaMassima;
+
+    /**
+     * Il numero di operazioni rifiutate perché la coda era piena o chiusa
+     */
+    private final AtomicLong rifiutati;
+
+    /**
+     * Il numero di operazioni eseguite
+     */
+    private long eseguiti;
+
+    /**
+     * Il numero di operazioni fallite
+     */
+    private long falliti;
+
+    /**
+     * La somma e il massimo delle attese in coda, in nanosecondi
+     */
+    private long attesaComplessiva, attesaMassima;
+
+    /**
+     * La somma e il massimo delle durate di invio, in nanosecondi
+     */
+    private long invioComplessivo, invioMassimo;
+
+    /**
+     * L'{@link IstogrammaLatenze} del tempo trascorso tra l'accodamento e la fine di ciascuna operazione
+     */
+    private final IstogrammaLatenze latenzeInvio;
+
+    /**
+     * Crea una {@link CodaInvio}
+     * @param capacita il numero massimo di operazioni in attesa
+     * @throws IllegalArgumentException se la capacità non è positiva
+     */
+    public CodaInvio(final int capacita) throws IllegalArgumentException {
+        this(capacita, null);
+    }
+
+    /**
+     * Crea una {@link CodaInvio} le cui operazioni sono eseguite da un {@link Executor}
+     * @param capacita il numero massimo di operazioni in attesa
+     * @param esecutore l'{@link Executor} che esegue le operazioni, <code>null</code> per eseguirle con un {@link Thread} di scrittura
+     * @throws IllegalArgumentException se la capacità non è positiva
+     */
+    public CodaInvio(final int capacita, final Executor esecutore) throws IllegalArgumentException {
+        if(capacita <= 0) throw new IllegalArgumentException("La capacità della coda di invio deve essere positiva");
+        this.coda = new ArrayBlockingQueue<>(capacita);
+        this.esecutore = esecutore;
+        this.svuotamento = new Object();
+        this.profonditaMassima = new AtomicInteger();
+        this.latenzeInvio = new IstogrammaLatenze();
+        this.rifiutati = new AtomicLong();
+        this.aperta = true;
+    }
+
+    /**
+     * Avvia il {@link Thread} di scrittura, oppure l'esecuzione da parte dell'{@link Executor}. Le operazioni accodate in precedenza vengono eseguite all'avvio.
+     */
+    public synchronized void avvia() {
+        if(avviata) return;
+        avviata = true;
+        if(esecutore != null) {
+            if(!richiediSvuotamento()) ChatLogger.log("Esecutore della coda di invio arrestato: le operazioni saranno eseguite alla chiusura", ChatLoggerType.OPTIONAL);
+            return;
+        }
+        scrittore = new Thread(this::esegui, "Thread di invio");
+        scrittore.setDaemon(true);
+        scrittore.start();
+        ChatLogger.log("Thread di invio avviato", ChatLoggerType.OPTIONAL);
+    }
+
+    /**
+     * Accoda un'operazione di invio senza attendere
+     * @param operazione l'operazione da eseguire
+     * @return il {@link CompletableFuture} completato al termine dell'operazione, in modo eccezionale con una {@link CommunicationException} se la coda è piena o chiusa
+     */
+    public CompletableFuture<Void> accoda(OperazioneInvio operazione) {
+        CompletableFuture<Void> esito = new CompletableFuture<>();
+        Invio invio = new Invio(operazione, esito, System.nanoTime());
+        if(!aperta || !coda.offer(invio)) {
+            rifiutati.incrementAndGet();
+            esito.completeExceptionally(new CommunicationException(aperta ? "Coda di invio piena: messaggio scartato" : "Coda di invio chiusa: messaggio scartato"));
+            return esito;
+        }
+        /* la coda potrebbe essere stata chiusa e svuotata tra la verifica e l'inserimento: l'operazione ancora presente non verrebbe più eseguita */
+        if(!aperta && coda.remove(invio)) {
+            rifiutati.incrementAndGet();
+            esito.completeExceptionally(new CommunicationException("Coda di invio chiusa: messaggio scartato"));
+            return esito;
+        }
+        profonditaMassima.accumulateAndGet(coda.size(), Math::max);
+        if(esecutore != null && avviata && !richiediSvuotamento() && coda.remove(invio)) {
+            rifiutati.incrementAndGet();
+            esito.completeExceptionally(new CommunicationException("Esecutore della coda di invio arrestato: messaggio scartato"));
+        }
+        return esito;
+    }
+
+    /**
+     * Richiede all'{@link #esecutore} lo svuotamento della coda. Se l'{@link Executor} rifiuta la richiesta, le operazioni già accodate restano in attesa della chiusura della coda.
+     * @return <code>true</code> se la richiesta è stata accettata, <code>false</code> se l'{@link Executor} l'ha rifiutata
+     */
+    private boolean richiediSvuotamento() {
+        try {
+            esecutore.execute(this::svuota);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Esegue in ordine di accodamento tutte le operazioni in attesa, dal {@link Thread} dell'{@link #esecutore} o da quello che chiude la coda
+     */
+    private void svuota() {
+        synchronized (svuotamento) {
+            Invio invio;
+            while((invio = coda.poll()) != null) esegui(invio);
+        }
+    }
+
+    /**
+     * Ciclo del {@link Thread} di scrittura: esegue le operazioni in ordine di accodamento finché la coda non viene chiusa e svuotata
+     */
+    private void esegui() {
+        while(aperta || !coda.isEmpty()) {
+            Invio invio;
+            try {
+                invio = coda.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if(invio == null) continue;
+            esegui(invio);
+        }
+        scartaResidui();
+    }
+
+    /**
+     * Esegue un'operazione, ne completa l'esito e aggiorna le misure
+     * @param invio l'operazione da eseguire
+     */
+    private void esegui(Invio invio) {
+        long inizio = System.nanoTime();
+        try {
+            invio.operazione().esegui();
+            invio.esito().complete(null);
+        } catch (Exception e) {
+            invio.esito().completeExceptionally(e);
+        }
+        registra(invio, inizio, System.nanoTime());
+    }
+
+    /**
+     * Completa in modo eccezionale le operazioni rimaste in coda
+     */
+    private void scartaResidui() {
+        List<Invio> residui = new ArrayList<>();
+        coda.drainTo(residui);
+        for(Invio invio : residui) invio.esito().completeExceptionally(new CommunicationException("Coda di invio chiusa: messaggio scartato"));
+    }
+
+    /**
+     * Aggiorna le misure con un'operazione eseguita
+     * @param invio l'operazione eseguita
+     * @param inizio l'istante di inizio dell'esecuzione, in nanosecondi
+     * @param fine l'istante di fine dell'esecuzione, in nanosecondi
+     */
+    private synchronized void registra(Invio invio, long inizio, long fine) {
+        latenzeInvio.registra(fine - invio.accodamento());
+        eseguiti++;
+        if(invio.esito().isCompletedExceptionally()) falliti++;
+        long attesa = inizio - invio.accodamento();
+        attesaComplessiva += attesa;
+        attesaMassima = Math.max(attesaMassima, attesa);
+        invioComplessivo += fine - inizio;
+        invioMassimo = Math.max(invioMassimo, fine - inizio);
+    }
+
+    /**
+     * Restituisce il numero di operazioni in attesa
+     * @return la profondità corrente della coda
+     */
+    public int getProfondita() {
+        return coda.size();
+    }
+
+    /**
+     * Restituisce l'{@link IstogrammaLatenze} del tempo trascorso tra l'accodamento e la fine di ciascuna operazione
+     * @return l'istogramma delle latenze di invio
+     */
+    public IstogrammaLatenze getLatenzeInvio() {
+        return latenzeInvio;
+    }
+
+    /**
+     * Restituisce le statistiche della coda: profondità, operazioni eseguite e rifiutate, attesa in coda e durata degli invii
+     * @return le statistiche della coda di invio
+     */
+    public synchronized String getStatistiche() {
+        String stat = "Coda di invio: profondità " + coda.size() + " (massima " + profonditaMassima.get() + ") | ";
+        stat += "Invii eseguiti: " + eseguiti + " (falliti " + falliti + ", rifiutati " + rifiutati.get() + ")";
+        if(eseguiti > 0) {
+            stat += " | Attesa in coda media: " + String.format("%.3f", attesaComplessiva / 1e6 / eseguiti) + " ms, massima: " + String.format("%.3f", attesaMassima / 1e6) + " ms";
+            stat += " | Invio medio: " + String.format("%.3f", invioComplessivo / 1e6 / eseguiti) + " ms, massimo: " + String.format("%.3f", invioMassimo / 1e6) + " ms";
+        }
+        return stat;
+    }
+
+    /**
+     * Chiude la coda a nuove operazioni e attende che il {@link Thread} di scrittura esegua quelle già accodate.
+     * Se le operazioni sono eseguite da un {@link Executor}, quelle già accodate vengono eseguite dal {@link Thread} chiamante.
+     * @param attesaMassima l'attesa massima in millisecondi, trascorsa la quale le operazioni residue vengono scartate
+     */
+    public void chiudi(long attesaMassima) {
+        Thread daAttendere;
+        boolean avviataDaEsecutore;
+        synchronized (this) {
+            aperta = false;
+            daAttendere = scrittore;
+            avviataDaEsecutore = avviata && esecutore != null;
+        }
+        if(avviataDaEsecutore) {
+            svuota();
+            return;
+        }
+        if(daAttendere == null) {
+            scartaResidui();
+            return;
+        }
+        if(daAttendere == Thread.currentThread()) return;
+        try {
+            daAttendere.join(attesaMassima);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(daAttendere.isAlive()) {
+            daAttendere.interrupt();
+            ChatLogger.log("Coda di invio chiusa con {} operazioni non eseguite", ChatLoggerType.OPTIONAL, coda.size());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package chat.host;
+
+/**
+ * Condizioni avverse riprodotte da una {@link ReteSimulata}.
+ * <p>
+ * Perdita, duplicazione, riordino e variazione della latenza sono decisi indipendentemente per ciascun destinatario di un datagramma;
+ * il limite di banda si applica invece all'uscita di ciascun host, come un collegamento con una coda di invio limitata.
+ *
+ * @param perdita la probabilità che un datagramma non venga consegnato a un destinatario, tra <code>0</code> e <code>1</code>
+ * @param duplicazione la probabilità che un datagramma venga consegnato due volte, tra <code>0</code> e <code>1</code>
+ * @param riordino la probabilità che un datagramma venga trattenuto per {@link #ritardoRiordino()}, consegnandolo dopo i successivi, tra <code>0</code> e <code>1</code>
+ * @param latenza la latenza minima di ciascun datagramma, in microsecondi
+ * @param variazione la variazione massima della latenza, aggiunta con distribuzione uniforme, in microsecondi
+ * @param ritardoRiordino il ritardo aggiuntivo dei datagrammi riordinati, in microsecondi
+ * @param banda la banda in uscita di ciascun host, in byte al secondo, <code>0</code> per una banda illimitata
+ * @param codaMassima i byte in attesa di trasmissione oltre i quali i datagrammi di un host vengono scartati, <code>0</code> per una coda illimitata
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public record CondizioniRete(double perdita, double duplicazione, double riordino, long latenza, long variazione, long ritardoRiordino, long banda, int codaMassima) {
+
+    /**
+     * Una rete priva di perdite, duplicazioni, riordini e latenza, con banda illimitata
+     */
+    public static final CondizioniRete IDEALI = new CondizioniRete(0, 0, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * Verifica la validità delle condizioni
+     * @throws IllegalArgumentException se una probabilità non è compresa tra <code>0</code> e <code>1</code> o una durata, la banda o la coda sono negative
+     */
+    public CondizioniRete {
+        if(!probabilita(perdita) || !probabilita(duplicazione) || !probabilita(riordino)) throw new IllegalArgumentException("Le probabilità devono essere comprese tra 0 e 1");
+        if(latenza < 0 || variazione < 0 || ritardoRiordino < 0) throw new IllegalArgumentException("Le latenze non possono essere negative");
+        if(banda < 0 || codaMassima < 0) throw new IllegalArgumentException("Banda e coda non possono essere negative");
+    }
+
+    /**
+     * Verifica che un valore sia una probabilità
+     * @param valore il valore
+     * @return <code>true</code> se il valore è compreso tra <code>0</code> e <code>1</code>
+     */
+    private static boolean probabilita(double valore) {
+        return valore >= 0 && valore <= 1;
+    }
+
+    @Override
+    public String toString() {
+        String descrizione = String.format("perdita %.1f%% | duplicazione %.1f%% | riordino %.1f%% | latenza %.3f+%.3f ms", perdita * 100, duplicazione * 100, riordino * 100, latenza / 1e3, variazione / 1e3);
+        return descrizione + (banda > 0 ? " | banda " + banda + " B/s, coda " + codaMassima + " B" : " | banda illimitata");
+    }
+}
@@ -1,28 +1,45 @@
 package chat.host;
 
+import chat.comunicazione.Frammentatore;
+import chat.comunicazione.Pacchetto;
 import chat.eccezioni.CommunicationException;
 import chat.gestione.ChatLogger;
 import chat.gestione.ChatLoggerType;
+import chat.gestione.ContatoreTraffico;
+import chat.gestione.EventiChat;
+import chat.gestione.OutputType;
+import chat.gestione.ProjectOutput;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.Enumeration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Generico <code>gruppo</code> UDP multicast.
  * <p>
  * Fornisce la {@link MulticastSocket} necessaria alla comunicazione multicast e i metodi di gestione.    
+ * <p>
+ * In alternativa, attraverso il costruttore {@link #GroupChat(String, int, boolean)}, è possibile utilizzare un {@link DatagramChannel} non bloccante, da registrare in un {@link CicloEventi}.
+ * Il costruttore {@link #GroupChat(String, int, boolean, NetworkInterface)} consente inoltre di scegliere l'interfaccia di rete, ad esempio quella di loopback.
+ * Socket e canale sono incapsulati in un {@link TrasportoUDP}; il costruttore {@link #GroupChat(String, int, Trasporto)} accetta invece un qualsiasi {@link Trasporto}, ad esempio di una {@link ReteSimulata}.
+ * <p>
+ * Attraverso il metodo {@link #abilitaAccorpamento(long)} è possibile raccogliere più messaggi brevi in un unico datagramma ({@link Pacchetto}), inviato al raggiungimento dell'<code>MTU</code> o allo scadere di un'attesa massima.
  *     
  * @author Matteo Bagnoletti Tini
- * @version 1.0
+ * @version 1.6
  * @project MulticastUDPSocketChat
  */
 public class GroupChat {
     
     /**
-     * Socket per la comunicazione con un <code>gruppo</code> multicast
+     * Il {@link Trasporto} per la comunicazione con un <code>gruppo</code> multicast
      */
-    private MulticastSocket multicastSocket;
+    private final Trasporto trasporto;
     
     /**
      * L'{@link  InetAddress} del gruppo
@@ -40,13 +57,63 @@ public class GroupChat {
     private int portaGruppo;
 
     /**
-     * L'interfaccia di rete utilizzata dalla {@link #multicastSocket}
-     * @see #identificaNet()
+     * Il {@link Frammentatore} dei messaggi multicast più grandi dell'<code>MTU</code>
+     */
+    private final Frammentatore frammentatore = new Frammentatore();
+
+    /**
+     * Il {@link ContatoreTraffico} dei datagrammi inviati al gruppo
+     */
+    private final ContatoreTraffico trafficoInviato = new ContatoreTraffico();
+
+    /**
+     * Indica se i messaggi multicast vengono accorpati
+     * @see #abilitaAccorpamento(long)
+     */
+    private boolean accorpamento;
+
+    /**
+     * L'attesa massima, in millisecondi, di un messaggio accorpato prima dell'invio
+     */
+    private long attesaAccorpamento;
+
+    /**
+     * Il {@link Pacchetto} in fase di riempimento
      */
-    private NetworkInterface interfacciaDiRete;
+    private Pacchetto pacchetto;
+
+    /**
+     * Il numero di {@link Pacchetto} creati, utilizzato per distinguere le richieste di invio ritardato ormai superate
+     */
+    private long generazionePacchetto;
+
+    /**
+     * Il servizio di pianificazione degli invii ritardati dei messaggi accorpati
+     */
+    private ScheduledExecutorService pianificatore;
+
+    /**
+     * Il numero di datagrammi inviati in modalità di accorpamento
+     */
+    private long datagrammiAccorpati;
+
+    /**
+     * Il numero di messaggi inviati in modalità di accorpamento
+     */
+    private long messaggiAccorpati;
+
+    /**
+     * La somma delle attese, in nanosecondi, dei messaggi accorpati
+     */
+    private long attesaComplessiva;
+
+    /**
+     * L'attesa massima, in nanosecondi, registrata da un messaggio accorpato
+     */
+    private long attesaMassima;
     
     /**
-     * Crea e configura opportunamente la {@link #multicastSocket}
+     * Crea e configura opportunamente la {@link MulticastSocket} del {@link #trasporto}
      * @param indirizzoMulticast l'{@link InetAddress} del <code>gruppo</code>
      * @param portaMulticast la porta del <code>gruppo</code>
      * @throws IllegalArgumentException se uno dei due parametri non risulta valido
@@ -54,17 +121,72 @@ public class GroupChat {
      * @throws CommunicationException se il programma non è riuscito a identificare una {@link NetworkInterface} disponibile
      */
     public GroupChat(final String indirizzoMulticast, final int portaMulticast) throws IOException, CommunicationException, IllegalArgumentException {
-        ChatLogger.log("Forniti -> IPv4 o nome di dominio del gruppo: " + indirizzoMulticast + " | Numero di porta del gruppo: " + portaMulticast, ChatLoggerType.OPTIONAL);
+        this(indirizzoMulticast, portaMulticast, false);
+    }
+
+    /**
+     * Crea e configura opportunamente la {@link MulticastSocket} oppure, se richiesto, il {@link DatagramChannel} non bloccante del {@link #trasporto}
+     * @param indirizzoMulticast l'{@link InetAddress} del <code>gruppo</code>
+     * @param portaMulticast la porta del <code>gruppo</code>
+     * @param nonBloccante <code>true</code> per utilizzare un {@link DatagramChannel} non bloccante, <code>false</code> per la {@link MulticastSocket}
+     * @throws IllegalArgumentException se uno dei due parametri non risulta valido
+     * @throws IOException se si verifica un errore di I/O
+     * @throws CommunicationException se il programma non è riuscito a identificare una {@link NetworkInterface} disponibile
+     */
+    public GroupChat(final String indirizzoMulticast, final int portaMulticast, final boolean nonBloccante) throws IOException, CommunicationException, IllegalArgumentException {
+        this(indirizzoMulticast, portaMulticast, nonBloccante, null);
+    }
+
+    /**
+     * Crea e configura opportunamente la {@link MulticastSocket} oppure il {@link DatagramChannel} non bloccante del {@link #trasporto}, sull'interfaccia di rete indicata.
+     * Consente ad esempio di comunicare attraverso l'interfaccia di loopback, esclusa dalla ricerca di {@link #identificaNet()}.
+     * @param indirizzoMulticast l'{@link InetAddress} del <code>gruppo</code>
+     * @param portaMulticast la porta del <code>gruppo</code>
+     * @param nonBloccante <code>true</code> per utilizzare un {@link DatagramChannel} non bloccante, <code>false</code> per la {@link MulticastSocket}
+     * @param interfaccia la {@link NetworkInterface} da utilizzare, <code>null</code> per identificarla automaticamente
+     * @throws IllegalArgumentException se uno dei due parametri non risulta valido
+     * @throws IOException se si verifica un errore di I/O
+     * @throws CommunicationException se il programma non è riuscito a identificare una {@link NetworkInterface} disponibile
+     */
+    public GroupChat(final String indirizzoMulticast, final int portaMulticast, final boolean nonBloccante, final NetworkInterface interfaccia) throws IOException, CommunicationException, IllegalArgumentException {
+        configuraGruppo(indirizzoMulticast, portaMulticast);
+
+        NetworkInterface interfacciaDiRete = interfaccia != null ? interfaccia : identificaNet();
+        if (interfacciaDiRete == null) throw new CommunicationException("Nessuna interfaccia di rete abilitata per IPv4 e multicast trovata");
+        
+        try {
+            this.trasporto = nonBloccante ? TrasportoUDP.canaleGruppo(portaGruppo, interfacciaDiRete) : TrasportoUDP.socketGruppo(portaGruppo, interfacciaDiRete, interfaccia != null);
+        } catch (IOException e) {
+            throw new IOException("Errore nella creazione del Socket Multicast: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Crea un {@link GroupChat} che comunica attraverso il {@link Trasporto} indicato, legato alla porta del <code>gruppo</code>
+     * @param indirizzoMulticast l'{@link InetAddress} del <code>gruppo</code>
+     * @param portaMulticast la porta del <code>gruppo</code>
+     * @param trasporto il {@link Trasporto} del gruppo, ad esempio aperto con {@link ReteSimulata#apri(InetAddress, int)}
+     * @throws IllegalArgumentException se uno dei due parametri non risulta valido
+     */
+    public GroupChat(final String indirizzoMulticast, final int portaMulticast, final Trasporto trasporto) throws IllegalArgumentException {
+        configuraGruppo(indirizzoMulticast, portaMulticast);
+        this.trasporto = trasporto;
+    }
+
+    /**
+     * Verifica e memorizza l'indirizzo e la porta del <code>gruppo</code>
+     * @param indirizzoMulticast l'{@link InetAddress} del <code>gruppo</code>
+     * @param portaMulticast la porta del <code>gruppo</code>
+     * @throws IllegalArgumentException se uno dei due parametri non risulta valido
+     */
+    private void configuraGruppo(final String indirizzoMulticast, final int portaMulticast) throws IllegalArgumentException {
+        ChatLogger.log("Forniti -> IPv4 o nome di dominio del gruppo: {} | Numero di porta del gruppo: {}", ChatLoggerType.OPTIONAL, indirizzoMulticast, portaMulticast);
         if(portaMulticast < 1024 || portaMulticast > 65535 ) {
             throw new IllegalArgumentException("Porta non nel range valido (1024-65535)");
         }
 
-        this.interfacciaDiRete = identificaNet();
-        if (interfacciaDiRete == null) throw new CommunicationException("Nessuna interfaccia di rete abilitata per IPv4 e multicast trovata");
-        
         try {
             this.portaGruppo = portaMulticast;
-            this.multicastSocket = new MulticastSocket(portaGruppo);
             this.indirizzoMulticast = InetAddress.getByName(indirizzoMulticast);
             
             if(!this.indirizzoMulticast.isMulticastAddress()) throw new IllegalArgumentException("L'indirizzo IP fornito per la configurazione del gruppo non è di tipo multicast");
@@ -72,8 +194,6 @@ public class GroupChat {
             this.gruppo = new InetSocketAddress(this.indirizzoMulticast, this.portaGruppo);
         } catch (UnknownHostException e) {
             throw new IllegalArgumentException("Indirizzo IP o di dominio non valido: " + e.getMessage());
-        } catch (IOException e) {
-            throw new IOException("Errore nella creazione del Socket Multicast: " + e.getMessage());
         }
     }
 
@@ -83,8 +203,15 @@ public class GroupChat {
      * @see #GroupChat(String, int) 
      */
     public void avvia() throws IOException {
-        // this.multicastSocket.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, false);
-        this.multicastSocket.joinGroup(gruppo, interfacciaDiRete);
+        trasporto.unisci(indirizzoMulticast);
+    }
+
+    /**
+     * Restituisce il {@link Trasporto} del gruppo
+     * @return il {@link #trasporto}
+     */
+    public Trasporto getTrasporto() {
+        return trasporto;
     }
 
     /**
@@ -92,23 +219,169 @@ public class GroupChat {
      * @return l'oggetto {@link MulticastSocket} se esiste, null altrimenti
      */
     public MulticastSocket getMulticastSocket() {
-        return multicastSocket;
+        return trasporto instanceof TrasportoUDP udp ? (MulticastSocket) udp.getSocket() : null;
     }
 
     /**
-     * Metodo di scrittura di messaggi di tipo multicast
+     * Restituisce il {@link DatagramChannel} non bloccante del gruppo
+     * @return il {@link DatagramChannel} se il {@link GroupChat} è stato creato in modalità non bloccante, null altrimenti
+     */
+    public DatagramChannel getCanaleMulticast() {
+        return trasporto instanceof TrasportoUDP udp ? udp.getCanale() : null;
+    }
+
+    /**
+     * Imposta la dimensione massima dei datagrammi multicast inviati. I messaggi più grandi vengono frammentati.
+     * @param mtu la nuova <code>MTU</code>
+     * @throws IllegalArgumentException nei casi previsti da {@link Frammentatore#setMTU(int)}
+     */
+    public void setMTU(int mtu) throws IllegalArgumentException {
+        frammentatore.setMTU(mtu);
+    }
+
+    /**
+     * Abilita l'accorpamento dei messaggi multicast: i messaggi vengono raccolti in un unico datagramma, inviato quando non può contenere il messaggio successivo o al più tardi dopo l'attesa indicata
+     * @param attesaMassima l'attesa massima, in millisecondi, di ciascun messaggio prima dell'invio
+     * @throws IllegalArgumentException se l'attesa non è positiva
+     */
+    public synchronized void abilitaAccorpamento(long attesaMassima) throws IllegalArgumentException {
+        if(attesaMassima <= 0) throw new IllegalArgumentException("L'attesa massima deve essere positiva");
+        if(pianificatore == null) {
+            pianificatore = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Thread di accorpamento multicast");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.attesaAccorpamento = attesaMassima;
+        this.accorpamento = true;
+        ChatLogger.log("Accorpamento dei messaggi multicast abilitato con attesa massima di {} ms", ChatLoggerType.OPTIONAL, attesaMassima);
+    }
+
+    /**
+     * Disabilita l'accorpamento dei messaggi multicast, inviando gli eventuali messaggi in attesa
+     * @throws CommunicationException se si verifica un errore nell'invio dei messaggi in attesa
+     */
+    public synchronized void disabilitaAccorpamento() throws CommunicationException {
+        this.accorpamento = false;
+        svuota();
+    }
+
+    /**
+     * Metodo di scrittura di messaggi di tipo multicast.
+     * Se l'accorpamento è abilitato il messaggio viene aggiunto al {@link Pacchetto} corrente, altrimenti inviato immediatamente.
+     * L'operazione emette un evento {@link EventiChat.InvioMulticast}.
+     * @param buffer il messaggio codificato
      * @throws CommunicationException se si verifica un errore legato alla chat multicast
      */
     public synchronized void multicast(byte[] buffer) throws CommunicationException {
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length, indirizzoMulticast, portaGruppo);
+        EventiChat.InvioMulticast evento = new EventiChat.InvioMulticast();
+        evento.begin();
+        boolean accorpato = accorpamento && Pacchetto.accorpabile(buffer.length, frammentatore.getMTU());
         try {
-            multicastSocket.send(packet);
+            if(accorpato) {
+                accorpa(buffer);
+            } else {
+                svuota();
+                inviaDatagramma(buffer);
+            }
+        } finally {
+            if(evento.shouldCommit()) {
+                evento.gruppo = indirizzoMulticast.getHostAddress() + ":" + portaGruppo;
+                evento.dimensione = buffer.length;
+                evento.accorpato = accorpato;
+                evento.commit();
+            }
+        }
+    }
+
+    /**
+     * Aggiunge un messaggio al {@link Pacchetto} corrente, inviando il precedente e pianificando l'invio del nuovo allo scadere dell'attesa massima se il messaggio non vi rientra
+     * @param buffer il messaggio codificato
+     * @throws CommunicationException se si verifica un errore nell'invio del pacchetto precedente
+     */
+    private void accorpa(byte[] buffer) throws CommunicationException {
+
+        if(pacchetto == null || !pacchetto.aggiungi(buffer)) {
+            svuota();
+            pacchetto = new Pacchetto(frammentatore.getMTU());
+            pacchetto.aggiungi(buffer);
+
+            long generazione = ++generazionePacchetto;
+            pianificatore.schedule(() -> svuotaScaduto(generazione), attesaAccorpamento, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Invia il {@link Pacchetto} corrente allo scadere della sua attesa massima, se non è già stato inviato
+     * @param generazione la generazione del {@link Pacchetto} per cui è stato pianificato l'invio
+     */
+    private synchronized void svuotaScaduto(long generazione) {
+        if(generazione != generazionePacchetto) return;
+        try {
+            svuota();
+        } catch (CommunicationException e) {
+            ProjectOutput.stampa(e.getMessage(), OutputType.STDERR);
+        }
+    }
+
+    /**
+     * Invia gli eventuali messaggi accorpati in attesa
+     * @throws CommunicationException se si verifica un errore legato alla chat multicast
+     */
+    private synchronized void svuota() throws CommunicationException {
+        if(pacchetto == null || pacchetto.isVuoto()) return;
+        Pacchetto daInviare = pacchetto;
+        pacchetto = null;
+        generazionePacchetto++;
+
+        long adesso = System.nanoTime();
+        datagrammiAccorpati++;
+        messaggiAccorpati += daInviare.getNumeroMessaggi();
+        attesaComplessiva += daInviare.getAttesaComplessiva(adesso);
+        attesaMassima = Math.max(attesaMassima, daInviare.getAttesaMassima(adesso));
+        inviaDatagramma(daInviare.getDatagramma());
+    }
+
+    /**
+     * Invia un datagramma al gruppo. I datagrammi più grandi dell'<code>MTU</code> vengono inviati in più frammenti.
+     * @param buffer il datagramma da inviare
+     * @throws CommunicationException se si verifica un errore legato alla chat multicast
+     */
+    private void inviaDatagramma(byte[] buffer) throws CommunicationException {
+        try {
+            for(byte[] frammento : frammentatore.frammenta(buffer)) {
+                trasporto.invia(ByteBuffer.wrap(frammento), gruppo);
+                trafficoInviato.registra(frammento.length);
+            }
             ChatLogger.log("Messaggio multicast inviato con successo", ChatLoggerType.OPTIONAL);
+        } catch (IllegalArgumentException e) {
+            throw new CommunicationException("Impossibile inviare il messaggio al gruppo: " + e.getMessage());
         } catch (IOException e) {
             throw new CommunicationException("Impossibile inviare il messaggio al gruppo: " + e.getMessage(), e.getCause());
         }
     }
 
+    /**
+     * Restituisce il {@link ContatoreTraffico} dei datagrammi inviati al gruppo, compresi i frammenti
+     * @return il traffico multicast in uscita
+     */
+    public ContatoreTraffico getTrafficoInviato() {
+        return trafficoInviato;
+    }
+
+    /**
+     * Restituisce le statistiche dell'accorpamento: messaggi per datagramma e attesa aggiunta a ciascun messaggio
+     * @return le statistiche dell'accorpamento
+     */
+    public synchronized String getStatisticheAccorpamento() {
+        if(datagrammiAccorpati == 0) return "Accorpamento: " + (accorpamento ? "nessun datagramma inviato" : "disabilitato");
+        String stat = "Messaggi per datagramma: " + String.format("%.2f", (double) messaggiAccorpati / datagrammiAccorpati) + " | ";
+        stat += "Attesa aggiunta media: " + String.format("%.3f", attesaComplessiva / 1e6 / messaggiAccorpati) + " ms | ";
+        stat += "Attesa aggiunta massima: " + String.format("%.3f", attesaMassima / 1e6) + " ms";
+        return stat;
+    }
+
     /**
      * Determina la prima {@link NetworkInterface} che supporta IPv4 multicast e con almeno un indirizzo associato
      * @return la {@link NetworkInterface} identificata, null se non presente
@@ -118,7 +391,6 @@ public class GroupChat {
         ChatLogger.log("Ricerca interfacce di rete disponibili...", ChatLoggerType.OPTIONAL);
         Enumeration<NetworkInterface> interfacce = NetworkInterface.getNetworkInterfaces();
         NetworkInterface ultimaNetDisponibile = null;
-        String infoNet = "Interfacce di rete rilevate: ";
         int contaNetUtilizzabili = 0;
         int contaNetInutilizzabili = 0;
 
@@ -133,11 +405,9 @@ public class GroupChat {
             }
         }
 
-        infoNet += (contaNetUtilizzabili + contaNetInutilizzabili) + " elementi. Utilizzabili per IPv4 e multicast: " + contaNetUtilizzabili;
-
-        ChatLogger.log(infoNet, ChatLoggerType.OPTIONAL);
+        ChatLogger.log("Interfacce di rete rilevate: {} elementi. Utilizzabili per IPv4 e multicast: {}", ChatLoggerType.OPTIONAL, contaNetUtilizzabili + contaNetInutilizzabili, contaNetUtilizzabili);
         if(ultimaNetDisponibile != null) {
-            ChatLogger.log("Interfaccia di rete selezionata: (" + ultimaNetDisponibile.getIndex() + ") " + ultimaNetDisponibile.getDisplayName(), ChatLoggerType.OPTIONAL);
+            ChatLogger.log("Interfaccia di rete selezionata: ({}) {}", ChatLoggerType.OPTIONAL, ultimaNetDisponibile.getIndex(), ultimaNetDisponibile.getDisplayName());
         } else {
             ChatLogger.log("Nessuna interfaccia di rete selezionabile", ChatLoggerType.OPTIONAL);
         }
@@ -145,17 +415,24 @@ public class GroupChat {
     }
 
     /**
-     * Abbandona il gruppo e chiude la {@link #multicastSocket}, rilasciando le risorse
+     * Abbandona il gruppo e chiude il {@link #trasporto}, rilasciando le risorse
      * @throws IOException se si verificano errori di I/O abbandonando il gruppo
      */
     public void chiudi() throws IOException {
-        if(multicastSocket != null && !multicastSocket.isClosed()) {
+        synchronized (this) {
             try {
-                multicastSocket.leaveGroup(gruppo, interfacciaDiRete);
-            } catch (IOException e) {
-                ChatLogger.log("Impossibile abbandonare il gruppo", ChatLoggerType.OPTIONAL);
+                svuota();
+            } catch (CommunicationException e) {
+                ChatLogger.log("Impossibile inviare i messaggi accorpati in attesa", ChatLoggerType.OPTIONAL);
             }
-            multicastSocket.close();
+            if(pianificatore != null) pianificatore.shutdownNow();
+        }
+        
+        try {
+            trasporto.abbandona(indirizzoMulticast);
+        } catch (IOException e) {
+            ChatLogger.log("Impossibile abbandonare il gruppo", ChatLoggerType.OPTIONAL);
         }
+        trasporto.chiudi();
     }
 }
@@ -1,11 +1,30 @@
 package chat.host;
 
+import chat.comunicazione.AccumulatoreACK;
+import chat.comunicazione.Battito;
+import chat.comunicazione.CodecBinario;
+import chat.comunicazione.ConfermeDestinatari;
+import chat.comunicazione.Frammentatore;
+import chat.comunicazione.Giornale;
+import chat.comunicazione.InsiemeID;
+import chat.comunicazione.Pacchetto;
+import chat.comunicazione.PoliticaEspulsione;
 import chat.comunicazione.Protocollo;
+import chat.comunicazione.Riassemblatore;
+import chat.comunicazione.RichiestaRitrasmissione;
+import chat.comunicazione.RilevatoreLacune;
 import chat.eccezioni.ProtocolException;
 import chat.gestione.ChatLogger;
 import chat.gestione.ChatLoggerType;
+import chat.gestione.ContatoreTraffico;
+import chat.gestione.EventiChat;
+import chat.gestione.IstogrammaLatenze;
+import chat.gestione.MBeanMetriche;
+import chat.gestione.Orologio;
 import chat.gestione.OutputType;
 import chat.gestione.ProjectOutput;
+import chat.gestione.RegistroMetriche;
+import chat.gestione.ServerMetriche;
 import chat.comunicazione.Cronologia;
 import chat.comunicazione.Messaggio;
 import chat.eccezioni.CommunicationException;
@@ -13,14 +32,60 @@ import chat.eccezioni.MsgException;
 import chat.eccezioni.NoSuchUserException;
 import chat.utenze.*;
 
+import javax.management.JMException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.*;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
- * Generico membro di un {@link GroupChat} multicast
+ * Generico membro di un {@link GroupChat} multicast.
+ * <p>
+ * Di default la ricezione avviene attraverso due {@link Thread} bloccanti, uno per la socket unicast e uno per quella multicast.
+ * Fornendo un {@link CicloEventi} al costruttore {@link #MulticastPeer(String, boolean, GroupChat, CicloEventi)}, la comunicazione unicast avviene invece attraverso un {@link DatagramChannel} non bloccante
+ * e la ricezione di entrambi i canali è servita dal {@link Thread} del ciclo, condivisibile tra più <code>multicastPeer</code>.
+ * Socket e canali sono incapsulati in un {@link Trasporto}: con il costruttore {@link #MulticastPeer(String, boolean, GroupChat, Trasporto)} il <code>multicastPeer</code> può comunicare
+ * attraverso una {@link ReteSimulata}, che riproduce in memoria perdite, duplicazioni e riordini a partire da un seme. Con il costruttore
+ * {@link #MulticastPeer(String, boolean, GroupChat, Trasporto, Orologio, ScheduledExecutorService)} anche battiti, <code>ACK</code> cumulativi, ritrasmissioni e invii seguono l'orologio virtuale della rete
+ * e sono eseguiti da {@link ReteSimulata#avanza(long)}: lo svolgimento di una conversazione è allora riproducibile. Con gli altri costruttori sono invece pianificati in tempo reale,
+ * e la rete va avviata con {@link ReteSimulata#avviaTempoReale()}.
+ * <p>
+ * Tutti i datagrammi in uscita sono inviati attraverso una {@link CodaInvio}, così che nessun {@link Thread} di ricezione o di input resti bloccato in attesa di un invio.
+ * <p>
+ * Le metriche di funzionamento sono raccolte in un {@link RegistroMetriche}, consultabile con il comando <code>$metrics</code>, attraverso <code>JMX</code>
+ * e, se richiesto con {@link #setPortaMetriche(int)}, attraverso un {@link ServerMetriche} <code>HTTP</code> locale nel formato di <code>Prometheus</code>.
+ * <p>
+ * Il <code>multicastPeer</code> è pilotabile da un altro programma: {@link #inviaGruppo(String, int)} e {@link #inviaPrivato(String, String, boolean)} restituiscono un {@link CompletableFuture}
+ * completato all'invio locale o al raggiungimento del quorum di <code>ACK</code> richiesto, mentre messaggi, ingressi e uscite dal gruppo sono notificati agli ascoltatori registrati con
+ * {@link #suMessaggio(Consumer)}, {@link #suIngresso(Consumer)} e {@link #suUscita(Consumer)}, attraverso l'{@link Executor} indicato o quello impostato con {@link #setEsecutoreNotifiche(Executor)}.
+ * Il {@link Terminale}, avviato da {@link #avvia()}, è a sua volta un client di questa interfaccia; {@link #avvia(boolean)} consente di avviare il <code>multicastPeer</code> senza terminale.
+ * <p>
+ * Ciascun <code>multicastPeer</code> invia periodicamente al <code>gruppo</code> un {@link Battito} compatto e valuta, per ciascun partecipante in {@link Rubrica}, il livello di sospetto
+ * del relativo {@link RilevatoreGuasti}: i partecipanti che superano la soglia impostata con {@link #setSogliaSospetto(double)} vengono rimossi come se avessero abbandonato il gruppo,
+ * così che i destinatari dei nuovi messaggi, gli <code>ACK</code> attesi e le riparazioni riflettano i soli partecipanti attivi.
+ * <p>
+ * Dalla versione <code>v2.0</code> la comunicazione avviene attraverso un {@link Trasporto}, tutti gli invii attraversano la {@link CodaInvio}, il multicast affidabile
+ * recupera i messaggi persi con richieste di ritrasmissione e <code>ACK</code> cumulativi, e il <code>multicastPeer</code> è pilotabile da un altro programma senza {@link Terminale}.
+ *
  * @author Matteo Bagnoletti Tini
- * @version 1.0
+ * @version 2.0
  * @project MulticastUDPSocketChat
  */
 public class MulticastPeer {
@@ -31,9 +96,19 @@ public class MulticastPeer {
     private final Utente utente;
 
     /**
-     * Socket per la comunicazione unicast
+     * Il {@link Trasporto} per la comunicazione unicast: una socket, un canale non bloccante quando è fornito un {@link #cicloEventi}, oppure il trasporto indicato al costruttore
      */
-    private DatagramSocket unicastSocket;
+    private Trasporto trasportoUnicast;
+
+    /**
+     * La porta locale della comunicazione unicast
+     */
+    private int portaUnicast;
+
+    /**
+     * Il {@link CicloEventi} che serve la ricezione, <code>null</code> per la ricezione attraverso {@link Thread} bloccanti
+     */
+    private final CicloEventi cicloEventi;
 
     /**
      * Variabile per lo status dell'host. <code>true</code> se operativo, <code>false</code> altrimenti.
@@ -50,11 +125,243 @@ public class MulticastPeer {
      */
     private final Cronologia cronologia;
 
+    /**
+     * La directory del {@link Giornale} persistente dei messaggi, <code>null</code> se non richiesto
+     * @see #setGiornale(Path)
+     */
+    private Path directoryGiornale;
+
+    /**
+     * Il {@link Giornale} persistente dei messaggi, aperto da {@link #configura()}
+     */
+    private Giornale giornale;
+
+    /**
+     * L'intervallo, in millisecondi, tra due scritture dei messaggi registrati nel {@link #giornale}
+     */
+    private static final long INTERVALLO_GIORNALE = 1000;
+
     /**
      * Il {@link GroupChat} utilizzato
      */
     private final GroupChat gruppoUDP;
 
+    /**
+     * Dimensione dei buffer di ricezione: qualsiasi datagramma UDP viene ricevuto senza essere troncato
+     */
+    private static final int DIMENSIONE_BUFFER = Frammentatore.MTU_MASSIMA;
+
+    /**
+     * Il {@link Frammentatore} dei messaggi unicast più grandi dell'<code>MTU</code>
+     */
+    private final Frammentatore frammentatore;
+
+    /**
+     * Il {@link Riassemblatore} dei messaggi frammentati ricevuti
+     */
+    private final Riassemblatore riassemblatore;
+
+    /**
+     * Il {@link PoolBuffer} condiviso dai {@link Thread} di ricezione
+     */
+    private final PoolBuffer poolRicezione;
+
+    /**
+     * Il numero di datagrammi ricevuti
+     */
+    private final AtomicLong pacchettiRicevuti;
+
+    /**
+     * I byte allocati nell'heap dai {@link Thread} di ricezione durante la gestione dei datagrammi
+     */
+    private final AtomicLong byteAllocatiRicezione;
+
+    /**
+     * Il {@link ContatoreTraffico} dei datagrammi ricevuti dalla socket unicast e da quella multicast
+     */
+    private final ContatoreTraffico ricevutiUnicast, ricevutiMulticast;
+
+    /**
+     * Il {@link ContatoreTraffico} dei datagrammi inviati dalla socket unicast
+     */
+    private final ContatoreTraffico inviatiUnicast;
+
+    /**
+     * Il numero di datagrammi scartati perché non decodificabili
+     */
+    private final LongAdder erroriDecodifica;
+
+    /**
+     * L'{@link IstogrammaLatenze} della durata della gestione di ciascun datagramma ricevuto
+     */
+    private final IstogrammaLatenze latenzeRicezione;
+
+    /**
+     * Il {@link RegistroMetriche} del <code>multicastPeer</code>
+     */
+    private final RegistroMetriche metriche;
+
+    /**
+     * L'{@link MBeanMetriche} che espone le {@link #metriche} attraverso <code>JMX</code>
+     */
+    private final MBeanMetriche mbeanMetriche;
+
+    /**
+     * La porta locale del {@link #serverMetriche}, <code>-1</code> se non richiesto
+     */
+    private int portaMetriche = -1;
+
+    /**
+     * Il {@link ServerMetriche} <code>HTTP</code>, <code>null</code> se non avviato
+     */
+    private ServerMetriche serverMetriche;
+
+    /**
+     * Il servizio di pianificazione delle attività periodiche del <code>multicastPeer</code>
+     */
+    private final ScheduledExecutorService pianificatore;
+
+    /**
+     * L'{@link AccumulatoreACK} dei messaggi ricevuti da confermare con <code>ACK</code> cumulativi
+     */
+    private final AccumulatoreACK accumulatoreACK;
+
+    /**
+     * L'attività periodica di invio degli <code>ACK</code> cumulativi, <code>null</code> se ciascun messaggio viene confermato singolarmente
+     * @see #setACKCumulativi(long)
+     */
+    private volatile ScheduledFuture<?> invioACKCumulativi;
+
+    /**
+     * Indica se i messaggi multicast vengono inviati in sequenza, con ritrasmissione su richiesta dei destinatari
+     * @see #setMulticastAffidabile(boolean)
+     */
+    private volatile boolean multicastAffidabile;
+
+    /**
+     * Il {@link RilevatoreLacune} dei messaggi multicast affidabili ricevuti
+     */
+    private final RilevatoreLacune rilevatoreLacune;
+
+    /**
+     * L'intervallo, in millisecondi, tra due verifiche delle lacune non ancora colmate: ciascun mittente viene sollecitato solo allo scadere del proprio timeout di ritrasmissione
+     * @see Rubrica#getRTO(String)
+     */
+    private static final long INTERVALLO_NACK = 20;
+
+    /**
+     * L'intervallo, in millisecondi, tra due invii delle conferme cumulative dei messaggi in sequenza ricevuti, quando gli <code>ACK</code> cumulativi non sono abilitati
+     * @see #confermaRicezione(Messaggio)
+     */
+    private static final long INTERVALLO_ACK_SEQUENZE = 100;
+
+    /**
+     * L'ultimo numero di sequenza multicast affidabile inviato al <code>gruppo</code>, annunciato con ciascun {@link Battito}
+     */
+    private volatile int ultimaSequenzaInviata;
+
+    /**
+     * La {@link CodaInvio} attraverso cui passano tutti i datagrammi in uscita
+     */
+    private final CodaInvio codaInvio;
+
+    /**
+     * Il numero massimo di operazioni di invio in attesa
+     */
+    private static final int CAPACITA_CODA_INVIO = 1024;
+
+    /**
+     * L'attesa massima, in millisecondi, per l'invio dei datagrammi ancora in coda alla chiusura
+     */
+    private static final long ATTESA_CHIUSURA = 2000;
+
+    /**
+     * L'intervallo predefinito, in millisecondi, tra due {@link Battito} inviati al <code>gruppo</code>
+     */
+    private static final long INTERVALLO_BATTITO = 1000;
+
+    /**
+     * La soglia predefinita di <code>phi</code> oltre la quale un partecipante viene rimosso dalla {@link Rubrica}
+     */
+    private static final double SOGLIA_SOSPETTO = 8;
+
+    /**
+     * Il numero di intervalli tra due {@link Battito} per cui un utente che ha annunciato l'abbandono del gruppo resta tra i {@link #congedati}:
+     * abbastanza perché i suoi battiti ancora in transito giungano a destinazione
+     */
+    private static final int BATTITI_CONGEDO = 5;
+
+    /**
+     * L'intervallo, in millisecondi, tra due {@link Battito} inviati al <code>gruppo</code>
+     * @see #setIntervalloBattito(long)
+     */
+    private long intervalloBattito = INTERVALLO_BATTITO;
+
+    /**
+     * La soglia di <code>phi</code> oltre la quale un partecipante viene rimosso dalla {@link Rubrica}
+     * @see #setSogliaSospetto(double)
+     */
+    private volatile double sogliaSospetto = SOGLIA_SOSPETTO;
+
+    /**
+     * Gli utenti che hanno annunciato l'abbandono del gruppo, i cui battiti ancora in transito non devono reinserirli in {@link Rubrica}, con l'istante dell'annuncio in microsecondi.
+     * Ciascun utente viene dimenticato dopo {@link #BATTITI_CONGEDO} intervalli tra due battiti, così che la mappa non cresca con gli utenti transitati nel gruppo
+     * @see #battito()
+     */
+    private final Map<String, Long> congedati = new ConcurrentHashMap<>();
+
+    /**
+     * Il numero di partecipanti rimossi dalla {@link Rubrica} perché sospettati di guasto
+     */
+    private final LongAdder espulsioni = new LongAdder();
+
+    /**
+     * Gli ascoltatori dei messaggi di testo ricevuti
+     * @see #suMessaggio(Consumer, Executor)
+     */
+    private final Ascoltatori<Messaggio> ascoltatoriMessaggi = new Ascoltatori<>();
+
+    /**
+     * Gli ascoltatori degli utenti che si uniscono al gruppo
+     * @see #suIngresso(Consumer, Executor)
+     */
+    private final Ascoltatori<IndiceRubrica> ascoltatoriIngressi = new Ascoltatori<>();
+
+    /**
+     * Gli ascoltatori degli utenti che abbandonano il gruppo
+     * @see #suUscita(Consumer, Executor)
+     */
+    private final Ascoltatori<IndiceRubrica> ascoltatoriUscite = new Ascoltatori<>();
+
+    /**
+     * L'{@link Executor} predefinito delle notifiche agli ascoltatori: di default il {@link Thread} di ricezione stesso
+     * @see #setEsecutoreNotifiche(Executor)
+     */
+    private volatile Executor esecutoreNotifiche = Runnable::run;
+
+    /**
+     * Il quorum di <code>ACK</code> che richiede la conferma di tutti i destinatari di un messaggio
+     * @see #inviaGruppo(String, int)
+     */
+    public static final int TUTTI = Integer.MAX_VALUE;
+
+    /**
+     * L'attesa massima, in millisecondi, del quorum di <code>ACK</code> di un messaggio inviato
+     * @see #setAttesaConferme(long)
+     */
+    private volatile long attesaConferme = 5000;
+
+    /**
+     * Le attese di un quorum di <code>ACK</code> non ancora concluse, completate in modo eccezionale alla chiusura
+     */
+    private final Set<CompletableFuture<Messaggio>> attese = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Il {@link com.sun.management.ThreadMXBean} per la misura delle allocazioni, <code>null</code> se non supportato dalla JVM
+     */
+    private static final com.sun.management.ThreadMXBean MISURA_ALLOCAZIONI =
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported() ? bean : null;
+
     /**
      * Crea un oggetto <code>multicastPeer</code> e configura le strutture di gestione e funzionamento associate
      * @see Utente
@@ -62,22 +369,115 @@ public class MulticastPeer {
      * @see Cronologia
      * @param username il nome utenze
      * @param abilitaLog indica se abilitare le funzioni di logging
+     * @param gruppo il {@link GroupChat} utilizzato
      * @throws IllegalArgumentException nei casi previsti dalla creazione dell'{@link Utente}
      */
     public MulticastPeer(final String username, final boolean abilitaLog, final GroupChat gruppo) throws IllegalArgumentException {
+        this(username, abilitaLog, gruppo, null, null, null, null);
+    }
+
+    /**
+     * Crea un oggetto <code>multicastPeer</code> la cui ricezione è servita da un {@link CicloEventi}.
+     * Se il {@link GroupChat} è stato creato in modalità non bloccante anche il canale multicast viene registrato nel ciclo, altrimenti è servito da un {@link Thread} dedicato.
+     * @param username il nome utenze
+     * @param abilitaLog indica se abilitare le funzioni di logging
+     * @param gruppo il {@link GroupChat} utilizzato
+     * @param cicloEventi il {@link CicloEventi} che serve la ricezione, <code>null</code> per la ricezione attraverso {@link Thread} bloccanti
+     * @throws IllegalArgumentException nei casi previsti dalla creazione dell'{@link Utente}
+     */
+    public MulticastPeer(final String username, final boolean abilitaLog, final GroupChat gruppo, final CicloEventi cicloEventi) throws IllegalArgumentException {
+        this(username, abilitaLog, gruppo, cicloEventi, null, null, null);
+    }
+
+    /**
+     * Crea un oggetto <code>multicastPeer</code> che comunica in unicast attraverso il {@link Trasporto} indicato, ad esempio aperto con {@link ReteSimulata#apri(InetAddress, int)}
+     * @param username il nome utenze
+     * @param abilitaLog indica se abilitare le funzioni di logging
+     * @param gruppo il {@link GroupChat} utilizzato
+     * @param trasportoUnicast il {@link Trasporto} della comunicazione unicast
+     * @throws IllegalArgumentException nei casi previsti dalla creazione dell'{@link Utente}
+     */
+    public MulticastPeer(final String username, final boolean abilitaLog, final GroupChat gruppo, final Trasporto trasportoUnicast) throws IllegalArgumentException {
+        this(username, abilitaLog, gruppo, null, trasportoUnicast, null, null);
+    }
+
+    /**
+     * Crea un oggetto <code>multicastPeer</code> che misura il tempo sull'{@link Orologio} indicato e vi pianifica battiti, <code>ACK</code> cumulativi, ritrasmissioni e invii,
+     * ad esempio con l'orologio e un {@link ReteSimulata#nuovoPianificatore()} della {@link ReteSimulata} da cui è aperto il {@link Trasporto}.
+     * L'orologio viene impostato anche per le marche temporali di tutti i {@link Messaggio} del processo, vedi {@link Messaggio#setOrologio(Orologio)}.
+     * @param username il nome utenze
+     * @param abilitaLog indica se abilitare le funzioni di logging
+     * @param gruppo il {@link GroupChat} utilizzato
+     * @param trasportoUnicast il {@link Trasporto} della comunicazione unicast
+     * @param orologio l'{@link Orologio} su cui misurare timeout e latenze
+     * @param pianificatore il {@link ScheduledExecutorService} delle attività periodiche e degli invii, arrestato alla chiusura del <code>multicastPeer</code>
+     * @throws IllegalArgumentException nei casi previsti dalla creazione dell'{@link Utente}, o se l'orologio o il pianificatore sono <code>null</code>
+     */
+    public MulticastPeer(final String username, final boolean abilitaLog, final GroupChat gruppo, final Trasporto trasportoUnicast, final Orologio orologio, final ScheduledExecutorService pianificatore) throws IllegalArgumentException {
+        this(username, abilitaLog, gruppo, null, trasportoUnicast, richiesto(orologio, "Orologio"), richiesto(pianificatore, "Pianificatore"));
+    }
+
+    /**
+     * Crea un oggetto <code>multicastPeer</code> e configura le strutture di gestione e funzionamento associate
+     * @param username il nome utenze
+     * @param abilitaLog indica se abilitare le funzioni di logging
+     * @param gruppo il {@link GroupChat} utilizzato
+     * @param cicloEventi il {@link CicloEventi} che serve la ricezione, <code>null</code> per la ricezione attraverso {@link Thread} bloccanti
+     * @param trasportoUnicast il {@link Trasporto} della comunicazione unicast, <code>null</code> per crearlo in {@link #configura()}
+     * @param orologio l'{@link Orologio} su cui misurare timeout e latenze, <code>null</code> per quello di sistema
+     * @param pianificatore il {@link ScheduledExecutorService} delle attività periodiche e degli invii, <code>null</code> per un {@link Thread} dedicato a ciascuno
+     * @throws IllegalArgumentException nei casi previsti dalla creazione dell'{@link Utente}
+     */
+    private MulticastPeer(final String username, final boolean abilitaLog, final GroupChat gruppo, final CicloEventi cicloEventi, final Trasporto trasportoUnicast, final Orologio orologio, final ScheduledExecutorService pianificatore) throws IllegalArgumentException {
+        if(orologio != null) Messaggio.setOrologio(orologio);
         utente = new Utente(username);
         rubrica = new Rubrica(utente);
-        cronologia = new Cronologia(utente);
+        cronologia = new Cronologia(utente, orologio != null ? orologio : Orologio.SISTEMA);
         gruppoUDP = gruppo;
+        this.cicloEventi = cicloEventi;
+        this.trasportoUnicast = trasportoUnicast;
+        poolRicezione = new PoolBuffer(8, DIMENSIONE_BUFFER, false);
+        frammentatore = new Frammentatore();
+        riassemblatore = new Riassemblatore(10_000, 16L * 1024 * 1024);
+        accumulatoreACK = new AccumulatoreACK();
+        rilevatoreLacune = new RilevatoreLacune(10);
+        codaInvio = new CodaInvio(CAPACITA_CODA_INVIO, pianificatore);
+        this.pianificatore = pianificatore != null ? pianificatore : Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Thread delle attività periodiche");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pacchettiRicevuti = new AtomicLong();
+        byteAllocatiRicezione = new AtomicLong();
+        ricevutiUnicast = new ContatoreTraffico();
+        ricevutiMulticast = new ContatoreTraffico();
+        inviatiUnicast = new ContatoreTraffico();
+        erroriDecodifica = new LongAdder();
+        latenzeRicezione = new IstogrammaLatenze();
+        metriche = new RegistroMetriche();
+        registraMetriche();
+        mbeanMetriche = new MBeanMetriche(metriche);
         setOnline(false);
         ChatLogger.abilita(abilitaLog);
     }
 
+    /**
+     * Verifica un parametro obbligatorio del costruttore
+     * @param valore il valore del parametro
+     * @param nome il nome del parametro, per il messaggio di errore
+     * @return il valore del parametro
+     * @throws IllegalArgumentException se il valore è <code>null</code>
+     */
+    private static <T> T richiesto(T valore, String nome) throws IllegalArgumentException {
+        if(valore == null) throw new IllegalArgumentException(nome + " non valido: null");
+        return valore;
+    }
+
     /**
      * Getter di {@link #online}
      * @return se l'<code>host</code> è online oppure no
      */
-    private synchronized boolean isOnline() {
+    public boolean isOnline() {
         return online;
     }
 
@@ -90,234 +490,719 @@ public class MulticastPeer {
     }
     
     /**
-     * Configura opportunamente il <code>multicastPeer</code>
+     * Imposta la dimensione massima dei datagrammi inviati, sia unicast che multicast. I messaggi più grandi vengono frammentati.
+     * @param mtu la nuova <code>MTU</code>
+     * @throws IllegalArgumentException nei casi previsti da {@link Frammentatore#setMTU(int)}
+     */
+    public void setMTU(int mtu) throws IllegalArgumentException {
+        frammentatore.setMTU(mtu);
+        gruppoUDP.setMTU(mtu);
+    }
+    
+    /**
+     * Abilita o disabilita gli <code>ACK</code> cumulativi: invece di confermare ciascun messaggio ricevuto, il <code>multicastPeer</code> invia periodicamente a ciascun mittente un unico <code>ACK</code> per tutti i messaggi ricevuti nell'intervallo
+     * @param intervallo l'intervallo di invio in millisecondi, <code>0</code> per confermare ciascun messaggio singolarmente
+     * @throws IllegalArgumentException se l'intervallo è negativo
+     */
+    public synchronized void setACKCumulativi(long intervallo) throws IllegalArgumentException {
+        if(intervallo < 0) throw new IllegalArgumentException("L'intervallo di invio degli ACK non può essere negativo");
+        if(invioACKCumulativi != null) {
+            invioACKCumulativi.cancel(false);
+            invioACKCumulativi = null;
+            pianificatore.execute(this::inviaACKCumulativi);
+        }
+        if(intervallo > 0) {
+            invioACKCumulativi = pianificatore.scheduleWithFixedDelay(this::inviaACKCumulativi, intervallo, intervallo, TimeUnit.MILLISECONDS);
+        }
+        ChatLogger.log(() -> "ACK cumulativi " + (intervallo > 0 ? "abilitati ogni " + intervallo + " ms" : "disabilitati"), ChatLoggerType.OPTIONAL);
+    }
+    
+    /**
+     * Abilita o disabilita il multicast affidabile: ciascun messaggio multicast riceve un numero di sequenza e viene conservato nella finestra di ritrasmissione della {@link Cronologia}.
+     * I destinatari rilevano i messaggi mancanti e ne richiedono la ritrasmissione in unicast attraverso una {@link RichiestaRitrasmissione}: i messaggi mancanti in coda a una raffica sono rilevati grazie all'ultimo numero di sequenza annunciato con ciascun {@link Battito}.
+     * I messaggi in sequenza non vengono confermati singolarmente dai destinatari, ma con <code>ACK</code> cumulativi.
+     * @param multicastAffidabile <code>true</code> per abilitare il multicast affidabile, <code>false</code> altrimenti
+     */
+    public void setMulticastAffidabile(boolean multicastAffidabile) {
+        this.multicastAffidabile = multicastAffidabile;
+        ChatLogger.log("Multicast affidabile {}", ChatLoggerType.OPTIONAL, multicastAffidabile ? "abilitato" : "disabilitato");
+    }
+    
+    /**
+     * Limita la memoria occupata dalla {@link Cronologia}: superato il budget, i messaggi meno recenti vengono scartati o archiviati su disco
+     * @param messaggiMassimi il numero massimo di messaggi conservati in memoria
+     * @param byteMassimi il numero massimo di byte stimati conservati in memoria, <code>0</code> per non porre limiti
+     * @param politica la {@link PoliticaEspulsione} dei messaggi meno recenti
+     * @param file il file dell'archivio, richiesto solo con la politica {@link PoliticaEspulsione#ARCHIVIA}
+     * @throws IllegalArgumentException nei casi previsti da {@link Cronologia#setLimite(int, long, PoliticaEspulsione, Path)}
+     * @throws IOException se non è possibile aprire l'archivio
+     */
+    public void setLimiteCronologia(int messaggiMassimi, long byteMassimi, PoliticaEspulsione politica, Path file) throws IllegalArgumentException, IOException {
+        cronologia.setLimite(messaggiMassimi, byteMassimi, politica, file);
+    }
+    
+    /**
+     * Richiede un {@link Giornale} persistente dei messaggi inviati e ricevuti. Il giornale viene aperto da {@link #configura()}, che vi ripristina la {@link Cronologia} delle sessioni precedenti.
+     * @param directory la directory del giornale, <code>null</code> per non registrare i messaggi
+     */
+    public synchronized void setGiornale(Path directory) {
+        this.directoryGiornale = directory;
+    }
+
+    /**
+     * Richiede l'esposizione delle metriche nel formato di <code>Prometheus</code> attraverso un {@link ServerMetriche} <code>HTTP</code> locale, avviato da {@link #configura()}
+     * @param porta la porta locale del server, <code>0</code> per una porta libera qualsiasi, <code>-1</code> per non avviare il server
+     * @throws IllegalArgumentException se la porta non è valida
+     */
+    public synchronized void setPortaMetriche(int porta) throws IllegalArgumentException {
+        if(porta < -1 || porta > 65535) throw new IllegalArgumentException("Porta del server delle metriche non valida: " + porta);
+        this.portaMetriche = porta;
+    }
+
+    /**
+     * Registra le metriche del <code>multicastPeer</code> nel {@link #metriche}: traffico per socket, errori di decodifica, <code>ACK</code>, profondità delle code, dimensione della {@link Rubrica} e latenze
+     */
+    private void registraMetriche() {
+        metriche.contatore("chat_datagrammi_ricevuti_total", "socket=\"unicast\"", "Datagrammi ricevuti", ricevutiUnicast::getDatagrammi);
+        metriche.contatore("chat_datagrammi_ricevuti_total", "socket=\"multicast\"", "Datagrammi ricevuti", ricevutiMulticast::getDatagrammi);
+        metriche.contatore("chat_byte_ricevuti_total", "socket=\"unicast\"", "Byte ricevuti", ricevutiUnicast::getByte);
+        metriche.contatore("chat_byte_ricevuti_total", "socket=\"multicast\"", "Byte ricevuti", ricevutiMulticast::getByte);
+        metriche.contatore("chat_datagrammi_inviati_total", "socket=\"unicast\"", "Datagrammi inviati, compresi i frammenti", inviatiUnicast::getDatagrammi);
+        metriche.contatore("chat_datagrammi_inviati_total", "socket=\"multicast\"", "Datagrammi inviati, compresi i frammenti", () -> gruppoUDP.getTrafficoInviato().getDatagrammi());
+        metriche.contatore("chat_byte_inviati_total", "socket=\"unicast\"", "Byte inviati", inviatiUnicast::getByte);
+        metriche.contatore("chat_byte_inviati_total", "socket=\"multicast\"", "Byte inviati", () -> gruppoUDP.getTrafficoInviato().getByte());
+        metriche.contatore("chat_errori_decodifica_total", "", "Datagrammi scartati perché non decodificabili", erroriDecodifica::sum);
+        metriche.contatore("chat_ack_attesi_total", "", "ACK attesi per i messaggi inviati", cronologia::getACKAttesi);
+        metriche.contatore("chat_ack_ricevuti_total", "", "ACK ricevuti e associati a un messaggio inviato", cronologia::getACKRicevuti);
+        metriche.misura("chat_rapporto_ack", "", "Rapporto tra ACK ricevuti e attesi", () -> {
+            long attesi = cronologia.getACKAttesi();
+            return attesi == 0 ? 1 : (double) cronologia.getACKRicevuti() / attesi;
+        });
+        metriche.misura("chat_coda_profondita", "coda=\"invio\"", "Elementi in attesa in ciascuna coda", codaInvio::getProfondita);
+        metriche.misura("chat_coda_profondita", "coda=\"conferme\"", "Elementi in attesa in ciascuna coda", cronologia::getInAttesaDiConferma);
+        metriche.misura("chat_coda_profondita", "coda=\"log\"", "Elementi in attesa in ciascuna coda", ChatLogger::getInCoda);
+        metriche.misura("chat_coda_profondita", "coda=\"output\"", "Elementi in attesa in ciascuna coda", ProjectOutput::getInCoda);
+        metriche.misura("chat_rubrica_utenti", "", "Utenti in rubrica", rubrica::partecipantiGruppo);
+        metriche.contatore("chat_espulsioni_total", "", "Partecipanti rimossi dalla rubrica perché sospettati di guasto", espulsioni::sum);
+        metriche.riepilogo("chat_latenza_invio_seconds", "", "Tempo tra l'accodamento e la fine di ciascun invio", codaInvio.getLatenzeInvio());
+        metriche.riepilogo("chat_latenza_ricezione_seconds", "", "Durata della gestione di ciascun datagramma ricevuto", latenzeRicezione);
+        metriche.riepilogo("chat_latenza_ack_seconds", "", "Tempo tra l'invio di un messaggio e ciascun ACK", cronologia.getLatenzeACK());
+    }
+
+    /**
+     * Restituisce il {@link RegistroMetriche} del <code>multicastPeer</code>
+     * @return il registro delle metriche
+     */
+    public RegistroMetriche getMetriche() {
+        return metriche;
+    }
+
+    /**
+     * Restituisce la {@link Rubrica} del <code>multicastPeer</code>
+     * @return la rubrica
+     */
+    public Rubrica getRubrica() {
+        return rubrica;
+    }
+
+    /**
+     * Restituisce la {@link Cronologia} del <code>multicastPeer</code>
+     * @return la cronologia
+     */
+    public Cronologia getCronologia() {
+        return cronologia;
+    }
+
+    /**
+     * Restituisce l'{@link Utente} del <code>multicastPeer</code>
+     * @return l'utente
+     */
+    public Utente getUtente() {
+        return utente;
+    }
+
+    /**
+     * Getter di {@link #rilevatoreLacune}, accessibile solo all'interno del package per i benchmark della ricezione
+     * @return il rilevatore delle lacune dei messaggi multicast affidabili ricevuti
+     */
+    RilevatoreLacune getRilevatoreLacune() {
+        return rilevatoreLacune;
+    }
+
+    /**
+     * Registra un ascoltatore dei messaggi di testo ricevuti, al gruppo o privati, notificato attraverso l'{@link Executor} predefinito. I messaggi di controllo del gruppo non vengono notificati.
+     * @param ascoltatore l'ascoltatore
+     * @throws IllegalArgumentException se l'ascoltatore è <code>null</code>
+     */
+    public void suMessaggio(Consumer<Messaggio> ascoltatore) throws IllegalArgumentException {
+        suMessaggio(ascoltatore, null);
+    }
+
+    /**
+     * Registra un ascoltatore dei messaggi di testo ricevuti, al gruppo o privati. I messaggi di controllo del gruppo non vengono notificati.
+     * @param ascoltatore l'ascoltatore
+     * @param esecutore l'{@link Executor} della notifica, <code>null</code> per quello predefinito
+     * @throws IllegalArgumentException se l'ascoltatore è <code>null</code>
+     */
+    public void suMessaggio(Consumer<Messaggio> ascoltatore, Executor esecutore) throws IllegalArgumentException {
+        ascoltatoriMessaggi.aggiungi(ascoltatore, esecutore);
+    }
+
+    /**
+     * Registra un ascoltatore degli utenti che si uniscono al gruppo, notificato attraverso l'{@link Executor} predefinito
+     * @param ascoltatore l'ascoltatore, a cui viene fornito l'{@link IndiceRubrica} del nuovo utente
+     * @throws IllegalArgumentException se l'ascoltatore è <code>null</code>
+     */
+    public void suIngresso(Consumer<IndiceRubrica> ascoltatore) throws IllegalArgumentException {
+        suIngresso(ascoltatore, null);
+    }
+
+    /**
+     * Registra un ascoltatore degli utenti che si uniscono al gruppo, notificato una sola volta per ciascun inserimento di un partecipante nella {@link Rubrica},
+     * al primo datagramma ricevuto da questo: l'annuncio <code>join-group</code>, un altro messaggio o un {@link Battito}
+     * @param ascoltatore l'ascoltatore, a cui viene fornito l'{@link IndiceRubrica} del nuovo utente
+     * @param esecutore l'{@link Executor} della notifica, <code>null</code> per quello predefinito
+     * @throws IllegalArgumentException se l'ascoltatore è <code>null</code>
+     */
+    public void suIngresso(Consumer<IndiceRubrica> ascoltatore, Executor esecutore) throws IllegalArgumentException {
+        ascoltatoriIngressi.aggiungi(ascoltatore, esecutore);
+    }
+
+    /**
+     * Registra un ascoltatore degli utenti che abbandonano il gruppo, notificato attraverso l'{@link Executor} predefinito
+     * @param ascoltatore l'ascoltatore, a cui viene fornito l'{@link IndiceRubrica} dell'utente rimosso dalla {@link #rubrica}
+     * @throws IllegalArgumentException se l'ascoltatore è <code>null</code>
+     */
+    public void suUscita(Consumer<IndiceRubrica> ascoltatore) throws IllegalArgumentException {
+        suUscita(ascoltatore, null);
+    }
+
+    /**
+     * Registra un ascoltatore degli utenti che abbandonano il gruppo
+     * @param ascoltatore l'ascoltatore, a cui viene fornito l'{@link IndiceRubrica} dell'utente rimosso dalla {@link #rubrica}
+     * @param esecutore l'{@link Executor} della notifica, <code>null</code> per quello predefinito
+     * @throws IllegalArgumentException se l'ascoltatore è <code>null</code>
+     */
+    public void suUscita(Consumer<IndiceRubrica> ascoltatore, Executor esecutore) throws IllegalArgumentException {
+        ascoltatoriUscite.aggiungi(ascoltatore, esecutore);
+    }
+
+    /**
+     * Rimuove tutte le registrazioni di un ascoltatore di messaggi, ingressi o uscite
+     * @param ascoltatore l'ascoltatore registrato
+     * @return <code>true</code> se l'ascoltatore era registrato
+     */
+    public boolean rimuoviAscoltatore(Consumer<?> ascoltatore) {
+        boolean rimosso = ascoltatoriMessaggi.rimuovi(ascoltatore);
+        rimosso |= ascoltatoriIngressi.rimuovi(ascoltatore);
+        rimosso |= ascoltatoriUscite.rimuovi(ascoltatore);
+        return rimosso;
+    }
+
+    /**
+     * Imposta l'{@link Executor} predefinito delle notifiche agli ascoltatori.
+     * Di default gli ascoltatori sono eseguiti dal {@link Thread} di ricezione stesso, in ordine di ricezione: un ascoltatore lento rallenta quindi la ricezione.
+     * @param esecutore l'{@link Executor}, <code>null</code> per eseguire gli ascoltatori nel {@link Thread} di ricezione
+     */
+    public void setEsecutoreNotifiche(Executor esecutore) {
+        this.esecutoreNotifiche = esecutore != null ? esecutore : Runnable::run;
+    }
+
+    /**
+     * Imposta l'intervallo tra due {@link Battito} inviati al <code>gruppo</code>. Da invocare prima di {@link #avvia(boolean)}.
+     * L'intervallo viene trasmesso in ciascun battito, così che gli altri partecipanti ne tengano conto fin dal primo battito ricevuto.
+     * @param millisecondi l'intervallo, di default 1000 ms
+     * @throws IllegalArgumentException se l'intervallo non è positivo
+     */
+    public synchronized void setIntervalloBattito(long millisecondi) throws IllegalArgumentException {
+        if(millisecondi <= 0 || millisecondi > Integer.MAX_VALUE) throw new IllegalArgumentException("L'intervallo tra i battiti deve essere positivo");
+        this.intervalloBattito = millisecondi;
+    }
+
+    /**
+     * Imposta la soglia del livello di sospetto oltre la quale un partecipante viene rimosso dalla {@link Rubrica}.
+     * Una soglia più bassa rileva prima i guasti, al prezzo di un maggior numero di rimozioni errate: con <code>phi = 8</code>, il valore predefinito, la probabilità di errore stimata è di una su cento milioni.
+     * @param soglia la soglia di <code>phi</code>
+     * @throws IllegalArgumentException se la soglia non è positiva
+     * @see RilevatoreGuasti#phi(long)
+     */
+    public void setSogliaSospetto(double soglia) throws IllegalArgumentException {
+        if(!(soglia > 0)) throw new IllegalArgumentException("La soglia di sospetto deve essere positiva");
+        this.sogliaSospetto = soglia;
+    }
+
+    /**
+     * Imposta l'attesa massima del quorum di <code>ACK</code> dei messaggi inviati con {@link #inviaGruppo(String, int)} e {@link #inviaPrivato(String, String, boolean)}
+     * @param millisecondi l'attesa massima, allo scadere della quale il {@link CompletableFuture} viene completato con una {@link java.util.concurrent.TimeoutException}
+     * @throws IllegalArgumentException se l'attesa non è positiva
+     */
+    public void setAttesaConferme(long millisecondi) throws IllegalArgumentException {
+        if(millisecondi <= 0) throw new IllegalArgumentException("L'attesa massima deve essere positiva");
+        this.attesaConferme = millisecondi;
+    }
+
+    /**
+     * Apre il {@link Giornale} e ne riproduce nella {@link Cronologia} gli ultimi messaggi, nei limiti del budget, quindi vi registra i nuovi messaggi
+     * @throws IOException se non è possibile aprire o leggere il giornale
+     */
+    private void apriGiornale() throws IOException {
+        long inizio = System.nanoTime();
+        giornale = new Giornale(directoryGiornale);
+        long ripristinati = giornale.riproduciUltimi(cronologia.getMessaggiMassimi(), cronologia::ripristina);
+        cronologia.setGiornale(giornale);
+        pianificatore.scheduleWithFixedDelay(this::scaricaGiornale, INTERVALLO_GIORNALE, INTERVALLO_GIORNALE, TimeUnit.MILLISECONDS);
+        ChatLogger.log("Ripristinati {} messaggi dal giornale in {} ms", ChatLoggerType.OPTIONAL, ripristinati, (System.nanoTime() - inizio) / 1_000_000);
+    }
+
+    /**
+     * Trasferisce al sistema operativo i messaggi registrati nel {@link #giornale}
+     */
+    private void scaricaGiornale() {
+        try {
+            giornale.scarica();
+        } catch (IOException e) {
+            ChatLogger.log("Impossibile scrivere il giornale: {}", ChatLoggerType.OPTIONAL, e.getMessage());
+        }
+    }
+
+    /**
+     * Configura opportunamente il <code>multicastPeer</code>, ripristinando la {@link Cronologia} dal {@link Giornale} se richiesto con {@link #setGiornale(Path)}
      * @throws IOException se si verifica un errore di I/O
      */
     public synchronized void configura() throws IOException {
         try {
-            this.unicastSocket = new DatagramSocket();
-            ChatLogger.log("Determinati -> IPv4 locale: " + InetAddress.getLocalHost() + " | porta locale : " + unicastSocket.getLocalPort(), ChatLoggerType.OPTIONAL);
+            if(trasportoUnicast == null && cicloEventi != null) {
+                TrasportoUDP canale = TrasportoUDP.canaleUnicast();
+                canale.setCicloEventi(cicloEventi);
+                this.trasportoUnicast = canale;
+            } else if(trasportoUnicast == null) {
+                this.trasportoUnicast = TrasportoUDP.socketUnicast();
+            }
+            this.portaUnicast = trasportoUnicast.getIndirizzoLocale().getPort();
+            ChatLogger.log("Determinati -> IPv4 locale: {} | porta locale : {}", ChatLoggerType.OPTIONAL, InetAddress.getLocalHost(), portaUnicast);
             setOnline(true);
             ChatLogger.log("Socket unicast creato con successo", ChatLoggerType.OPTIONAL);
         } catch (IOException e){
             setOnline(false);
             throw new IOException("Errore nella creazione del Socket unicast: " + e.getMessage());
         }
+        if(directoryGiornale != null && giornale == null) {
+            try {
+                apriGiornale();
+            } catch (IOException e) {
+                throw new IOException("Errore nell'apertura del giornale: " + e.getMessage());
+            }
+        }
+        try {
+            mbeanMetriche.registra(utente.getIDutente());
+        } catch (JMException e) {
+            ChatLogger.log("Impossibile registrare l'MBean delle metriche: {}", ChatLoggerType.OPTIONAL, e.getMessage());
+        }
+        if(portaMetriche >= 0 && serverMetriche == null) {
+            try {
+                serverMetriche = new ServerMetriche(metriche, portaMetriche);
+                ChatLogger.log("Metriche disponibili su http://localhost:" + serverMetriche.getPorta() + ServerMetriche.PERCORSO, ChatLoggerType.MANDATORY);
+            } catch (IOException e) {
+                throw new IOException("Errore nell'avvio del server delle metriche: " + e.getMessage());
+            }
+        }
     }
 
     /**
-     * Avvia le funzioni generali del {@link MulticastPeer}
+     * Avvia le funzioni generali del {@link MulticastPeer} e il {@link Terminale} per l'input dell'utente da tastiera
      * @throws CommunicationException
      * @throws MsgException
      * @throws ProtocolException
      * @throws IllegalArgumentException
      */
     public synchronized void avvia() throws CommunicationException, MsgException, ProtocolException, IOException {
+        avvia(true);
+    }
+
+    /**
+     * Avvia le funzioni generali del {@link MulticastPeer}, con o senza il {@link Terminale} per l'input dell'utente da tastiera
+     * @param terminale <code>true</code> per leggere i comandi dell'utente da tastiera, <code>false</code> per un <code>multicastPeer</code> pilotato da un altro programma
+     * @throws IOException se si verifica un errore di I/O unendosi al gruppo
+     */
+    public synchronized void avvia(boolean terminale) throws IOException {
         gruppoUDP.avvia();
-        inputUtente();
+        codaInvio.avvia();
+        pianificatore.scheduleWithFixedDelay(this::richiediRitrasmissioni, INTERVALLO_NACK, INTERVALLO_NACK, TimeUnit.MILLISECONDS);
+        pianificatore.scheduleWithFixedDelay(this::riparaMessaggi, INTERVALLO_NACK, INTERVALLO_NACK, TimeUnit.MILLISECONDS);
+        pianificatore.scheduleWithFixedDelay(this::confermaSequenze, INTERVALLO_ACK_SEQUENZE, INTERVALLO_ACK_SEQUENZE, TimeUnit.MILLISECONDS);
+        pianificatore.scheduleAtFixedRate(this::battito, intervalloBattito, intervalloBattito, TimeUnit.MILLISECONDS);
+        if(terminale) new Terminale(this).avvia();
         leggiUnicast();
         leggiGruppo();
         invia("join-group");
     }
 
     /**
-     * Avvia il {@link Thread} di ricezione unicast
+     * Avvia la ricezione del {@link #trasportoUnicast}: un {@link Thread} dedicato, la registrazione nel {@link #cicloEventi} o le consegne della {@link ReteSimulata}
+     * @throws IOException se non è possibile avviare la ricezione
      */
-    private void leggiUnicast() {
-        threadRicezione(unicastSocket);
-        ChatLogger.log("Thread ricezione unicast avviato", ChatLoggerType.OPTIONAL);
+    private void leggiUnicast() throws IOException {
+        trasportoUnicast.avvia(new Ricezione(ricevutiUnicast), poolRicezione);
+        ChatLogger.log("Ricezione unicast avviata", ChatLoggerType.OPTIONAL);
     }
 
     /**
-     * Avvio il {@link Thread} di ricezione multicast
+     * Avvia la ricezione del {@link Trasporto} del {@link GroupChat}. Se il gruppo utilizza un canale non bloccante, la ricezione è servita dal {@link #cicloEventi}.
+     * @throws IOException se non è possibile avviare la ricezione
      */
-    private void leggiGruppo() {
-        threadRicezione(gruppoUDP.getMulticastSocket());
-        ChatLogger.log("Thread ricezione multicast avviato", ChatLoggerType.OPTIONAL);
+    private void leggiGruppo() throws IOException {
+        if(cicloEventi != null && gruppoUDP.getTrasporto() instanceof TrasportoUDP udp) udp.setCicloEventi(cicloEventi);
+        gruppoUDP.getTrasporto().avvia(new Ricezione(ricevutiMulticast), poolRicezione);
+        ChatLogger.log("Ricezione multicast avviata", ChatLoggerType.OPTIONAL);
     }
 
     /**
-     * Crea un generico {@link Thread} di ricezione.
+     * {@link Trasporto.Ricevitore} dei datagrammi unicast o multicast.
      * <p>
-     * Il funzionamento in ricezione di un {@link MulticastPeer} è identico sia per socket di tipo <code>unicast</code>, che di tipo <code>multicast</code>:
-     * <ol>
-     *     <li>Il {@link Thread} viene creato e configurato con un proprio nome specifico per una più efficace gestione</li>
-     *     <li>Procedendo in un loop che termina nel solo momento in cui l'<code>host</code> diventa offline o la <code>socket</code> viene chiusa, viene creato un buffer (array) di byte da utilizzare per il costruttore del {@link DatagramPacket} di ricezione</li>
-     *     <li>Ricevuto un {@link DatagramPacket}, viene estratto il messaggio, salvato nella {@link Cronologia} e segnalato l'utente mittente alla {@link Rubrica}</li>
+     * Il funzionamento in ricezione di un {@link MulticastPeer} è identico per entrambi i trasporti e per tutte le modalità di ricezione:
+     * il trasporto richiede un buffer al {@link #poolRicezione}, vi riceve un datagramma e lo consegna al ricevitore, che lo gestisce con {@link #elaboraDatagramma(ByteBuffer, InetAddress, ContatoreTraffico)} finché l'<code>host</code> è online.
+     */
+    private final class Ricezione implements Trasporto.Ricevitore {
+
+        /**
+         * Il {@link ContatoreTraffico} del trasporto
+         */
+        private final ContatoreTraffico traffico;
+
+        /**
+         * Crea un ricevitore
+         * @param traffico il {@link ContatoreTraffico} del trasporto
+         */
+        private Ricezione(ContatoreTraffico traffico) {
+            this.traffico = traffico;
+        }
+
+        @Override
+        public void ricevi(ByteBuffer dati, InetSocketAddress mittente) {
+            if(!isOnline()) return;
+            try {
+                elaboraDatagramma(dati, mittente.getAddress(), traffico);
+            } catch (IOException e) {
+                ProjectOutput.stampa("Errore di I/O: " + e.getMessage(), OutputType.STDERR);
+                chiudi();
+            }
+        }
+
+        @Override
+        public void interrotto(IOException causa) {
+            if(!(causa instanceof SocketException)) ProjectOutput.stampa("Errore di I/O: " + causa.getMessage(), OutputType.STDERR);
+            chiudi();
+        }
+    }
+
+    /**
+     * Gestisce un datagramma come se fosse stato appena ricevuto dal trasporto unicast, con {@link #elaboraDatagramma(ByteBuffer, InetAddress, ContatoreTraffico)}, anche se l'<code>host</code> non è online.
+     * Accessibile solo all'interno del package, consente ai benchmark di misurare lo stesso percorso dei datagrammi ricevuti dalla rete, esclusa la socket.
+     * @param dati il datagramma ricevuto, tra <code>position</code> e <code>limit</code> del buffer
+     * @param mittente l'{@link InetAddress} del mittente
+     * @throws IOException se si verifica un errore di I/O durante la gestione
+     */
+    void ricevi(ByteBuffer dati, InetAddress mittente) throws IOException {
+        elaboraDatagramma(dati, mittente, ricevutiUnicast);
+    }
+
+    /**
+     * Elabora un datagramma ricevuto, indipendentemente dalla modalità di ricezione, misurandone il traffico, la durata della gestione e le allocazioni, e segnalando gli errori di formato e di protocollo
+     * @param dati il datagramma ricevuto, tra <code>position</code> e <code>limit</code> del buffer
+     * @param mittente l'{@link InetAddress} del mittente
+     * @param traffico il {@link ContatoreTraffico} della socket da cui è stato ricevuto il datagramma
+     * @throws IOException se si verifica un errore di I/O durante la gestione
+     */
+    private void elaboraDatagramma(ByteBuffer dati, InetAddress mittente, ContatoreTraffico traffico) throws IOException {
+        EventiChat.Ricezione evento = new EventiChat.Ricezione();
+        evento.begin();
+        int dimensione = dati.remaining();
+        traffico.registra(dimensione);
+        long inizio = System.nanoTime();
+        long allocatiPrima = byteAllocati();
+        try {
+            gestisciDatagramma(dati, mittente);
+        } catch (MsgException e) {
+            erroriDecodifica.increment();
+            ProjectOutput.stampa("Formato messaggio non valido", OutputType.STDERR);
+        } catch (NoSuchUserException e) {
+            ProjectOutput.stampa("Utente non inizializzato", OutputType.STDERR);
+        } catch (CommunicationException e) {
+            ProjectOutput.stampa(e.getMessage(), OutputType.STDERR);
+        } catch (ProtocolException e){
+            ProjectOutput.stampa(e.getMessage() + ". Il programma verrà terminato", OutputType.STDERR);
+            chiudi();
+        }
+        pacchettiRicevuti.incrementAndGet();
+        if(allocatiPrima >= 0) byteAllocatiRicezione.addAndGet(byteAllocati() - allocatiPrima);
+        latenzeRicezione.registra(System.nanoTime() - inizio);
+        if(evento.shouldCommit()) {
+            evento.socket = traffico == ricevutiMulticast ? "multicast" : "unicast";
+            evento.mittente = mittente != null ? mittente.getHostAddress() : null;
+            evento.dimensione = dimensione;
+            evento.commit();
+        }
+    }
+
+    /**
+     * Gestisce il contenuto di un datagramma ricevuto.
+     * <p>
+     * Se il datagramma è un frammento, viene consegnato al {@link #riassemblatore} e gestito solo una volta ricomposto; se è un {@link Pacchetto}, ciascun messaggio contenuto viene gestito singolarmente.
+     * Un {@link Pacchetto} non può contenere altri pacchetti né frammenti: tali messaggi, come quelli non decodificabili, vengono scartati e conteggiati tra gli errori di decodifica senza interrompere la gestione dei successivi.
+     * Una {@link RichiestaRitrasmissione} viene soddisfatta a partire dalla finestra di ritrasmissione della {@link Cronologia} e un {@link Battito} aggiorna il {@link RilevatoreGuasti} del mittente, mentre i messaggi in sequenza vengono verificati dal {@link #rilevatoreLacune}, scartando i duplicati e richiedendo i messaggi mancanti.
+     * Il {@link Messaggio} viene decodificato direttamente dal buffer di ricezione, salvato nella {@link Cronologia} e segnalato l'utente mittente alla {@link Rubrica}:
+     * <ul>
      *     <li>Nel caso in cui il messaggio sia di tipo <code>ACK</code>, viene avviata la procedura per la memorizzazione dell'avvenuta conferma di ricezione</li>
      *     <li>In caso contrario 3 situazioni vengono verificate:
      *       <ul>
      *           <li>Se il messaggio segnala che un utente ha abbandonato il gruppo: <code>left-group</code></li>
      *           <li>Se il messaggio segnala che un utente si è unito al gruppo: <code>join-group</code></li>
-     *           <li>Se il messaggio contiene un generico testo, a cui si provvedere ad inviare un messaggio <code>ACK</code> di risposta</li>
+     *           <li>Se il messaggio contiene un generico testo, a cui si provvedere ad inviare un messaggio <code>ACK</code> di risposta, immediatamente o in forma cumulativa se abilitato con {@link #setACKCumulativi(long)}</li>
      *       </ul>
      *     </li>
-     * </ol>
+     * </ul>
+     * @param dati il buffer contenente il datagramma, tra <code>position</code> e <code>limit</code>
+     * @param mittente l'{@link InetAddress} da cui è stato ricevuto il datagramma
      */
-    private synchronized void threadRicezione(final DatagramSocket tipoSocket) {
-        new Thread(()->{
-            
-            if(tipoSocket != null) {
-                if (tipoSocket instanceof MulticastSocket) {
-                    Thread.currentThread().setName("Thread di ricezione multicast");
-                } else {
-                    Thread.currentThread().setName("Thread di ricezione unicast");
-                }
-                
-                while(this.isOnline() && !tipoSocket.isClosed()) {
-                    try {
-                        byte[] buffer = new byte[1024];
-                        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                        tipoSocket.receive(packet);
-                        
-                        Messaggio msgRicevuto = Messaggio.configMsg(buffer);
-
-                        cronologia.nuovoMessaggio(msgRicevuto);
-                        rubrica.aggiungiUtente(msgRicevuto.getUtente(), packet.getAddress(), msgRicevuto.getPortaMittente());
-
-                        if (msgRicevuto.isACK() && !msgRicevuto.getIDutente().equals(this.utente.getIDutente())) {
-                            cronologia.confermaDiLettura(msgRicevuto);
-                        } else if (!msgRicevuto.getIDutente().equals(this.utente.getIDutente())) {
-                            if (msgRicevuto.getMsg().equals("left-group")) {
-                                String utenteRimosso = rubrica.rimuoviUtente(msgRicevuto.getIDutente());
-                                ProjectOutput.stampa(utenteRimosso + " ha abbandonato la chat del gruppo", OutputType.STDOUT);
-                            } else if (msgRicevuto.getMsg().equals("join-group")) {
-                                ProjectOutput.stampa(msgRicevuto.getUsername() + " si è unito al chat del gruppo", OutputType.STDOUT);
-                                ChatLogger.log("Tentativo di invio del messaggio di saluto in corso...", ChatLoggerType.OPTIONAL);
-                                invia("benvenuto/a " + msgRicevuto.getUsername() + "!");
-                            } else {
-                                ProjectOutput.stampa(msgRicevuto.estrai(rubrica), OutputType.STDOUT);
-                                /* invio ACK */
-                                preparaACK(String.valueOf(msgRicevuto.getID()), msgRicevuto.getIDutente());
-                            }
-                        }
-                    } catch (SocketException e) {
-                        setOnline(false);
-                        chiudi();
-                        break;
-                    } catch (IOException e) {
-                        setOnline(false);
-                        ProjectOutput.stampa("Errore di I/O: " + e.getMessage(), OutputType.STDERR);
-                        break;
-                    } catch (MsgException e) {
-                        ProjectOutput.stampa("Formato messaggio non valido", OutputType.STDERR);
-                    } catch (NoSuchUserException e) {
-                        ProjectOutput.stampa("Utente non inizializzato", OutputType.STDERR);
-                    } catch (CommunicationException e) {
-                        ProjectOutput.stampa(e.getMessage(), OutputType.STDERR);
-                    } catch (ProtocolException e){
-                        ProjectOutput.stampa(e.getMessage() + ". Il programma verrà terminato", OutputType.STDERR);
-                        chiudi();
-                    }
+    private void gestisciDatagramma(ByteBuffer dati, InetAddress mittente) throws MsgException, NoSuchUserException, CommunicationException, ProtocolException, IOException {
+        if(CodecBinario.opcode(dati) == CodecBinario.OP_FRAMMENTO) {
+            dati = riassemblatore.aggiungi(dati);
+            if(dati == null) return;
+        }
+        
+        if(CodecBinario.opcode(dati) == CodecBinario.OP_NACK) {
+            ritrasmetti(RichiestaRitrasmissione.decodifica(dati), mittente);
+            return;
+        }
+
+        if(CodecBinario.opcode(dati) == CodecBinario.OP_BATTITO) {
+            riceviBattito(Battito.decodifica(dati), mittente);
+            return;
+        }
+        
+        if(CodecBinario.opcode(dati) == CodecBinario.OP_PACCHETTO) {
+            for(ByteBuffer contenuto : Pacchetto.spacchetta(dati)) {
+                byte opcode = CodecBinario.opcode(contenuto);
+                try {
+                    if(opcode == CodecBinario.OP_PACCHETTO || opcode == CodecBinario.OP_FRAMMENTO) throw new MsgException("Contenuto non ammesso in un pacchetto: opcode " + opcode);
+                    gestisciDatagramma(contenuto, mittente);
+                } catch (MsgException e) {
+                    erroriDecodifica.increment();
+                    ChatLogger.log("Messaggio del pacchetto scartato: {}", ChatLoggerType.OPTIONAL, e.getMessage());
                 }
             }
+            return;
+        }
+        
+        Messaggio msgRicevuto = Messaggio.configMsg(dati);
 
-        }).start();
+        if(msgRicevuto.getSequenza() > 0 && !msgRicevuto.getIDutente().equals(this.utente.getIDutente())) {
+            RilevatoreLacune.Esito esito = rilevatoreLacune.registra(msgRicevuto.getIDutente(), msgRicevuto.getSequenza());
+            if(esito == RilevatoreLacune.Esito.DUPLICATO) {
+                ChatLogger.log("Messaggio duplicato scartato: sequenza {} di {}", ChatLoggerType.OPTIONAL, msgRicevuto.getSequenza(), msgRicevuto.getIDutente());
+                /* l'ACK precedente potrebbe essere andato perso: il mittente ritrasmette solo ai destinatari che non hanno confermato */
+                if(!msgRicevuto.isACK() && !isMessaggioDiControllo(msgRicevuto.getMsg())) confermaRicezione(msgRicevuto);
+                return;
+            }
+            if(esito == RilevatoreLacune.Esito.LACUNA) {
+                List<InsiemeID> mancanti = rilevatoreLacune.mancanti(msgRicevuto.getIDutente(), Messaggio.orologio(), rubrica.getRTO(msgRicevuto.getIDutente()));
+                richiediRitrasmissione(msgRicevuto.getIDutente(), mittente, msgRicevuto.getPortaMittente(), mancanti);
+            }
+        }
+
+        cronologia.nuovoMessaggio(msgRicevuto);
+        /* un partecipante non ancora noto che annuncia l'abbandono non viene inserito, per non segnalarne l'ingresso e subito dopo l'uscita */
+        if(!"left-group".equals(msgRicevuto.getMsg())) aggiungiPartecipante(msgRicevuto.getUtente(), mittente, msgRicevuto.getPortaMittente());
+        rubrica.registraSegnale(msgRicevuto.getIDutente(), Messaggio.orologio());
+
+        if (msgRicevuto.isACK() && !msgRicevuto.getIDutente().equals(this.utente.getIDutente())) {
+            if(msgRicevuto.getMarcaTemporale() > 0) {
+                rubrica.registraRTT(msgRicevuto.getIDutente(), Messaggio.orologio() - msgRicevuto.getMarcaTemporale() - msgRicevuto.getRitardoACK(), msgRicevuto.getRitardoACK());
+            }
+            cronologia.confermaDiLettura(msgRicevuto, rubrica.ottieniSlot(msgRicevuto.getIDutente()));
+        } else if (!msgRicevuto.getIDutente().equals(this.utente.getIDutente())) {
+            if (msgRicevuto.getMsg().equals("left-group")) {
+                congedati.put(msgRicevuto.getIDutente(), Messaggio.orologio());
+                rimuoviPartecipante(msgRicevuto.getIDutente());
+            } else if (msgRicevuto.getMsg().equals("join-group")) {
+                ChatLogger.log("Tentativo di invio del messaggio di saluto in corso...", ChatLoggerType.OPTIONAL);
+                segnala(invia("benvenuto/a " + msgRicevuto.getUsername() + "!"));
+            } else {
+                ascoltatoriMessaggi.notifica(msgRicevuto, esecutoreNotifiche);
+                confermaRicezione(msgRicevuto);
+            }
+        }
     }
 
     /**
-     * Avvia il {@link Thread} per la lettura e interpretazione dell'input dell'utente da tastiera. Specifici comandi preceduti dal carattere <code>$</code> possono essere visualizzati attraverso il comando <code>$help</code>
+     * Conferma la ricezione di un messaggio al mittente, con un <code>ACK</code> singolo o registrandolo nell'{@link #accumulatoreACK}.
+     * I messaggi multicast affidabili non vengono mai confermati singolarmente: la consegna è garantita dalle {@link RichiestaRitrasmissione} e le conferme servono al solo conteggio degli <code>ACK</code>,
+     * inviate in forma cumulativa con gli <code>ACK</code> cumulativi, se abilitati, o altrimenti ogni {@link #INTERVALLO_ACK_SEQUENZE} millisecondi.
+     * @param msgRicevuto il messaggio da confermare
+     * @throws NoSuchUserException se il messaggio è privo di mittente
      */
-    private synchronized void inputUtente() {
-        new Thread(()->{
-            Thread.currentThread().setName("Thread per l'input dell'utente");
-            Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
+    private void confermaRicezione(Messaggio msgRicevuto) throws NoSuchUserException {
+        if(invioACKCumulativi != null || msgRicevuto.getSequenza() > 0) {
+            accumulatoreACK.registra(msgRicevuto);
+        } else {
+            segnala(preparaACK(msgRicevuto));
+        }
+    }
 
-            Scanner inUtente = new Scanner(System.in);
-            ChatLogger.log("Terminale pronto all'invio di messaggi", ChatLoggerType.MANDATORY);
-            ChatLogger.log("Digita una qualsiasi sequenza di caratteri per comunicare con il GRUPPO", ChatLoggerType.MANDATORY);
-            ChatLogger.log("Per poter comunicare privatamente con un utente digitare: 'testo > aliasUtente'", ChatLoggerType.MANDATORY);
-            ChatLogger.log("Digita '$exit' per terminare l'esecuzione", ChatLoggerType.MANDATORY);
-            ChatLogger.log("Digita '$help' per visualizzare l'elenco dei comandi", ChatLoggerType.MANDATORY);
-            
-            while(this.isOnline()) {
-                try {
-                    String input = inUtente.nextLine().trim();
-                    
-                    String[] arrayInput;
-                    
-                    if(!input.isBlank()){
-                        /* comandi */
-                        if(input.contains("$")){
-                            arrayInput = input.split(" ");
-                            
-                            switch (arrayInput[0].trim()){
-                                case "$exit" -> {
-                                    invia("left-group");
-                                    chiudi();
-                                }
-                                
-                                case "$utenti" -> ChatLogger.log(rubrica.getRubrica(), ChatLoggerType.MANDATORY);
-                                
-                                case "$stat" -> ChatLogger.log(cronologia.getStatistiche(), ChatLoggerType.MANDATORY);
-                                
-                                case "$rn" -> {
-                                    if(arrayInput.length == 3){
-                                        rubrica.rinomina(arrayInput[1].trim(), arrayInput[2].trim());
-                                    } else {
-                                        ProjectOutput.stampa("Parametri <alias> e <nuovoAlias> assenti o non validi. Digita $help per l'elenco dei comandi", OutputType.STDERR);
-                                    }
-                                }
-                                
-                                case "$help" -> {
-                                    ChatLogger.log("Digita '$exit' per terminare l'esecuzione", ChatLoggerType.MANDATORY);
-                                    ChatLogger.log("Digita '$help' per visualizzare l'elenco dei comandi", ChatLoggerType.MANDATORY);
-                                    ChatLogger.log("Digita '$utenti' per visualizzare la rubrica memorizzata", ChatLoggerType.MANDATORY);
-                                    ChatLogger.log("Digita '$stat' per visualizzare le statistiche di output", ChatLoggerType.MANDATORY);
-                                    ChatLogger.log("Digita '$rn <alias> <nuovoAlias>' per rinominare l'alias di un utente in rubrica", ChatLoggerType.MANDATORY);
-                                    ChatLogger.log("Digita '$log' per attivare/disattivare la modalità di logging", ChatLoggerType.MANDATORY);
-                                }
-                                
-                                case "$log" -> ChatLogger.abilita(!ChatLogger.isAbilitato());
-                                
-                                default -> ProjectOutput.stampa("Comando " + arrayInput[0].trim() + " non riconosciuto. Digita $help per l'elenco dei comandi", OutputType.STDERR);
-                            }
-                            
-                        } else if (input.contains(">")){
-                            arrayInput = input.split(">");
-
-                            if(arrayInput.length == 2) {
-                                /* scrittura unicast */
-                                try {
-                                    preparaInvio(arrayInput[0].trim(), arrayInput[1].trim());
-                                } catch (MsgException | IllegalArgumentException e) {
-                                    ProjectOutput.stampa(e.getMessage(), OutputType.STDERR);
-                                }
-
-                            } else {
-                                ProjectOutput.stampa("Formato per invio messaggio non valido", OutputType.STDERR);
-                            }
-                        } else {
-                            /* scrittura multicast */
-                            try {
-                                invia(input);
-                            } catch (MsgException | IllegalArgumentException | CommunicationException e) {
-                                ProjectOutput.stampa(e.getMessage(), OutputType.STDERR);
-                            }
-                        }
-                    } else {
-                        ProjectOutput.stampa("Formato input non valido: null", OutputType.STDERR);
-                    }
-                } catch (Exception e){
-                    setOnline(false);
-                    ProjectOutput.stampa("Errore: " + e.getMessage(), OutputType.STDERR);
-                    break;
-                }
+    /**
+     * Verifica se il contenuto di un messaggio è un messaggio di controllo del gruppo, che non viene confermato dai destinatari
+     * @param contenuto il contenuto del messaggio
+     * @return <code>true</code> per <code>join-group</code> e <code>left-group</code>
+     */
+    private static boolean isMessaggioDiControllo(String contenuto) {
+        return "join-group".equals(contenuto) || "left-group".equals(contenuto);
+    }
+
+    /**
+     * Restituisce i byte allocati nell'heap dal {@link Thread} corrente
+     * @return i byte allocati, <code>-1</code> se la misura non è supportata
+     */
+    private static long byteAllocati() {
+        return MISURA_ALLOCAZIONI != null ? MISURA_ALLOCAZIONI.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * Restituisce le statistiche di rete: buffer allocati e byte allocati nell'heap per ciascun datagramma ricevuto, frammentazione, accorpamento e {@link CodaInvio}
+     * @return le statistiche di ricezione
+     */
+    public String getStatisticheRicezione() {
+        long pacchetti = pacchettiRicevuti.get();
+        String stat = "Datagrammi ricevuti: " + pacchetti + " | ";
+        stat += "Buffer allocati: " + poolRicezione.getAllocazioni() + " su " + poolRicezione.getAcquisizioni() + " richiesti";
+        if(MISURA_ALLOCAZIONI != null && pacchetti > 0) {
+            stat += " | Byte allocati per datagramma: " + (byteAllocatiRicezione.get() / pacchetti);
+        }
+        stat += "\n" + riassemblatore.getStatistiche();
+        stat += "\n" + gruppoUDP.getStatisticheAccorpamento();
+        if(cicloEventi != null) stat += "\n" + cicloEventi.getStatistiche();
+        stat += "\n" + codaInvio.getStatistiche();
+        return stat;
+    }
+
+    /**
+     * Invia un messaggio a tutto il <code>gruppo</code> attraverso la {@link #codaInvio}, senza attendere gli <code>ACK</code>
+     * @param testo il contenuto del messaggio
+     * @return il {@link CompletableFuture} completato con il {@link Messaggio} all'invio, o eccezionalmente se la coda è piena o l'invio fallisce
+     */
+    public CompletableFuture<Messaggio> inviaGruppo(String testo) {
+        return inviaGruppo(testo, 0);
+    }
+
+    /**
+     * Invia un messaggio a tutto il <code>gruppo</code> attraverso la {@link #codaInvio}, attendendo eventualmente un quorum di <code>ACK</code>
+     * @param testo il contenuto del messaggio
+     * @param quorum il numero di destinatari che devono confermare il messaggio, limitato ai partecipanti all'invio: <code>0</code> per il solo invio locale, {@link #TUTTI} per tutti i partecipanti
+     * @return il {@link CompletableFuture} completato con il {@link Messaggio} all'invio o al raggiungimento del quorum, oppure eccezionalmente se la coda è piena, l'invio fallisce,
+     * il quorum non viene raggiunto entro l'attesa massima ({@link #setAttesaConferme(long)}) o il <code>multicastPeer</code> viene chiuso
+     */
+    public CompletableFuture<Messaggio> inviaGruppo(String testo, int quorum) {
+        EsitoInvio esito = new EsitoInvio(quorum);
+        codaInvio.accoda(() -> inviaMulticast(testo, esito::creato)).whenComplete(esito::inviato);
+        return esito.futuro;
+    }
+
+    /**
+     * Invia un messaggio privato a un partecipante del <code>gruppo</code> attraverso la {@link #codaInvio}, senza attenderne l'<code>ACK</code>
+     * @param testo il contenuto del messaggio
+     * @param destinatario il destinatario (UUID o alias)
+     * @return il {@link CompletableFuture} completato con il {@link Messaggio} all'invio, o eccezionalmente se la coda è piena o l'invio fallisce
+     * @throws NoSuchUserException se il destinatario non è in {@link #rubrica}
+     */
+    public CompletableFuture<Messaggio> inviaPrivato(String testo, String destinatario) throws NoSuchUserException {
+        return inviaPrivato(testo, destinatario, false);
+    }
+
+    /**
+     * Invia un messaggio privato a un partecipante del <code>gruppo</code> attraverso la {@link #codaInvio}, attendendone eventualmente l'<code>ACK</code>
+     * @param testo il contenuto del messaggio
+     * @param destinatario il destinatario (UUID o alias)
+     * @param attendiACK <code>true</code> per completare il {@link CompletableFuture} alla ricezione dell'<code>ACK</code> del destinatario
+     * @return il {@link CompletableFuture} completato con il {@link Messaggio} all'invio o alla conferma, oppure eccezionalmente come per {@link #inviaGruppo(String, int)}
+     * @throws NoSuchUserException se il destinatario non è in {@link #rubrica}
+     */
+    public CompletableFuture<Messaggio> inviaPrivato(String testo, String destinatario, boolean attendiACK) throws NoSuchUserException {
+        EsitoInvio esito = new EsitoInvio(attendiACK ? 1 : 0);
+        preparaInvio(testo, destinatario, esito::creato).whenComplete(esito::inviato);
+        return esito.futuro;
+    }
+
+    /**
+     * Esce dal <code>gruppo</code>, annunciandolo agli altri partecipanti con il messaggio <code>left-group</code>, e chiude il <code>multicastPeer</code>
+     */
+    public void esci() {
+        invia("left-group");
+        chiudi();
+    }
+
+    /**
+     * Esito di un invio richiesto attraverso l'interfaccia programmatica: completato all'invio locale o, se richiesto un quorum, al raggiungimento degli <code>ACK</code> attesi
+     */
+    private final class EsitoInvio {
+
+        /**
+         * Il {@link CompletableFuture} restituito al chiamante
+         */
+        private final CompletableFuture<Messaggio> futuro = new CompletableFuture<>();
+
+        /**
+         * Il numero di <code>ACK</code> da attendere, <code>0</code> per il solo invio locale
+         */
+        private final int quorum;
+
+        /**
+         * Il messaggio creato dal {@link Thread} della {@link #codaInvio}
+         */
+        private volatile Messaggio messaggio;
+
+        /**
+         * Crea l'esito di un invio, pianificando la scadenza dell'attesa del quorum
+         * @param quorum il numero di <code>ACK</code> da attendere, <code>0</code> per il solo invio locale
+         */
+        private EsitoInvio(int quorum) {
+            this.quorum = Math.max(0, quorum);
+            if(this.quorum > 0) {
+                attese.add(futuro);
+                futuro.orTimeout(attesaConferme, TimeUnit.MILLISECONDS).whenComplete((nulla, e) -> attese.remove(futuro));
             }
-            chiudi();
-        }).start();
+        }
+
+        /**
+         * Registra il messaggio appena creato, prima dell'invio, così che nessun <code>ACK</code> possa precedere l'attesa del quorum
+         * @param messaggio il messaggio creato
+         */
+        private void creato(Messaggio messaggio) {
+            this.messaggio = messaggio;
+            if(quorum > 0) messaggio.attendiConferme(quorum).thenAccept(futuro::complete);
+        }
+
+        /**
+         * Conclude l'invio locale
+         * @param nulla il risultato dell'operazione di invio
+         * @param errore l'eccezione dell'invio, <code>null</code> se riuscito
+         */
+        private void inviato(Void nulla, Throwable errore) {
+            if(errore != null) {
+                futuro.completeExceptionally(errore);
+            } else if(quorum == 0) {
+                futuro.complete(messaggio);
+            }
+        }
     }
 
     /**
-     * Prepara l'output di messaggi unicast
+     * Prepara l'output di messaggi unicast. Il destinatario viene risolto immediatamente, mentre la creazione e l'invio del {@link Messaggio} avvengono attraverso la {@link #codaInvio}.
      * @param messaggioUnicast il contenuto del messaggio
      * @param destinatario il destinatario (UUID o username)
+     * @param creato l'azione eseguita alla creazione del {@link Messaggio}, prima dell'invio
+     * @return il {@link CompletableFuture} completato all'invio del messaggio
      * @throws NoSuchUserException se si verifica un errore legato agli utenti e la {@link #rubrica}
-     * @throws MsgException se si verifica un errore nella creazione del {@link Messaggio}
-     * @throws IOException se si verifica un errore nell'invio del datagramma
-     * @throws ProtocolException se il parametro <code>protocollo</code> non è un valido {@link Protocollo}
      */
-    private synchronized void preparaInvio(String messaggioUnicast, String destinatario) throws MsgException, NoSuchUserException, ProtocolException, IOException {
+    private CompletableFuture<Void> preparaInvio(String messaggioUnicast, String destinatario, Consumer<Messaggio> creato) throws NoSuchUserException {
         IndiceRubrica infoDestinatario;
         
         if(destinatario.contains("-")) {
@@ -327,78 +1212,370 @@ public class MulticastPeer {
             infoDestinatario = rubrica.ottieniInfoUtente(destinatario);
         }
         
-        Messaggio messaggio = new Messaggio(cronologia.getNewID(), utente, unicastSocket.getLocalPort(), 1, messaggioUnicast, false, Protocollo.UDP.unicast);
-        ChatLogger.log("Invio messaggio unicast per " + utente.getIDutente() + " con msgID " + messaggioUnicast + " in corso...", ChatLoggerType.OPTIONAL);
-        cronologia.storicizzaMessaggio(messaggio);
-        
-        byte[] out = Messaggio.configMsg(messaggio);
-        DatagramPacket packet = new DatagramPacket(out, out.length, infoDestinatario.inetAddress(), infoDestinatario.porta());
-        invia(packet);
+        BitSet slotDestinatario = new BitSet();
+        slotDestinatario.set(infoDestinatario.slot());
+        return codaInvio.accoda(() -> {
+            /* il destinatario potrebbe essere stato rimosso nel frattempo, e le conferme attese dal suo slot già esonerate */
+            IndiceRubrica attuale = rubrica.ottieniInfoDaSlot(infoDestinatario.slot());
+            if(attuale == null || !attuale.UUID().equals(infoDestinatario.UUID())) throw new NoSuchUserException("Il destinatario " + infoDestinatario.alias() + " ha lasciato il gruppo");
+            Messaggio messaggio = new Messaggio(cronologia.getNewID(), utente, portaUnicast, slotDestinatario, messaggioUnicast, false, Protocollo.UDP.unicast, 0);
+            creato.accept(messaggio);
+            ChatLogger.log(() -> "Invio messaggio unicast per " + utente.getIDutente() + " con msgID " + messaggioUnicast + " in corso...", ChatLoggerType.OPTIONAL);
+            cronologia.storicizzaMessaggio(messaggio);
+            
+            byte[] out = Messaggio.configMsg(messaggio);
+            trasmetti(new DatagramPacket(out, out.length, infoDestinatario.inetAddress(), infoDestinatario.porta()));
+        });
     }
 
     /**
-     * Prepara l'output di messaggi ACK (unicast)
-     * @param msgIDxACK il contenuto del messaggio
-     * @param UUID l'identificativo univoco del destinatario
-     * @throws MsgException se si verifica un errore nella creazione del {@link Messaggio}
-     * @throws IOException se si verifica un errore nell'invio del datagramma
-     * @throws ProtocolException se il parametro <code>protocollo</code> non è un valido {@link Protocollo}
+     * Prepara l'output di messaggi ACK (unicast), accodando la creazione e l'invio del {@link Messaggio} nella {@link #codaInvio}.
+     * L'<code>ACK</code> restituisce in eco la marca temporale del messaggio confermato, insieme al tempo trascorso dalla sua ricezione, per la misura dell'<code>RTT</code> da parte del mittente.
+     * @param msgRicevuto il messaggio da confermare
+     * @return il {@link CompletableFuture} completato all'invio dell'<code>ACK</code>
      */
-    private synchronized void preparaACK(String msgIDxACK, String UUID) throws MsgException, IOException, ProtocolException, NoSuchUserException {
-        String aliasDaUUID = rubrica.ottieniAliasDaUUID(UUID);
-        IndiceRubrica infoDestinatario = rubrica.ottieniInfoUtente(aliasDaUUID);
-        
-        Messaggio messaggio = new Messaggio(cronologia.getNewID(), utente, unicastSocket.getLocalPort(), true, msgIDxACK, Protocollo.UDP.unicast);
-        ChatLogger.log("Invio messaggio ACK per " + utente.getIDutente() + " con msgID " + msgIDxACK + " in corso...", ChatLoggerType.OPTIONAL);
-        cronologia.storicizzaMessaggio(messaggio);
-        
-        byte[] out = Messaggio.configMsg(messaggio);
-        DatagramPacket packet = new DatagramPacket(out, out.length, infoDestinatario.inetAddress(), infoDestinatario.porta());
-        invia(packet);
+    private CompletableFuture<Void> preparaACK(Messaggio msgRicevuto) {
+        int msgIDxACK = msgRicevuto.getID();
+        return codaInvio.accoda(() -> {
+            String aliasDaUUID = rubrica.ottieniAliasDaUUID(msgRicevuto.getIDutente());
+            IndiceRubrica infoDestinatario = rubrica.ottieniInfoUtente(aliasDaUUID);
+            
+            Messaggio messaggio = new Messaggio(cronologia.getNewID(), utente, portaUnicast, msgIDxACK, msgRicevuto.getMarcaTemporale(), msgRicevuto.getTempoDallaRicezione(), Protocollo.UDP.unicast);
+            ChatLogger.log(() -> "Invio messaggio ACK per " + utente.getIDutente() + " con msgID " + msgIDxACK + " in corso...", ChatLoggerType.OPTIONAL);
+            cronologia.storicizzaMessaggio(messaggio);
+            
+            byte[] out = Messaggio.configMsg(messaggio);
+            trasmetti(new DatagramPacket(out, out.length, infoDestinatario.inetAddress(), infoDestinatario.porta()));
+        });
+    }
+
+    /**
+     * Invia a ciascun mittente un <code>ACK</code> cumulativo per i messaggi ricevuti dall'ultimo invio
+     */
+    private void inviaACKCumulativi() {
+        for(Map.Entry<String, AccumulatoreACK.Conferme> conferme : accumulatoreACK.svuota().entrySet()) {
+            try {
+                IndiceRubrica infoDestinatario = rubrica.ottieniInfoUtente(rubrica.ottieniAliasDaUUID(conferme.getKey()));
+                Messaggio eco = conferme.getValue().eco();
+                for(InsiemeID insieme : conferme.getValue().insiemi()) {
+                    Messaggio messaggio = eco != null
+                            ? new Messaggio(cronologia.getNewID(), utente, portaUnicast, insieme, eco.getMarcaTemporale(), eco.getTempoDallaRicezione(), Protocollo.UDP.unicast)
+                            : new Messaggio(cronologia.getNewID(), utente, portaUnicast, insieme, Protocollo.UDP.unicast);
+                    eco = null;
+                    ChatLogger.log("Invio ACK cumulativo per {} con msgID {} in corso...", ChatLoggerType.OPTIONAL, conferme.getKey(), insieme);
+                    cronologia.storicizzaMessaggio(messaggio);
+
+                    byte[] out = Messaggio.configMsg(messaggio);
+                    segnala(invia(new DatagramPacket(out, out.length, infoDestinatario.inetAddress(), infoDestinatario.porta())));
+                }
+            } catch (NoSuchUserException e) {
+                ChatLogger.log("ACK cumulativo non inviato: {} non più in rubrica", ChatLoggerType.OPTIONAL, conferme.getKey());
+            } catch (MsgException | ProtocolException e) {
+                ProjectOutput.stampa(e.getMessage(), OutputType.STDERR);
+            }
+        }
+    }
+
+    /**
+     * Invia le conferme cumulative dei messaggi in sequenza ricevuti, se gli <code>ACK</code> cumulativi non sono abilitati e non vi provvedono già
+     */
+    private void confermaSequenze() {
+        if(invioACKCumulativi == null) inviaACKCumulativi();
+    }
+
+    /**
+     * Richiede la ritrasmissione dei messaggi in sequenza non ancora ricevuti a ciascun mittente il cui timeout di ritrasmissione adattivo è scaduto
+     * @see Rubrica#getRTO(String)
+     */
+    private void richiediRitrasmissioni() {
+        for(Map.Entry<String, List<InsiemeID>> lacune : rilevatoreLacune.mancanti(Messaggio.orologio(), rubrica::getRTO).entrySet()) {
+            try {
+                IndiceRubrica infoMittente = rubrica.ottieniInfoUtente(rubrica.ottieniAliasDaUUID(lacune.getKey()));
+                richiediRitrasmissione(lacune.getKey(), infoMittente.inetAddress(), infoMittente.porta(), lacune.getValue());
+            } catch (NoSuchUserException e) {
+                rilevatoreLacune.rimuovi(lacune.getKey());
+            } catch (MsgException e) {
+                ProjectOutput.stampa(e.getMessage(), OutputType.STDERR);
+            }
+        }
+    }
+
+    /**
+     * Invia un {@link Battito} al <code>gruppo</code>, rimuove dalla {@link Rubrica} i partecipanti il cui livello di sospetto supera la {@link #sogliaSospetto}
+     * e dimentica i {@link #congedati} da oltre {@link #BATTITI_CONGEDO} intervalli.
+     * <p>
+     * Il battito viene inviato direttamente dal {@link Thread} del {@link #pianificatore}, senza attraversare la {@link #codaInvio}: una coda piena o lenta non deve ritardare i battiti
+     * fino a far sospettare agli altri partecipanti un guasto inesistente.
+     */
+    private void battito() {
+        try {
+            byte[] out = new Battito(utente.getIDutente(), utente.getUsername(), portaUnicast, (int) intervalloBattito, ultimaSequenzaInviata).codifica();
+            gruppoUDP.multicast(out);
+        } catch (MsgException | CommunicationException e) {
+            ChatLogger.log("Impossibile inviare il battito: {}", ChatLoggerType.OPTIONAL, e.getMessage());
+        }
+
+        for(IndiceRubrica sospetto : rubrica.sospetti(Messaggio.orologio(), sogliaSospetto)) {
+            ChatLogger.log("{} non risponde ({}): rimozione dal gruppo", ChatLoggerType.OPTIONAL, sospetto.alias(), sospetto.rilevatore());
+            if(rimuoviPartecipante(sospetto.UUID())) espulsioni.increment();
+        }
+
+        long scadenzaCongedo = Messaggio.orologio() - BATTITI_CONGEDO * intervalloBattito * 1000;
+        congedati.values().removeIf(istante -> istante < scadenzaCongedo);
+    }
+
+    /**
+     * Gestisce un {@link Battito} ricevuto, registrandolo nel {@link RilevatoreGuasti} del mittente e nel {@link #rilevatoreLacune}, che ne confronta l'ultimo numero di sequenza con quelli ricevuti.
+     * Un mittente non in {@link Rubrica}, ad esempio rimosso per errore durante una partizione della rete, viene inserito nuovamente con {@link #aggiungiPartecipante(Utente, InetAddress, int)},
+     * a meno che non abbia annunciato l'abbandono del gruppo negli ultimi {@link #BATTITI_CONGEDO} intervalli tra due battiti.
+     * @param battito il battito ricevuto
+     * @param mittente l'{@link InetAddress} del mittente
+     * @throws NoSuchUserException nei casi previsti dalla {@link Rubrica}
+     */
+    private void riceviBattito(Battito battito, InetAddress mittente) throws NoSuchUserException {
+        String UUID = battito.IDmittente();
+        if(UUID.equals(utente.getIDutente()) || congedati.containsKey(UUID)) return;
+
+        /* il controllo senza lock evita di creare un Utente per ogni battito di un partecipante già noto */
+        if(rubrica.ottieniInfoDaUUID(UUID) == null) aggiungiPartecipante(new Utente(battito.username(), UUID), mittente, battito.portaMittente());
+        rubrica.registraBattito(UUID, Messaggio.orologio(), battito.intervallo() * 1000L);
+        if(battito.ultimaSequenza() > 0 && rilevatoreLacune.annuncia(UUID, battito.ultimaSequenza())) {
+            ChatLogger.log("Messaggi mancanti in coda alla sequenza di {}: ultima annunciata {}", ChatLoggerType.OPTIONAL, UUID, battito.ultimaSequenza());
+        }
+    }
+
+    /**
+     * Inserisce un partecipante nella {@link Rubrica} e, solo se inserito da questa invocazione, lo notifica agli ascoltatori degli ingressi:
+     * ciascun partecipante viene così segnalato una sola volta, qualunque sia il primo datagramma ricevuto, messaggio <code>join-group</code>, altro messaggio o {@link Battito}
+     * @param partecipante il partecipante
+     * @param indirizzo l'{@link InetAddress} del partecipante
+     * @param porta la porta unicast del partecipante
+     * @throws NoSuchUserException nei casi previsti dalla {@link Rubrica}
+     */
+    private void aggiungiPartecipante(Utente partecipante, InetAddress indirizzo, int porta) throws NoSuchUserException {
+        if(!rubrica.aggiungiUtente(partecipante, indirizzo, porta)) return;
+        IndiceRubrica indice = rubrica.ottieniInfoDaUUID(partecipante.getIDutente());
+        if(indice != null) ascoltatoriIngressi.notifica(indice, esecutoreNotifiche);
+    }
+
+    /**
+     * Rimuove un partecipante che ha abbandonato il gruppo o è sospettato di guasto: ne dimentica le lacune, lo rimuove dalla {@link Rubrica},
+     * rinuncia alle sue conferme dei messaggi inviati con il metodo {@link #esoneraSlot(IndiceRubrica)} e lo notifica agli ascoltatori delle uscite
+     * @param UUID l'identificativo univoco del partecipante
+     * @return <code>true</code> se il partecipante era in rubrica ed è stato rimosso da questa invocazione
+     */
+    private boolean rimuoviPartecipante(String UUID) {
+        rilevatoreLacune.rimuovi(UUID);
+        IndiceRubrica rimosso = rubrica.rimuoviIndice(UUID);
+        if(rimosso == null) return false;
+        esoneraSlot(rimosso);
+        ascoltatoriUscite.notifica(rimosso, esecutoreNotifiche);
+        return true;
+    }
+
+    /**
+     * Rinuncia alle conferme attese da un partecipante rimosso dalla {@link Rubrica} ({@link Cronologia#esonera(int)}) e ne libera lo slot, ancora in quarantena.
+     * <p>
+     * L'operazione viene accodata nella {@link #codaInvio}, dove avvengono la creazione e la memorizzazione di tutti i messaggi inviati: i messaggi creati prima della rimozione,
+     * che attendono ancora la conferma dello slot, sono quindi già memorizzati quando viene eseguita, e lo slot viene assegnato a un nuovo utente solo dopo che nessun messaggio ne attende più la conferma.
+     * Se la coda è piena l'operazione viene ritentata dopo {@link #INTERVALLO_NACK} millisecondi.
+     * @param rimosso l'{@link IndiceRubrica} del partecipante rimosso
+     */
+    private void esoneraSlot(IndiceRubrica rimosso) {
+        codaInvio.accoda(() -> {
+            cronologia.esonera(rimosso.slot());
+            rubrica.liberaSlot(rimosso.slot());
+        }).whenComplete((esito, errore) -> {
+            if(errore != null && isOnline() && !pianificatore.isShutdown()) pianificatore.schedule(() -> esoneraSlot(rimosso), INTERVALLO_NACK, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Ritrasmette in unicast i messaggi in sequenza non ancora confermati ai soli destinatari mancanti, invece di ripeterne l'invio all'intero gruppo.
+     * <p>
+     * La prima verifica di un messaggio ne pianifica la riparazione allo scadere del più lungo timeout di conferma adattivo tra i destinatari mancanti;
+     * ciascuna riparazione successiva raddoppia il timeout, fino a {@link Cronologia#RIPARAZIONI_MASSIME} ritrasmissioni.
+     * @see Cronologia#nonConfermati()
+     */
+    private void riparaMessaggi() {
+        long adesso = Messaggio.orologio();
+        for(Messaggio messaggio : cronologia.nonConfermati()) {
+            ConfermeDestinatari conferme = messaggio.getDestinatari();
+            if(adesso < conferme.getProssimaRiparazione()) continue;
+            boolean ripara = conferme.getProssimaRiparazione() != 0;
+
+            try {
+                byte[] out = ripara ? Messaggio.configMsg(messaggio) : null;
+                long timeout = StimaRTT.RTO_MINIMO;
+                for(int slot : conferme.mancanti()) {
+                    IndiceRubrica infoDestinatario = rubrica.ottieniInfoDaSlot(slot);
+                    if(infoDestinatario == null) continue;
+                    timeout = Math.max(timeout, infoDestinatario.rtt().getTimeoutConferma());
+                    if(ripara) {
+                        ChatLogger.log("Ritrasmissione del msgID {} a {} in corso...", ChatLoggerType.OPTIONAL, messaggio.getID(), infoDestinatario.alias());
+                        segnala(invia(new DatagramPacket(out, out.length, infoDestinatario.inetAddress(), infoDestinatario.porta())));
+                    }
+                }
+                conferme.pianificaRiparazione(adesso + (timeout << Math.min(conferme.getRiparazioni(), 4)), ripara);
+            } catch (MsgException e) {
+                ProjectOutput.stampa(e.getMessage(), OutputType.STDERR);
+            }
+        }
+    }
+
+    /**
+     * Invia al mittente originale le {@link RichiestaRitrasmissione} per i numeri di sequenza mancanti
+     * @param UUID l'identificativo univoco del mittente originale
+     * @param indirizzo l'{@link InetAddress} del mittente originale
+     * @param porta la porta unicast del mittente originale
+     * @param mancanti i numeri di sequenza mancanti
+     * @throws MsgException se si verifica un errore nella codifica della richiesta
+     */
+    private void richiediRitrasmissione(String UUID, InetAddress indirizzo, int porta, List<InsiemeID> mancanti) throws MsgException {
+        for(InsiemeID insieme : mancanti) {
+            ChatLogger.log("Richiesta di ritrasmissione a {} per le sequenze {}", ChatLoggerType.OPTIONAL, UUID, insieme);
+            byte[] out = new RichiestaRitrasmissione(utente.getIDutente(), portaUnicast, insieme).codifica();
+            segnala(invia(new DatagramPacket(out, out.length, indirizzo, porta)));
+        }
+    }
+
+    /**
+     * Ritrasmette in unicast al richiedente i messaggi richiesti ancora presenti nella finestra di ritrasmissione della {@link Cronologia}, scorrendo la sola finestra
+     * e non l'insieme delle sequenze indicato dal richiedente
+     * @param richiesta la {@link RichiestaRitrasmissione} ricevuta
+     * @param indirizzo l'{@link InetAddress} del richiedente
+     * @throws MsgException se si verifica un errore nella codifica di un messaggio
+     */
+    private void ritrasmetti(RichiestaRitrasmissione richiesta, InetAddress indirizzo) throws MsgException {
+        ChatLogger.log("Richiesta di ritrasmissione da {} per le sequenze {}", ChatLoggerType.OPTIONAL, richiesta.IDrichiedente(), richiesta.mancanti());
+        for(Messaggio messaggio : cronologia.ottieniPerRitrasmissione(richiesta.mancanti())) {
+            byte[] out = Messaggio.configMsg(messaggio);
+            segnala(invia(new DatagramPacket(out, out.length, indirizzo, richiesta.portaRichiedente())));
+        }
+    }
+
+    /**
+     * Accoda l'invio di un datagramma unicast nella {@link #codaInvio}
+     * @param datagramPacket il datagramma da inviare
+     * @return il {@link CompletableFuture} completato all'invio del datagramma
+     */
+    private CompletableFuture<Void> invia(DatagramPacket datagramPacket) {
+        return codaInvio.accoda(() -> trasmetti(datagramPacket));
+    }
+
+    /**
+     * Segnala all'utente l'eventuale fallimento di un invio accodato
+     * @param esito il {@link CompletableFuture} dell'invio
+     */
+    private void segnala(CompletableFuture<Void> esito) {
+        esito.whenComplete((nulla, e) -> {
+            if(e != null) ProjectOutput.stampa((e.getCause() != null ? e.getCause() : e).getMessage(), OutputType.STDERR);
+        });
     }
 
     /**
-     * Invia i datagrammi unicast al destinatario
+     * Invia i datagrammi unicast al destinatario. I datagrammi più grandi dell'<code>MTU</code> vengono inviati in più frammenti.
+     * Eseguito esclusivamente dal {@link Thread} della {@link #codaInvio}, emette un evento {@link EventiChat.InvioUnicast}.
      * @param datagramPacket il datagramma da inviare
      * @throws IOException se si verifica un errore nell'invio del datagramma
+     * @throws MsgException se il datagramma è troppo grande per essere frammentato
      */
-    private synchronized void invia(DatagramPacket datagramPacket) throws IOException {
+    private void trasmetti(DatagramPacket datagramPacket) throws IOException, MsgException {
+        EventiChat.InvioUnicast evento = new EventiChat.InvioUnicast();
+        evento.begin();
+        int frammenti = 0;
+        byte[] dati = datagramPacket.getData();
+        if(datagramPacket.getOffset() != 0 || datagramPacket.getLength() != dati.length) {
+            dati = Arrays.copyOfRange(dati, datagramPacket.getOffset(), datagramPacket.getOffset() + datagramPacket.getLength());
+        }
+        
         try {
-            unicastSocket.send(datagramPacket);
+            for(byte[] frammento : frammentatore.frammenta(dati)) {
+                trasportoUnicast.invia(ByteBuffer.wrap(frammento), (InetSocketAddress) datagramPacket.getSocketAddress());
+                inviatiUnicast.registra(frammento.length);
+                frammenti++;
+            }
+        } catch (IllegalArgumentException e) {
+            throw new MsgException(e.getMessage());
         } catch (IOException e) {
             throw new IOException("Impossibile inviare ACK: " + e.getMessage(), e.getCause());
+        } finally {
+            if(evento.shouldCommit()) {
+                evento.destinatario = String.valueOf(datagramPacket.getSocketAddress());
+                evento.dimensione = dati.length;
+                evento.frammenti = frammenti;
+                evento.commit();
+            }
         }
     }
 
     /**
-     * Metodo di scrittura di messaggi a un <code>gruppo</code> multicast
+     * Metodo di scrittura di messaggi a un <code>gruppo</code> multicast. La creazione e l'invio del {@link Messaggio} avvengono attraverso la {@link #codaInvio}, così che gli <code>ID</code> e i numeri di sequenza seguano l'ordine di invio.
+     * @param messaggioMulticast il contenuto del messaggio
+     * @return il {@link CompletableFuture} completato all'invio del messaggio
+     */
+    private CompletableFuture<Void> invia(String messaggioMulticast) {
+        return codaInvio.accoda(() -> inviaMulticast(messaggioMulticast, null));
+    }
+
+    /**
+     * Crea, memorizza e invia al <code>gruppo</code> un messaggio multicast. Eseguito esclusivamente dal {@link Thread} della {@link #codaInvio}.
      * @param messaggioMulticast il contenuto del messaggio
+     * @param creato l'azione eseguita alla creazione del {@link Messaggio}, prima dell'invio, <code>null</code> se non richiesta
      * @throws MsgException se si verifica un errore nella creazione del {@link Messaggio}
      * @throws CommunicationException se si verifica un errore legato alla chat multicast
      * @throws ProtocolException se il parametro <code>protocollo</code> non è un valido {@link Protocollo}
      */
-    private synchronized void invia(String messaggioMulticast) throws MsgException, CommunicationException, ProtocolException {
+    private void inviaMulticast(String messaggioMulticast, Consumer<Messaggio> creato) throws MsgException, CommunicationException, ProtocolException {
         ChatLogger.log("Invio messaggio multicast in corso...", ChatLoggerType.OPTIONAL);
-        Messaggio messaggio = new Messaggio(cronologia.getNewID(), utente, unicastSocket.getLocalPort(), rubrica.partecipantiGruppo(), messaggioMulticast, true, Protocollo.UDP.multicast);
+        int sequenza = multicastAffidabile ? cronologia.getNuovaSequenza() : 0;
+        BitSet destinatari = isMessaggioDiControllo(messaggioMulticast) ? new BitSet() : rubrica.destinatari();
+        Messaggio messaggio = new Messaggio(cronologia.getNewID(), utente, portaUnicast, destinatari, messaggioMulticast, true, Protocollo.UDP.multicast, sequenza);
+        if(creato != null) creato.accept(messaggio);
         cronologia.storicizzaMessaggio(messaggio);
         byte[] out = Messaggio.configMsg(messaggio);
         gruppoUDP.multicast(out);
+        if(sequenza > 0) ultimaSequenzaInviata = sequenza;
     }
 
     /**
-     * Chiude la {@link #unicastSocket}, rilasciando le risorse
+     * Chiude il {@link #trasportoUnicast} e il {@link GroupChat}, rilasciando le risorse. Il {@link #cicloEventi}, eventualmente condiviso, non viene chiuso.
      */
     public synchronized void chiudi() {
         if(isOnline()){
+            inviaACKCumulativi();
+            pianificatore.shutdownNow();
             setOnline(false);
             ChatLogger.log("Terminazione in corso...", ChatLoggerType.MANDATORY);
+            codaInvio.chiudi(ATTESA_CHIUSURA);
+            for(CompletableFuture<Messaggio> attesa : attese) attesa.completeExceptionally(new CommunicationException("MulticastPeer chiuso prima del quorum di ACK"));
+            if(serverMetriche != null) {
+                serverMetriche.chiudi();
+                serverMetriche = null;
+            }
+            mbeanMetriche.annulla();
+            cronologia.chiudi();
+            if(giornale != null) {
+                cronologia.setGiornale(null);
+                try {
+                    giornale.chiudi();
+                } catch (IOException e) {
+                    ChatLogger.log("Impossibile chiudere il giornale", ChatLoggerType.OPTIONAL);
+                }
+            }
 
             try {
                 gruppoUDP.chiudi();
             } catch (IOException e) {
                 ChatLogger.log("Impossibile abbandonare correttamente il gruppo", ChatLoggerType.OPTIONAL);
             }
-            if(unicastSocket != null && !unicastSocket.isClosed()) unicastSocket.close();
+            if(trasportoUnicast != null) {
+                try {
+                    trasportoUnicast.chiudi();
+                } catch (IOException e) {
+                    ChatLogger.log("Impossibile chiudere il trasporto unicast", ChatLoggerType.OPTIONAL);
+                }
+            }
         }
     }
 }
@@ -0,0 +1,105 @@
+package chat.host;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Insieme di {@link ByteBuffer} riutilizzabili per la ricezione dei datagrammi.
+ * <p>
+ * Un buffer viene allocato solo se il <code>pool</code> è vuoto al momento della richiesta: a regime ogni datagramma viene ricevuto in un buffer già esistente.
+ * I contatori {@link #getAllocazioni()} e {@link #getAcquisizioni()} permettono di verificarlo.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public class PoolBuffer {
+
+    /**
+     * I buffer disponibili
+     */
+    private final ArrayBlockingQueue<ByteBuffer> disponibili;
+
+    /**
+     * La capacità di ciascun buffer
+     */
+    private final int dimensioneBuffer;
+
+    /**
+     * Indica se i buffer vengono allocati al di fuori dell'heap (<code>direct</code>)
+     */
+    private final boolean diretti;
+
+    /**
+     * Il numero di buffer allocati dalla creazione del <code>pool</code>
+     */
+    private final AtomicLong allocazioni;
+
+    /**
+     * Il numero di buffer richiesti dalla creazione del <code>pool</code>
+     */
+    private final AtomicLong acquisizioni;
+
+    /**
+     * Crea un {@link PoolBuffer}
+     * @param capacita il numero massimo di buffer conservati
+     * @param dimensioneBuffer la capacità in byte di ciascun buffer
+     * @param diretti <code>true</code> per allocare buffer <code>direct</code>, utilizzabili solo con i {@link java.nio.channels.DatagramChannel}
+     * @throws IllegalArgumentException se la capacità o la dimensione non sono positive
+     */
+    public PoolBuffer(final int capacita, final int dimensioneBuffer, final boolean diretti) throws IllegalArgumentException {
+        if(capacita <= 0 || dimensioneBuffer <= 0) throw new IllegalArgumentException("Capacità e dimensione del pool devono essere positive");
+        this.disponibili = new ArrayBlockingQueue<>(capacita);
+        this.dimensioneBuffer = dimensioneBuffer;
+        this.diretti = diretti;
+        this.allocazioni = new AtomicLong();
+        this.acquisizioni = new AtomicLong();
+    }
+
+    /**
+     * Restituisce un buffer vuoto, allocandone uno nuovo solo se il <code>pool</code> non ne dispone
+     * @return il buffer pronto per la scrittura
+     */
+    public ByteBuffer acquisisci() {
+        acquisizioni.incrementAndGet();
+        ByteBuffer buffer = disponibili.poll();
+        if(buffer == null) {
+            allocazioni.incrementAndGet();
+            buffer = diretti ? ByteBuffer.allocateDirect(dimensioneBuffer) : ByteBuffer.allocate(dimensioneBuffer);
+        }
+        return buffer.clear();
+    }
+
+    /**
+     * Restituisce un buffer al <code>pool</code>. Se il <code>pool</code> è pieno il buffer viene scartato.
+     * @param buffer il buffer non più utilizzato
+     */
+    public void rilascia(ByteBuffer buffer) {
+        if(buffer != null && buffer.capacity() == dimensioneBuffer) disponibili.offer(buffer);
+    }
+
+    /**
+     * Restituisce la capacità in byte di ciascun buffer
+     * @return la capacità di ciascun buffer
+     */
+    public int getDimensioneBuffer() {
+        return dimensioneBuffer;
+    }
+
+    /**
+     * Restituisce il numero di buffer allocati dalla creazione del <code>pool</code>
+     * @return il numero di buffer allocati
+     */
+    public long getAllocazioni() {
+        return allocazioni.get();
+    }
+
+    /**
+     * Restituisce il numero di buffer richiesti dalla creazione del <code>pool</code>
+     * @return il numero di buffer richiesti
+     */
+    public long getAcquisizioni() {
+        return acquisizioni.get();
+    }
+}
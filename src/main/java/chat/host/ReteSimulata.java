@@ -0,0 +1,738 @@
+package chat.host;
+
+import chat.gestione.Orologio;
+import chat.gestione.OutputType;
+import chat.gestione.ProjectOutput;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Rete a datagrammi simulata in memoria, su cui più {@link GroupChat} e {@link MulticastPeer} dello stesso processo comunicano senza alcuna interfaccia di rete.
+ * <p>
+ * Ciascun host della rete riceve un indirizzo con {@link #nuovoHost()} e vi apre i propri {@link Trasporto} con {@link #apri(InetAddress, int)}, uno per il <code>gruppo</code> e uno unicast:
+ * <pre>
+ *     ReteSimulata rete = new ReteSimulata(condizioni, 42);
+ *     InetAddress host = rete.nuovoHost();
+ *     GroupChat gruppo = new GroupChat("230.19.6.5", 19065, rete.apri(host, 19065));
+ *     MulticastPeer peer = new MulticastPeer("Matteo", false, gruppo, rete.apri(host, 0));
+ * </pre>
+ * I datagrammi sono soggetti alle {@link CondizioniRete} indicate. Le decisioni casuali di ciascun collegamento tra due trasporti derivano dal seme della rete e dai loro indirizzi:
+ * a parità di datagrammi inviati su un collegamento, perdite, duplicazioni, riordini e latenze si ripetono identici ad ogni esecuzione, indipendentemente dall'ordine in cui i {@link Thread} dei peer inviano sugli altri collegamenti.
+ * <p>
+ * Il tempo della rete è virtuale: latenze, riordini e limiti di banda sono misurati su un orologio che avanza solo con il metodo {@link #avanza(long)}, il quale consegna,
+ * dal {@link Thread} che lo invoca, tutti i datagrammi giunti a scadenza, in ordine di scadenza e, a parità di scadenza, di invio. La gestione della ricezione di tutti i trasporti
+ * viene quindi eseguita da un unico {@link Thread} alla volta, come in un {@link CicloEventi} condiviso. A parità di seme e di datagrammi inviati tra un avanzamento e l'altro,
+ * gli istanti e l'ordine delle consegne si ripetono identici ad ogni esecuzione, indipendentemente dal tempo reale impiegato.
+ * <p>
+ * La rete è a sua volta un {@link Orologio} e fornisce con {@link #nuovoPianificatore()} dei {@link ScheduledExecutorService} virtuali, le cui attività sono eseguite da {@link #avanza(long)}
+ * insieme alle consegne, in ordine di scadenza e di pianificazione. Un {@link MulticastPeer} creato con l'orologio e un pianificatore della rete
+ * ({@link MulticastPeer#MulticastPeer(String, boolean, GroupChat, Trasporto, Orologio, ScheduledExecutorService)}) vi esegue battiti, <code>ACK</code> cumulativi, ritrasmissioni e invii,
+ * e misura sull'orologio della rete timeout e marche temporali: una conversazione tra più peer si ripete così identica, a parità di seme e di operazioni richieste tra un avanzamento e l'altro.
+ * <p>
+ * Con {@link #avviaTempoReale()} l'orologio viene invece fatto avanzare da un {@link Thread} della rete al ritmo del tempo reale, ad esempio per il {@link chat.carico.GeneratoreCarico}:
+ * in tal caso le operazioni richieste da altri {@link Thread} cadono in istanti che dipendono dalla loro pianificazione, e restano riproducibili soltanto le decisioni di ciascun collegamento.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+public class ReteSimulata implements Orologio {
+
+    /**
+     * La prima porta assegnata ai trasporti aperti sulla porta <code>0</code>
+     */
+    private static final int PRIMA_PORTA_EFFIMERA = 49152;
+
+    /**
+     * Il numero massimo di datagrammi conservati da un trasporto non ancora avviato
+     */
+    private static final int DATAGRAMMI_IN_ATTESA = 1024;
+
+    /**
+     * Il passo dell'orologio avanzato in tempo reale da {@link #avviaTempoReale()}, in microsecondi
+     */
+    private static final long PASSO_TEMPO_REALE = 100;
+
+    /**
+     * Un evento pianificato sull'orologio virtuale: la consegna di un datagramma o un'attività di un pianificatore virtuale
+     */
+    private interface Evento {
+
+        /**
+         * Restituisce l'istante virtuale dell'evento
+         * @return l'istante in nanosecondi
+         */
+        long scadenza();
+
+        /**
+         * Restituisce il numero progressivo di pianificazione, che ordina gli eventi con la stessa scadenza
+         * @return il numero progressivo
+         */
+        long progressivo();
+
+        /**
+         * Esegue l'evento, dal {@link Thread} che avanza l'orologio
+         */
+        void esegui();
+    }
+
+    /**
+     * Un datagramma in transito verso un trasporto
+     * @param scadenza l'istante virtuale della consegna, in nanosecondi
+     * @param progressivo il numero progressivo di pianificazione, che ordina le consegne con la stessa scadenza
+     * @param destinatario il trasporto destinatario
+     * @param datagramma il datagramma
+     * @param mittente l'indirizzo del trasporto mittente
+     */
+    private record Consegna(long scadenza, long progressivo, Estremo destinatario, byte[] datagramma, InetSocketAddress mittente) implements Evento {
+
+        @Override
+        public void esegui() {
+            destinatario.consegna(datagramma, mittente);
+        }
+    }
+
+    /**
+     * Collegamento orientato tra due trasporti, a cui è associato un generatore casuale
+     * @param sorgente l'indirizzo del trasporto che invia
+     * @param destinazione l'indirizzo del trasporto che riceve
+     */
+    private record Collegamento(InetSocketAddress sorgente, InetSocketAddress destinazione) {}
+
+    /**
+     * Le condizioni della rete
+     */
+    private final CondizioniRete condizioni;
+
+    /**
+     * Il seme delle decisioni casuali
+     */
+    private final long seme;
+
+    /**
+     * I datagrammi in transito e le attività pianificate, in ordine di scadenza e di pianificazione
+     */
+    private final PriorityQueue<Evento> inTransito;
+
+    /**
+     * Il lock che consente a un solo {@link Thread} alla volta di avanzare l'orologio, consegnare i datagrammi ed eseguire le attività pianificate
+     */
+    private final Object avanzamento;
+
+    /**
+     * L'istante corrente dell'orologio virtuale, in nanosecondi dalla creazione della rete. Aggiornato solo con il lock della rete, è letto senza lock da {@link #adesso()}
+     */
+    private volatile long adesso;
+
+    /**
+     * Il numero progressivo della prossima consegna pianificata
+     */
+    private long progressivo;
+
+    /**
+     * Indica se la rete è stata chiusa
+     */
+    private boolean chiusa;
+
+    /**
+     * Il {@link Thread} che avanza l'orologio al ritmo del tempo reale, <code>null</code> se non avviato
+     */
+    private Thread tempoReale;
+
+    /**
+     * La prossima porta effimera di ciascun host della rete
+     */
+    private final Map<InetAddress, Integer> porteEffimere;
+
+    /**
+     * I trasporti aperti, per indirizzo locale
+     */
+    private final Map<InetSocketAddress, List<Estremo>> perIndirizzo;
+
+    /**
+     * I trasporti aderenti a ciascun gruppo multicast
+     */
+    private final Map<InetAddress, List<Estremo>> adesioni;
+
+    /**
+     * Il generatore casuale di ciascun collegamento
+     */
+    private final Map<Collegamento, SplittableRandom> collegamenti;
+
+    /**
+     * L'istante, in nanosecondi, in cui l'uscita di ciascun host termina la trasmissione dei datagrammi in coda
+     */
+    private final Map<InetAddress, Long> uscitaLibera;
+
+    /**
+     * Contatori dei datagrammi inviati, consegnati, persi, duplicati, riordinati e scartati per la coda piena
+     */
+    private final LongAdder inviati, consegnati, persi, duplicati, riordinati, scartati;
+
+    /**
+     * Crea una {@link ReteSimulata} priva di host, con l'orologio virtuale fermo all'istante <code>0</code>
+     * @param condizioni le condizioni della rete
+     * @param seme il seme delle decisioni casuali
+     */
+    public ReteSimulata(final CondizioniRete condizioni, final long seme) {
+        this.condizioni = condizioni;
+        this.seme = seme;
+        this.inTransito = new PriorityQueue<>(Comparator.comparingLong(Evento::scadenza).thenComparingLong(Evento::progressivo));
+        this.avanzamento = new Object();
+        this.porteEffimere = new HashMap<>();
+        this.perIndirizzo = new HashMap<>();
+        this.adesioni = new HashMap<>();
+        this.collegamenti = new HashMap<>();
+        this.uscitaLibera = new HashMap<>();
+        this.inviati = new LongAdder();
+        this.consegnati = new LongAdder();
+        this.persi = new LongAdder();
+        this.duplicati = new LongAdder();
+        this.riordinati = new LongAdder();
+        this.scartati = new LongAdder();
+    }
+
+    /**
+     * Aggiunge un host alla rete
+     * @return l'indirizzo del nuovo host, nella rete <code>10.0.0.0/8</code>
+     */
+    public synchronized InetAddress nuovoHost() {
+        int numero = porteEffimere.size() + 1;
+        try {
+            InetAddress host = InetAddress.getByAddress(new byte[]{10, (byte) (numero >>> 16), (byte) (numero >>> 8), (byte) numero});
+            porteEffimere.put(host, PRIMA_PORTA_EFFIMERA);
+            return host;
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Indirizzo dell'host non valido", e);
+        }
+    }
+
+    /**
+     * Apre un {@link Trasporto} su un host della rete. Più trasporti possono condividere la stessa porta, come le socket multicast con <code>SO_REUSEADDR</code>.
+     * @param host l'indirizzo dell'host, ottenuto da {@link #nuovoHost()}
+     * @param porta la porta locale, <code>0</code> per una porta effimera
+     * @return il trasporto
+     * @throws IllegalArgumentException se l'host non appartiene alla rete o la porta non è valida
+     */
+    public synchronized Trasporto apri(InetAddress host, int porta) throws IllegalArgumentException {
+        Integer effimera = porteEffimere.get(host);
+        if(effimera == null) throw new IllegalArgumentException("Host non appartenente alla rete simulata: " + host);
+        if(porta < 0 || porta > 65535) throw new IllegalArgumentException("Porta non valida: " + porta);
+        if(porta == 0) {
+            while(perIndirizzo.containsKey(new InetSocketAddress(host, effimera))) effimera++;
+            porta = effimera;
+            porteEffimere.put(host, effimera + 1);
+        }
+        Estremo estremo = new Estremo(new InetSocketAddress(host, porta));
+        perIndirizzo.computeIfAbsent(estremo.indirizzo, indirizzo -> new ArrayList<>()).add(estremo);
+        return estremo;
+    }
+
+    /**
+     * Invia un datagramma ai trasporti destinatari: tutti i trasporti aderenti al gruppo sulla porta indicata, compreso il mittente, oppure il trasporto legato all'indirizzo unicast.
+     * Il datagramma attende la trasmissione dei precedenti dello stesso host, se la banda è limitata, quindi raggiunge ciascun destinatario secondo le {@link CondizioniRete}.
+     * @param sorgente il trasporto che invia
+     * @param dati il datagramma
+     * @param destinatario l'indirizzo del destinatario o del gruppo
+     */
+    private synchronized void invia(Estremo sorgente, ByteBuffer dati, InetSocketAddress destinatario) {
+        byte[] datagramma = new byte[dati.remaining()];
+        dati.get(datagramma);
+
+        long partenza = adesso;
+        if(condizioni.banda() > 0) {
+            InetAddress host = sorgente.indirizzo.getAddress();
+            long libera = Math.max(adesso, uscitaLibera.getOrDefault(host, adesso));
+            long inCoda = (libera - adesso) * condizioni.banda() / TimeUnit.SECONDS.toNanos(1);
+            if(condizioni.codaMassima() > 0 && inCoda + datagramma.length > condizioni.codaMassima()) {
+                scartati.increment();
+                return;
+            }
+            partenza = libera + datagramma.length * TimeUnit.SECONDS.toNanos(1) / condizioni.banda();
+            uscitaLibera.put(host, partenza);
+        }
+        inviati.increment();
+
+        List<Estremo> destinatari = destinatario.getAddress().isMulticastAddress()
+                ? adesioni.getOrDefault(destinatario.getAddress(), List.of()).stream().filter(estremo -> estremo.indirizzo.getPort() == destinatario.getPort()).toList()
+                : perIndirizzo.getOrDefault(destinatario, List.of()).stream().limit(1).toList();
+
+        for(Estremo estremo : destinatari) {
+            SplittableRandom caso = collegamenti.computeIfAbsent(new Collegamento(sorgente.indirizzo, estremo.indirizzo),
+                    collegamento -> new SplittableRandom(seme * 31 + collegamento.hashCode()));
+            /* tutte le estrazioni avvengono per ogni datagramma, così che la sequenza di un collegamento non dipenda dalle decisioni precedenti */
+            boolean perso = caso.nextDouble() < condizioni.perdita();
+            boolean duplicato = caso.nextDouble() < condizioni.duplicazione();
+            boolean riordinato = caso.nextDouble() < condizioni.riordino();
+            long variazione = caso.nextLong(condizioni.variazione() + 1);
+            long variazioneDuplicato = caso.nextLong(condizioni.variazione() + 1);
+            if(perso) {
+                persi.increment();
+                continue;
+            }
+
+            long ritardo = partenza - adesso + TimeUnit.MICROSECONDS.toNanos(condizioni.latenza() + variazione);
+            if(riordinato) {
+                ritardo += TimeUnit.MICROSECONDS.toNanos(condizioni.ritardoRiordino());
+                riordinati.increment();
+            }
+            pianifica(estremo, datagramma, sorgente.indirizzo, ritardo);
+            if(duplicato) {
+                duplicati.increment();
+                pianifica(estremo, datagramma, sorgente.indirizzo, ritardo + TimeUnit.MICROSECONDS.toNanos(variazioneDuplicato));
+            }
+        }
+    }
+
+    /**
+     * Pianifica la consegna di un datagramma, da eseguire con {@link #avanza(long)}
+     * @param destinatario il trasporto destinatario
+     * @param datagramma il datagramma
+     * @param mittente l'indirizzo del trasporto mittente
+     * @param ritardo il ritardo della consegna rispetto all'istante corrente dell'orologio virtuale, in nanosecondi
+     */
+    private synchronized void pianifica(Estremo destinatario, byte[] datagramma, InetSocketAddress mittente, long ritardo) {
+        if(chiusa) {
+            persi.increment();
+            return;
+        }
+        inTransito.add(new Consegna(adesso + ritardo, progressivo++, destinatario, datagramma, mittente));
+    }
+
+    /**
+     * Avanza l'orologio virtuale della rete e consegna, dal {@link Thread} chiamante, tutti i datagrammi la cui scadenza cade entro il nuovo istante,
+     * compresi quelli inviati durante la gestione delle consegne stesse, ed esegue le attività dei pianificatori virtuali giunte a scadenza.
+     * Ciascun evento avviene con l'orologio fermo alla propria scadenza, così che i datagrammi inviati in risposta partano dall'istante di ricezione.
+     * @param microsecondi l'avanzamento dell'orologio, in microsecondi; <code>0</code> per consegnare soltanto i datagrammi già giunti a scadenza
+     * @throws IllegalArgumentException se l'avanzamento è negativo
+     */
+    public void avanza(long microsecondi) throws IllegalArgumentException {
+        if(microsecondi < 0) throw new IllegalArgumentException("L'orologio della rete non può tornare indietro: " + microsecondi);
+        synchronized (avanzamento) {
+            long obiettivo;
+            synchronized (this) {
+                obiettivo = adesso + TimeUnit.MICROSECONDS.toNanos(microsecondi);
+            }
+            while(true) {
+                Evento evento;
+                synchronized (this) {
+                    evento = inTransito.peek();
+                    if(evento == null || evento.scadenza() > obiettivo) {
+                        adesso = obiettivo;
+                        return;
+                    }
+                    inTransito.poll();
+                    adesso = evento.scadenza();
+                }
+                evento.esegui();
+            }
+        }
+    }
+
+    /**
+     * Restituisce l'istante corrente dell'orologio virtuale
+     * @return i microsecondi trascorsi dalla creazione della rete
+     */
+    public long getIstante() {
+        return TimeUnit.NANOSECONDS.toMicros(adesso);
+    }
+
+    /**
+     * Restituisce l'istante corrente dell'orologio virtuale. Il metodo non acquisisce alcun lock.
+     * @return i nanosecondi trascorsi dalla creazione della rete
+     */
+    @Override
+    public long adesso() {
+        return adesso;
+    }
+
+    /**
+     * Crea un {@link ScheduledExecutorService} le cui attività sono eseguite da {@link #avanza(long)} allo scadere del loro ritardo sull'orologio virtuale.
+     * Ciascun {@link MulticastPeer} riceve il proprio pianificatore, così che la sua chiusura non annulli le attività degli altri peer.
+     * @return il pianificatore virtuale
+     */
+    public Pianificatore nuovoPianificatore() {
+        return new Pianificatore();
+    }
+
+    /**
+     * Avvia un {@link Thread} della rete che avanza l'orologio virtuale al ritmo del tempo reale, ogni {@link #PASSO_TEMPO_REALE} microsecondi circa, fino alla chiusura della rete.
+     * Necessario quando la rete collega dei {@link MulticastPeer}, che inviano in tempo reale; non ha effetto se già avviato.
+     */
+    public synchronized void avviaTempoReale() {
+        if(tempoReale != null || chiusa) return;
+        tempoReale = new Thread(this::seguiTempoReale, "Thread della rete simulata");
+        tempoReale.setDaemon(true);
+        tempoReale.start();
+    }
+
+    /**
+     * Ciclo del {@link Thread} avviato da {@link #avviaTempoReale()}: avanza l'orologio virtuale del tempo reale trascorso, finché la rete non viene chiusa
+     */
+    private void seguiTempoReale() {
+        long inizio = System.nanoTime();
+        long avanzati = 0;
+        while(true) {
+            synchronized (this) {
+                if(chiusa) return;
+            }
+            long trascorsi = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - inizio);
+            avanza(trascorsi - avanzati);
+            avanzati = trascorsi;
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(PASSO_TEMPO_REALE));
+        }
+    }
+
+    /**
+     * Restituisce le statistiche della rete: datagrammi inviati, consegnati, persi, duplicati, riordinati e scartati per la coda di uscita piena
+     * @return le statistiche della rete
+     */
+    public String getStatistiche() {
+        return "Rete simulata (" + condizioni + "): " + inviati.sum() + " datagrammi inviati | " + consegnati.sum() + " consegnati | " + persi.sum() + " persi | "
+                + duplicati.sum() + " duplicati | " + riordinati.sum() + " riordinati | " + scartati.sum() + " scartati per la coda piena";
+    }
+
+    /**
+     * Chiude la rete: i datagrammi non ancora consegnati vengono scartati, così come quelli inviati successivamente, le attività pianificate vengono annullate e l'eventuale avanzamento in tempo reale si arresta
+     */
+    public synchronized void chiudi() {
+        chiusa = true;
+        persi.add(inTransito.stream().filter(Consegna.class::isInstance).count());
+        inTransito.clear();
+    }
+
+    /**
+     * {@link ScheduledExecutorService} virtuale della {@link ReteSimulata}: le attività vengono inserite tra gli eventi della rete ed eseguite da {@link #avanza(long)}
+     * dal {@link Thread} che avanza l'orologio, una alla volta e in ordine di scadenza e di pianificazione.
+     * <p>
+     * Come per <code>ScheduledThreadPoolExecutor</code>, un'attività periodica che fallisce non viene più eseguita. Con {@link #shutdown()} o {@link #shutdownNow()}
+     * tutte le attività non ancora eseguite vengono annullate e il pianificatore risulta immediatamente terminato.
+     */
+    public final class Pianificatore extends AbstractExecutorService implements ScheduledExecutorService {
+
+        /**
+         * Indica se il pianificatore è stato arrestato. Aggiornato con il lock della rete
+         */
+        private volatile boolean arrestato;
+
+        /**
+         * Crea un pianificatore virtuale della rete
+         */
+        private Pianificatore() {}
+
+        /**
+         * Inserisce un'attività tra gli eventi della rete
+         * @param attivita l'attività
+         * @param ritardo il ritardo rispetto all'istante corrente dell'orologio virtuale, in nanosecondi
+         * @return l'attività
+         * @throws RejectedExecutionException se il pianificatore è stato arrestato o la rete chiusa
+         */
+        private <V> Attivita<V> pianifica(Attivita<V> attivita, long ritardo) throws RejectedExecutionException {
+            synchronized (ReteSimulata.this) {
+                if(arrestato || chiusa) throw new RejectedExecutionException("Pianificatore della rete simulata arrestato");
+                attivita.scadenza = adesso + Math.max(0, ritardo);
+                attivita.progressivo = progressivo++;
+                inTransito.add(attivita);
+            }
+            return attivita;
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable comando, long ritardo, TimeUnit unita) {
+            return pianifica(new Attivita<Void>(this, comando, 0), unita.toNanos(ritardo));
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> comando, long ritardo, TimeUnit unita) {
+            return pianifica(new Attivita<>(this, comando), unita.toNanos(ritardo));
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable comando, long ritardoIniziale, long periodo, TimeUnit unita) {
+            if(periodo <= 0) throw new IllegalArgumentException("Il periodo deve essere positivo");
+            return pianifica(new Attivita<Void>(this, comando, unita.toNanos(periodo)), unita.toNanos(ritardoIniziale));
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable comando, long ritardoIniziale, long ritardo, TimeUnit unita) {
+            if(ritardo <= 0) throw new IllegalArgumentException("Il ritardo deve essere positivo");
+            return pianifica(new Attivita<Void>(this, comando, -unita.toNanos(ritardo)), unita.toNanos(ritardoIniziale));
+        }
+
+        @Override
+        public void execute(Runnable comando) {
+            schedule(comando, 0, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdownNow();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            List<Runnable> annullate = new ArrayList<>();
+            synchronized (ReteSimulata.this) {
+                arrestato = true;
+                inTransito.removeIf(evento -> {
+                    if(!(evento instanceof Attivita<?> attivita) || attivita.pianificatore != this) return false;
+                    annullate.add(attivita);
+                    return true;
+                });
+            }
+            for(Runnable attivita : annullate) ((Attivita<?>) attivita).cancel(false);
+            return annullate;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return arrestato;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return arrestato;
+        }
+
+        @Override
+        public boolean awaitTermination(long attesa, TimeUnit unita) {
+            return arrestato;
+        }
+    }
+
+    /**
+     * Attività di un {@link Pianificatore} virtuale
+     * @param <V> il tipo del risultato
+     */
+    private final class Attivita<V> extends FutureTask<V> implements RunnableScheduledFuture<V>, Evento {
+
+        /**
+         * Il pianificatore dell'attività
+         */
+        private final Pianificatore pianificatore;
+
+        /**
+         * Il periodo in nanosecondi: positivo per un periodo fisso tra gli inizi, negativo per un ritardo fisso tra la fine di un'esecuzione e l'inizio della successiva, <code>0</code> per un'unica esecuzione
+         */
+        private final long periodo;
+
+        /**
+         * L'istante virtuale della prossima esecuzione e il relativo numero progressivo, aggiornati con il lock della rete quando l'attività non è tra gli eventi
+         */
+        private long scadenza, progressivo;
+
+        /**
+         * Crea un'attività da un {@link Runnable}
+         * @param pianificatore il pianificatore dell'attività
+         * @param comando il comando da eseguire
+         * @param periodo il periodo in nanosecondi, come descritto per {@link #periodo}
+         */
+        private Attivita(Pianificatore pianificatore, Runnable comando, long periodo) {
+            super(comando, null);
+            this.pianificatore = pianificatore;
+            this.periodo = periodo;
+        }
+
+        /**
+         * Crea un'attività da eseguire una sola volta a partire da un {@link Callable}
+         * @param pianificatore il pianificatore dell'attività
+         * @param comando il comando da eseguire
+         */
+        private Attivita(Pianificatore pianificatore, Callable<V> comando) {
+            super(comando);
+            this.pianificatore = pianificatore;
+            this.periodo = 0;
+        }
+
+        @Override
+        public long scadenza() {
+            return scadenza;
+        }
+
+        @Override
+        public long progressivo() {
+            return progressivo;
+        }
+
+        @Override
+        public void esegui() {
+            if(pianificatore.arrestato) return;
+            if(!isPeriodic()) {
+                run();
+                return;
+            }
+            if(!runAndReset()) return;
+            synchronized (ReteSimulata.this) {
+                if(pianificatore.arrestato || chiusa) return;
+                scadenza = periodo > 0 ? scadenza + periodo : adesso - periodo;
+                progressivo = ReteSimulata.this.progressivo++;
+                inTransito.add(this);
+            }
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return periodo != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unita) {
+            return unita.convert(scadenza - adesso, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed altro) {
+            if(altro instanceof Attivita<?> attivita) {
+                int confronto = Long.compare(scadenza, attivita.scadenza);
+                return confronto != 0 ? confronto : Long.compare(progressivo, attivita.progressivo);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), altro.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /**
+     * {@link Trasporto} di un host della {@link ReteSimulata}
+     */
+    private final class Estremo implements Trasporto {
+
+        /**
+         * L'indirizzo locale del trasporto
+         */
+        private final InetSocketAddress indirizzo;
+
+        /**
+         * I datagrammi ricevuti prima dell'avvio, come nel buffer di ricezione di una socket
+         */
+        private final ArrayDeque<Consegna> inAttesa = new ArrayDeque<>();
+
+        /**
+         * Il destinatario dei datagrammi ricevuti, <code>null</code> prima dell'avvio
+         */
+        private Ricevitore ricevitore;
+
+        /**
+         * Il pool dei buffer di ricezione
+         */
+        private PoolBuffer pool;
+
+        /**
+         * Indica se il trasporto è stato chiuso
+         */
+        private boolean chiuso;
+
+        /**
+         * Crea un trasporto
+         * @param indirizzo l'indirizzo locale del trasporto
+         */
+        private Estremo(InetSocketAddress indirizzo) {
+            this.indirizzo = indirizzo;
+        }
+
+        @Override
+        public void avvia(Ricevitore ricevitore, PoolBuffer pool) {
+            synchronized (ReteSimulata.this) {
+                this.pool = pool;
+                this.ricevitore = ricevitore;
+                for(Consegna consegna : inAttesa) pianifica(this, consegna.datagramma(), consegna.mittente(), 0);
+                inAttesa.clear();
+            }
+        }
+
+        @Override
+        public void invia(ByteBuffer dati, InetSocketAddress destinatario) throws IOException {
+            synchronized (ReteSimulata.this) {
+                if(chiuso) throw new IOException("Trasporto chiuso");
+            }
+            ReteSimulata.this.invia(this, dati, destinatario);
+        }
+
+        @Override
+        public void unisci(InetAddress gruppo) throws IOException {
+            if(!gruppo.isMulticastAddress()) throw new IOException("Indirizzo non multicast: " + gruppo);
+            synchronized (ReteSimulata.this) {
+                List<Estremo> aderenti = adesioni.computeIfAbsent(gruppo, indirizzo -> new ArrayList<>());
+                if(!aderenti.contains(this)) aderenti.add(this);
+            }
+        }
+
+        @Override
+        public void abbandona(InetAddress gruppo) {
+            synchronized (ReteSimulata.this) {
+                List<Estremo> aderenti = adesioni.get(gruppo);
+                if(aderenti != null) aderenti.remove(this);
+            }
+        }
+
+        @Override
+        public InetSocketAddress getIndirizzoLocale() {
+            return indirizzo;
+        }
+
+        @Override
+        public void chiudi() {
+            synchronized (ReteSimulata.this) {
+                if(chiuso) return;
+                chiuso = true;
+                inAttesa.clear();
+                List<Estremo> legati = perIndirizzo.get(indirizzo);
+                legati.remove(this);
+                if(legati.isEmpty()) perIndirizzo.remove(indirizzo);
+                for(List<Estremo> aderenti : adesioni.values()) aderenti.remove(this);
+            }
+        }
+
+        /**
+         * Consegna un datagramma al {@link Ricevitore}, copiandolo in un buffer del {@link PoolBuffer}. Eseguito dal {@link Thread} che avanza l'orologio con {@link #avanza(long)}.
+         * @param datagramma il datagramma
+         * @param mittente l'indirizzo del trasporto mittente
+         */
+        private void consegna(byte[] datagramma, InetSocketAddress mittente) {
+            Ricevitore destinatario;
+            PoolBuffer buffers;
+            synchronized (ReteSimulata.this) {
+                if(chiuso) return;
+                if(ricevitore == null) {
+                    if(inAttesa.size() < DATAGRAMMI_IN_ATTESA) inAttesa.add(new Consegna(0, 0, this, datagramma, mittente));
+                    return;
+                }
+                destinatario = ricevitore;
+                buffers = pool;
+            }
+
+            ByteBuffer buffer = buffers != null ? buffers.acquisisci() : ByteBuffer.allocate(datagramma.length);
+            try {
+                buffer.clear();
+                buffer.put(datagramma, 0, Math.min(datagramma.length, buffer.capacity())).flip();
+                consegnati.increment();
+                destinatario.ricevi(buffer, mittente);
+            } catch (RuntimeException e) {
+                ProjectOutput.stampa("Errore nella gestione del datagramma: " + e.getMessage(), OutputType.STDERR);
+            } finally {
+                if(buffers != null) buffers.rilascia(buffer);
+            }
+        }
+    }
+}
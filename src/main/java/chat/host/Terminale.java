@@ -0,0 +1,240 @@
+package chat.host;
+
+import chat.comunicazione.Cronologia;
+import chat.comunicazione.Messaggio;
+import chat.eccezioni.NoSuchUserException;
+import chat.gestione.ChatLogger;
+import chat.gestione.ChatLoggerType;
+import chat.gestione.OutputType;
+import chat.gestione.ProjectOutput;
+import chat.utenze.IndiceRubrica;
+import chat.utenze.Rubrica;
+
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interfaccia a riga di comando di un {@link MulticastPeer}: legge l'input dell'utente da tastiera e stampa a video i messaggi e gli eventi del gruppo.
+ * <p>
+ * Il terminale è un client dell'interfaccia programmatica del <code>multicastPeer</code>, al pari di qualsiasi altro programma:
+ * invia i messaggi con {@link MulticastPeer#inviaGruppo(String)} e {@link MulticastPeer#inviaPrivato(String, String)}
+ * e riceve messaggi, ingressi e uscite attraverso gli ascoltatori registrati con {@link MulticastPeer#suMessaggio(java.util.function.Consumer)},
+ * {@link MulticastPeer#suIngresso(java.util.function.Consumer)} e {@link MulticastPeer#suUscita(java.util.function.Consumer)}.
+ * <p>
+ * Specifici comandi preceduti dal carattere <code>$</code> possono essere visualizzati attraverso il comando <code>$help</code>.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+public class Terminale {
+
+    /**
+     * Il numero massimo di risultati stampati dal comando <code>$cerca</code>
+     */
+    private static final int RISULTATI_RICERCA = 20;
+
+    /**
+     * Il {@link MulticastPeer} pilotato dal terminale
+     */
+    private final MulticastPeer peer;
+
+    /**
+     * Crea il terminale di un {@link MulticastPeer}
+     * @param peer il <code>multicastPeer</code> da pilotare
+     */
+    public Terminale(final MulticastPeer peer) {
+        this.peer = peer;
+    }
+
+    /**
+     * Registra gli ascoltatori che stampano a video messaggi, ingressi e uscite, quindi avvia il {@link Thread} per la lettura e interpretazione dell'input dell'utente da tastiera
+     */
+    public void avvia() {
+        peer.suMessaggio(this::stampaMessaggio);
+        peer.suIngresso(indice -> ProjectOutput.stampa(indice.alias() + " si è unito al chat del gruppo", OutputType.STDOUT));
+        peer.suUscita(indice -> ProjectOutput.stampa(indice.alias() + " ha abbandonato la chat del gruppo", OutputType.STDOUT));
+
+        Thread thread = new Thread(this::leggi, "Thread per l'input dell'utente");
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stampa a video un messaggio di testo ricevuto
+     * @param messaggio il messaggio ricevuto
+     */
+    private void stampaMessaggio(Messaggio messaggio) {
+        try {
+            ProjectOutput.stampa(messaggio.estrai(peer.getRubrica()), OutputType.STDOUT);
+        } catch (NoSuchUserException e) {
+            ProjectOutput.stampa("Utente non inizializzato", OutputType.STDERR);
+        }
+    }
+
+    /**
+     * Ciclo di lettura dell'input dell'utente, attivo finché il <code>multicastPeer</code> è online
+     */
+    private void leggi() {
+        Scanner inUtente = new Scanner(System.in);
+        ChatLogger.log("Terminale pronto all'invio di messaggi", ChatLoggerType.MANDATORY);
+        ChatLogger.log("Digita una qualsiasi sequenza di caratteri per comunicare con il GRUPPO", ChatLoggerType.MANDATORY);
+        ChatLogger.log("Per poter comunicare privatamente con un utente digitare: 'testo > aliasUtente'", ChatLoggerType.MANDATORY);
+        ChatLogger.log("Digita '$exit' per terminare l'esecuzione", ChatLoggerType.MANDATORY);
+        ChatLogger.log("Digita '$help' per visualizzare l'elenco dei comandi", ChatLoggerType.MANDATORY);
+
+        while(peer.isOnline()) {
+            try {
+                String input = inUtente.nextLine().trim();
+
+                if(input.isBlank()) {
+                    ProjectOutput.stampa("Formato input non valido: null", OutputType.STDERR);
+                } else if(input.contains("$")) {
+                    comando(input);
+                } else if(input.contains(">")) {
+                    String[] arrayInput = input.split(">");
+                    if(arrayInput.length == 2) {
+                        /* scrittura unicast */
+                        try {
+                            segnala(peer.inviaPrivato(arrayInput[0].trim(), arrayInput[1].trim()));
+                        } catch (IllegalArgumentException | NoSuchUserException e) {
+                            ProjectOutput.stampa(e.getMessage(), OutputType.STDERR);
+                        }
+                    } else {
+                        ProjectOutput.stampa("Formato per invio messaggio non valido", OutputType.STDERR);
+                    }
+                } else {
+                    /* scrittura multicast */
+                    segnala(peer.inviaGruppo(input));
+                }
+            } catch (Exception e) {
+                ProjectOutput.stampa("Errore: " + e.getMessage(), OutputType.STDERR);
+                break;
+            }
+        }
+        peer.chiudi();
+    }
+
+    /**
+     * Esegue un comando dell'utente
+     * @param input la riga digitata, contenente il comando preceduto da <code>$</code> e i suoi parametri
+     */
+    private void comando(String input) {
+        String[] arrayInput = input.split(" ");
+        Rubrica rubrica = peer.getRubrica();
+        Cronologia cronologia = peer.getCronologia();
+
+        switch (arrayInput[0].trim()){
+            case "$exit" -> peer.esci();
+
+            case "$utenti" -> ChatLogger.log(rubrica.getRubrica(), ChatLoggerType.MANDATORY);
+
+            case "$stat" -> {
+                if(arrayInput.length == 1) {
+                    ChatLogger.log(cronologia.getStatistiche(), ChatLoggerType.MANDATORY);
+                } else {
+                    try {
+                        ChatLogger.log(cronologia.getDettaglio(Integer.parseInt(arrayInput[1].trim()), this::aliasDaSlot), ChatLoggerType.MANDATORY);
+                    } catch (IllegalArgumentException e) {
+                        ProjectOutput.stampa("Parametro <pagina> non valido. Digita $help per l'elenco dei comandi", OutputType.STDERR);
+                    }
+                }
+            }
+
+            case "$rete" -> ChatLogger.log(peer.getStatisticheRicezione(), ChatLoggerType.MANDATORY);
+
+            case "$peers" -> ChatLogger.log(rubrica.getStimeRTT(), ChatLoggerType.MANDATORY);
+
+            case "$metrics" -> ChatLogger.log(peer.getMetriche().getRiepilogo(), ChatLoggerType.MANDATORY);
+
+            case "$cerca" -> cerca(input.substring(arrayInput[0].length()).trim());
+
+            case "$rn" -> {
+                if(arrayInput.length == 3){
+                    rubrica.rinomina(arrayInput[1].trim(), arrayInput[2].trim());
+                } else {
+                    ProjectOutput.stampa("Parametri <alias> e <nuovoAlias> assenti o non validi. Digita $help per l'elenco dei comandi", OutputType.STDERR);
+                }
+            }
+
+            case "$help" -> {
+                ChatLogger.log("Digita '$exit' per terminare l'esecuzione", ChatLoggerType.MANDATORY);
+                ChatLogger.log("Digita '$help' per visualizzare l'elenco dei comandi", ChatLoggerType.MANDATORY);
+                ChatLogger.log("Digita '$utenti' per visualizzare la rubrica memorizzata", ChatLoggerType.MANDATORY);
+                ChatLogger.log("Digita '$stat' per visualizzare le statistiche di output", ChatLoggerType.MANDATORY);
+                ChatLogger.log("Digita '$stat <pagina>' per visualizzare il dettaglio dei messaggi inviati, dal più recente, con i destinatari che non li hanno confermati", ChatLoggerType.MANDATORY);
+                ChatLogger.log("Digita '$rete' per visualizzare le statistiche di rete", ChatLoggerType.MANDATORY);
+                ChatLogger.log("Digita '$peers' per visualizzare il tempo di andata e ritorno, il timeout di ritrasmissione e il livello di sospetto stimati per ciascun utente", ChatLoggerType.MANDATORY);
+                ChatLogger.log("Digita '$metrics' per visualizzare le metriche di funzionamento: traffico, errori, ACK, code e latenze", ChatLoggerType.MANDATORY);
+                ChatLogger.log("Digita '$cerca [@alias] <termini>' per cercare nella cronologia i messaggi che contengono tutti i termini, eventualmente di un solo utente", ChatLoggerType.MANDATORY);
+                ChatLogger.log("Digita '$rn <alias> <nuovoAlias>' per rinominare l'alias di un utente in rubrica", ChatLoggerType.MANDATORY);
+                ChatLogger.log("Digita '$log' per attivare/disattivare la modalità di logging", ChatLoggerType.MANDATORY);
+            }
+
+            case "$log" -> ChatLogger.abilita(!ChatLogger.isAbilitato());
+
+            default -> ProjectOutput.stampa("Comando " + arrayInput[0].trim() + " non riconosciuto. Digita $help per l'elenco dei comandi", OutputType.STDERR);
+        }
+    }
+
+    /**
+     * Restituisce l'alias dell'utente che occupa uno slot della {@link Rubrica}
+     * @param slot lo slot dell'utente
+     * @return l'alias dell'utente, <code>null</code> se lo slot è libero
+     */
+    private String aliasDaSlot(int slot) {
+        IndiceRubrica indice = peer.getRubrica().ottieniInfoDaSlot(slot);
+        return indice != null ? indice.alias() : null;
+    }
+
+    /**
+     * Cerca nella {@link Cronologia} i messaggi che contengono tutti i termini richiesti e li stampa a video, dal più recente.
+     * Se la richiesta inizia con <code>@alias</code>, vengono cercati i soli messaggi dell'utente indicato.
+     * @param richiesta i termini da cercare, eventualmente preceduti da <code>@alias</code>
+     */
+    private void cerca(String richiesta) {
+        Rubrica rubrica = peer.getRubrica();
+        String UUIDmittente = null;
+        if(richiesta.startsWith("@")) {
+            int spazio = richiesta.indexOf(' ');
+            String alias = spazio < 0 ? richiesta.substring(1) : richiesta.substring(1, spazio);
+            richiesta = spazio < 0 ? "" : richiesta.substring(spazio + 1).trim();
+            try {
+                UUIDmittente = rubrica.ottieniInfoUtente(alias).UUID();
+            } catch (NoSuchUserException e) {
+                if(!alias.equals(peer.getUtente().getUsername())) {
+                    ProjectOutput.stampa("Utente " + alias + " non in rubrica", OutputType.STDERR);
+                    return;
+                }
+                UUIDmittente = peer.getUtente().getIDutente();
+            }
+        }
+        if(richiesta.isBlank()) {
+            ProjectOutput.stampa("Parametro <termini> assente. Digita $help per l'elenco dei comandi", OutputType.STDERR);
+            return;
+        }
+
+        long inizio = System.nanoTime();
+        List<Messaggio> risultati = peer.getCronologia().cerca(richiesta, UUIDmittente, RISULTATI_RICERCA);
+        long durata = System.nanoTime() - inizio;
+
+        StringBuilder esito = new StringBuilder(risultati.size() + " messaggi trovati in " + String.format("%.3f", durata / 1e6) + " ms" + (risultati.size() == RISULTATI_RICERCA ? " (i più recenti)" : ""));
+        for(Messaggio messaggio : risultati) {
+            String mittente = rubrica.ottieniAliasDaUUID(messaggio.getUtente().getIDutente());
+            esito.append("\n[").append(messaggio.getTimestamp()).append("] ").append(mittente != null ? mittente : messaggio.getUtente().getUsername());
+            esito.append(messaggio.isMsgGruppo() ? " (gruppo): " : " (privato): ").append(messaggio.getMsg());
+        }
+        ChatLogger.log(esito.toString(), ChatLoggerType.MANDATORY);
+    }
+
+    /**
+     * Segnala all'utente l'eventuale fallimento di un invio
+     * @param esito il {@link CompletableFuture} dell'invio
+     */
+    private static void segnala(CompletableFuture<?> esito) {
+        esito.whenComplete((messaggio, e) -> {
+            if(e != null) ProjectOutput.stampa((e.getCause() != null ? e.getCause() : e).getMessage(), OutputType.STDERR);
+        });
+    }
+}
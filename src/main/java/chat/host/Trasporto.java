@@ -0,0 +1,75 @@
+package chat.host;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Estremo di comunicazione a datagrammi utilizzato da {@link GroupChat} e {@link MulticastPeer}: invio, ricezione, adesione e abbandono di un <code>gruppo</code> multicast.
+ * <p>
+ * Le implementazioni disponibili sono {@link TrasportoUDP}, sulle socket del sistema operativo, e quella della {@link ReteSimulata},
+ * che riproduce in memoria perdite, duplicazioni, riordini, latenze e limiti di banda a partire da un seme, senza alcuna interfaccia di rete.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public interface Trasporto {
+
+    /**
+     * Destinatario dei datagrammi ricevuti da un {@link Trasporto}
+     */
+    interface Ricevitore extends CicloEventi.GestoreDatagrammi {
+
+        /**
+         * Segnala che la ricezione si è interrotta per un errore, senza che il trasporto sia stato chiuso con {@link Trasporto#chiudi()}
+         * @param causa l'errore che ha interrotto la ricezione
+         */
+        default void interrotto(IOException causa) {}
+    }
+
+    /**
+     * Avvia la ricezione dei datagrammi, consegnati al {@link Ricevitore} da un {@link Thread} del trasporto.
+     * Il buffer consegnato non deve essere conservato dopo il ritorno di {@link Ricevitore#ricevi(ByteBuffer, InetSocketAddress)}.
+     * @param ricevitore il destinatario dei datagrammi ricevuti
+     * @param pool il {@link PoolBuffer} da cui acquisire i buffer di ricezione, se il trasporto non ne dispone di propri
+     * @throws IOException se non è possibile avviare la ricezione
+     */
+    void avvia(Ricevitore ricevitore, PoolBuffer pool) throws IOException;
+
+    /**
+     * Invia un datagramma senza attendere la consegna
+     * @param dati il datagramma, tra <code>position</code> e <code>limit</code> del buffer
+     * @param destinatario l'indirizzo del destinatario o del <code>gruppo</code> multicast
+     * @throws IOException se non è possibile inviare il datagramma
+     */
+    void invia(ByteBuffer dati, InetSocketAddress destinatario) throws IOException;
+
+    /**
+     * Aderisce a un <code>gruppo</code> multicast, ricevendone i datagrammi inviati alla porta locale del trasporto
+     * @param gruppo l'indirizzo multicast del <code>gruppo</code>
+     * @throws IOException se non è possibile aderire al gruppo
+     */
+    void unisci(InetAddress gruppo) throws IOException;
+
+    /**
+     * Abbandona un <code>gruppo</code> multicast a cui si è aderito con {@link #unisci(InetAddress)}
+     * @param gruppo l'indirizzo multicast del <code>gruppo</code>
+     * @throws IOException se non è possibile abbandonare il gruppo
+     */
+    void abbandona(InetAddress gruppo) throws IOException;
+
+    /**
+     * Restituisce l'indirizzo locale del trasporto
+     * @return l'indirizzo e la porta locali
+     * @throws IOException se non è possibile determinare l'indirizzo
+     */
+    InetSocketAddress getIndirizzoLocale() throws IOException;
+
+    /**
+     * Chiude il trasporto, interrompendo la ricezione e rilasciando le risorse. Le chiamate successive alla prima non hanno effetto.
+     * @throws IOException se si verifica un errore nella chiusura
+     */
+    void chiudi() throws IOException;
+}
@@ -0,0 +1,243 @@
+package chat.host;
+
+import chat.gestione.OutputType;
+import chat.gestione.ProjectOutput;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+
+/**
+ * {@link Trasporto} sulle socket UDP del sistema operativo.
+ * <p>
+ * Il trasporto utilizza una {@link DatagramSocket} (o una {@link MulticastSocket} per un <code>gruppo</code>), servita da un {@link Thread} di ricezione bloccante,
+ * oppure un {@link DatagramChannel} non bloccante, registrato nel {@link CicloEventi} indicato con {@link #setCicloEventi(CicloEventi)} o, in sua assenza, servito anch'esso da un {@link Thread} dedicato.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public class TrasportoUDP implements Trasporto {
+
+    /**
+     * La socket del trasporto, <code>null</code> se il trasporto utilizza il {@link #canale}
+     */
+    private final DatagramSocket socket;
+
+    /**
+     * Il canale del trasporto, <code>null</code> se il trasporto utilizza la {@link #socket}
+     */
+    private final DatagramChannel canale;
+
+    /**
+     * L'interfaccia di rete per l'adesione ai gruppi, <code>null</code> per un trasporto unicast
+     */
+    private final NetworkInterface interfaccia;
+
+    /**
+     * La {@link MembershipKey} dell'adesione al gruppo del {@link #canale}
+     */
+    private MembershipKey adesione;
+
+    /**
+     * Il {@link CicloEventi} che serve la ricezione del {@link #canale}
+     */
+    private CicloEventi cicloEventi;
+
+    /**
+     * Indica se il trasporto è stato chiuso
+     */
+    private volatile boolean chiuso;
+
+    /**
+     * Crea un {@link TrasportoUDP}
+     * @param socket la socket, <code>null</code> se si utilizza il canale
+     * @param canale il canale, <code>null</code> se si utilizza la socket
+     * @param interfaccia l'interfaccia di rete per l'adesione ai gruppi
+     */
+    private TrasportoUDP(DatagramSocket socket, DatagramChannel canale, NetworkInterface interfaccia) {
+        this.socket = socket;
+        this.canale = canale;
+        this.interfaccia = interfaccia;
+    }
+
+    /**
+     * Crea un trasporto unicast su una {@link DatagramSocket} legata a una porta effimera
+     * @return il trasporto
+     * @throws IOException se non è possibile creare la socket
+     */
+    public static TrasportoUDP socketUnicast() throws IOException {
+        return new TrasportoUDP(new DatagramSocket(), null, null);
+    }
+
+    /**
+     * Crea un trasporto unicast su un {@link DatagramChannel} non bloccante legato a una porta effimera
+     * @return il trasporto
+     * @throws IOException se non è possibile creare il canale
+     */
+    public static TrasportoUDP canaleUnicast() throws IOException {
+        DatagramChannel canale = DatagramChannel.open(StandardProtocolFamily.INET).bind(new InetSocketAddress(0));
+        canale.configureBlocking(false);
+        return new TrasportoUDP(null, canale, null);
+    }
+
+    /**
+     * Crea un trasporto per un <code>gruppo</code> su una {@link MulticastSocket} legata alla porta del gruppo
+     * @param porta la porta del gruppo
+     * @param interfaccia l'interfaccia di rete per l'adesione al gruppo
+     * @param interfacciaInvio <code>true</code> per inviare anche i datagrammi attraverso l'interfaccia indicata, <code>false</code> per l'interfaccia predefinita del sistema
+     * @return il trasporto
+     * @throws IOException se non è possibile creare la socket
+     */
+    public static TrasportoUDP socketGruppo(int porta, NetworkInterface interfaccia, boolean interfacciaInvio) throws IOException {
+        MulticastSocket socket = new MulticastSocket(porta);
+        if(interfacciaInvio) socket.setNetworkInterface(interfaccia);
+        return new TrasportoUDP(socket, null, interfaccia);
+    }
+
+    /**
+     * Crea un trasporto per un <code>gruppo</code> su un {@link DatagramChannel} non bloccante legato alla porta del gruppo, condivisibile con altri trasporti
+     * @param porta la porta del gruppo
+     * @param interfaccia l'interfaccia di rete per l'adesione al gruppo e l'invio dei datagrammi
+     * @return il trasporto
+     * @throws IOException se non è possibile creare il canale
+     */
+    public static TrasportoUDP canaleGruppo(int porta, NetworkInterface interfaccia) throws IOException {
+        DatagramChannel canale = DatagramChannel.open(StandardProtocolFamily.INET)
+                .setOption(StandardSocketOptions.SO_REUSEADDR, true)
+                .bind(new InetSocketAddress(porta))
+                .setOption(StandardSocketOptions.IP_MULTICAST_IF, interfaccia);
+        canale.configureBlocking(false);
+        return new TrasportoUDP(null, canale, interfaccia);
+    }
+
+    /**
+     * Imposta il {@link CicloEventi} che serve la ricezione di un trasporto su {@link DatagramChannel}. Non ha effetto sui trasporti su socket.
+     * @param cicloEventi il ciclo, <code>null</code> per servire il canale con un {@link Thread} dedicato
+     */
+    public synchronized void setCicloEventi(CicloEventi cicloEventi) {
+        this.cicloEventi = cicloEventi;
+    }
+
+    /**
+     * Restituisce la socket del trasporto
+     * @return la {@link DatagramSocket}, <code>null</code> se il trasporto utilizza un {@link DatagramChannel}
+     */
+    public DatagramSocket getSocket() {
+        return socket;
+    }
+
+    /**
+     * Restituisce il canale del trasporto
+     * @return il {@link DatagramChannel}, <code>null</code> se il trasporto utilizza una socket
+     */
+    public DatagramChannel getCanale() {
+        return canale;
+    }
+
+    @Override
+    public synchronized void avvia(Ricevitore ricevitore, PoolBuffer pool) throws IOException {
+        if(canale != null && cicloEventi != null) {
+            cicloEventi.registra(canale, ricevitore);
+            return;
+        }
+        if(canale != null) canale.configureBlocking(true);
+        new Thread(() -> ricevi(ricevitore, pool), interfaccia != null ? "Thread di ricezione multicast" : "Thread di ricezione unicast").start();
+    }
+
+    /**
+     * Ciclo del {@link Thread} di ricezione: per ciascun datagramma viene richiesto un buffer al {@link PoolBuffer}, consegnato al {@link Ricevitore} e quindi restituito al pool.
+     * Il ciclo termina alla chiusura del trasporto o al primo errore di ricezione, segnalato con {@link Ricevitore#interrotto(IOException)}.
+     * Come nel {@link CicloEventi}, un errore imprevisto nella gestione di un datagramma viene segnalato senza interrompere la ricezione.
+     * @param ricevitore il destinatario dei datagrammi
+     * @param pool il pool dei buffer di ricezione
+     */
+    private void ricevi(Ricevitore ricevitore, PoolBuffer pool) {
+        DatagramPacket packet = new DatagramPacket(new byte[0], 0);
+        while(!chiuso) {
+            ByteBuffer buffer = pool.acquisisci();
+            try {
+                InetSocketAddress mittente;
+                if(socket != null) {
+                    packet.setData(buffer.array(), 0, buffer.capacity());
+                    socket.receive(packet);
+                    buffer.limit(packet.getLength());
+                    mittente = (InetSocketAddress) packet.getSocketAddress();
+                } else {
+                    mittente = (InetSocketAddress) canale.receive(buffer);
+                    buffer.flip();
+                }
+                try {
+                    ricevitore.ricevi(buffer, mittente);
+                } catch (RuntimeException e) {
+                    ProjectOutput.stampa("Errore nella gestione del datagramma: " + e.getMessage(), OutputType.STDERR);
+                }
+            } catch (IOException e) {
+                if(!chiuso) ricevitore.interrotto(e);
+                break;
+            } finally {
+                pool.rilascia(buffer);
+            }
+        }
+    }
+
+    @Override
+    public void invia(ByteBuffer dati, InetSocketAddress destinatario) throws IOException {
+        if(canale != null) {
+            if(canale.send(dati, destinatario) == 0) throw new IOException("buffer di invio pieno");
+        } else if(dati.hasArray()) {
+            socket.send(new DatagramPacket(dati.array(), dati.arrayOffset() + dati.position(), dati.remaining(), destinatario));
+        } else {
+            byte[] copia = new byte[dati.remaining()];
+            dati.duplicate().get(copia);
+            socket.send(new DatagramPacket(copia, copia.length, destinatario));
+        }
+    }
+
+    @Override
+    public synchronized void unisci(InetAddress gruppo) throws IOException {
+        if(interfaccia == null) throw new IOException("Adesione a un gruppo non supportata da un trasporto unicast");
+        if(canale != null) {
+            adesione = canale.join(gruppo, interfaccia);
+        } else {
+            socket.joinGroup(new InetSocketAddress(gruppo, 0), interfaccia);
+        }
+    }
+
+    @Override
+    public synchronized void abbandona(InetAddress gruppo) throws IOException {
+        if(chiuso || interfaccia == null) return;
+        if(canale != null) {
+            if(adesione != null) adesione.drop();
+            adesione = null;
+        } else {
+            socket.leaveGroup(new InetSocketAddress(gruppo, 0), interfaccia);
+        }
+    }
+
+    @Override
+    public InetSocketAddress getIndirizzoLocale() throws IOException {
+        return (InetSocketAddress) (canale != null ? canale.getLocalAddress() : socket.getLocalSocketAddress());
+    }
+
+    @Override
+    public synchronized void chiudi() throws IOException {
+        if(chiuso) return;
+        chiuso = true;
+        if(canale != null) {
+            if(cicloEventi != null) cicloEventi.annulla(canale);
+            canale.close();
+        } else {
+            socket.close();
+        }
+    }
+}
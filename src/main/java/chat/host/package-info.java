@@ -1,12 +1,21 @@
 /**
  * Fornisce le classi-entità necessarie alla gestione degli oggetti <code>host</code>.
  * <p>
- * Ciascun {@code host} rappresenta un end-point che comunica con un altro (o altri) end-point attraverso la rete, sfruttando i {@link java.net.DatagramSocket} con protocollo UDP.
+ * Ciascun {@code host} rappresenta un end-point che comunica con un altro (o altri) end-point attraverso la rete, sfruttando i {@link java.net.DatagramSocket} con protocollo UDP
+ * o, in alternativa, una {@link chat.host.ReteSimulata} in memoria.
  * <p>
  * Contiene:
  * <ul>
+ *     <li>{@link chat.host.CicloEventi}</li>
+ *     <li>{@link chat.host.CodaInvio}</li>
+ *     <li>{@link chat.host.CondizioniRete}</li>
  *     <li>{@link chat.host.GroupChat}</li>
  *     <li>{@link chat.host.MulticastPeer}</li>
+ *     <li>{@link chat.host.PoolBuffer}</li>
+ *     <li>{@link chat.host.ReteSimulata}</li>
+ *     <li>{@link chat.host.Terminale}</li>
+ *     <li>{@link chat.host.Trasporto}</li>
+ *     <li>{@link chat.host.TrasportoUDP}</li>
  * </ul>
  * 
  * @author Matteo Bagnoletti Tini
@@ -4,6 +4,7 @@
  * <p>
  * Contiene:
  * <ul>
+ *     <li>{@link chat.carico}</li>
  *     <li>{@link chat.comunicazione}</li>
  *     <li>{@link chat.eccezioni}</li>
  *     <li>{@link chat.gestione}</li>
@@ -8,8 +8,11 @@ import java.net.InetAddress;
  * @param UUID l'identificativo univoco dell'utente
  * @param inetAddress l'{@link InetAddress} dell'utente
  * @param porta il numero della porta della {@link java.net.DatagramSocket} dell'utente
+ * @param rtt la {@link StimaRTT} verso l'utente, condivisa tra gli indici successivi dello stesso utente
+ * @param slot lo slot assegnato all'utente, indice del suo bit nelle conferme attese da ciascun messaggio
+ * @param rilevatore il {@link RilevatoreGuasti} dell'utente, condiviso tra gli indici successivi dello stesso utente
  * @author Matteo Bagnoletti Tini
- * @version 1.1
+ * @version 1.4
  * @project MulticastUDPSocketChat
  */
-public record IndiceRubrica(String alias, String UUID, InetAddress inetAddress, int porta) {}
+public record IndiceRubrica(String alias, String UUID, InetAddress inetAddress, int porta, StimaRTT rtt, int slot, RilevatoreGuasti rilevatore) {}
@@ -0,0 +1,141 @@
+package chat.utenze;
+
+/**
+ * Rilevatore dei guasti di un {@link Utente} secondo il modello <code>phi accrual</code> (Hayashibara et al.).
+ * <p>
+ * Anziché un esito binario, il rilevatore fornisce un livello di sospetto continuo, <code>phi</code>, pari a <code>-log10</code> della probabilità che l'utente sia ancora attivo
+ * dato il tempo trascorso dall'ultimo segnale ricevuto: <code>phi = 1</code> corrisponde a una probabilità di errore del 10%, <code>phi = 8</code> a una su cento milioni.
+ * La distribuzione degli intervalli tra due battiti consecutivi è stimata come normale, a partire dagli ultimi {@link #CAMPIONI_MASSIMI} campioni,
+ * con una deviazione standard di almeno {@link #DEVIAZIONE_MINIMA} e una pausa tollerata di {@link #PAUSA_ACCETTABILE} oltre l'intervallo medio.
+ * <p>
+ * Solo i battiti contribuiscono alla distribuzione degli intervalli, mentre qualsiasi altro datagramma dell'utente ne attesta comunque l'attività con {@link #segnale(long)}.
+ * In assenza di battiti l'utente non viene mai sospettato: <code>phi</code> vale <code>0</code>.
+ * <p>
+ * Tutti i valori sono espressi in microsecondi, sulla stessa base temporale di {@link System#nanoTime()}.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+public class RilevatoreGuasti {
+
+    /**
+     * Il numero massimo di intervalli conservati per la stima della distribuzione
+     */
+    public static final int CAMPIONI_MASSIMI = 100;
+
+    /**
+     * La deviazione standard minima degli intervalli, per non sospettare un utente al primo ritardo dopo una serie di battiti regolari
+     */
+    public static final long DEVIAZIONE_MINIMA = 100_000;
+
+    /**
+     * La pausa tollerata oltre l'intervallo medio, ad esempio per le pause del garbage collector o della rete
+     */
+    public static final long PAUSA_ACCETTABILE = 3_000_000;
+
+    /**
+     * Gli ultimi intervalli registrati, in un buffer circolare
+     */
+    private final long[] intervalli = new long[CAMPIONI_MASSIMI];
+
+    /**
+     * La posizione del prossimo intervallo nel buffer e il numero di intervalli registrati
+     */
+    private int prossimo, campioni;
+
+    /**
+     * La somma e la somma dei quadrati degli intervalli registrati
+     */
+    private double somma, sommaQuadrati;
+
+    /**
+     * L'istante dell'ultimo battito ricevuto, <code>0</code> se nessuno
+     */
+    private long ultimoBattito;
+
+    /**
+     * L'istante dell'ultimo segnale ricevuto, battito o altro datagramma
+     */
+    private volatile long ultimoSegnale;
+
+    /**
+     * Registra un segnale di attività dell'utente, senza aggiornare la distribuzione degli intervalli. Il metodo non acquisisce alcun lock.
+     * @param istante l'istante di ricezione
+     */
+    public void segnale(long istante) {
+        if(istante > ultimoSegnale) ultimoSegnale = istante;
+    }
+
+    /**
+     * Registra un battito dell'utente. Al primo battito la distribuzione viene inizializzata attorno all'intervallo dichiarato dall'utente, con una deviazione di un quarto dell'intervallo.
+     * @param istante l'istante di ricezione
+     * @param intervalloDichiarato l'intervallo tra due battiti dichiarato dall'utente
+     */
+    public synchronized void battito(long istante, long intervalloDichiarato) {
+        if(ultimoBattito == 0) {
+            if(campioni == 0 && intervalloDichiarato > 0) {
+                aggiungi(intervalloDichiarato - intervalloDichiarato / 4);
+                aggiungi(intervalloDichiarato + intervalloDichiarato / 4);
+            }
+        } else if(istante > ultimoBattito) {
+            aggiungi(istante - ultimoBattito);
+        }
+        ultimoBattito = istante;
+        segnale(istante);
+    }
+
+    /**
+     * Aggiunge un intervallo al buffer circolare, sostituendo il meno recente
+     * @param intervallo l'intervallo
+     */
+    private void aggiungi(long intervallo) {
+        if(campioni == CAMPIONI_MASSIMI) {
+            long rimosso = intervalli[prossimo];
+            somma -= rimosso;
+            sommaQuadrati -= (double) rimosso * rimosso;
+        } else {
+            campioni++;
+        }
+        intervalli[prossimo] = intervallo;
+        somma += intervallo;
+        sommaQuadrati += (double) intervallo * intervallo;
+        prossimo = (prossimo + 1) % CAMPIONI_MASSIMI;
+    }
+
+    /**
+     * Calcola il livello di sospetto nell'istante indicato, approssimando la funzione di ripartizione normale con una logistica
+     * @param istante l'istante di valutazione
+     * @return <code>phi</code>, <code>0</code> se non è stato ricevuto alcun battito
+     */
+    public synchronized double phi(long istante) {
+        if(campioni == 0) return 0;
+        double media = somma / campioni;
+        double deviazione = Math.max(Math.sqrt(Math.max(0, sommaQuadrati / campioni - media * media)), DEVIAZIONE_MINIMA);
+        double atteso = media + PAUSA_ACCETTABILE;
+        long trascorso = istante - ultimoSegnale;
+
+        double y = (trascorso - atteso) / deviazione;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        return Math.max(0, trascorso > atteso ? -Math.log10(e / (1 + e)) : -Math.log10(1 - 1 / (1 + e)));
+    }
+
+    /**
+     * Restituisce l'intervallo medio tra due battiti
+     * @return l'intervallo medio, <code>0</code> in assenza di campioni
+     */
+    public synchronized long getIntervalloMedio() {
+        return campioni == 0 ? 0 : Math.round(somma / campioni);
+    }
+
+    /**
+     * Restituisce lo stato del rilevatore in forma testuale, in millisecondi
+     * @return <code>phi</code> attuale, tempo dall'ultimo segnale e intervallo medio tra i battiti
+     */
+    @Override
+    public synchronized String toString() {
+        if(campioni == 0) return "phi non disponibile";
+        long adesso = System.nanoTime() / 1000;
+        return String.format("phi %.2f | ultimo segnale %.3f ms fa | battiti ogni %.3f ms", phi(adesso), (adesso - ultimoSegnale) / 1e3, getIntervalloMedio() / 1e3);
+    }
+}
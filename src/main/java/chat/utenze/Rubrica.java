@@ -5,23 +5,87 @@ import chat.eccezioni.NoSuchUserException;
 import chat.gestione.ChatLoggerType;
 
 import java.net.InetAddress;
-import java.security.PublicKey;
 import java.util.ArrayList;
-import java.util.UUID;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Classe con funzione di rubrica per gli utenti noti nella chat. 
  * Fornisce i metodi di gestione e recupero delle informazioni di tali utenti.
+ * <p>
+ * Gli utenti sono indicizzati per <code>UUID</code>, per alias e per slot in strutture concorrenti: le ricerche non acquisiscono alcun lock, mentre le modifiche sono serializzate
+ * e costano un tempo costante, indipendente dal numero di utenti. Le operazioni che scorrono tutti gli utenti leggono invece un'{@link Istantanea} immutabile,
+ * costruita alla prima lettura successiva a una modifica: una raffica di ingressi nel gruppo non copia l'intera rubrica ad ogni inserimento.
+ * <p>
+ * Ciascun utente è associato a una {@link StimaRTT}, aggiornata senza pubblicare una nuova {@link Istantanea}, da cui ottenere il timeout di ritrasmissione adattivo verso l'utente.
+ * <p>
+ * A ciascun utente è inoltre assegnato uno <code>slot</code>, il più piccolo indice libero al momento dell'inserimento, che resta invariato fino alla sua rimozione:
+ * gli slot dei partecipanti, restituiti da {@link #destinatari()}, indicizzano il {@link java.util.BitSet} delle conferme attese da ciascun messaggio.
+ * Lo slot di un utente rimosso resta in quarantena, e non viene assegnato ad altri utenti, finché non viene liberato con {@link #liberaSlot(int)}: in questo modo le conferme attese dall'utente rimosso
+ * non possono essere attribuite a un nuovo utente prima che il mittente vi abbia rinunciato.
+ * <p>
+ * Ciascun utente è infine associato a un {@link RilevatoreGuasti}, alimentato dai battiti e dai datagrammi ricevuti: gli utenti il cui livello di sospetto supera una soglia,
+ * restituiti da {@link #sospetti(long, double)}, possono essere rimossi anche senza aver annunciato l'abbandono del gruppo.
+ * <p>
+ * Dalla versione <code>v1.9</code> le modifiche non copiano più l'intera rubrica: l'{@link Istantanea} è riservata alle operazioni che scorrono tutti gli utenti e viene costruita solo quando richiesta.
  * @author Matteo Bagnoletti Tini
- * @version 1.1
+ * @version 1.9
  * @project MulticastUDPSocketChat
  */
 public class Rubrica {
 
     /**
-     * Elenco rubrica
+     * Stato immutabile degli utenti in rubrica, per le operazioni che li scorrono tutti
+     * @param utenti gli utenti memorizzati, in ordine di slot
+     * @param slot gli slot occupati
      */
-    private ArrayList<IndiceRubrica> rubricaList;
+    private record Istantanea(List<IndiceRubrica> utenti, BitSet slot) {}
+
+    /**
+     * La capacità iniziale di {@link #perSlot}
+     */
+    private static final int SLOT_INIZIALI = 16;
+
+    /**
+     * Gli utenti memorizzati per <code>UUID</code>
+     */
+    private final Map<String, IndiceRubrica> perUUID;
+
+    /**
+     * Gli utenti memorizzati per alias
+     */
+    private final Map<String, IndiceRubrica> perAlias;
+
+    /**
+     * Gli utenti memorizzati per slot, <code>null</code> per gli slot liberi. Sostituito con uno di capacità doppia quando tutti gli slot sono in uso
+     */
+    private volatile AtomicReferenceArray<IndiceRubrica> perSlot;
+
+    /**
+     * L'ultima {@link Istantanea} costruita, <code>null</code> se una modifica successiva l'ha resa obsoleta
+     */
+    private volatile Istantanea istantanea;
+
+    /**
+     * Gli slot occupati dagli utenti in rubrica
+     */
+    private final BitSet occupati;
+
+    /**
+     * Gli slot degli utenti rimossi non ancora liberati con {@link #liberaSlot(int)}
+     */
+    private final BitSet quarantena;
+
+    /**
+     * Il prossimo suffisso da assegnare a un nuovo utente, per <code>username</code> (e.g. <code>2</code> per "Mario(2)")
+     * @see #assegnaAlias(String, Map)
+     */
+    private final Map<String, Integer> duplicati;
 
     /**
      * L'utente possessore della rubrica
@@ -29,75 +93,120 @@ public class Rubrica {
     private final Utente utente;
 
     public Rubrica(Utente utente) {
-        this.rubricaList = new ArrayList<>();
+        this.perUUID = new ConcurrentHashMap<>();
+        this.perAlias = new ConcurrentHashMap<>();
+        this.perSlot = new AtomicReferenceArray<>(SLOT_INIZIALI);
+        this.duplicati = new HashMap<>();
+        this.occupati = new BitSet();
+        this.quarantena = new BitSet();
         this.utente = utente;
     }
 
     /**
-     * Metodo per l'inserimento di nuovi utenti
+     * Metodo per l'inserimento di nuovi utenti. Gli utenti già in rubrica vengono riconosciuti senza acquisire alcun lock.
      * @param utente il nome utente e il codice univoco del nuovo {@link Utente}
      * @param inetAddress l'{@link InetAddress} della socket del nuovo utente
      * @param porta il numero di porta della socket del nuovo utente
+     * @return <code>true</code> se l'utente è stato inserito da questa invocazione, <code>false</code> se corrisponde all'utente corrente o era già in rubrica
      * @throws NoSuchUserException nei casi previsti dalla classe {@link Utente}
      */
-    public synchronized void aggiungiUtente(Utente utente, InetAddress inetAddress, int porta) throws NoSuchUserException {
-        if (!this.utente.getIDutente().equals(utente.getIDutente()) && !isGiaInRubrica(utente.getIDutente())) {
-            int nDuplicato = 0;
-            while (isDuplicato(utente.getUsername(), nDuplicato)) {
-                nDuplicato++;
-            }
-            
-            String alias;
-            if (nDuplicato == 0){
-                alias = utente.getUsername();
-            } else {
-                alias = utente.getUsername() + "(" + nDuplicato + ")";
-            }
-            
-            rubricaList.add(new IndiceRubrica(alias, utente.getIDutente(), inetAddress, porta));
-            ChatLogger.log("(Rubrica) tentativo di inserimento riuscito: memorizzato come " + alias, ChatLoggerType.OPTIONAL);
-        } else {
+    public boolean aggiungiUtente(Utente utente, InetAddress inetAddress, int porta) throws NoSuchUserException {
+        if (this.utente.getIDutente().equals(utente.getIDutente()) || isGiaInRubrica(utente.getIDutente())) {
             ChatLogger.log("(Rubrica) tentativo di inserimento fallito: l'utente potrebbe corrispondere all'utente corrente o è già presente in rubrica", ChatLoggerType.OPTIONAL);
+            return false;
+        }
+
+        synchronized (this) {
+            if (perUUID.containsKey(utente.getIDutente())) return false;
+
+            String alias = assegnaAlias(utente.getUsername());
+            int slot = occupati.nextClearBit(0);
+            while (quarantena.get(slot)) slot = occupati.nextClearBit(quarantena.nextClearBit(slot));
+            IndiceRubrica indice = new IndiceRubrica(alias, utente.getIDutente(), inetAddress, porta, new StimaRTT(), slot, new RilevatoreGuasti());
+
+            occupa(indice);
+            perAlias.put(alias, indice);
+            perUUID.put(indice.UUID(), indice);
+            istantanea = null;
+            ChatLogger.log("(Rubrica) tentativo di inserimento riuscito: memorizzato come {}", ChatLoggerType.OPTIONAL, alias);
+            return true;
         }
     }
 
     /**
-     * Rimuove un {@link Utente} dalla rubrica
+     * Rimuove un {@link Utente} dalla rubrica, ponendone lo slot in quarantena
      * @param IDutente l'identificativo univoco dell'{@link Utente} da ricercare e rimuovere
      * @return lo username dell'{@link Utente} rimosso
+     * @see #rimuoviIndice(String)
      */
     public synchronized String rimuoviUtente(String IDutente) {
-        String alias = ottieniAliasDaUUID(IDutente);
-        ChatLogger.log("(Rubrica) richiesta rimozione dalla rubrica di " + alias, ChatLoggerType.OPTIONAL);
-        rubricaList.removeIf(i -> i.alias().equals(alias));
-        return alias;
+        IndiceRubrica indice = rimuoviIndice(IDutente);
+        return indice != null ? indice.alias() : null;
+    }
+
+    /**
+     * Rimuove un {@link Utente} dalla rubrica, ponendone lo slot in quarantena fino all'invocazione di {@link #liberaSlot(int)}
+     * @param IDutente l'identificativo univoco dell'{@link Utente} da ricercare e rimuovere
+     * @return l'{@link IndiceRubrica} dell'{@link Utente} rimosso, <code>null</code> se non era in rubrica
+     */
+    public synchronized IndiceRubrica rimuoviIndice(String IDutente) {
+        IndiceRubrica indice = IDutente != null ? perUUID.get(IDutente) : null;
+        String alias = indice != null ? indice.alias() : null;
+        ChatLogger.log("(Rubrica) richiesta rimozione dalla rubrica di {}", ChatLoggerType.OPTIONAL, alias);
+        if (indice == null) return null;
+
+        perUUID.remove(IDutente);
+        perAlias.remove(alias);
+        perSlot.set(indice.slot(), null);
+        occupati.clear(indice.slot());
+        quarantena.set(indice.slot());
+        istantanea = null;
+        return indice;
+    }
+
+    /**
+     * Assegna a un utente il proprio slot in {@link #perSlot}, raddoppiandone la capacità se necessario. Va invocato con il lock della rubrica.
+     * @param indice l'utente, con lo slot assegnato
+     */
+    private void occupa(IndiceRubrica indice) {
+        AtomicReferenceArray<IndiceRubrica> attuale = perSlot;
+        if (indice.slot() >= attuale.length()) {
+            AtomicReferenceArray<IndiceRubrica> ampliato = new AtomicReferenceArray<>(Math.max(attuale.length() * 2, indice.slot() + 1));
+            for (int i = 0; i < attuale.length(); i++) ampliato.set(i, attuale.get(i));
+            perSlot = attuale = ampliato;
+        }
+        attuale.set(indice.slot(), indice);
+        occupati.set(indice.slot());
+    }
+
+    /**
+     * Libera lo slot di un {@link Utente} rimosso, che potrà essere assegnato a un nuovo utente.
+     * Va invocato solo dopo che nessun messaggio inviato attende più la conferma dello slot, ad esempio con {@link chat.comunicazione.Cronologia#esonera(int)}.
+     * @param slot lo slot da liberare
+     */
+    public synchronized void liberaSlot(int slot) {
+        if (slot >= 0) quarantena.clear(slot);
     }
 
     /**
-     * Verifica di eventuali duplicati nella rubrica
-     * @param utente il nome utente da ricercare in rubrica
-     * @param nDuplicato il valore di crescita per la rinomina di duplicati (e.g. "Mario(2)")
-     * @return true se vi è un duplicato, false altrimenti
+     * Determina l'alias di un nuovo utente: lo <code>username</code> stesso se univoco, altrimenti lo <code>username</code> seguito dal primo suffisso libero a partire dal contatore dei {@link #duplicati}
+     * @param username il nome utente
+     * @return l'alias da assegnare
      * @see #rinomina(String, String)
      */
-    private synchronized boolean isDuplicato(String utente, int nDuplicato) {
+    private String assegnaAlias(String username) {
         ChatLogger.log("(Rubrica) ricerca duplicati in corso...", ChatLoggerType.OPTIONAL);
-        for(IndiceRubrica i : rubricaList){
-            if(nDuplicato == 0){
-                if(i.alias().equals(utente.trim())){
-                    ChatLogger.log("(Rubrica) duplicato trovato: " + i.alias(), ChatLoggerType.OPTIONAL);
-                    return true;
-                }
-            } else {
-                if(i.alias().equals(utente.trim() + "(" + nDuplicato + ")")){
-                    ChatLogger.log("(Rubrica) duplicato trovato: " + i.alias(), ChatLoggerType.OPTIONAL);
-                    return true;
-                }
-            }
+        String nome = username.trim();
+        int nDuplicato = duplicati.getOrDefault(nome, 0);
+        String alias = nDuplicato == 0 ? nome : nome + "(" + nDuplicato + ")";
+        while (perAlias.containsKey(alias)) {
+            ChatLogger.log("(Rubrica) duplicato trovato: {}", ChatLoggerType.OPTIONAL, alias);
+            alias = nome + "(" + ++nDuplicato + ")";
         }
-        
-        ChatLogger.log("(Rubrica) " + utente + " risulta univoco", ChatLoggerType.OPTIONAL);
-        return false;
+        duplicati.put(nome, nDuplicato + 1);
+
+        ChatLogger.log("(Rubrica) {} risulta univoco", ChatLoggerType.OPTIONAL, alias);
+        return alias;
     }
 
     /**
@@ -105,16 +214,10 @@ public class Rubrica {
      * @param UUID l'identificativo univoco dell'utente
      * @return true se già in rubrica, false altrimenti
      */
-    private synchronized boolean isGiaInRubrica(String UUID) {
-        for(IndiceRubrica i : rubricaList){
-            if(i.UUID().equals(UUID)){
-                ChatLogger.log("(Rubrica) utente con UUID: " + UUID + " già in rubrica", ChatLoggerType.OPTIONAL);
-                return true;
-            }
-        }
-        
-        ChatLogger.log("(Rubrica) utente con UUID: " + UUID + " non in rubrica", ChatLoggerType.OPTIONAL);
-        return false;
+    private boolean isGiaInRubrica(String UUID) {
+        boolean presente = perUUID.containsKey(UUID);
+        ChatLogger.log("(Rubrica) utente con UUID: {}{}", ChatLoggerType.OPTIONAL, UUID, presente ? " già in rubrica" : " non in rubrica");
+        return presente;
     }
 
     /**
@@ -123,55 +226,115 @@ public class Rubrica {
      * @return l'{@link IndiceRubrica} contenente le informazioni dell'utente
      * @throws NoSuchUserException se l'utente non è presente in rubrica
      */
-    public synchronized IndiceRubrica ottieniInfoUtente(String utente) throws NoSuchUserException {
-        ChatLogger.log("(Rubrica) ricerca informazioni per: " + utente + " in corso...", ChatLoggerType.OPTIONAL);
-        for(IndiceRubrica i : rubricaList){
-            if(i.alias().equals(utente)){
-                ChatLogger.log("(Rubrica) utente con alias: " + i.alias() + " trovato", ChatLoggerType.OPTIONAL);
-                return i;
-            }
-        }
-        
-        throw new NoSuchUserException("Utente non in rubrica");
+    public IndiceRubrica ottieniInfoUtente(String utente) throws NoSuchUserException {
+        ChatLogger.log("(Rubrica) ricerca informazioni per: {} in corso...", ChatLoggerType.OPTIONAL, utente);
+        IndiceRubrica indice = utente != null ? perAlias.get(utente) : null;
+        if (indice == null) throw new NoSuchUserException("Utente non in rubrica");
+
+        ChatLogger.log("(Rubrica) utente con alias: {} trovato", ChatLoggerType.OPTIONAL, indice.alias());
+        return indice;
     }
 
     /**
      * Restituisce il numero di partecipanti al gruppo (e dunque memorizzati in rubrica)
      * @return il numero di partecipanti al gruppo
      */
-    public synchronized int partecipantiGruppo() {
-        return rubricaList.size();
+    public int partecipantiGruppo() {
+        return perUUID.size();
     }
 
     /**
-     * Rinomina un {@link Utente}
+     * Restituisce gli slot dei partecipanti al gruppo, da cui attendere le conferme di un messaggio multicast
+     * @return un nuovo {@link BitSet} con gli slot occupati
+     */
+    public BitSet destinatari() {
+        return (BitSet) istantanea().slot().clone();
+    }
+
+    /**
+     * Restituisce lo slot di un {@link Utente}
+     * @param UUID l'identificativo univoco dell'utente
+     * @return lo slot dell'utente, <code>-1</code> se non è in rubrica
+     */
+    public int ottieniSlot(String UUID) {
+        IndiceRubrica indice = UUID != null ? perUUID.get(UUID) : null;
+        return indice != null ? indice.slot() : -1;
+    }
+
+    /**
+     * Restituisce le informazioni di un {@link Utente} dato il suo identificativo univoco, senza acquisire alcun lock
+     * @param UUID l'identificativo univoco dell'utente
+     * @return l'{@link IndiceRubrica} dell'utente, <code>null</code> se non in rubrica
+     */
+    public IndiceRubrica ottieniInfoDaUUID(String UUID) {
+        return UUID != null ? perUUID.get(UUID) : null;
+    }
+
+    /**
+     * Restituisce le informazioni dell'{@link Utente} che occupa uno slot
+     * @param slot lo slot dell'utente
+     * @return l'{@link IndiceRubrica} dell'utente, <code>null</code> se lo slot è libero
+     */
+    public IndiceRubrica ottieniInfoDaSlot(int slot) {
+        AtomicReferenceArray<IndiceRubrica> attuale = perSlot;
+        return slot >= 0 && slot < attuale.length() ? attuale.get(slot) : null;
+    }
+
+    /**
+     * Rinomina un {@link Utente}. La rinomina fallisce se il nuovo alias è già assegnato a un altro utente.
      * @param utente il nome utente da rinominare
      * @param rinominaIn il nuovo nome utente
      */
     public synchronized void rinomina(String utente, String rinominaIn) {
-        ChatLogger.log("(Rubrica) tentativo di rinomina di " + utente + " in " + rinominaIn + " in corso...", ChatLoggerType.OPTIONAL);
-        for(IndiceRubrica i : rubricaList){
-            if(i.alias().equals(utente.trim())){
-                int indice = rubricaList.indexOf(i);
-                rubricaList.set(indice, new IndiceRubrica(rinominaIn, i.UUID(), i.inetAddress(), i.porta()));
-                ChatLogger.log("(Rubrica) rinomina riuscita", ChatLoggerType.OPTIONAL);
-                return;
-            }
+        ChatLogger.log("(Rubrica) tentativo di rinomina di {} in {} in corso...", ChatLoggerType.OPTIONAL, utente, rinominaIn);
+        IndiceRubrica indice = perAlias.get(utente.trim());
+        if (indice == null || perAlias.containsKey(rinominaIn)) {
+            ChatLogger.log("(Rubrica) rinomina fallita", ChatLoggerType.OPTIONAL);
+            return;
         }
 
-        ChatLogger.log("(Rubrica) rinomina fallita", ChatLoggerType.OPTIONAL);
+        IndiceRubrica rinominato = new IndiceRubrica(rinominaIn, indice.UUID(), indice.inetAddress(), indice.porta(), indice.rtt(), indice.slot(), indice.rilevatore());
+        perAlias.put(rinominaIn, rinominato);
+        perAlias.remove(indice.alias());
+        perUUID.put(rinominato.UUID(), rinominato);
+        perSlot.set(rinominato.slot(), rinominato);
+        istantanea = null;
+        ChatLogger.log("(Rubrica) rinomina riuscita", ChatLoggerType.OPTIONAL);
+    }
+
+    /**
+     * Restituisce l'{@link Istantanea} degli utenti in rubrica, senza acquisire alcun lock se nessuna modifica l'ha resa obsoleta
+     * @return l'istantanea corrente
+     */
+    private Istantanea istantanea() {
+        Istantanea attuale = istantanea;
+        return attuale != null ? attuale : pubblica();
     }
 
     /**
-     * Restituisce la {@link #rubricaList} memorizzata
+     * Costruisce e pubblica l'{@link Istantanea} degli utenti in rubrica, se non già pubblicata da un'altra lettura dopo l'ultima modifica
+     * @return l'istantanea corrente
+     */
+    private synchronized Istantanea pubblica() {
+        if (istantanea != null) return istantanea;
+        List<IndiceRubrica> utenti = new ArrayList<>(perUUID.size());
+        AtomicReferenceArray<IndiceRubrica> attuale = perSlot;
+        for (int slot = occupati.nextSetBit(0); slot >= 0; slot = occupati.nextSetBit(slot + 1)) utenti.add(attuale.get(slot));
+        istantanea = new Istantanea(Collections.unmodifiableList(utenti), (BitSet) occupati.clone());
+        return istantanea;
+    }
+
+    /**
+     * Restituisce la rubrica memorizzata
      * @return la rubrica memorizzata
      */
-    public synchronized String getRubrica() {
+    public String getRubrica() {
+        List<IndiceRubrica> utenti = istantanea().utenti();
         String rubrica = "Rubrica:\n";
-        if(rubricaList.isEmpty()){
+        if(utenti.isEmpty()){
             rubrica += "Nessun utente memorizzato";
         } else {
-            for (IndiceRubrica indiceRubrica: rubricaList) {
+            for (IndiceRubrica indiceRubrica: utenti) {
                 rubrica += "(*) " + indiceRubrica.alias() + " [" + indiceRubrica.UUID() + "] connesso tramite " + indiceRubrica.inetAddress() + ":" + indiceRubrica.porta() + "\n";
             }
             rubrica += "Digita $rn <alias> <nuovoAlias> per rinominare un utente";
@@ -180,20 +343,92 @@ public class Rubrica {
         return rubrica;
     }
 
+    /**
+     * Registra un campione di <code>RTT</code> verso un {@link Utente}, se presente in rubrica
+     * @param UUID l'identificativo univoco dell'utente
+     * @param rtt il tempo di andata e ritorno misurato, al netto del ritardo della conferma, in microsecondi
+     * @param ritardoACK il tempo per cui l'utente ha trattenuto la conferma, in microsecondi
+     * @see StimaRTT#registra(long, long)
+     */
+    public void registraRTT(String UUID, long rtt, long ritardoACK) {
+        IndiceRubrica indice = UUID != null ? perUUID.get(UUID) : null;
+        if(indice != null) indice.rtt().registra(rtt, ritardoACK);
+    }
+
+    /**
+     * Restituisce il timeout di ritrasmissione adattivo verso un {@link Utente}
+     * @param UUID l'identificativo univoco dell'utente
+     * @return l'<code>RTO</code> in microsecondi, {@link StimaRTT#RTO_INIZIALE} se l'utente non è in rubrica
+     * @see StimaRTT#getRTO()
+     */
+    public long getRTO(String UUID) {
+        IndiceRubrica indice = UUID != null ? perUUID.get(UUID) : null;
+        return indice != null ? indice.rtt().getRTO() : StimaRTT.RTO_INIZIALE;
+    }
+
+    /**
+     * Registra un segnale di attività di un {@link Utente}, se presente in rubrica, senza acquisire alcun lock
+     * @param UUID l'identificativo univoco dell'utente
+     * @param istante l'istante di ricezione, in microsecondi
+     * @see RilevatoreGuasti#segnale(long)
+     */
+    public void registraSegnale(String UUID, long istante) {
+        IndiceRubrica indice = UUID != null ? perUUID.get(UUID) : null;
+        if(indice != null) indice.rilevatore().segnale(istante);
+    }
+
+    /**
+     * Registra un battito di un {@link Utente}, se presente in rubrica
+     * @param UUID l'identificativo univoco dell'utente
+     * @param istante l'istante di ricezione, in microsecondi
+     * @param intervallo l'intervallo tra due battiti dichiarato dall'utente, in microsecondi
+     * @see RilevatoreGuasti#battito(long, long)
+     */
+    public void registraBattito(String UUID, long istante, long intervallo) {
+        IndiceRubrica indice = UUID != null ? perUUID.get(UUID) : null;
+        if(indice != null) indice.rilevatore().battito(istante, intervallo);
+    }
+
+    /**
+     * Restituisce gli utenti sospettati di guasto, il cui livello di sospetto supera la soglia indicata
+     * @param istante l'istante di valutazione, in microsecondi
+     * @param soglia la soglia di <code>phi</code>
+     * @return gli utenti sospettati, eventualmente nessuno
+     * @see RilevatoreGuasti#phi(long)
+     */
+    public List<IndiceRubrica> sospetti(long istante, double soglia) {
+        List<IndiceRubrica> sospetti = new ArrayList<>();
+        for (IndiceRubrica indice : istantanea().utenti()) {
+            if (indice.rilevatore().phi(istante) > soglia) sospetti.add(indice);
+        }
+        return sospetti;
+    }
+
+    /**
+     * Restituisce la {@link StimaRTT} verso ciascun utente memorizzato e lo stato del relativo {@link RilevatoreGuasti}
+     * @return le stime di <code>RTT</code> e <code>RTO</code> e il livello di sospetto per alias
+     */
+    public String getStimeRTT() {
+        List<IndiceRubrica> utenti = istantanea().utenti();
+        if(utenti.isEmpty()) return "Peer:\nNessun utente memorizzato";
+        StringBuilder peers = new StringBuilder("Peer:");
+        for (IndiceRubrica indiceRubrica : utenti) {
+            peers.append("\n(*) ").append(indiceRubrica.alias()).append(" [").append(indiceRubrica.inetAddress()).append(":").append(indiceRubrica.porta()).append("] ").append(indiceRubrica.rtt()).append(" | ").append(indiceRubrica.rilevatore());
+        }
+        return peers.toString();
+    }
+
     /**
      * Restituisce l'alias di un {@link Utente} dato il suo identificativo univoco
      * @param UUID l'identificativo univo dell'utente
      * @return l'alias dell'utente se trovato, null altrimenti
      */
-    public synchronized String ottieniAliasDaUUID(String UUID){
-        ChatLogger.log("(Rubrica) richiesta alias per UUID: " + UUID + " in corso...", ChatLoggerType.OPTIONAL);
-        for(IndiceRubrica i : rubricaList){
-            if(i.UUID().equals(UUID)){
-                ChatLogger.log("(Rubrica) alias di UUID: " + UUID + " risolto in: " + i.alias(), ChatLoggerType.OPTIONAL);
-                return i.alias();
-            }
-        }
-        
-        return null;
+    public String ottieniAliasDaUUID(String UUID){
+        ChatLogger.log("(Rubrica) richiesta alias per UUID: {} in corso...", ChatLoggerType.OPTIONAL, UUID);
+        IndiceRubrica indice = UUID != null ? perUUID.get(UUID) : null;
+        if(indice == null) return null;
+
+        ChatLogger.log("(Rubrica) alias di UUID: {} risolto in: {}", ChatLoggerType.OPTIONAL, UUID, indice.alias());
+        return indice.alias();
     }
 }
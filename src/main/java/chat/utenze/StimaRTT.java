@@ -0,0 +1,156 @@
+package chat.utenze;
+
+/**
+ * Stima del tempo di andata e ritorno (<code>RTT</code>) verso un {@link Utente} e del relativo timeout di ritrasmissione (<code>RTO</code>), secondo l'algoritmo della RFC 6298.
+ * <p>
+ * Ciascun campione aggiorna la media mobile esponenziale dell'<code>RTT</code> (<code>SRTT</code>, peso 1/8) e della sua variazione (<code>RTTVAR</code>, peso 1/4):
+ * il timeout è pari a <code>SRTT + 4 * RTTVAR</code>, limitato tra {@link #RTO_MINIMO} e {@link #RTO_MASSIMO}. In assenza di campioni vale {@link #RTO_INIZIALE}.
+ * <p>
+ * Viene inoltre stimato il tempo per cui il destinatario trattiene le conferme prima di inviarle (ad esempio accumulandole in <code>ACK</code> cumulativi), da attendere oltre all'<code>RTO</code> prima di considerare un messaggio non confermato: vedi {@link #getTimeoutConferma()}.
+ * <p>
+ * Tutti i valori sono espressi in microsecondi.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+public class StimaRTT {
+
+    /**
+     * Il timeout di ritrasmissione in assenza di campioni
+     */
+    public static final long RTO_INIZIALE = 200_000;
+
+    /**
+     * Il timeout di ritrasmissione minimo
+     */
+    public static final long RTO_MINIMO = 20_000;
+
+    /**
+     * Il timeout di ritrasmissione massimo
+     */
+    public static final long RTO_MASSIMO = 5_000_000;
+
+    /**
+     * L'<code>RTT</code> medio (<code>SRTT</code>)
+     */
+    private long rttMedio;
+
+    /**
+     * La variazione media dell'<code>RTT</code> (<code>RTTVAR</code>)
+     */
+    private long variazione;
+
+    /**
+     * L'ultimo campione e il campione minimo registrati
+     */
+    private long ultimo, minimo;
+
+    /**
+     * Il numero di campioni registrati
+     */
+    private long campioni;
+
+    /**
+     * La media (peso 1/8) e la variazione media (peso 1/4) del tempo per cui il destinatario trattiene le conferme
+     */
+    private long attesaACK, variazioneAttesa;
+
+    /**
+     * Registra un campione di <code>RTT</code>. I campioni negativi vengono ignorati.
+     * @param rtt il tempo di andata e ritorno misurato
+     */
+    public synchronized void registra(long rtt) {
+        if(rtt < 0) return;
+        if(campioni == 0) {
+            rttMedio = rtt;
+            variazione = rtt / 2;
+            minimo = rtt;
+        } else {
+            variazione += (Math.abs(rttMedio - rtt) - variazione) / 4;
+            rttMedio += (rtt - rttMedio) / 8;
+            minimo = Math.min(minimo, rtt);
+        }
+        ultimo = rtt;
+        campioni++;
+    }
+
+    /**
+     * Registra un campione di <code>RTT</code> insieme al tempo per cui il destinatario ha trattenuto la conferma. I campioni negativi vengono ignorati.
+     * @param rtt il tempo di andata e ritorno misurato, al netto del ritardo della conferma
+     * @param ritardoACK il tempo per cui il destinatario ha trattenuto la conferma
+     */
+    public synchronized void registra(long rtt, long ritardoACK) {
+        if(rtt < 0 || ritardoACK < 0) return;
+        if(campioni == 0) {
+            attesaACK = ritardoACK;
+            variazioneAttesa = ritardoACK / 2;
+        } else {
+            variazioneAttesa += (Math.abs(attesaACK - ritardoACK) - variazioneAttesa) / 4;
+            attesaACK += (ritardoACK - attesaACK) / 8;
+        }
+        registra(rtt);
+    }
+
+    /**
+     * Restituisce l'<code>RTT</code> medio
+     * @return l'<code>SRTT</code>, <code>0</code> in assenza di campioni
+     */
+    public synchronized long getRTT() {
+        return rttMedio;
+    }
+
+    /**
+     * Restituisce la variazione media dell'<code>RTT</code>
+     * @return l'<code>RTTVAR</code>, <code>0</code> in assenza di campioni
+     */
+    public synchronized long getVariazione() {
+        return variazione;
+    }
+
+    /**
+     * Restituisce il timeout di ritrasmissione
+     * @return l'<code>RTO</code>
+     */
+    public synchronized long getRTO() {
+        if(campioni == 0) return RTO_INIZIALE;
+        return Math.clamp(rttMedio + 4 * variazione, RTO_MINIMO, RTO_MASSIMO);
+    }
+
+    /**
+     * Restituisce il tempo da attendere una conferma prima di considerarla persa: l'<code>RTO</code> più il tempo per cui il destinatario trattiene le conferme, stimato come per l'<code>RTO</code> dalla media più quattro volte la variazione media
+     * @return il timeout di conferma, al più {@link #RTO_MASSIMO}
+     */
+    public synchronized long getTimeoutConferma() {
+        return Math.min(getRTO() + attesaACK + 4 * variazioneAttesa, RTO_MASSIMO);
+    }
+
+    /**
+     * Restituisce il numero di campioni registrati
+     * @return il numero di campioni
+     */
+    public synchronized long getCampioni() {
+        return campioni;
+    }
+
+    /**
+     * Restituisce la stima in forma testuale, in millisecondi
+     * @return <code>SRTT</code>, <code>RTTVAR</code>, <code>RTO</code>, ultimo e minimo campione e numero di campioni
+     */
+    @Override
+    public synchronized String toString() {
+        if(campioni == 0) return "RTT non disponibile | RTO " + millisecondi(RTO_INIZIALE);
+        return "RTT " + millisecondi(rttMedio) + " ± " + millisecondi(variazione) + " | RTO " + millisecondi(getRTO())
+                + " | ultimo " + millisecondi(ultimo) + ", minimo " + millisecondi(minimo) + " | " + campioni + " campioni"
+                + (attesaACK > 0 ? " | attesa ACK " + millisecondi(attesaACK) : "");
+    }
+
+    /**
+     * Formatta una durata in millisecondi
+     * @param microsecondi la durata in microsecondi
+     * @return la durata formattata
+     */
+    private static String millisecondi(long microsecondi) {
+        return String.format("%.3f ms", microsecondi / 1e3);
+    }
+}
@@ -52,6 +52,19 @@ public class Utente implements Serializable {
         }
     }
 
+    /**
+     * Ricostruisce un {@link Utente} già noto, ad esempio il mittente di un {@link chat.comunicazione.Messaggio} ricevuto in rete
+     * @param username il nome utente (username)
+     * @param IDutente l'identificativo univoco già assegnato all'utente
+     * @throws IllegalArgumentException se il nome utente o l'identificativo sono nulli o vuoti
+     */
+    public Utente(String username, String IDutente) throws IllegalArgumentException {
+        if(username == null || username.isBlank()) throw new IllegalArgumentException("Nome utenze non valido");
+        if(IDutente == null || IDutente.isBlank()) throw new IllegalArgumentException("Identificativo utente non valido");
+        this.username = username;
+        this.IDutente = IDutente;
+    }
+
     /**
      * Restituisce le info dell'{@link Utente}
      * @return il nome utenze seguito dall'identificativo univoco
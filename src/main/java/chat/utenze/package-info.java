@@ -4,7 +4,9 @@
  * Contiene:
  * <ul>
  *     <li>{@link chat.utenze.IndiceRubrica}</li>
+ *     <li>{@link chat.utenze.RilevatoreGuasti}</li>
  *     <li>{@link chat.utenze.Rubrica}</li>
+ *     <li>{@link chat.utenze.StimaRTT}</li>
  *     <li>{@link chat.utenze.Utente}</li>
  * </ul>
  * 
@@ -0,0 +1,264 @@
+package chat.comunicazione;
+
+import chat.eccezioni.MsgException;
+import chat.utenze.Utente;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test di andata e ritorno per ciascun <code>opcode</code> del {@link CodecBinario} e di rifiuto dei datagrammi troncati o non validi.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+class CodecBinarioTest {
+
+    /**
+     * Il mittente di tutti i datagrammi di prova
+     */
+    private final Utente utente = new Utente("Mittènte");
+
+    @Test
+    void messaggioAndataRitorno() throws Exception {
+        Messaggio originale = new Messaggio(42, utente, 5001, 3, "Ciao a tutti ✓", true, Protocollo.UDP.multicast, 17);
+        Messaggio decodificato = Messaggio.configMsg(Messaggio.configMsg(originale));
+
+        assertFalse(decodificato.isACK());
+        assertEquals(42, decodificato.getID());
+        assertEquals(5001, decodificato.getPortaMittente());
+        assertEquals(3, decodificato.getTargetACK());
+        assertEquals(17, decodificato.getSequenza());
+        assertEquals("Ciao a tutti ✓", decodificato.getMsg());
+        assertTrue(decodificato.isMsgGruppo());
+        assertEquals(Protocollo.UDP.multicast, decodificato.getProtocollo());
+        assertEquals(originale.getOrario(), decodificato.getOrario());
+        assertEquals(utente.getUsername(), decodificato.getUtente().getUsername());
+        assertEquals(utente.getIDutente(), decodificato.getUtente().getIDutente());
+    }
+
+    @Test
+    void ACKAndataRitorno() throws Exception {
+        Messaggio originale = new Messaggio(7, utente, 5002, 42, 123_456_789L, 250, Protocollo.UDP.unicast);
+        Messaggio decodificato = Messaggio.configMsg(Messaggio.configMsg(originale));
+
+        assertTrue(decodificato.isACK());
+        assertNull(decodificato.getConferme());
+        assertEquals(7, decodificato.getID());
+        assertEquals(5002, decodificato.getPortaMittente());
+        assertEquals(42, decodificato.getIDconfermato());
+        assertEquals(123_456_789L, decodificato.getMarcaTemporale());
+        assertEquals(250, decodificato.getRitardoACK());
+        assertEquals(Protocollo.UDP.unicast, decodificato.getProtocollo());
+    }
+
+    @Test
+    void ACKCumulativoAndataRitorno() throws Exception {
+        TreeSet<Integer> IDs = new TreeSet<>(List.of(10, 11, 12, 13, 15, 80, 300));
+        InsiemeID conferme = InsiemeID.da(IDs).get(0);
+        Messaggio originale = new Messaggio(8, utente, 5003, conferme, 99L, 1_000, Protocollo.UDP.unicast);
+        Messaggio decodificato = Messaggio.configMsg(Messaggio.configMsg(originale));
+
+        assertTrue(decodificato.isACK());
+        assertNotNull(decodificato.getConferme());
+        assertEquals(10, decodificato.getConferme().getBase());
+        assertEquals(13, decodificato.getConferme().getUltimoContiguo());
+        assertArrayEquals(conferme.getBitmap(), decodificato.getConferme().getBitmap());
+        assertEquals(99L, decodificato.getMarcaTemporale());
+        assertEquals(1_000, decodificato.getRitardoACK());
+
+        TreeSet<Integer> letti = new TreeSet<>();
+        decodificato.getConferme().perOgni(letti::add);
+        assertEquals(IDs, letti);
+    }
+
+    @Test
+    void pacchettoAndataRitorno() throws Exception {
+        byte[] primo = Messaggio.configMsg(new Messaggio(1, utente, 5004, 0, "primo", true, Protocollo.UDP.multicast));
+        byte[] secondo = Messaggio.configMsg(new Messaggio(2, utente, 5004, 0, "secondo", true, Protocollo.UDP.multicast));
+        Pacchetto pacchetto = new Pacchetto(1400);
+        assertTrue(pacchetto.aggiungi(primo));
+        assertTrue(pacchetto.aggiungi(secondo));
+
+        List<ByteBuffer> messaggi = Pacchetto.spacchetta(ByteBuffer.wrap(pacchetto.getDatagramma()));
+        assertEquals(2, messaggi.size());
+        assertEquals("primo", Messaggio.configMsg(messaggi.get(0)).getMsg());
+        assertEquals("secondo", Messaggio.configMsg(messaggi.get(1)).getMsg());
+    }
+
+    @Test
+    void frammentoAndataRitorno() throws Exception {
+        char[] testo = new char[5000];
+        Arrays.fill(testo, 'x');
+        byte[] codificato = Messaggio.configMsg(new Messaggio(3, utente, 5005, 0, new String(testo), true, Protocollo.UDP.multicast));
+        Frammentatore frammentatore = new Frammentatore();
+        List<byte[]> frammenti = frammentatore.frammenta(codificato);
+        assertTrue(frammenti.size() > 1);
+
+        Riassemblatore riassemblatore = new Riassemblatore(1_000, 1 << 20);
+        ByteBuffer completo = null;
+        for(int i = frammenti.size() - 1; i >= 0; i--) {
+            assertEquals(CodecBinario.OP_FRAMMENTO, CodecBinario.opcode(ByteBuffer.wrap(frammenti.get(i))));
+            completo = riassemblatore.aggiungi(ByteBuffer.wrap(frammenti.get(i)));
+        }
+        assertNotNull(completo);
+        assertEquals(new String(testo), Messaggio.configMsg(completo).getMsg());
+    }
+
+    @Test
+    void richiestaRitrasmissioneAndataRitorno() throws Exception {
+        InsiemeID mancanti = InsiemeID.da(new TreeSet<>(List.of(5, 6, 9))).get(0);
+        RichiestaRitrasmissione originale = new RichiestaRitrasmissione(utente.getIDutente(), 5006, mancanti);
+        RichiestaRitrasmissione decodificata = RichiestaRitrasmissione.decodifica(ByteBuffer.wrap(originale.codifica()));
+
+        assertEquals(utente.getIDutente(), decodificata.IDrichiedente());
+        assertEquals(5006, decodificata.portaRichiedente());
+        assertEquals(5, decodificata.mancanti().getBase());
+        assertEquals(6, decodificata.mancanti().getUltimoContiguo());
+        assertTrue(decodificata.mancanti().contiene(9));
+        assertFalse(decodificata.mancanti().contiene(7));
+    }
+
+    @Test
+    void richiestaRitrasmissioneOstileRifiutata() throws Exception {
+        assertThrows(MsgException.class, () -> RichiestaRitrasmissione.decodifica(ByteBuffer.wrap(richiestaRitrasmissione(0, Integer.MAX_VALUE))));
+        assertThrows(MsgException.class, () -> RichiestaRitrasmissione.decodifica(ByteBuffer.wrap(richiestaRitrasmissione(1, InsiemeID.INTERVALLO_MASSIMO + 1))));
+        assertThrows(IllegalArgumentException.class, () -> new InsiemeID(Integer.MIN_VALUE, Integer.MAX_VALUE, new long[0]));
+
+        RichiestaRitrasmissione massima = RichiestaRitrasmissione.decodifica(ByteBuffer.wrap(richiestaRitrasmissione(1, InsiemeID.INTERVALLO_MASSIMO)));
+        assertEquals(InsiemeID.INTERVALLO_MASSIMO, massima.mancanti().dimensione());
+    }
+
+    @Test
+    void intervalloContiguoSuddiviso() {
+        TreeSet<Integer> IDs = new TreeSet<>();
+        for(int ID = 1; ID <= 3 * InsiemeID.INTERVALLO_MASSIMO; ID++) IDs.add(ID);
+        TreeSet<Integer> letti = new TreeSet<>();
+        for(InsiemeID insieme : InsiemeID.da(IDs)) {
+            assertTrue(insieme.getUltimoContiguo() - insieme.getBase() < InsiemeID.INTERVALLO_MASSIMO);
+            insieme.perOgni(letti::add);
+        }
+        assertEquals(IDs, letti);
+    }
+
+    @Test
+    void insiemeScorsoNelSoloIntervalloAmmesso() {
+        InsiemeID insieme = new InsiemeID(Integer.MAX_VALUE - 3, Integer.MAX_VALUE - 1, new long[] { 0b11 });
+        TreeSet<Integer> letti = new TreeSet<>();
+        insieme.perOgni(Integer.MAX_VALUE - 2, Integer.MAX_VALUE, letti::add);
+        assertEquals(new TreeSet<>(List.of(Integer.MAX_VALUE - 2, Integer.MAX_VALUE - 1, Integer.MAX_VALUE)), letti);
+    }
+
+    @Test
+    void battitoAndataRitorno() throws Exception {
+        Battito originale = new Battito(utente.getIDutente(), utente.getUsername(), 5007, 1_000, 12);
+        assertEquals(originale, Battito.decodifica(ByteBuffer.wrap(originale.codifica())));
+    }
+
+    @Test
+    void datagrammiTroncatiRifiutati() throws Exception {
+        InsiemeID insieme = InsiemeID.da(new TreeSet<>(List.of(1, 2, 70))).get(0);
+        Pacchetto pacchetto = new Pacchetto(1400);
+        pacchetto.aggiungi(Messaggio.configMsg(new Messaggio(1, utente, 5008, 0, "uno", true, Protocollo.UDP.multicast)));
+        pacchetto.aggiungi(Messaggio.configMsg(new Messaggio(2, utente, 5008, 0, "due", true, Protocollo.UDP.multicast)));
+
+        verificaTroncamenti(Messaggio.configMsg(new Messaggio(1, utente, 5008, 0, "testo", false, Protocollo.UDP.unicast)), Messaggio::configMsg);
+        verificaTroncamenti(Messaggio.configMsg(new Messaggio(2, utente, 5008, 1, 0L, 0, Protocollo.UDP.unicast)), Messaggio::configMsg);
+        verificaTroncamenti(Messaggio.configMsg(new Messaggio(3, utente, 5008, insieme, 0L, 0, Protocollo.UDP.unicast)), Messaggio::configMsg);
+        verificaTroncamenti(pacchetto.getDatagramma(), Pacchetto::spacchetta);
+        verificaTroncamenti(new RichiestaRitrasmissione(utente.getIDutente(), 5008, insieme).codifica(), RichiestaRitrasmissione::decodifica);
+        verificaTroncamenti(new Battito(utente.getIDutente(), utente.getUsername(), 5008, 1_000, 0).codifica(), Battito::decodifica);
+    }
+
+    @Test
+    void intestazioneNonValidaRifiutata() throws Exception {
+        byte[] codificato = Messaggio.configMsg(new Messaggio(1, utente, 5009, 0, "testo", true, Protocollo.UDP.multicast));
+
+        byte[] versioneErrata = codificato.clone();
+        versioneErrata[2] = CodecBinario.VERSIONE + 1;
+        assertThrows(MsgException.class, () -> Messaggio.configMsg(versioneErrata));
+
+        byte[] opcodeErrato = codificato.clone();
+        opcodeErrato[3] = CodecBinario.OP_BATTITO;
+        assertThrows(MsgException.class, () -> Messaggio.configMsg(opcodeErrato));
+        assertThrows(MsgException.class, () -> Pacchetto.spacchetta(ByteBuffer.wrap(codificato)));
+        assertThrows(MsgException.class, () -> Battito.decodifica(ByteBuffer.wrap(codificato)));
+        assertThrows(MsgException.class, () -> RichiestaRitrasmissione.decodifica(ByteBuffer.wrap(codificato)));
+        assertThrows(MsgException.class, () -> Messaggio.configMsg(new byte[] { 0x12, 0x34, 0x56 }));
+    }
+
+    @Test
+    void datagrammiCasualiRifiutati() {
+        Random casuale = new Random(20240501);
+        byte[] opcode = { CodecBinario.OP_MESSAGGIO, CodecBinario.OP_ACK, CodecBinario.OP_ACK_CUMULATIVO, CodecBinario.OP_PACCHETTO, CodecBinario.OP_NACK, CodecBinario.OP_BATTITO };
+        for(int i = 0; i < 10_000; i++) {
+            ByteBuffer dati = ByteBuffer.allocate(CodecBinario.DIMENSIONE_INTESTAZIONE + casuale.nextInt(200));
+            CodecBinario.scriviIntestazione(dati, opcode[casuale.nextInt(opcode.length)]);
+            while(dati.hasRemaining()) dati.put((byte) casuale.nextInt());
+            byte[] datagramma = dati.array();
+
+            decodificaSenzaEccezioniImpreviste(datagramma, Messaggio::configMsg);
+            decodificaSenzaEccezioniImpreviste(datagramma, Pacchetto::spacchetta);
+            decodificaSenzaEccezioniImpreviste(datagramma, RichiestaRitrasmissione::decodifica);
+            decodificaSenzaEccezioniImpreviste(datagramma, Battito::decodifica);
+        }
+    }
+
+    /**
+     * Codifica a mano una {@link RichiestaRitrasmissione} con un intervallo contiguo arbitrario, come potrebbe fare un mittente ostile
+     * @param base il primo numero di sequenza richiesto
+     * @param ultimoContiguo l'ultimo numero di sequenza richiesto
+     * @return il datagramma
+     */
+    private byte[] richiestaRitrasmissione(int base, int ultimoContiguo) {
+        ByteBuffer buffer = ByteBuffer.allocate(CodecBinario.DIMENSIONE_INTESTAZIONE + 16 + 4 + 4 + 4 + 1);
+        CodecBinario.scriviIntestazione(buffer, CodecBinario.OP_NACK);
+        UUID richiedente = UUID.fromString(utente.getIDutente());
+        buffer.putLong(richiedente.getMostSignificantBits()).putLong(richiedente.getLeastSignificantBits()).putInt(5010);
+        buffer.putInt(base).putInt(ultimoContiguo).put((byte) 0);
+        return buffer.array();
+    }
+
+    /**
+     * Verifica che ogni prefisso proprio del datagramma fornito venga rifiutato con una {@link MsgException}
+     * @param datagramma il datagramma completo
+     * @param decodifica la funzione di decodifica
+     */
+    private static void verificaTroncamenti(byte[] datagramma, Decodifica decodifica) throws MsgException {
+        decodifica.applica(ByteBuffer.wrap(datagramma));
+        for(int lunghezza = 0; lunghezza < datagramma.length; lunghezza++) {
+            ByteBuffer troncato = ByteBuffer.wrap(datagramma, 0, lunghezza);
+            assertThrows(MsgException.class, () -> decodifica.applica(troncato), "Prefisso di " + lunghezza + " byte accettato");
+        }
+    }
+
+    /**
+     * Verifica che la decodifica del datagramma fornito riesca o fallisca con una {@link MsgException}
+     * @param datagramma il datagramma da decodificare
+     * @param decodifica la funzione di decodifica
+     */
+    private static void decodificaSenzaEccezioniImpreviste(byte[] datagramma, Decodifica decodifica) {
+        try {
+            decodifica.applica(ByteBuffer.wrap(datagramma));
+        } catch (MsgException ignored) {
+        } catch (RuntimeException e) {
+            fail("Eccezione imprevista per " + Arrays.toString(datagramma) + ": " + e);
+        }
+    }
+
+    /**
+     * Funzione di decodifica di un datagramma ricevuto
+     */
+    @FunctionalInterface
+    private interface Decodifica {
+        void applica(ByteBuffer dati) throws MsgException;
+    }
+}
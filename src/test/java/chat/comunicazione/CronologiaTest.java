@@ -0,0 +1,70 @@
+package chat.comunicazione;
+
+import chat.utenze.Utente;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test della {@link Cronologia}: ritrasmissioni limitate alla finestra, qualunque sia l'insieme richiesto, indice degli <code>ACK</code> riservato ai messaggi che li attendono e statistiche di una cronologia vuota.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+class CronologiaTest {
+
+    /**
+     * Il proprietario della cronologia e mittente di tutti i messaggi di prova
+     */
+    private final Utente utente = new Utente("Proprietario");
+
+    @Test
+    void ritrasmissioneLimitataAllaFinestra() throws Exception {
+        Cronologia cronologia = new Cronologia(utente);
+        int inviati = Cronologia.DIMENSIONE_FINESTRA + 10;
+        for(int i = 0; i < inviati; i++) cronologia.storicizzaMessaggio(inviato(cronologia, cronologia.getNuovaSequenza()));
+
+        InsiemeID richiesti = new InsiemeID(1, InsiemeID.INTERVALLO_MASSIMO, new long[] { 0b101 });
+        List<Messaggio> ritrasmessi = cronologia.ottieniPerRitrasmissione(richiesti);
+        assertEquals(InsiemeID.INTERVALLO_MASSIMO - 10 + 2, ritrasmessi.size());
+        assertEquals(11, ritrasmessi.getFirst().getSequenza());
+        assertEquals(InsiemeID.INTERVALLO_MASSIMO + 3, ritrasmessi.getLast().getSequenza());
+        assertTrue(cronologia.ottieniPerRitrasmissione(new InsiemeID(inviati + 1, inviati + InsiemeID.INTERVALLO_MASSIMO, new long[0])).isEmpty());
+    }
+
+    @Test
+    void ACKInviatiNonSovrascrivonoIMessaggiDaConfermare() throws Exception {
+        Cronologia cronologia = new Cronologia(utente);
+        Messaggio messaggio = inviato(cronologia, cronologia.getNuovaSequenza());
+        cronologia.storicizzaMessaggio(messaggio);
+        /* gli ACK inviati occupano gli ID successivi, fino allo slot del messaggio in attesa */
+        for(int i = 0; i < Cronologia.DIMENSIONE_INDICE_ACK; i++) cronologia.storicizzaMessaggio(new Messaggio(cronologia.getNewID(), utente, 5001, i + 1, Protocollo.UDP.unicast));
+
+        cronologia.confermaDiLettura(new Messaggio(1, new Utente("Destinatario"), 5002, messaggio.getID(), Protocollo.UDP.unicast), 1);
+        assertEquals(1L, cronologia.getACKRicevuti());
+        assertEquals(1, messaggio.isInviatoCorrettamente());
+    }
+
+    @Test
+    void statisticheSenzaMessaggiInviati() {
+        String statistiche = new Cronologia(utente).getStatistiche();
+        assertFalse(statistiche.contains("NaN"), statistiche);
+        assertTrue(statistiche.contains("Percentuale di successo: 100.0%"), statistiche);
+    }
+
+    /**
+     * Crea un messaggio multicast affidabile del proprietario, atteso da un solo destinatario
+     * @param cronologia la cronologia che fornisce l'<code>ID</code>
+     * @param sequenza il numero di sequenza
+     * @return il messaggio
+     */
+    private Messaggio inviato(Cronologia cronologia, int sequenza) throws Exception {
+        BitSet destinatari = new BitSet();
+        destinatari.set(1);
+        return new Messaggio(cronologia.getNewID(), utente, 5001, destinatari, "testo " + sequenza, true, Protocollo.UDP.multicast, sequenza);
+    }
+}
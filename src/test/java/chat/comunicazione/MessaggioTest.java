@@ -0,0 +1,86 @@
+package chat.comunicazione;
+
+import chat.utenze.Utente;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test degli esiti di {@link Messaggio#ACK(int)} ed {@link Messaggio#esonera(int)}: il completamento degli <code>ACK</code> attesi viene segnalato a una sola invocazione.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+class MessaggioTest {
+
+    /**
+     * Il mittente di tutti i messaggi di prova
+     */
+    private final Utente utente = new Utente("Mittente");
+
+    @Test
+    void completamentoSegnalatoUnaSolaVolta() throws Exception {
+        Messaggio messaggio = inviato(1, 2);
+
+        assertEquals(Messaggio.EsitoACK.REGISTRATO, messaggio.ACK(1));
+        assertEquals(Messaggio.EsitoACK.IGNORATO, messaggio.ACK(1));
+        assertEquals(Messaggio.EsitoACK.IGNORATO, messaggio.ACK(3));
+        assertEquals(Messaggio.EsitoACK.COMPLETATO, messaggio.esonera(2));
+        assertEquals(Messaggio.EsitoACK.IGNORATO, messaggio.ACK(2));
+        assertEquals(Messaggio.EsitoACK.IGNORATO, messaggio.esonera(1));
+        assertEquals(1, messaggio.isInviatoCorrettamente());
+    }
+
+    @Test
+    void ACKEdEsoneroConcorrenti() throws Exception {
+        ExecutorService esecutore = Executors.newFixedThreadPool(2);
+        try {
+            for(int i = 0; i < 2_000; i++) {
+                Messaggio messaggio = inviato(1, 2, 3);
+                assertEquals(Messaggio.EsitoACK.REGISTRATO, messaggio.ACK(1));
+                CyclicBarrier partenza = new CyclicBarrier(2);
+                CompletableFuture<Messaggio.EsitoACK> conferma = CompletableFuture.supplyAsync(() -> allaPartenza(partenza, () -> messaggio.ACK(2)), esecutore);
+                CompletableFuture<Messaggio.EsitoACK> esonero = CompletableFuture.supplyAsync(() -> allaPartenza(partenza, () -> messaggio.esonera(3)), esecutore);
+
+                int completamenti = (conferma.get() == Messaggio.EsitoACK.COMPLETATO ? 1 : 0) + (esonero.get() == Messaggio.EsitoACK.COMPLETATO ? 1 : 0);
+                assertEquals(1, completamenti, "Completamento segnalato " + completamenti + " volte all'iterazione " + i);
+            }
+        } finally {
+            esecutore.shutdownNow();
+        }
+    }
+
+    /**
+     * Crea un messaggio inviato che attende la conferma degli slot indicati
+     * @param slot gli slot dei destinatari
+     * @return il messaggio
+     */
+    private Messaggio inviato(int... slot) throws Exception {
+        BitSet destinatari = new BitSet();
+        for(int s : slot) destinatari.set(s);
+        return new Messaggio(1, utente, 5001, destinatari, "testo", true, Protocollo.UDP.multicast, 0);
+    }
+
+    /**
+     * Attende l'altro {@link Thread} sulla barriera e poi esegue l'operazione, così che le due operazioni si sovrappongano il più possibile
+     * @param partenza la barriera condivisa
+     * @param operazione l'operazione da eseguire
+     * @return l'esito dell'operazione
+     */
+    private static Messaggio.EsitoACK allaPartenza(CyclicBarrier partenza, Supplier<Messaggio.EsitoACK> operazione) {
+        try {
+            partenza.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return operazione.get();
+    }
+}
@@ -0,0 +1,75 @@
+package chat.comunicazione;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test del {@link RilevatoreLacune}: lacune rivelate dai messaggi successivi e dagli annunci dell'ultimo numero di sequenza inviato.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+class RilevatoreLacuneTest {
+
+    /**
+     * Il mittente dei messaggi di prova
+     */
+    private static final String MITTENTE = "00000000-0000-0000-0000-000000000001";
+
+    @Test
+    void lacunaRivelataDaMessaggioSuccessivo() {
+        RilevatoreLacune rilevatore = new RilevatoreLacune(3);
+        assertEquals(RilevatoreLacune.Esito.NUOVO, rilevatore.registra(MITTENTE, 1));
+        assertEquals(RilevatoreLacune.Esito.LACUNA, rilevatore.registra(MITTENTE, 4));
+        assertEquals(RilevatoreLacune.Esito.DUPLICATO, rilevatore.registra(MITTENTE, 4));
+
+        List<InsiemeID> mancanti = rilevatore.mancanti(MITTENTE);
+        assertEquals(1, mancanti.size());
+        assertEquals(2, mancanti.get(0).getBase());
+        assertEquals(3, mancanti.get(0).getUltimoContiguo());
+    }
+
+    @Test
+    void lacunaInCodaRivelataDaAnnuncio() {
+        RilevatoreLacune rilevatore = new RilevatoreLacune(3);
+        rilevatore.registra(MITTENTE, 1);
+        rilevatore.registra(MITTENTE, 2);
+        assertTrue(rilevatore.mancanti(MITTENTE).isEmpty());
+
+        assertFalse(rilevatore.annuncia(MITTENTE, 2));
+        assertTrue(rilevatore.annuncia(MITTENTE, 4));
+        List<InsiemeID> mancanti = rilevatore.mancanti(MITTENTE);
+        assertEquals(1, mancanti.size());
+        assertEquals(3, mancanti.get(0).getBase());
+        assertEquals(4, mancanti.get(0).getUltimoContiguo());
+
+        assertEquals(RilevatoreLacune.Esito.NUOVO, rilevatore.registra(MITTENTE, 3));
+        assertEquals(RilevatoreLacune.Esito.NUOVO, rilevatore.registra(MITTENTE, 4));
+        assertTrue(rilevatore.mancanti(MITTENTE).isEmpty());
+    }
+
+    @Test
+    void annuncioDiMittenteSconosciutoIgnorato() {
+        RilevatoreLacune rilevatore = new RilevatoreLacune(3);
+        assertFalse(rilevatore.annuncia(MITTENTE, 10));
+        assertTrue(rilevatore.mancanti(MITTENTE).isEmpty());
+        assertEquals(RilevatoreLacune.Esito.NUOVO, rilevatore.registra(MITTENTE, 11));
+    }
+
+    @Test
+    void lacunaInCodaAbbandonataDopoTentativiMassimi() {
+        RilevatoreLacune rilevatore = new RilevatoreLacune(2);
+        rilevatore.registra(MITTENTE, 1);
+        rilevatore.annuncia(MITTENTE, 3);
+        assertFalse(rilevatore.mancanti(MITTENTE).isEmpty());
+        assertFalse(rilevatore.mancanti(MITTENTE).isEmpty());
+        assertTrue(rilevatore.mancanti(MITTENTE).isEmpty());
+        assertTrue(rilevatore.mancanti(MITTENTE).isEmpty());
+        assertEquals(RilevatoreLacune.Esito.DUPLICATO, rilevatore.registra(MITTENTE, 3));
+        assertEquals(RilevatoreLacune.Esito.NUOVO, rilevatore.registra(MITTENTE, 4));
+    }
+}
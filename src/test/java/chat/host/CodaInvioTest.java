@@ -0,0 +1,96 @@
+package chat.host;
+
+import chat.eccezioni.CommunicationException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test della {@link CodaInvio}: ordine di esecuzione, rifiuto a coda piena o chiusa e completamento di tutte le operazioni accodate durante la chiusura.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+class CodaInvioTest {
+
+    @Test
+    void operazioniEseguiteInOrdine() throws Exception {
+        CodaInvio coda = new CodaInvio(16);
+        List<Integer> eseguite = new ArrayList<>();
+        List<CompletableFuture<Void>> esiti = new ArrayList<>();
+        for(int i = 0; i < 10; i++) {
+            int indice = i;
+            esiti.add(coda.accoda(() -> eseguite.add(indice)));
+        }
+        coda.avvia();
+        CompletableFuture.allOf(esiti.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        coda.chiudi(1000);
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), eseguite);
+    }
+
+    @Test
+    void codaPienaOChiusaRifiuta() {
+        CodaInvio coda = new CodaInvio(1);
+        assertFalse(coda.accoda(() -> {}).isDone());
+        CompletableFuture<Void> piena = coda.accoda(() -> {});
+        assertTrue(piena.isCompletedExceptionally());
+
+        coda.chiudi(1000);
+        CompletableFuture<Void> chiusa = coda.accoda(() -> {});
+        ExecutionException errore = assertThrows(ExecutionException.class, () -> chiusa.get(1, TimeUnit.SECONDS));
+        assertTrue(errore.getCause() instanceof CommunicationException);
+    }
+
+    @Test
+    void nessunEsitoInSospesoDuranteLaChiusura() throws Exception {
+        for(int ripetizione = 0; ripetizione < 50; ripetizione++) {
+            CodaInvio coda = new CodaInvio(1024);
+            coda.avvia();
+            AtomicInteger eseguite = new AtomicInteger();
+            List<CompletableFuture<Void>> esiti = new ArrayList<>();
+            CountDownLatch partenza = new CountDownLatch(1);
+
+            List<Thread> produttori = new ArrayList<>();
+            for(int t = 0; t < 4; t++) {
+                List<CompletableFuture<Void>> propri = new ArrayList<>();
+                Thread produttore = new Thread(() -> {
+                    try {
+                        partenza.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for(int i = 0; i < 200; i++) propri.add(coda.accoda(eseguite::incrementAndGet));
+                    synchronized (esiti) {
+                        esiti.addAll(propri);
+                    }
+                });
+                produttore.start();
+                produttori.add(produttore);
+            }
+            partenza.countDown();
+            coda.chiudi(1000);
+            for(Thread produttore : produttori) produttore.join();
+
+            int completate = 0;
+            for(CompletableFuture<Void> esito : esiti) {
+                try {
+                    esito.get(1, TimeUnit.SECONDS);
+                    completate++;
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof CommunicationException);
+                }
+            }
+            assertEquals(800, esiti.size());
+            assertEquals(eseguite.get(), completate);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package chat.host;
+
+import chat.comunicazione.CodecBinario;
+import chat.comunicazione.Messaggio;
+import chat.gestione.Orologio;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test del {@link MulticastPeer} su una {@link ReteSimulata}: percorso di ricezione e riproducibilità di una conversazione sull'orologio virtuale della rete.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.1
+ * @project MulticastUDPSocketChat
+ */
+class MulticastPeerTest {
+
+    @Test
+    void richiestaRitrasmissioneOstileScartata() throws Exception {
+        ReteSimulata rete = new ReteSimulata(CondizioniRete.IDEALI, 6);
+        InetAddress host = rete.nuovoHost();
+        MulticastPeer multicastPeer = new MulticastPeer("bersaglio", false, new GroupChat("230.19.6.6", 19066, rete.apri(host, 19066)), rete.apri(host, 0));
+
+        /* una richiesta di circa 45 byte per tutti i numeri di sequenza positivi */
+        ByteBuffer richiesta = ByteBuffer.allocate(CodecBinario.DIMENSIONE_INTESTAZIONE + 16 + 4 + 4 + 4 + 1);
+        CodecBinario.scriviIntestazione(richiesta, CodecBinario.OP_NACK);
+        UUID richiedente = UUID.randomUUID();
+        richiesta.putLong(richiedente.getMostSignificantBits()).putLong(richiedente.getLeastSignificantBits()).putInt(5011);
+        richiesta.putInt(0).putInt(Integer.MAX_VALUE).put((byte) 0).flip();
+
+        assertDoesNotThrow(() -> multicastPeer.ricevi(richiesta, rete.nuovoHost()));
+        assertEquals(1.0, multicastPeer.getMetriche().getMetriche().stream().filter(metrica -> metrica.nome().equals("chat_errori_decodifica_total")).findFirst().orElseThrow().valore().getAsDouble());
+        rete.chiudi();
+    }
+
+    @Test
+    void conversazioneRiproducibile() throws Exception {
+        String esito = conversazione(23);
+        assertEquals(esito, conversazione(23));
+    }
+
+    /**
+     * Svolge una conversazione affidabile tra quattro peer su una rete con perdite e riordini, interamente sull'orologio virtuale della rete
+     * @param seme il seme della rete
+     * @return i messaggi consegnati a ciascun peer, in ordine di consegna, i datagrammi unicast inviati da ciascun peer e le statistiche della rete
+     */
+    private static String conversazione(long seme) throws Exception {
+        ReteSimulata rete = new ReteSimulata(new CondizioniRete(0.1, 0, 0.2, 2_000, 1_000, 5_000, 0, 0), seme);
+        List<MulticastPeer> peer = new ArrayList<>();
+        List<List<String>> consegnati = new ArrayList<>();
+        try {
+            for(int i = 0; i < 4; i++) {
+                InetAddress host = rete.nuovoHost();
+                MulticastPeer multicastPeer = new MulticastPeer("peer" + i, false, new GroupChat("230.19.23.23", 19023, rete.apri(host, 19023)), rete.apri(host, 0), rete, rete.nuovoPianificatore());
+                List<String> ricevuti = new ArrayList<>();
+                multicastPeer.setMulticastAffidabile(true);
+                multicastPeer.setEsecutoreNotifiche(Runnable::run);
+                multicastPeer.suMessaggio(messaggio -> ricevuti.add(messaggio.getMsg()));
+                multicastPeer.configura();
+                multicastPeer.avvia(false);
+                peer.add(multicastPeer);
+                consegnati.add(ricevuti);
+            }
+            rete.avanza(500_000);
+            for(int turno = 0; turno < 10; turno++) {
+                for(int i = 0; i < peer.size(); i++) peer.get(i).inviaGruppo("turno " + turno + " di peer" + i);
+                rete.avanza(20_000);
+            }
+            rete.avanza(3_000_000);
+
+            StringBuilder esito = new StringBuilder();
+            for(int i = 0; i < peer.size(); i++) {
+                /* con la ritrasmissione dei messaggi persi, ciascun peer riceve tutti i messaggi degli altri */
+                assertEquals(30, consegnati.get(i).stream().filter(testo -> testo.startsWith("turno ")).count(), "Messaggi consegnati a peer" + i + ": " + consegnati.get(i));
+                esito.append(consegnati.get(i)).append(" | unicast ").append(inviatiUnicast(peer.get(i))).append('\n');
+            }
+            return esito.append(rete.getStatistiche()).toString();
+        } finally {
+            for(MulticastPeer multicastPeer : peer) multicastPeer.chiudi();
+            rete.chiudi();
+            Messaggio.setOrologio(Orologio.SISTEMA);
+        }
+    }
+
+    /**
+     * Restituisce i datagrammi unicast inviati da un peer: ritrasmissioni, richieste di ritrasmissione e <code>ACK</code>
+     * @param multicastPeer il peer
+     * @return il numero di datagrammi unicast inviati
+     */
+    private static double inviatiUnicast(MulticastPeer multicastPeer) {
+        return multicastPeer.getMetriche().getMetriche().stream().filter(metrica -> metrica.nome().equals("chat_datagrammi_inviati_total") && metrica.etichette().contains("unicast"))
+                .findFirst().orElseThrow().valore().getAsDouble();
+    }
+}
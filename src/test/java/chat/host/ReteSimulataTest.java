@@ -0,0 +1,102 @@
+package chat.host;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test della {@link ReteSimulata}: consegna guidata dall'orologio virtuale e riproducibilità delle consegne a parità di seme.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.0
+ * @project MulticastUDPSocketChat
+ */
+class ReteSimulataTest {
+
+    /**
+     * Condizioni sfavorevoli, che esercitano tutte le decisioni casuali della rete
+     */
+    private static final CondizioniRete AVVERSE = new CondizioniRete(0.2, 0.1, 0.2, 500, 300, 2_000, 2_000_000, 16_384);
+
+    /**
+     * L'indirizzo del <code>gruppo</code> di prova
+     */
+    private static final InetSocketAddress GRUPPO = new InetSocketAddress("230.19.6.5", 19065);
+
+    @Test
+    void consegnaSoloAllaScadenza() throws IOException {
+        ReteSimulata rete = new ReteSimulata(new CondizioniRete(0, 0, 0, 1_000, 0, 0, 0, 0), 1);
+        List<String> ricevuti = new ArrayList<>();
+        Trasporto mittente = rete.apri(rete.nuovoHost(), 0);
+        Trasporto destinatario = rete.apri(rete.nuovoHost(), 0);
+        destinatario.avvia((dati, da) -> ricevuti.add(StandardCharsets.UTF_8.decode(dati).toString()), null);
+
+        mittente.invia(ByteBuffer.wrap("ciao".getBytes(StandardCharsets.UTF_8)), destinatario.getIndirizzoLocale());
+        rete.avanza(999);
+        assertTrue(ricevuti.isEmpty());
+        rete.avanza(1);
+        assertEquals(List.of("ciao"), ricevuti);
+        assertEquals(1_000, rete.getIstante());
+        rete.chiudi();
+    }
+
+    @Test
+    void stessoSemeStesseConsegne() throws IOException {
+        List<String> prima = scenario(42);
+        List<String> seconda = scenario(42);
+        assertFalse(prima.isEmpty());
+        assertEquals(prima, seconda);
+        assertNotEquals(prima, scenario(43));
+    }
+
+    /**
+     * Esegue uno scenario di prova: tre host aderiscono al <code>gruppo</code> e vi inviano messaggi a intervalli casuali,
+     * e ciascun messaggio ricevuto dal <code>gruppo</code> viene confermato al mittente in unicast durante la consegna stessa
+     * @param seme il seme della rete
+     * @return la traccia delle consegne: istante virtuale, destinatario, mittente e contenuto di ciascun datagramma consegnato
+     */
+    private static List<String> scenario(long seme) throws IOException {
+        ReteSimulata rete = new ReteSimulata(AVVERSE, seme);
+        List<String> traccia = new ArrayList<>();
+        List<Trasporto> gruppi = new ArrayList<>();
+        for(int i = 0; i < 3; i++) {
+            InetAddress host = rete.nuovoHost();
+            Trasporto gruppo = rete.apri(host, GRUPPO.getPort());
+            Trasporto unicast = rete.apri(host, 0);
+            Trasporto conferme = rete.apri(host, GRUPPO.getPort() + 1);
+            InetSocketAddress indirizzoGruppo = gruppo.getIndirizzoLocale();
+            InetSocketAddress indirizzoConferme = conferme.getIndirizzoLocale();
+            gruppo.unisci(GRUPPO.getAddress());
+            gruppo.avvia((dati, mittente) -> {
+                String contenuto = StandardCharsets.UTF_8.decode(dati).toString();
+                traccia.add(rete.getIstante() + " " + indirizzoGruppo + " <- " + mittente + ": " + contenuto);
+                try {
+                    unicast.invia(ByteBuffer.wrap(("ack " + contenuto).getBytes(StandardCharsets.UTF_8)), new InetSocketAddress(mittente.getAddress(), GRUPPO.getPort() + 1));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, null);
+            conferme.avvia((dati, mittente) -> traccia.add(rete.getIstante() + " " + indirizzoConferme + " <- " + mittente + ": " + StandardCharsets.UTF_8.decode(dati)), null);
+            gruppi.add(gruppo);
+        }
+
+        SplittableRandom casuale = new SplittableRandom(7);
+        for(int i = 0; i < 200; i++) {
+            gruppi.get(i % gruppi.size()).invia(ByteBuffer.wrap(("messaggio " + i).getBytes(StandardCharsets.UTF_8)), GRUPPO);
+            rete.avanza(casuale.nextLong(400));
+        }
+        rete.avanza(1_000_000);
+        rete.chiudi();
+        return traccia;
+    }
+}
@@ -0,0 +1,100 @@
+package chat.utenze;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test dell'assegnazione degli slot della {@link Rubrica}: più piccolo indice libero, quarantena degli slot degli utenti rimossi ed esito dell'inserimento,
+ * anche oltre la capacità iniziale, e aggiornamento dell'istantanea letta dopo ciascuna modifica.
+ *
+ * @author Matteo Bagnoletti Tini
+ * @version 1.2
+ * @project MulticastUDPSocketChat
+ */
+class RubricaTest {
+
+    /**
+     * L'indirizzo di tutti gli utenti di prova
+     */
+    private static final InetAddress INDIRIZZO = InetAddress.getLoopbackAddress();
+
+    @Test
+    void slotAssegnatiInOrdine() throws Exception {
+        Rubrica rubrica = new Rubrica(new Utente("proprietario"));
+        Utente primo = new Utente("primo"), secondo = new Utente("secondo");
+        rubrica.aggiungiUtente(primo, INDIRIZZO, 5000);
+        rubrica.aggiungiUtente(secondo, INDIRIZZO, 5001);
+
+        assertEquals(0, rubrica.ottieniSlot(primo.getIDutente()));
+        assertEquals(1, rubrica.ottieniSlot(secondo.getIDutente()));
+        BitSet attesi = new BitSet();
+        attesi.set(0, 2);
+        assertEquals(attesi, rubrica.destinatari());
+    }
+
+    @Test
+    void slotInQuarantenaFinoAlRilascio() throws Exception {
+        Rubrica rubrica = new Rubrica(new Utente("proprietario"));
+        Utente uscente = new Utente("uscente"), restante = new Utente("restante");
+        rubrica.aggiungiUtente(uscente, INDIRIZZO, 5000);
+        rubrica.aggiungiUtente(restante, INDIRIZZO, 5001);
+
+        IndiceRubrica rimosso = rubrica.rimuoviIndice(uscente.getIDutente());
+        assertEquals(0, rimosso.slot());
+        assertNull(rubrica.ottieniInfoDaSlot(0));
+        assertNull(rubrica.rimuoviIndice(uscente.getIDutente()));
+
+        Utente entrante = new Utente("entrante");
+        rubrica.aggiungiUtente(entrante, INDIRIZZO, 5002);
+        assertEquals(2, rubrica.ottieniSlot(entrante.getIDutente()));
+
+        rubrica.liberaSlot(rimosso.slot());
+        Utente successivo = new Utente("successivo");
+        rubrica.aggiungiUtente(successivo, INDIRIZZO, 5003);
+        assertEquals(0, rubrica.ottieniSlot(successivo.getIDutente()));
+    }
+
+    @Test
+    void inserimentoSegnalatoUnaSolaVolta() throws Exception {
+        Utente proprietario = new Utente("proprietario");
+        Rubrica rubrica = new Rubrica(proprietario);
+        Utente nuovo = new Utente("nuovo");
+
+        assertTrue(rubrica.aggiungiUtente(nuovo, INDIRIZZO, 5000));
+        assertFalse(rubrica.aggiungiUtente(nuovo, INDIRIZZO, 5000));
+        assertFalse(rubrica.aggiungiUtente(proprietario, INDIRIZZO, 5001));
+
+        rubrica.rimuoviUtente(nuovo.getIDutente());
+        assertTrue(rubrica.aggiungiUtente(nuovo, INDIRIZZO, 5000));
+    }
+
+    @Test
+    void istantaneaAggiornataDopoOgniModifica() throws Exception {
+        Rubrica rubrica = new Rubrica(new Utente("proprietario"));
+        List<Utente> utenti = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            Utente utente = new Utente("utente" + i);
+            assertTrue(rubrica.aggiungiUtente(utente, INDIRIZZO, 5000 + i));
+            assertEquals(i + 1, rubrica.destinatari().cardinality());
+            utenti.add(utente);
+        }
+        assertEquals(99, rubrica.ottieniSlot(utenti.get(99).getIDutente()));
+        assertEquals("utente99", rubrica.ottieniInfoDaSlot(99).alias());
+
+        rubrica.rimuoviUtente(utenti.get(50).getIDutente());
+        assertFalse(rubrica.destinatari().get(50));
+        assertFalse(rubrica.getRubrica().contains("utente50 "));
+
+        rubrica.rinomina("utente7", "settimo");
+        assertTrue(rubrica.getRubrica().contains("settimo ["));
+        assertFalse(rubrica.getRubrica().contains("utente7 ["));
+        assertEquals("settimo", rubrica.ottieniAliasDaUUID(utenti.get(7).getIDutente()));
+        assertEquals("settimo", rubrica.ottieniInfoDaSlot(7).alias());
+    }
+}